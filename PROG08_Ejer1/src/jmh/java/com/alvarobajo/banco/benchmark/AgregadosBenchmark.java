@@ -0,0 +1,73 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.AlmacenMemoria;
+import com.alvarobajo.banco.controller.agregados.ColumnasCuentas;
+import com.alvarobajo.banco.controller.agregados.EstadisticasBanco;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark de los totales del banco: la suma de saldos y el descubierto total calculados recorriendo las columnas
+ * ({@link ColumnasCuentas}) frente a recorrer en paralelo los objetos de las cuentas, y leídos de las
+ * {@link EstadisticasBanco}, que los mantienen al día con cada operación.
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+public class AgregadosBenchmark {
+
+    @Param({"1000000"})
+    private int numCuentas;
+
+    private AlmacenMemoria almacen;
+    private ColumnasCuentas columnas;
+    private EstadisticasBanco estadisticas;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        almacen = new AlmacenMemoria(true);
+        almacen.insertarTodas(DatosSinteticos.cuentas(numCuentas));
+        columnas = new ColumnasCuentas(almacen);
+        estadisticas = new EstadisticasBanco(almacen);
+        // La primera consulta construye las columnas; no se mide
+        columnas.numCuentas();
+        estadisticas.numCuentas();
+    }
+
+    @Benchmark
+    public long saldoTotalColumnas() {
+        return columnas.saldoTotalCentimos();
+    }
+
+    @Benchmark
+    public long saldoTotalObjetos() {
+        return almacen.valores().parallelStream().mapToLong(CuentaBancaria::getSaldoCentimos).sum();
+    }
+
+    @Benchmark
+    public long saldoTotalEstadisticas() {
+        return estadisticas.saldoTotalCentimos();
+    }
+
+    @Benchmark
+    public long descubiertoColumnas() {
+        return columnas.descubiertoTotalCentimos();
+    }
+
+    @Benchmark
+    public long descubiertoObjetos() {
+        return -almacen.valores().parallelStream().mapToLong(c -> Math.min(c.getSaldoCentimos(), 0)).sum();
+    }
+
+    @Benchmark
+    public long descubiertoEstadisticas() {
+        return estadisticas.descubiertoTotalCentimos();
+    }
+}
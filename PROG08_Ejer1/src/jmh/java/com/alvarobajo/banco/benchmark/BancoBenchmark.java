@@ -0,0 +1,161 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.Banco;
+import com.alvarobajo.banco.controller.cuentas.OperarCuenta;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark de las operaciones del banco que se hacen con una sola cuenta, según el número de cuentas del banco.
+ *
+ * <p>El banco es el del menú (un solo hilo, con diario e historial de movimientos) y se llena con las cuentas de
+ * {@link DatosSinteticos} antes de medir. Cada operación elige una cuenta al azar, así que con muchas cuentas las
+ * búsquedas salen casi siempre de la memoria principal y no de la caché.</p>
+ *
+ * <ul>
+ *     <li>{@code buscarCuentaPorIBAN}, {@code buscarCuentaPorTitular}: búsqueda de una cuenta que existe.</li>
+ *     <li>{@code estaIBANEnUso}: la mitad de las veces con un IBAN que no existe.</li>
+ *     <li>{@code ingresoYRetiro}: un ingreso y un retiro de 10,50 € con {@link OperarCuenta}.</li>
+ *     <li>{@code abrirCuenta} y {@code eliminarCuenta}: se miden por lotes de {@value #LOTE} operaciones; como el
+ *     tiempo se da en microsegundos, la puntuación coincide con los nanosegundos por operación. Las cuentas del
+ *     lote se preparan (y se eliminan o se abren) fuera de la medida, así que el banco no crece.</li>
+ * </ul>
+ *
+ * <p>Con 10 millones de cuentas el banco ocupa varios GB; en máquinas con poca memoria se pueden elegir los
+ * tamaños con {@code -p numCuentas=1000,100000}.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+public class BancoBenchmark {
+
+    static final int LOTE = 1_000;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int numCuentas;
+
+    private Banco banco;
+    private String[] ibans;
+    private String[] nombres;
+    private String[] ibansLibres;
+
+    /**
+     * Lote de cuentas nuevas para {@code abrirCuenta} y {@code eliminarCuenta}. Antes de cada iteración de
+     * {@code eliminarCuenta} se abren en el banco; después de cada iteración de {@code abrirCuenta} se eliminan.
+     */
+    @State(Scope.Thread)
+    public static class Lote {
+        private final CuentaBancaria[] cuentas = new CuentaBancaria[LOTE];
+        private int siguiente;
+        private long numero;
+
+        @Setup(Level.Iteration)
+        public void preparar(BancoBenchmark estado, BenchmarkParams parametros) {
+            for (int i = 0; i < LOTE; i++) {
+                cuentas[i] = DatosSinteticos.cuentaNueva(numero++);
+            }
+            siguiente = 0;
+            if (parametros.getBenchmark().endsWith("eliminarCuenta")) {
+                estado.banco.abrirCuentas(Arrays.asList(cuentas));
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void eliminar(BancoBenchmark estado, BenchmarkParams parametros) {
+            if (parametros.getBenchmark().endsWith("abrirCuenta")) {
+                for (CuentaBancaria cuenta : cuentas) {
+                    estado.banco.eliminarCuenta(cuenta.getIban());
+                }
+            }
+        }
+
+        CuentaBancaria siguiente() {
+            return cuentas[siguiente++];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        Path directorio = Files.createTempDirectory("banco-benchmark");
+        banco = new Banco(directorio.resolve("datos.dat"), false);
+        List<CuentaBancaria> cuentas = DatosSinteticos.cuentas(numCuentas);
+        ibans = new String[numCuentas];
+        for (int i = 0; i < numCuentas; i++) {
+            ibans[i] = cuentas.get(i).getIban();
+        }
+        nombres = new String[DatosSinteticos.numTitulares(numCuentas)];
+        for (int i = 0; i < nombres.length; i++) {
+            nombres[i] = DatosSinteticos.nombreTitular(i);
+        }
+        ibansLibres = new String[1024];
+        for (int i = 0; i < ibansLibres.length; i++) {
+            ibansLibres[i] = DatosSinteticos.iban(numCuentas + i);
+        }
+        banco.abrirCuentas(cuentas);
+        banco.guardarCuentas();
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        banco.close();
+    }
+
+    private String ibanAleatorio() {
+        return ibans[ThreadLocalRandom.current().nextInt(ibans.length)];
+    }
+
+    @Benchmark
+    public CuentaBancaria buscarCuentaPorIBAN() {
+        return banco.buscarCuentaPorIBAN(ibanAleatorio());
+    }
+
+    @Benchmark
+    public CuentaBancaria buscarCuentaPorTitular() {
+        return banco.buscarCuentaPorTitular(nombres[ThreadLocalRandom.current().nextInt(nombres.length)]);
+    }
+
+    @Benchmark
+    public boolean estaIBANEnUso() {
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        String iban = aleatorio.nextBoolean() ? ibanAleatorio() : ibansLibres[aleatorio.nextInt(ibansLibres.length)];
+        return banco.estaIBANEnUso(iban);
+    }
+
+    @Benchmark
+    public boolean ingresoYRetiro() {
+        CuentaBancaria cuenta = banco.buscarCuentaPorIBAN(ibanAleatorio());
+        return OperarCuenta.ingresarCentimos(cuenta, 1_050) & OperarCuenta.retirarCentimos(cuenta, 1_050);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 20, batchSize = LOTE)
+    @Measurement(iterations = 20, batchSize = LOTE)
+    public boolean abrirCuenta(Lote lote) {
+        return banco.abrirCuenta(lote.siguiente());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 20, batchSize = LOTE)
+    @Measurement(iterations = 20, batchSize = LOTE)
+    public boolean eliminarCuenta(Lote lote) {
+        return banco.eliminarCuenta(lote.siguiente().getIban());
+    }
+}
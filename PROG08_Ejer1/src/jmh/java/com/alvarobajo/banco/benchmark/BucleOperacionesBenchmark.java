@@ -0,0 +1,100 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.Banco;
+import com.alvarobajo.banco.controller.BucleOperaciones;
+import com.alvarobajo.banco.controller.cuentas.OperarCuenta;
+import com.alvarobajo.banco.controller.procesos.ProgresoLote;
+import com.alvarobajo.banco.controller.simulacion.GeneradorPoblacion;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark que compara los ingresos con los cerrojos de las cuentas ({@link OperarCuenta}) y a través del
+ * {@link BucleOperaciones}, sobre un banco concurrente con diario.
+ *
+ * <p>{@code conCerrojos} busca la cuenta e ingresa en el hilo del benchmark, que además escribe el registro del
+ * diario. {@code bucleEsperando} publica el ingreso y espera a que se aplique, y {@code buclePublicando} solo lo
+ * publica, así que mide lo que tarda un productor en dejar la operación en el anillo; si el aplicador no da
+ * abasto, el productor espera a que quede un hueco libre. Se puede lanzar con distintos números de hilos
+ * ({@code -t 1}, {@code -t 4}...).</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BucleOperacionesBenchmark {
+
+    @Param({"100000"})
+    private int numCuentas;
+
+    private Banco banco;
+    private BucleOperaciones bucle;
+    private String[] ibanes;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        banco = new Banco(Files.createTempDirectory("benchmark-bucle").resolve("datos.dat"), true);
+        GeneradorPoblacion poblacion = new GeneradorPoblacion(1);
+        poblacion.poblar(banco, numCuentas, ProgresoLote.NINGUNO);
+        ibanes = new String[numCuentas];
+        for (int i = 0; i < numCuentas; i++) {
+            ibanes[i] = poblacion.iban(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        if (bucle != null) {
+            bucle.close();
+        }
+        banco.close();
+    }
+
+    private String ibanAlAzar() {
+        return ibanes[ThreadLocalRandom.current().nextInt(ibanes.length)];
+    }
+
+    private BucleOperaciones bucle() {
+        // El bucle se abre la primera vez que se usa para que no afecte a conCerrojos, que modifica las cuentas
+        // por su cuenta
+        synchronized (this) {
+            if (bucle == null) {
+                bucle = new BucleOperaciones(banco);
+            }
+            return bucle;
+        }
+    }
+
+    @Benchmark
+    public boolean conCerrojos() {
+        return OperarCuenta.ingresarCentimos(banco.buscarCuentaPorIBAN(ibanAlAzar()), 100);
+    }
+
+    @Benchmark
+    public BucleOperaciones.Resultado bucleEsperando(EstadoHilo hilo) {
+        return hilo.bucle.ingresar(ibanAlAzar(), 100);
+    }
+
+    @Benchmark
+    public long buclePublicando(EstadoHilo hilo) {
+        return hilo.bucle.publicarIngreso(ibanAlAzar(), 100);
+    }
+
+    @State(Scope.Thread)
+    public static class EstadoHilo {
+        BucleOperaciones bucle;
+
+        @Setup(Level.Trial)
+        public void preparar(BucleOperacionesBenchmark benchmark) {
+            bucle = benchmark.bucle();
+        }
+    }
+}
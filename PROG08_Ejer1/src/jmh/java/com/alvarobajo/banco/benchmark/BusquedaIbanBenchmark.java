@@ -0,0 +1,76 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.AlmacenCuentas;
+import com.alvarobajo.banco.controller.AlmacenMemoria;
+import com.alvarobajo.banco.models.CuentaAhorro;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Persona;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark que compara la búsqueda por IBAN recorriendo la lista de cuentas (como hacía antes {@code Banco})
+ * con la búsqueda en el índice hash de {@link AlmacenMemoria}.
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BusquedaIbanBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private int numCuentas;
+
+    private List<CuentaBancaria> lista;
+    private AlmacenCuentas almacen;
+    private String[] ibans;
+
+    @Setup
+    public void preparar() {
+        lista = new ArrayList<>(numCuentas);
+        almacen = new AlmacenMemoria();
+        ibans = new String[numCuentas];
+        Persona titular = new Persona("Ana", "García", "López", "12345678Z");
+        for (int i = 0; i < numCuentas; i++) {
+            ibans[i] = String.format("ES%010d", i);
+            CuentaBancaria cuenta = new CuentaAhorro(titular, 100, ibans[i], 1.5);
+            lista.add(cuenta);
+            almacen.insertar(cuenta);
+        }
+    }
+
+    private String ibanAleatorio() {
+        return ibans[ThreadLocalRandom.current().nextInt(ibans.length)];
+    }
+
+    @Benchmark
+    public CuentaBancaria busquedaLineal() {
+        String iban = ibanAleatorio();
+        for (CuentaBancaria cuenta : lista) {
+            if (cuenta.getIban().equalsIgnoreCase(iban)) {
+                return cuenta;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public CuentaBancaria busquedaIndice() {
+        return almacen.buscar(ibanAleatorio());
+    }
+
+    @Benchmark
+    public boolean insertarYEliminarIndice() {
+        String iban = ibanAleatorio();
+        CuentaBancaria cuenta = almacen.eliminar(iban);
+        return almacen.insertar(cuenta);
+    }
+}
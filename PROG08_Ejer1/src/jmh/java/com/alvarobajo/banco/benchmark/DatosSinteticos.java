@@ -0,0 +1,109 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.models.CuentaAhorro;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorrienteEmpresa;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.Persona;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Generador de cuentas sintéticas para los benchmarks del banco.
+ *
+ * <p>Las cuentas son siempre las mismas para el mismo número de cuentas: la cuenta {@code i} tiene el IBAN
+ * {@link #iban(int)} y su titular, el tipo y el saldo salen de una semilla fija. Hay un titular por cada dos cuentas,
+ * con el nombre {@link #nombreTitular(int)} y un DNI con su letra de control correcta. El 60 % de las cuentas son
+ * de ahorro, el 30 % corrientes personales y el 10 % corrientes de empresa.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+final class DatosSinteticos {
+
+    private static final long SEMILLA = 20_240_501L;
+    private static final String LETRAS_DNI = "TRWAGMYFPDXBNJZSQVHLCKE";
+    private static final int CUENTAS_POR_TITULAR = 2;
+
+    private DatosSinteticos() {
+    }
+
+    /**
+     * Genera las cuentas de un banco sintético.
+     *
+     * @param numCuentas Número de cuentas.
+     * @return Lista de cuentas, en el orden de sus IBAN.
+     */
+    static List<CuentaBancaria> cuentas(int numCuentas) {
+        SplittableRandom aleatorio = new SplittableRandom(SEMILLA);
+        List<CuentaBancaria> cuentas = new ArrayList<>(numCuentas);
+        Persona titular = null;
+        for (int i = 0; i < numCuentas; i++) {
+            if (i % CUENTAS_POR_TITULAR == 0) {
+                int numTitular = i / CUENTAS_POR_TITULAR;
+                titular = new Persona(nombreTitular(numTitular), "Sintético", "Prueba", dni(numTitular));
+            }
+            cuentas.add(cuenta(titular, iban(i), aleatorio));
+        }
+        return cuentas;
+    }
+
+    /**
+     * Genera una cuenta nueva con saldo 0 y un IBAN que no usa ninguna de las de {@link #cuentas(int)}.
+     *
+     * @param numero Número de la cuenta nueva, distinto para cada cuenta.
+     * @return Cuenta de ahorro.
+     */
+    static CuentaBancaria cuentaNueva(long numero) {
+        return new CuentaAhorro(new Persona("Nuevo", "Sintético", "Prueba", dni((int) (numero % 100_000_000))), 0,
+                String.format("ES99%020d", numero), 1.5);
+    }
+
+    /**
+     * Obtiene el IBAN de la cuenta {@code i}.
+     *
+     * @param i Número de la cuenta.
+     * @return IBAN de 24 caracteres.
+     */
+    static String iban(int i) {
+        return String.format("ES00%020d", i);
+    }
+
+    /**
+     * Obtiene el nombre del titular número {@code n}; cada nombre es de un único titular.
+     *
+     * @param n Número del titular.
+     * @return Nombre del titular.
+     */
+    static String nombreTitular(int n) {
+        return "Titular" + n;
+    }
+
+    /**
+     * Obtiene el número de titulares de un banco sintético.
+     *
+     * @param numCuentas Número de cuentas del banco.
+     * @return Número de titulares.
+     */
+    static int numTitulares(int numCuentas) {
+        return (numCuentas + CUENTAS_POR_TITULAR - 1) / CUENTAS_POR_TITULAR;
+    }
+
+    private static String dni(int numero) {
+        return String.format("%08d%c", numero, LETRAS_DNI.charAt(numero % LETRAS_DNI.length()));
+    }
+
+    private static CuentaBancaria cuenta(Persona titular, String iban, SplittableRandom aleatorio) {
+        // Saldos con distribución exponencial: muchas cuentas con poco dinero y pocas con mucho
+        double saldo = Math.round(-Math.log(1 - aleatorio.nextDouble()) * 2_000 * 100) / 100.0;
+        int tipo = aleatorio.nextInt(10);
+        if (tipo < 6) {
+            return new CuentaAhorro(titular, saldo, iban, 1.5);
+        }
+        if (tipo < 9) {
+            return new CuentaCorrientePersonal(titular, saldo, iban, "Entidad1,Entidad2", 3);
+        }
+        return new CuentaCorrienteEmpresa(titular, saldo, iban, "Entidad1", 8, 3_000);
+    }
+}
@@ -0,0 +1,45 @@
+package com.alvarobajo.banco.benchmark;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Punto de entrada del jar de benchmarks: ejecuta JMH guardando siempre los resultados en JSON, para poder
+ * comparar los de distintas versiones.
+ *
+ * <p>Acepta los mismos argumentos que JMH ({@code java -jar target/benchmarks.jar -h}). Si no se indican
+ * {@code -rf} ni {@code -rff}, los resultados se guardan en {@code jmh-resultados-<fecha>.json} en el directorio
+ * actual. Por ejemplo, para medir solo las búsquedas con bancos de hasta un millón de cuentas:</p>
+ * <pre>
+ *     java -jar target/benchmarks.jar BancoBenchmark.buscar -p numCuentas=1000,100000,1000000
+ * </pre>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class EjecutarBenchmarks {
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /**
+     * Ejecuta los benchmarks.
+     *
+     * @param args Argumentos de JMH.
+     * @throws IOException si JMH no puede escribir los resultados.
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> argumentos = new ArrayList<>(Arrays.asList(args));
+        if (!argumentos.contains("-rf")) {
+            argumentos.add("-rf");
+            argumentos.add("json");
+        }
+        if (!argumentos.contains("-rff")) {
+            argumentos.add("-rff");
+            argumentos.add("jmh-resultados-" + LocalDateTime.now().format(FORMATO_FECHA) + ".json");
+        }
+        org.openjdk.jmh.Main.main(argumentos.toArray(new String[0]));
+    }
+}
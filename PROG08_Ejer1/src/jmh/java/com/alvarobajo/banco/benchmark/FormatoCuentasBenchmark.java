@@ -0,0 +1,91 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.persistencia.CodecCuentas;
+import com.alvarobajo.banco.models.CuentaAhorro;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorrienteEmpresa;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.Persona;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark que compara la carga y el guardado de las cuentas con la serialización de Java (formato antiguo de
+ * {@code datoscuentasbancarias.dat}) y con el formato binario de {@link CodecCuentas}.
+ * Al preparar cada tamaño muestra también lo que ocupa el archivo en cada formato.
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+public class FormatoCuentasBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int numCuentas;
+
+    private List<CuentaBancaria> cuentas;
+    private Path directorio;
+    private Path archivoAntiguo;
+    private Path archivoBinario;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        cuentas = new ArrayList<>(numCuentas);
+        for (int i = 0; i < numCuentas; i++) {
+            Persona titular = new Persona("Nombre" + i, "Apellido" + (i % 1000), "Segundo" + (i % 777),
+                    String.format("%08dZ", i));
+            String iban = String.format("ES%010d", i);
+            switch (i % 3) {
+                case 0:
+                    cuentas.add(new CuentaAhorro(titular, i * 1.5, iban, 1.25));
+                    break;
+                case 1:
+                    cuentas.add(new CuentaCorrientePersonal(titular, i * 1.5, iban, "Entidad" + (i % 50), 3));
+                    break;
+                default:
+                    cuentas.add(new CuentaCorrienteEmpresa(titular, i * 1.5, iban, "Entidad" + (i % 50), 7.5, 5000));
+            }
+        }
+        directorio = Files.createTempDirectory("formato-cuentas");
+        archivoAntiguo = directorio.resolve("antiguo.dat");
+        archivoBinario = directorio.resolve("binario.dat");
+        guardarAntiguo();
+        guardarBinario();
+        System.out.printf("%nTamaño con %d cuentas: serialización Java %d bytes, binario %d bytes%n",
+                numCuentas, Files.size(archivoAntiguo), Files.size(archivoBinario));
+    }
+
+    @Benchmark
+    public void guardarAntiguo() throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(archivoAntiguo)))) {
+            oos.writeObject(cuentas);
+        }
+    }
+
+    @Benchmark
+    public void guardarBinario() throws IOException {
+        CodecCuentas.guardar(archivoBinario, cuentas);
+    }
+
+    @Benchmark
+    public List<CuentaBancaria> cargarAntiguo() throws IOException, ClassNotFoundException {
+        return CodecCuentas.leerFormatoAntiguo(archivoAntiguo);
+    }
+
+    @Benchmark
+    public List<CuentaBancaria> cargarBinario() throws IOException {
+        List<CuentaBancaria> leidas = new ArrayList<>(numCuentas);
+        CodecCuentas.cargar(archivoBinario, leidas::add);
+        return leidas;
+    }
+}
@@ -0,0 +1,79 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.AlmacenFragmentado;
+import com.alvarobajo.banco.controller.AsignadorIban;
+import com.alvarobajo.banco.controller.Banco;
+import com.alvarobajo.banco.controller.cuentas.OperarCuenta;
+import com.alvarobajo.banco.controller.procesos.ProgresoLote;
+import com.alvarobajo.banco.controller.simulacion.GeneradorPoblacion;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark de ingresos concurrentes a través del banco según el número de fragmentos ({@link AlmacenFragmentado}).
+ *
+ * <p>Con {@code fragmentos = 0} se usa el banco concurrente de siempre, con un solo diario. Cada ingreso busca la
+ * cuenta por IBAN y modifica su saldo, así que el cambio pasa por el diario de su fragmento. El rendimiento
+ * debería crecer con el número de fragmentos hasta el número de núcleos; se puede lanzar con distintos números de
+ * hilos ({@code -t 4}, {@code -t 16}...).</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class FragmentosBenchmark {
+
+    @Param({"100000"})
+    private int numCuentas;
+
+    @Param({"0", "1", "4", "16"})
+    private int fragmentos;
+
+    private Path directorio;
+    private Banco banco;
+    private String[] ibanes;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        directorio = Files.createTempDirectory("benchmark-fragmentos");
+        if (fragmentos == 0) {
+            banco = new Banco(directorio.resolve("datos.dat"), true);
+        } else {
+            banco = new Banco(new AlmacenFragmentado(directorio.resolve("fragmentos"), fragmentos),
+                    new AsignadorIban());
+        }
+        GeneradorPoblacion poblacion = new GeneradorPoblacion(1);
+        poblacion.poblar(banco, numCuentas, ProgresoLote.NINGUNO);
+        ibanes = new String[numCuentas];
+        for (int i = 0; i < numCuentas; i++) {
+            ibanes[i] = poblacion.iban(i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        banco.close();
+    }
+
+    @Benchmark
+    public boolean ingresar() {
+        CuentaBancaria cuenta = banco.buscarCuentaPorIBAN(ibanes[ThreadLocalRandom.current().nextInt(ibanes.length)]);
+        return OperarCuenta.ingresarCentimos(cuenta, 100);
+    }
+
+    @Benchmark
+    public CuentaBancaria buscarCuentaPorIBAN() {
+        return banco.buscarCuentaPorIBAN(ibanes[ThreadLocalRandom.current().nextInt(ibanes.length)]);
+    }
+}
@@ -0,0 +1,291 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.Banco;
+import com.alvarobajo.banco.controller.servicio.ServidorBanco;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de carga para el {@link ServidorBanco}: abre muchas conexiones a la vez y mide la latencia de cada
+ * petición.
+ *
+ * <p>Cada conexión es un hilo virtual con su propio socket, que envía peticiones HTTP/1.1 una detrás de otra sobre
+ * la misma conexión (mitad ingresos y retiros de 1 €, y el resto consultas y transferencias entre cuentas al azar).
+ * Todas las conexiones se abren antes de empezar a medir y arrancan a la vez. Al terminar se muestran las
+ * peticiones por segundo y los percentiles 50, 90, 99 y 99,9 de la latencia.</p>
+ *
+ * <p>Se ejecuta con el jar de benchmarks:</p>
+ * <pre>
+ *     java -cp target/benchmarks.jar com.alvarobajo.banco.benchmark.GeneradorCarga
+ *          [--servidor host:puerto] [--conexiones 1000] [--peticiones 100] [--cuentas 1000]
+ * </pre>
+ * <p>Sin {@code --servidor} arranca en el mismo proceso un servidor con un banco concurrente vacío en un
+ * directorio temporal.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class GeneradorCarga {
+
+    private static final String CUENTA_NUEVA = "{\"tipo\":\"AHORRO\",\"nombre\":\"Carga\",\"apellido1\":\"Prueba\","
+            + "\"apellido2\":\"\",\"dni\":\"00000000T\",\"saldo\":1000,\"tipoInteres\":1.5}";
+
+    private final String host;
+    private final int puerto;
+    private final AtomicLong errores = new AtomicLong();
+    private final AtomicLong conflictos = new AtomicLong();
+
+    private GeneradorCarga(String host, int puerto) {
+        this.host = host;
+        this.puerto = puerto;
+    }
+
+    /**
+     * Punto de entrada del generador de carga.
+     *
+     * @param args {@code --servidor host:puerto}, {@code --conexiones n}, {@code --peticiones n} (por conexión) y
+     *             {@code --cuentas n}.
+     * @throws Exception si no se puede arrancar el servidor local o preparar las cuentas.
+     */
+    public static void main(String[] args) throws Exception {
+        String servidor = null;
+        int conexiones = 1000;
+        int peticiones = 100;
+        int numCuentas = 1000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--servidor":
+                    servidor = args[i + 1];
+                    break;
+                case "--conexiones":
+                    conexiones = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--peticiones":
+                    peticiones = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--cuentas":
+                    numCuentas = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Argumento no válido: " + args[i]);
+            }
+        }
+        ServidorBanco local = null;
+        if (servidor == null) {
+            Path directorio = Files.createTempDirectory("carga-banco");
+            local = new ServidorBanco(new Banco(directorio.resolve("datos.dat"), true), new InetSocketAddress(0));
+            local.iniciar();
+            servidor = "localhost:" + local.getPuerto();
+            System.out.println("Servidor local en el puerto " + local.getPuerto() + ", datos en " + directorio);
+        }
+        int dosPuntos = servidor.lastIndexOf(':');
+        GeneradorCarga generador = new GeneradorCarga(servidor.substring(0, dosPuntos),
+                Integer.parseInt(servidor.substring(dosPuntos + 1)));
+        try {
+            String[] ibanes = generador.abrirCuentas(numCuentas);
+            generador.ejecutar(ibanes, conexiones, peticiones);
+        } finally {
+            if (local != null) {
+                local.close();
+            }
+        }
+    }
+
+    /**
+     * Abre las cuentas con las que se opera durante la prueba, por una sola conexión.
+     */
+    private String[] abrirCuentas(int numCuentas) throws IOException {
+        String[] ibanes = new String[numCuentas];
+        try (Conexion conexion = new Conexion()) {
+            for (int i = 0; i < numCuentas; i++) {
+                String respuesta = conexion.enviar("POST", "/cuentas", CUENTA_NUEVA, true);
+                if (conexion.estado != 201) {
+                    throw new IOException("No se pudo abrir la cuenta: " + respuesta);
+                }
+                int inicio = respuesta.indexOf("\"iban\":\"") + 8;
+                ibanes[i] = respuesta.substring(inicio, respuesta.indexOf('"', inicio));
+            }
+        }
+        return ibanes;
+    }
+
+    private void ejecutar(String[] ibanes, int conexiones, int peticiones) throws InterruptedException {
+        long[][] latencias = new long[conexiones][];
+        CountDownLatch conectadas = new CountDownLatch(conexiones);
+        CountDownLatch salida = new CountDownLatch(1);
+        long inicio;
+        try (ExecutorService hilos = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < conexiones; c++) {
+                int numConexion = c;
+                hilos.submit(() -> {
+                    Conexion conexion = conectar();
+                    conectadas.countDown();
+                    if (conexion == null) {
+                        return null;
+                    }
+                    try (conexion) {
+                        salida.await();
+                        latencias[numConexion] = conexion.ejecutar(ibanes, peticiones);
+                    } catch (IOException e) {
+                        errores.incrementAndGet();
+                    }
+                    return null;
+                });
+            }
+            conectadas.await();
+            System.out.println("Conexiones abiertas: " + (conexiones - errores.get()) + " de " + conexiones);
+            inicio = System.nanoTime();
+            salida.countDown();
+        }
+        mostrarResultado(latencias, System.nanoTime() - inicio);
+    }
+
+    private Conexion conectar() {
+        try {
+            return new Conexion();
+        } catch (IOException e) {
+            errores.incrementAndGet();
+            return null;
+        }
+    }
+
+    private void mostrarResultado(long[][] latencias, long nanos) {
+        int total = 0;
+        for (long[] l : latencias) {
+            total += l != null ? l.length : 0;
+        }
+        long[] todas = new long[total];
+        int n = 0;
+        for (long[] l : latencias) {
+            if (l != null) {
+                System.arraycopy(l, 0, todas, n, l.length);
+                n += l.length;
+            }
+        }
+        Arrays.sort(todas);
+        System.out.printf("Peticiones: %d en %.2f s (%.0f peticiones/s), errores: %d, rechazadas (409): %d%n",
+                total, nanos / 1e9, total / (nanos / 1e9), errores.get(), conflictos.get());
+        if (total > 0) {
+            System.out.printf("Latencia (ms): p50 %.3f  p90 %.3f  p99 %.3f  p99,9 %.3f  máx %.3f%n",
+                    percentil(todas, 0.50), percentil(todas, 0.90), percentil(todas, 0.99),
+                    percentil(todas, 0.999), todas[total - 1] / 1e6);
+        }
+    }
+
+    private static double percentil(long[] ordenadas, double p) {
+        return ordenadas[(int) Math.min(ordenadas.length - 1, Math.ceil(p * ordenadas.length) - 1)] / 1e6;
+    }
+
+    /**
+     * Conexión HTTP/1.1 persistente con el servidor, con un cliente mínimo que solo entiende respuestas con
+     * {@code Content-Length}, que son las que envía el servidor del banco.
+     */
+    private final class Conexion implements AutoCloseable {
+        private final Socket socket;
+        private final OutputStream salida;
+        private final InputStream entrada;
+        private final StringBuilder linea = new StringBuilder();
+        private int estado;
+
+        Conexion() throws IOException {
+            socket = new Socket(host, puerto);
+            socket.setTcpNoDelay(true);
+            salida = new BufferedOutputStream(socket.getOutputStream(), 1024);
+            entrada = new BufferedInputStream(socket.getInputStream(), 4096);
+        }
+
+        long[] ejecutar(String[] ibanes, int peticiones) throws IOException {
+            long[] latencias = new long[peticiones];
+            ThreadLocalRandom azar = ThreadLocalRandom.current();
+            for (int i = 0; i < peticiones; i++) {
+                String iban = ibanes[azar.nextInt(ibanes.length)];
+                int tipo = azar.nextInt(10);
+                long inicio = System.nanoTime();
+                if (tipo < 4) {
+                    enviar("POST", "/cuentas/" + iban + "/ingreso?cantidad=1", null, false);
+                } else if (tipo < 8) {
+                    enviar("POST", "/cuentas/" + iban + "/retiro?cantidad=1", null, false);
+                } else if (tipo < 9) {
+                    enviar("GET", "/cuentas/" + iban, null, false);
+                } else {
+                    enviar("POST", "/transferencias?origen=" + iban + "&destino="
+                            + ibanes[azar.nextInt(ibanes.length)] + "&cantidad=1", null, false);
+                }
+                latencias[i] = System.nanoTime() - inicio;
+                if (estado == 409) {
+                    conflictos.incrementAndGet();
+                } else if (estado >= 400) {
+                    errores.incrementAndGet();
+                }
+            }
+            return latencias;
+        }
+
+        /**
+         * Envía una petición y lee la respuesta.
+         *
+         * @param leerCuerpo true para devolver el cuerpo de la respuesta; si no, se descarta.
+         * @return Cuerpo de la respuesta, o null si no se pidió.
+         */
+        String enviar(String metodo, String ruta, String cuerpo, boolean leerCuerpo) throws IOException {
+            byte[] bytes = cuerpo == null ? new byte[0] : cuerpo.getBytes(StandardCharsets.UTF_8);
+            String cabecera = metodo + " " + ruta + " HTTP/1.1\r\nHost: " + host + "\r\nContent-Length: "
+                    + bytes.length + "\r\n\r\n";
+            salida.write(cabecera.getBytes(StandardCharsets.ISO_8859_1));
+            salida.write(bytes);
+            salida.flush();
+
+            String estadoTexto = leerLinea();
+            if (estadoTexto.length() < 12) {
+                throw new IOException("Respuesta no válida: " + estadoTexto);
+            }
+            estado = Integer.parseInt(estadoTexto.substring(9, 12));
+            int longitud = 0;
+            String cabeceraRespuesta;
+            while (!(cabeceraRespuesta = leerLinea()).isEmpty()) {
+                int dosPuntos = cabeceraRespuesta.indexOf(':');
+                if (dosPuntos > 0 && cabeceraRespuesta.substring(0, dosPuntos).equalsIgnoreCase("Content-Length")) {
+                    longitud = Integer.parseInt(cabeceraRespuesta.substring(dosPuntos + 1).trim());
+                }
+            }
+            byte[] respuesta = entrada.readNBytes(longitud);
+            if (respuesta.length < longitud) {
+                throw new IOException("Conexión cerrada por el servidor");
+            }
+            return leerCuerpo ? new String(respuesta, StandardCharsets.UTF_8) : null;
+        }
+
+        private String leerLinea() throws IOException {
+            linea.setLength(0);
+            int c;
+            while ((c = entrada.read()) != '\n') {
+                if (c < 0) {
+                    throw new IOException("Conexión cerrada por el servidor");
+                }
+                if (c != '\r') {
+                    linea.append((char) c);
+                }
+            }
+            return linea.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.cuentas.OperarCuenta;
+import com.alvarobajo.banco.controller.historial.HistorialMovimientos;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.Movimiento;
+import com.alvarobajo.banco.models.Persona;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark del coste de anotar los movimientos en el {@link HistorialMovimientos}.
+ *
+ * <p>{@code sinHistorial} hace un ingreso y un retiro sobre una cuenta sin observador y {@code conHistorial} lo
+ * mismo con el historial como observador, de modo que la diferencia es lo que añade anotar los dos movimientos
+ * (incluido pasar los antiguos al archivo de desborde). {@code ultimosMovimientos} mide la consulta de los
+ * {@code n} últimos movimientos, la mayoría leídos del archivo. El historial se crea de nuevo en cada iteración
+ * para que el archivo de desborde no crezca durante toda la prueba.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HistorialMovimientosBenchmark {
+
+    @Param({"10", "1000"})
+    private int n;
+
+    private HistorialMovimientos historial;
+    private CuentaBancaria cuentaSinHistorial;
+    private CuentaBancaria cuentaConHistorial;
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        Persona titular = new Persona("Ana", "García", "López", "12345678Z");
+        cuentaSinHistorial = new CuentaCorrientePersonal(titular, 1_000_000, "ES0000000001", "", 1);
+        cuentaConHistorial = new CuentaCorrientePersonal(titular, 1_000_000, "ES0000000002", "", 1);
+    }
+
+    @Setup(Level.Iteration)
+    public void abrirHistorial() throws IOException {
+        historial = new HistorialMovimientos(HistorialMovimientos.CAPACIDAD_POR_DEFECTO,
+                Files.createTempFile("movimientos", ".historial"));
+        cuentaConHistorial.setObservador(historial);
+        for (int i = 0; i < 2 * n; i++) {
+            OperarCuenta.ingresarCentimos(cuentaConHistorial, 100);
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void cerrar() throws IOException {
+        historial.close();
+    }
+
+    @Benchmark
+    public boolean sinHistorial() {
+        return OperarCuenta.ingresarCentimos(cuentaSinHistorial, 1_050)
+                & OperarCuenta.retirarCentimos(cuentaSinHistorial, 1_050);
+    }
+
+    @Benchmark
+    public boolean conHistorial() {
+        return OperarCuenta.ingresarCentimos(cuentaConHistorial, 1_050)
+                & OperarCuenta.retirarCentimos(cuentaConHistorial, 1_050);
+    }
+
+    @Benchmark
+    public List<Movimiento> ultimosMovimientos() {
+        return historial.ultimosMovimientos(cuentaConHistorial.getIban(), n);
+    }
+}
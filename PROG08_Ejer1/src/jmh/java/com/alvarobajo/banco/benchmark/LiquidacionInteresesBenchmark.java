@@ -0,0 +1,53 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.procesos.LiquidacionIntereses;
+import com.alvarobajo.banco.controller.procesos.ProgresoLote;
+import com.alvarobajo.banco.controller.procesos.ResultadoLote;
+import com.alvarobajo.banco.models.CuentaAhorro;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Persona;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark de la liquidación de intereses sobre todas las cuentas, en simulación y aplicando los intereses.
+ * Las cuentas no tienen observador, así que se mide el recorrido en paralelo y los cerrojos sin el diario.
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+public class LiquidacionInteresesBenchmark {
+
+    @Param({"1000000", "10000000"})
+    private int numCuentas;
+
+    private List<CuentaBancaria> cuentas;
+    private final LiquidacionIntereses liquidacion = new LiquidacionIntereses(LiquidacionIntereses.MENSUAL);
+
+    @Setup(Level.Trial)
+    public void preparar() {
+        cuentas = new ArrayList<>(numCuentas);
+        Persona titular = new Persona("Nombre", "Apellido", "Segundo", "00000000T");
+        for (int i = 0; i < numCuentas; i++) {
+            cuentas.add(new CuentaAhorro(titular, 100 + i % 10_000, String.format("ES%022d", i), 1.5));
+        }
+    }
+
+    @Benchmark
+    public ResultadoLote simulacion() {
+        return liquidacion.ejecutar(cuentas, true, ProgresoLote.NINGUNO);
+    }
+
+    @Benchmark
+    public ResultadoLote liquidacion() {
+        return liquidacion.ejecutar(cuentas, false, ProgresoLote.NINGUNO);
+    }
+}
@@ -0,0 +1,89 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.persistencia.ExportadorListado;
+import com.alvarobajo.banco.models.CuentaAhorro;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Persona;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark que compara el listado de clientes escrito como antes ({@code BufferedWriter} y concatenación de
+ * cadenas en un solo hilo) con {@link ExportadorListado}. Además del tiempo por listado, el contador
+ * {@code megabytes} da el rendimiento en MB/s. Al preparar cada tamaño se comprueba que los dos archivos son
+ * idénticos.
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+public class ListadoClientesBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int numCuentas;
+
+    private List<CuentaBancaria> cuentas;
+    private Path archivoAntiguo;
+    private Path archivoNuevo;
+    private double megabytesPorListado;
+
+    /**
+     * Contador de megabytes escritos; JMH lo divide por el tiempo medido, así que se muestra en MB/s.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Rendimiento {
+        public double megabytes;
+    }
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        cuentas = new ArrayList<>(numCuentas);
+        for (int i = 0; i < numCuentas; i++) {
+            Persona titular = new Persona("Nombre" + i, "Apellido", "Segundo", String.format("%08dZ", i));
+            cuentas.add(new CuentaAhorro(titular, i * 1.37, String.format("ES%022d", i), 1.25));
+        }
+        Path directorio = Files.createTempDirectory("listado-clientes");
+        archivoAntiguo = directorio.resolve("antiguo.txt");
+        archivoNuevo = directorio.resolve("nuevo.txt");
+        listadoAntiguo(new Rendimiento());
+        listadoParalelo(new Rendimiento());
+        if (!Arrays.equals(Files.readAllBytes(archivoAntiguo), Files.readAllBytes(archivoNuevo))) {
+            throw new IllegalStateException("El listado paralelo no coincide con el listado antiguo");
+        }
+        megabytesPorListado = Files.size(archivoNuevo) / (1024.0 * 1024.0);
+    }
+
+    @Benchmark
+    public void listadoAntiguo(Rendimiento rendimiento) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(archivoAntiguo.toFile()))) {
+            for (CuentaBancaria cuenta : cuentas) {
+                String linea = cuenta.getTitular().getNombre() + " - " + cuenta.getIban() + " - " + cuenta.getSaldo();
+                writer.write(linea);
+                writer.newLine();
+            }
+            writer.write("Número total de cuentas: " + cuentas.size());
+        }
+        rendimiento.megabytes += megabytesPorListado;
+    }
+
+    @Benchmark
+    public long listadoParalelo(Rendimiento rendimiento) throws IOException {
+        long escritas = ExportadorListado.exportar(cuentas, archivoNuevo);
+        rendimiento.megabytes += megabytesPorListado;
+        return escritas;
+    }
+}
@@ -0,0 +1,78 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.Banco;
+import com.alvarobajo.banco.controller.cuentas.OperarCuenta;
+import com.alvarobajo.banco.controller.metricas.RegistroMetricas;
+import com.alvarobajo.banco.models.CuentaAhorro;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Persona;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark del coste de las métricas de rendimiento ({@link RegistroMetricas}) en las operaciones más rápidas del
+ * banco: la búsqueda por IBAN y un ingreso seguido de un retiro.
+ *
+ * <p>Cada benchmark se ejecuta con las métricas activas y desactivadas ({@code activas}); la diferencia es lo que
+ * cuesta contar cada operación y medir la duración de una de cada 64. La búsqueda se hace en un banco concurrente
+ * con {@code numCuentas} cuentas; el ingreso y el retiro, sobre una cuenta suelta sin observador, para que el
+ * diario no oculte la diferencia.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricasBenchmark {
+
+    @Param({"true", "false"})
+    private boolean activas;
+
+    @Param({"100000"})
+    private int numCuentas;
+
+    private Banco banco;
+    private String[] ibans;
+    private CuentaBancaria cuenta;
+
+    @Setup
+    public void preparar() throws IOException {
+        RegistroMetricas.setActivas(activas);
+        Path directorio = Files.createTempDirectory("metricas-banco");
+        banco = new Banco(directorio.resolve("datos.dat"), true);
+        ibans = new String[numCuentas];
+        Persona titular = new Persona("Ana", "García", "López", "12345678Z");
+        for (int i = 0; i < numCuentas; i++) {
+            ibans[i] = banco.generarIban();
+            banco.abrirCuenta(new CuentaAhorro(titular, 1_000, ibans[i], 1.5));
+        }
+        cuenta = new CuentaAhorro(titular, 1_000_000, "ES0000000001", 1.5);
+    }
+
+    @TearDown
+    public void restaurar() {
+        RegistroMetricas.setActivas(true);
+    }
+
+    private String ibanAleatorio() {
+        return ibans[ThreadLocalRandom.current().nextInt(ibans.length)];
+    }
+
+    @Benchmark
+    public CuentaBancaria buscarCuentaPorIBAN() {
+        return banco.buscarCuentaPorIBAN(ibanAleatorio());
+    }
+
+    @Benchmark
+    public boolean ingresoYRetiro() {
+        return OperarCuenta.ingresarCentimos(cuenta, 1_050) & OperarCuenta.retirarCentimos(cuenta, 1_050);
+    }
+}
@@ -0,0 +1,72 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.AlmacenCuentas;
+import com.alvarobajo.banco.controller.AlmacenMemoria;
+import com.alvarobajo.banco.controller.cuentas.OperarCuenta;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.Persona;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark de ingresos y retiros concurrentes con el cerrojo por franjas.
+ *
+ * <p>En {@code cuentasPropias} cada hilo opera solo con sus cuentas, así que el rendimiento debería crecer
+ * con el número de hilos ({@code -t 1}, {@code -t 2}, {@code -t 4}...). En {@code cuentaCompartida} todos los
+ * hilos operan sobre la misma cuenta y sirve de referencia para el peor caso de contención.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperacionesConcurrentesBenchmark {
+
+    private static final int CUENTAS_POR_HILO = 64;
+    private static final int MAX_HILOS = 256;
+
+    private AlmacenCuentas almacen;
+    private CuentaBancaria[] cuentas;
+    private final AtomicInteger siguienteHilo = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class EstadoHilo {
+        int primeraCuenta;
+
+        @Setup
+        public void preparar(OperacionesConcurrentesBenchmark benchmark) {
+            primeraCuenta = (benchmark.siguienteHilo.getAndIncrement() % MAX_HILOS) * CUENTAS_POR_HILO;
+        }
+    }
+
+    @Setup
+    public void preparar() {
+        almacen = new AlmacenMemoria(true);
+        cuentas = new CuentaBancaria[CUENTAS_POR_HILO * MAX_HILOS];
+        Persona titular = new Persona("Ana", "García", "López", "12345678Z");
+        for (int i = 0; i < cuentas.length; i++) {
+            cuentas[i] = new CuentaCorrientePersonal(titular, 1_000_000, String.format("ES%010d", i), "", 1);
+            almacen.insertar(cuentas[i]);
+        }
+    }
+
+    @Benchmark
+    public boolean cuentasPropias(EstadoHilo hilo) {
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        CuentaBancaria cuenta = cuentas[hilo.primeraCuenta + aleatorio.nextInt(CUENTAS_POR_HILO)];
+        return aleatorio.nextBoolean() ? OperarCuenta.ingresar(cuenta, 10) : OperarCuenta.retirar(cuenta, 10);
+    }
+
+    @Benchmark
+    public boolean cuentaCompartida() {
+        CuentaBancaria cuenta = cuentas[0];
+        return ThreadLocalRandom.current().nextBoolean() ? OperarCuenta.ingresar(cuenta, 10) : OperarCuenta.retirar(cuenta, 10);
+    }
+}
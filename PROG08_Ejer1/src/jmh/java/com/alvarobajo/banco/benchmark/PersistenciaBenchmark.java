@@ -0,0 +1,67 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.Banco;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark de las operaciones del banco que recorren todas las cuentas: guardarlas y volver a cargarlas, y
+ * generar el listado de clientes.
+ *
+ * <p>{@code guardarYCargar} escribe la instantánea con {@link Banco#guardarCuentas()} y abre otro banco sobre el
+ * mismo archivo, que la carga al arrancar; es lo que ocurre al salir de la aplicación y volver a entrar.
+ * {@code generarListadoClientes} escribe el listado de texto. Las cuentas son las de {@link DatosSinteticos}.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+public class PersistenciaBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int numCuentas;
+
+    private Path archivoDatos;
+    private Path archivoListado;
+    private Banco banco;
+
+    @Setup(Level.Trial)
+    public void preparar() throws IOException {
+        Path directorio = Files.createTempDirectory("persistencia-benchmark");
+        archivoDatos = directorio.resolve("datos.dat");
+        archivoListado = directorio.resolve("listado.txt");
+        banco = new Banco(archivoDatos, false);
+        banco.abrirCuentas(DatosSinteticos.cuentas(numCuentas));
+        banco.guardarCuentas();
+    }
+
+    @TearDown(Level.Trial)
+    public void cerrar() {
+        banco.close();
+    }
+
+    @Benchmark
+    public int guardarYCargar() {
+        banco.guardarCuentas();
+        banco.close();
+        banco = new Banco(archivoDatos, false);
+        if (banco.getNumCuentas() != numCuentas) {
+            throw new IllegalStateException("Se han cargado " + banco.getNumCuentas() + " de " + numCuentas
+                    + " cuentas");
+        }
+        return banco.getNumCuentas();
+    }
+
+    @Benchmark
+    public void generarListadoClientes() {
+        banco.generarListadoClientes(archivoListado);
+    }
+}
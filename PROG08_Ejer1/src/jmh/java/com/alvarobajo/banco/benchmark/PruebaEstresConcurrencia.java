@@ -0,0 +1,133 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.Banco;
+import com.alvarobajo.banco.controller.cuentas.OperarCuenta;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.Persona;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Prueba de estrés multihilo del banco concurrente.
+ *
+ * <p>Varios hilos ingresan, retiran y transfieren cantidades enteras en un conjunto pequeño de cuentas (para forzar la
+ * contención sobre las mismas cuentas). Cada hilo lleva la cuenta del dinero que ha entrado y salido, y al
+ * final se comprueba que el saldo total del banco es el inicial más los ingresos menos los retiros realizados.
+ * Si no se conserva el saldo termina con una {@link IllegalStateException} (y código de salida distinto de 0). El
+ * banco se crea en un directorio temporal que se borra al terminar.</p>
+ *
+ * <p>No es un benchmark de JMH: se compila con el perfil de benchmarks y se ejecuta con su propio {@code main}
+ * (por defecto, dos hilos por procesador, un millón de operaciones por hilo y 16 cuentas):</p>
+ *
+ * <pre>
+ *     mvn -Pjmh package
+ *     java -cp target/benchmarks.jar com.alvarobajo.banco.benchmark.PruebaEstresConcurrencia [hilos] [operaciones]
+ *         [cuentas]
+ * </pre>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class PruebaEstresConcurrencia {
+
+    private static final double SALDO_INICIAL = 1_000;
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        int hilos = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int operacionesPorHilo = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        int numCuentas = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+        Path directorio = Files.createTempDirectory("estres-banco");
+        try (Banco banco = new Banco(directorio.resolve("datoscuentasbancarias.dat"), true)) {
+            comprobar(banco, hilos, operacionesPorHilo, numCuentas);
+        } finally {
+            borrarDirectorio(directorio);
+        }
+    }
+
+    private static void comprobar(Banco banco, int hilos, int operacionesPorHilo, int numCuentas)
+            throws InterruptedException {
+        Persona titular = new Persona("Prueba", "Estrés", "", "00000000T");
+        CuentaBancaria[] cuentas = new CuentaBancaria[numCuentas];
+        for (int i = 0; i < numCuentas; i++) {
+            cuentas[i] = new CuentaCorrientePersonal(titular, SALDO_INICIAL, String.format("ESTRES%06d", i), "", 1);
+            banco.abrirCuenta(cuentas[i]);
+        }
+        double totalInicial = SALDO_INICIAL * numCuentas;
+
+        LongAdder ingresado = new LongAdder();
+        LongAdder retirado = new LongAdder();
+        CountDownLatch salida = new CountDownLatch(1);
+        Thread[] trabajadores = new Thread[hilos];
+        for (int h = 0; h < hilos; h++) {
+            trabajadores[h] = new Thread(() -> {
+                ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                try {
+                    salida.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < operacionesPorHilo; i++) {
+                    CuentaBancaria cuenta = banco.buscarCuentaPorIBAN(cuentas[aleatorio.nextInt(numCuentas)].getIban());
+                    int cantidad = 1 + aleatorio.nextInt(100);
+                    switch (aleatorio.nextInt(3)) {
+                        case 0:
+                            if (OperarCuenta.ingresar(cuenta, cantidad)) {
+                                ingresado.add(cantidad);
+                            }
+                            break;
+                        case 1:
+                            if (OperarCuenta.retirar(cuenta, cantidad)) {
+                                retirado.add(cantidad);
+                            }
+                            break;
+                        default:
+                            // Las transferencias no cambian el total, pero cruzan cerrojos entre cuentas
+                            OperarCuenta.transferir(cuenta, cuentas[aleatorio.nextInt(numCuentas)], cantidad);
+                    }
+                }
+            });
+            trabajadores[h].start();
+        }
+
+        long inicio = System.nanoTime();
+        salida.countDown();
+        for (Thread trabajador : trabajadores) {
+            trabajador.join();
+        }
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+
+        double totalFinal = 0;
+        for (CuentaBancaria cuenta : cuentas) {
+            if (cuenta.getSaldo() < 0) {
+                throw new IllegalStateException("Saldo negativo en " + cuenta.getIban());
+            }
+            totalFinal += cuenta.getSaldo();
+        }
+        double esperado = totalInicial + ingresado.sum() - retirado.sum();
+        long operaciones = (long) hilos * operacionesPorHilo;
+        System.out.printf("Hilos: %d, operaciones: %d, cuentas: %d, %.0f op/s%n",
+                hilos, operaciones, numCuentas, operaciones / segundos);
+        System.out.printf("Saldo esperado: %.2f, saldo final: %.2f%n", esperado, totalFinal);
+        if (totalFinal != esperado) {
+            throw new IllegalStateException("No se conserva el saldo total.");
+        }
+        System.out.println("OK: el saldo total se conserva.");
+    }
+
+    private static void borrarDirectorio(Path directorio) throws IOException {
+        try (Stream<Path> rutas = Files.walk(directorio)) {
+            for (Path ruta : (Iterable<Path>) rutas.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(ruta);
+            }
+        }
+    }
+}
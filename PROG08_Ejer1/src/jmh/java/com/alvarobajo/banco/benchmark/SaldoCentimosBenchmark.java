@@ -0,0 +1,99 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.BloqueoCuentas;
+import com.alvarobajo.banco.controller.cuentas.OperarCuenta;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.Persona;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Benchmark que compara un ingreso seguido de un retiro con el saldo en céntimos ({@code long}) y con el saldo en
+ * euros ({@code double}) de las versiones anteriores.
+ *
+ * <p>{@code saldoDecimal} reproduce el código anterior de {@code OperarCuenta} sobre una cuenta con saldo
+ * {@code double} (mismo cerrojo por franjas y mismo campo {@code volatile}). {@code saldoCentimos} usa los métodos
+ * en céntimos y {@code saldoCentimosDesdeEuros} los que reciben euros, que además redondean la cantidad.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SaldoCentimosBenchmark {
+
+    private CuentaBancaria cuenta;
+    private SaldoDecimal cuentaDecimal;
+
+    /**
+     * Cuenta con el saldo en euros, como las de las versiones anteriores.
+     */
+    static final class SaldoDecimal {
+        final String iban;
+        volatile double saldo;
+
+        SaldoDecimal(String iban, double saldo) {
+            this.iban = iban;
+            this.saldo = saldo;
+        }
+    }
+
+    @Setup
+    public void preparar() {
+        Persona titular = new Persona("Ana", "García", "López", "12345678Z");
+        cuenta = new CuentaCorrientePersonal(titular, 1_000_000, "ES0000000001", "", 1);
+        cuentaDecimal = new SaldoDecimal("ES0000000002", 1_000_000);
+    }
+
+    @Benchmark
+    public boolean saldoCentimos() {
+        return OperarCuenta.ingresarCentimos(cuenta, 1_050) & OperarCuenta.retirarCentimos(cuenta, 1_050);
+    }
+
+    @Benchmark
+    public boolean saldoCentimosDesdeEuros() {
+        return OperarCuenta.ingresar(cuenta, 10.5) & OperarCuenta.retirar(cuenta, 10.5);
+    }
+
+    @Benchmark
+    public boolean saldoDecimal() {
+        return ingresarDecimal(cuentaDecimal, 10.5) & retirarDecimal(cuentaDecimal, 10.5);
+    }
+
+    private static boolean ingresarDecimal(SaldoDecimal cuenta, double cantidad) {
+        if (cantidad <= 0) {
+            return false;
+        }
+        Lock cerrojo = BloqueoCuentas.de(cuenta.iban);
+        cerrojo.lock();
+        try {
+            cuenta.saldo = cuenta.saldo + cantidad;
+            return true;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    private static boolean retirarDecimal(SaldoDecimal cuenta, double cantidad) {
+        if (cantidad <= 0) {
+            return false;
+        }
+        Lock cerrojo = BloqueoCuentas.de(cuenta.iban);
+        cerrojo.lock();
+        try {
+            if (cantidad > cuenta.saldo) {
+                return false;
+            }
+            cuenta.saldo = cuenta.saldo - cantidad;
+            return true;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.alvarobajo.banco.benchmark;
+
+import com.alvarobajo.banco.controller.AlmacenCuentas;
+import com.alvarobajo.banco.controller.AlmacenMemoria;
+import com.alvarobajo.banco.controller.cuentas.OperarCuenta;
+import com.alvarobajo.banco.controller.simulacion.GeneradorZipf;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.Persona;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark de contención de {@link OperarCuenta#transferir} con cuentas calientes.
+ *
+ * <p>Cada transferencia elige origen y destino con una distribución de Zipf de exponente {@code sesgo}, así que
+ * unas pocas cuentas participan en la mayoría de transferencias y los pares de cuentas se solapan entre hilos.
+ * Para simular miles de hilos se puede lanzar con {@code -t 1000}.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+public class TransferenciasBenchmark {
+
+    @Param({"10000"})
+    private int numCuentas;
+
+    @Param({"0.0", "0.99", "1.2"})
+    private double sesgo;
+
+    private CuentaBancaria[] cuentas;
+    private GeneradorZipf zipf;
+
+    @State(Scope.Thread)
+    public static class EstadoHilo {
+        final SplittableRandom aleatorio = new SplittableRandom();
+    }
+
+    @Setup
+    public void preparar() {
+        AlmacenCuentas almacen = new AlmacenMemoria(true);
+        cuentas = new CuentaBancaria[numCuentas];
+        Persona titular = new Persona("Ana", "García", "López", "12345678Z");
+        for (int i = 0; i < numCuentas; i++) {
+            cuentas[i] = new CuentaCorrientePersonal(titular, 1_000_000, String.format("ES%010d", i), "", 1);
+            almacen.insertar(cuentas[i]);
+        }
+        zipf = new GeneradorZipf(numCuentas, sesgo);
+    }
+
+    @Benchmark
+    public boolean transferir(EstadoHilo hilo) {
+        CuentaBancaria origen = cuentas[zipf.siguiente(hilo.aleatorio)];
+        CuentaBancaria destino = cuentas[zipf.siguiente(hilo.aleatorio)];
+        return OperarCuenta.transferir(origen, destino, 1);
+    }
+}
@@ -1,25 +1,296 @@
 package com.alvarobajo.banco;
 
+import com.alvarobajo.banco.controller.AlmacenCuentas;
+import com.alvarobajo.banco.controller.AlmacenFragmentado;
+import com.alvarobajo.banco.controller.AlmacenMapeado;
+import com.alvarobajo.banco.controller.AsignadorIban;
 import com.alvarobajo.banco.controller.Banco;
+import com.alvarobajo.banco.controller.BucleOperaciones;
+import com.alvarobajo.banco.controller.cuentas.EjecutorComandos;
+import com.alvarobajo.banco.controller.cuentas.ResultadoComandos;
+import com.alvarobajo.banco.controller.procesos.ProgresoLote;
+import com.alvarobajo.banco.controller.servicio.ServidorBanco;
+import com.alvarobajo.banco.controller.simulacion.GeneradorOperaciones;
+import com.alvarobajo.banco.controller.simulacion.GeneradorPoblacion;
 import com.alvarobajo.banco.view.Menu;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
  * Clase principal que inicia la aplicación bancaria.
  *
  * <p>Crea una instancia de la clase `Banco` y llama al método `menuPrincipal` de la clase `Menu` para
  * comenzar la interacción con el usuario.</p>
  *
+ * <p>Con el argumento {@code --mapeado [archivo]} las cuentas se guardan en un archivo proyectado en memoria
+ * ({@link AlmacenMapeado}) en lugar de cargarse todas al arrancar. Si no se indica el archivo se usa
+ * {@code datoscuentasbancarias.map} en el escritorio.</p>
+ *
+ * <p>Con el argumento {@code --fragmentos n [directorio]} las cuentas se reparten en {@code n} fragmentos, cada
+ * uno con su propio diario ({@link AlmacenFragmentado}), y el banco es concurrente. Si no se indica el directorio
+ * se usa {@code datoscuentasbancarias.fragmentos} en el escritorio. No se puede combinar con {@code --mapeado}.</p>
+ *
+ * <p>Con el argumento {@code --comandos archivo} no se muestra el menú: se ejecutan los comandos del archivo
+ * ({@link EjecutorComandos}), se guardan las cuentas y se muestra un resumen. Con {@code -} como archivo los
+ * comandos se leen de la entrada estándar. El código de salida es 0 si todos los comandos se ejecutaron, 1 si
+ * alguno falló y 2 si no se pudo abrir el banco o leer los comandos. Se puede combinar con {@code --mapeado}.</p>
+ *
+ * <p>Con el argumento {@code --servidor [puerto]} tampoco se muestra el menú: el banco se abre en modo concurrente
+ * y se atienden peticiones HTTP ({@link ServidorBanco}) hasta que se detiene la aplicación, momento en el que se
+ * guardan las cuentas. Con {@code --bucle} además, las modificaciones de las cuentas se aplican en un único hilo
+ * a través de un {@link BucleOperaciones} en lugar de con los cerrojos de las cuentas.</p>
+ *
+ * <p>Con el argumento {@code --generar numCuentas} tampoco se muestra el menú: se abren en el banco
+ * {@code numCuentas} cuentas sintéticas ({@link GeneradorPoblacion}), se guardan y termina la aplicación. La
+ * población depende solo de la semilla, que se indica con {@code --semilla s} (0 si no se indica). Con
+ * {@code --operaciones num archivo} se escribe además un archivo de comandos con {@code num} ingresos, retiros y
+ * consultas sobre esas cuentas ({@link GeneradorOperaciones}), que se puede reproducir después con
+ * {@code --comandos}. Se puede combinar con {@code --mapeado}.</p>
+ *
  * @author Álvaro Bajo Tabero
  */
 public class Main {
 
+    private static final Path ARCHIVO_MAPEADO = Paths.get(System.getProperty("user.home"), "Desktop", "datoscuentasbancarias.map");
+    private static final Path DIRECTORIO_FRAGMENTOS = Paths.get(System.getProperty("user.home"), "Desktop", "datoscuentasbancarias.fragmentos");
+    private static final double EXPONENTE_ZIPF = 0.99;
+    private static final String USO = "Uso: [--mapeado [archivo] | --fragmentos n [directorio]] [--comandos archivo|- | --servidor [puerto] [--bucle]"
+            + " | --generar numCuentas [--semilla s] [--operaciones num archivo]]";
+
     /**
      * Punto de entrada principal para la aplicación bancaria.
      *
-     * @param args Los argumentos de la línea de comandos (no se utilizan).
+     * @param args Los argumentos de la línea de comandos: {@code --mapeado [archivo]} para usar el archivo
+     *             proyectado, {@code --fragmentos n [directorio]} para repartir las cuentas en fragmentos,
+     *             {@code --comandos archivo} para ejecutar un archivo de comandos sin el menú,
+     *             {@code --servidor [puerto]} (con {@code --bucle}) para atender peticiones HTTP y
+     *             {@code --generar numCuentas} (con {@code --semilla s} y {@code --operaciones num archivo}) para
+     *             generar cuentas sintéticas.
      */
     public static void main(String[] args) {
-        Banco banco = new Banco();
-        Menu.menuPrincipal(banco);
+        Path archivoMapeado = null;
+        Path directorioFragmentos = null;
+        int numFragmentos = 0;
+        String comandos = null;
+        int puerto = -1;
+        boolean conBucle = false;
+        long numCuentas = -1;
+        long semilla = 0;
+        long numOperaciones = 0;
+        Path archivoOperaciones = null;
+        for (int i = 0; i < args.length; i++) {
+            boolean valido = true;
+            if (args[i].equals("--mapeado") && directorioFragmentos == null) {
+                archivoMapeado = i + 1 < args.length && !args[i + 1].startsWith("--") ? Paths.get(args[++i]) : ARCHIVO_MAPEADO;
+            } else if (args[i].equals("--fragmentos") && i + 1 < args.length && archivoMapeado == null) {
+                long numero = leerNumero(args[++i]);
+                numFragmentos = (int) Math.min(numero, Integer.MAX_VALUE);
+                directorioFragmentos = i + 1 < args.length && !args[i + 1].startsWith("--") ? Paths.get(args[++i]) : DIRECTORIO_FRAGMENTOS;
+                valido = numero >= 1 && numero <= AlmacenFragmentado.MAXIMO_FRAGMENTOS;
+            } else if (args[i].equals("--comandos") && i + 1 < args.length && puerto < 0 && numCuentas < 0) {
+                comandos = args[++i];
+            } else if (args[i].equals("--servidor") && comandos == null && numCuentas < 0) {
+                puerto = i + 1 < args.length && !args[i + 1].startsWith("--") ? leerPuerto(args[++i]) : ServidorBanco.PUERTO_POR_DEFECTO;
+                valido = puerto >= 0;
+            } else if (args[i].equals("--bucle")) {
+                conBucle = true;
+            } else if (args[i].equals("--generar") && i + 1 < args.length && comandos == null && puerto < 0) {
+                numCuentas = leerNumero(args[++i]);
+                valido = numCuentas > 0 && numCuentas <= Integer.MAX_VALUE;
+            } else if (args[i].equals("--semilla") && i + 1 < args.length) {
+                try {
+                    semilla = Long.parseLong(args[++i]);
+                } catch (NumberFormatException e) {
+                    valido = false;
+                }
+            } else if (args[i].equals("--operaciones") && i + 2 < args.length) {
+                numOperaciones = leerNumero(args[++i]);
+                try {
+                    archivoOperaciones = Paths.get(args[++i]);
+                } catch (InvalidPathException e) {
+                    valido = false;
+                }
+                valido &= numOperaciones > 0;
+            } else {
+                valido = false;
+            }
+            if (!valido) {
+                System.out.println("Argumento no válido: " + args[i]);
+                System.out.println(USO);
+                System.exit(2);
+            }
+        }
+        if (conBucle && puerto < 0) {
+            System.out.println("--bucle solo se puede usar con --servidor");
+            System.out.println(USO);
+            System.exit(2);
+        }
+        if (numCuentas < 0 && archivoOperaciones != null) {
+            System.out.println("--operaciones solo se puede usar con --generar");
+            System.out.println(USO);
+            System.exit(2);
+        }
+        Banco banco;
+        if (archivoMapeado != null) {
+            try {
+                banco = new Banco(new AlmacenMapeado(archivoMapeado),
+                        new AsignadorIban(AsignadorIban.archivoPara(archivoMapeado)));
+                System.out.println("Cuentas abiertas desde el archivo proyectado: " + archivoMapeado);
+            } catch (IOException e) {
+                System.out.println("Error al abrir el archivo de cuentas " + archivoMapeado + ": " + e.getMessage());
+                System.exit(2);
+                return;
+            }
+        } else if (directorioFragmentos != null) {
+            try {
+                AlmacenCuentas almacen = new AlmacenFragmentado(directorioFragmentos, numFragmentos);
+                banco = new Banco(almacen, new AsignadorIban(directorioFragmentos.resolve("cuentas.iban")));
+                System.out.println("Cuentas abiertas desde " + numFragmentos + " fragmentos en: " + directorioFragmentos);
+            } catch (IOException e) {
+                System.out.println("Error al abrir los fragmentos de " + directorioFragmentos + ": " + e.getMessage());
+                System.exit(2);
+                return;
+            }
+        } else {
+            banco = new Banco(puerto >= 0);
+        }
+        if (numCuentas > 0) {
+            System.exit(generar(banco, (int) numCuentas, semilla, numOperaciones, archivoOperaciones));
+        } else if (puerto >= 0) {
+            iniciarServidor(banco, puerto, conBucle);
+        } else if (comandos == null) {
+            Menu.menuPrincipal(banco);
+        } else {
+            System.exit(ejecutarComandos(banco, comandos));
+        }
+    }
+
+    /**
+     * Lee un número de puerto.
+     *
+     * @return El puerto, o -1 si no es un número entre 0 y 65535.
+     */
+    private static int leerPuerto(String texto) {
+        try {
+            int puerto = Integer.parseInt(texto);
+            return puerto <= 65_535 ? puerto : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Lee un número entero no negativo.
+     *
+     * @return El número, o -1 si no lo es.
+     */
+    private static long leerNumero(String texto) {
+        try {
+            long numero = Long.parseLong(texto.replace("_", ""));
+            return numero >= 0 ? numero : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Abre en el banco una población de cuentas sintéticas, guarda las cuentas y, si se pide, escribe un archivo
+     * de operaciones sobre ellas.
+     *
+     * @param banco              Banco en el que se abren las cuentas.
+     * @param numCuentas         Número de cuentas a generar.
+     * @param semilla            Semilla de la población y de las operaciones.
+     * @param numOperaciones     Número de operaciones a escribir.
+     * @param archivoOperaciones Archivo de comandos de las operaciones, o null para no escribirlo.
+     * @return Código de salida de la aplicación.
+     */
+    private static int generar(Banco banco, int numCuentas, long semilla, long numOperaciones, Path archivoOperaciones) {
+        GeneradorPoblacion poblacion = new GeneradorPoblacion(semilla);
+        long inicio = System.nanoTime();
+        long rechazadas = poblacion.poblar(banco, numCuentas, ProgresoLote.consola());
+        banco.guardarCuentas();
+        System.out.printf("Generadas %d cuentas en %d ms con la semilla %d%s%n", numCuentas - rechazadas,
+                (System.nanoTime() - inicio) / 1_000_000, semilla,
+                rechazadas > 0 ? " (" + rechazadas + " ya existían)" : "");
+        if (archivoOperaciones == null) {
+            return 0;
+        }
+        inicio = System.nanoTime();
+        try {
+            new GeneradorOperaciones(poblacion, numCuentas, EXPONENTE_ZIPF)
+                    .escribirComandos(numOperaciones, archivoOperaciones);
+        } catch (IOException e) {
+            System.out.println("Error al escribir las operaciones en " + archivoOperaciones + ": " + e.getMessage());
+            return 2;
+        }
+        System.out.printf("Escritas %d operaciones en %s en %d ms%n", numOperaciones, archivoOperaciones,
+                (System.nanoTime() - inicio) / 1_000_000);
+        return 0;
+    }
+
+    /**
+     * Arranca el servidor HTTP. El servidor sigue atendiendo peticiones después de volver de este método; al
+     * detener la aplicación se cierra el servidor y se guardan las cuentas.
+     *
+     * @param banco    Banco concurrente al que se da acceso.
+     * @param puerto   Puerto en el que escucha el servidor.
+     * @param conBucle true para aplicar las modificaciones de las cuentas con un {@link BucleOperaciones}.
+     */
+    private static void iniciarServidor(Banco banco, int puerto, boolean conBucle) {
+        BucleOperaciones bucle = conBucle ? new BucleOperaciones(banco) : null;
+        ServidorBanco servidor;
+        try {
+            servidor = new ServidorBanco(banco, new InetSocketAddress(puerto), bucle);
+        } catch (IOException e) {
+            System.out.println("Error al abrir el puerto " + puerto + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            servidor.close();
+            if (bucle != null) {
+                bucle.close();
+            }
+            banco.guardarCuentas();
+        }, "parada-servidor"));
+        servidor.iniciar();
+        System.out.println("Servidor del banco escuchando en el puerto " + servidor.getPuerto());
+    }
+
+    /**
+     * Ejecuta un archivo de comandos, guarda las cuentas y muestra el resumen.
+     *
+     * @param banco    Banco sobre el que se ejecutan los comandos.
+     * @param comandos Ruta del archivo de comandos, o {@code -} para leerlos de la entrada estándar.
+     * @return Código de salida de la aplicación.
+     */
+    private static int ejecutarComandos(Banco banco, String comandos) {
+        Writer salida = new BufferedWriter(new OutputStreamWriter(System.out, System.out.charset()), 1 << 16);
+        ResultadoComandos resultado;
+        try {
+            if (comandos.equals("-")) {
+                BufferedReader entrada = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16);
+                resultado = EjecutorComandos.ejecutar(banco, entrada, salida);
+            } else {
+                resultado = EjecutorComandos.ejecutar(banco, Paths.get(comandos), salida);
+            }
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Error al leer los comandos de " + comandos + ": " + e.getMessage());
+            banco.guardarCuentas();
+            return 2;
+        }
+        banco.guardarCuentas();
+        System.out.println(resultado);
+        return resultado.getErrores() > 0 ? 1 : 0;
     }
 }
@@ -0,0 +1,178 @@
+package com.alvarobajo.banco.controller;
+
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.ObservadorCuenta;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Interfaz AlmacenCuentas que define dónde y cómo guarda el banco sus cuentas bancarias.
+ *
+ * <p>Todas las implementaciones indexan las cuentas por su IBAN normalizado ({@link #normalizarIban(String)}),
+ * permiten buscar las cuentas de un titular y avisan a sus suscriptores de las aperturas, eliminaciones y cambios
+ * de las cuentas. Hay tres implementaciones: {@link AlmacenMemoria}, con todas las cuentas en memoria,
+ * {@link AlmacenMapeado}, con las cuentas en un archivo proyectado en memoria, y {@link AlmacenFragmentado}, que
+ * reparte las cuentas en varios almacenes en memoria con su propio diario.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public interface AlmacenCuentas extends Closeable {
+
+    /**
+     * Normaliza un IBAN para usarlo como clave del índice.
+     *
+     * @param iban IBAN tal y como lo introduce el usuario.
+     * @return IBAN en mayúsculas y sin espacios a los lados, o null si el IBAN es null.
+     */
+    static String normalizarIban(String iban) {
+        return iban == null ? null : iban.trim().toUpperCase(Locale.ROOT);
+    }
+
+    /**
+     * Inserta una cuenta en el almacén si su IBAN no está en uso.
+     *
+     * @param cuenta Cuenta a insertar.
+     * @return true si la cuenta se insertó; false, si ya existía una cuenta con el mismo IBAN.
+     */
+    boolean insertar(CuentaBancaria cuenta);
+
+    /**
+     * Inserta un lote de cuentas. Las cuentas cuyo IBAN ya está en uso no se insertan.
+     *
+     * @param cuentas Cuentas a insertar.
+     * @return Lista con las cuentas que no se insertaron porque su IBAN ya estaba en uso, vacía si se insertaron
+     * todas.
+     */
+    default List<CuentaBancaria> insertarTodas(Collection<CuentaBancaria> cuentas) {
+        List<CuentaBancaria> rechazadas = new ArrayList<>();
+        for (CuentaBancaria cuenta : cuentas) {
+            if (!insertar(cuenta)) {
+                rechazadas.add(cuenta);
+            }
+        }
+        return rechazadas;
+    }
+
+    /**
+     * Busca una cuenta por su IBAN.
+     *
+     * @param iban IBAN de la cuenta a buscar (no distingue mayúsculas de minúsculas).
+     * @return Cuenta encontrada o null si no existe.
+     */
+    CuentaBancaria buscar(String iban);
+
+    /**
+     * Busca todas las cuentas cuyo titular tiene el nombre indicado.
+     *
+     * @param nombre Nombre del titular (no distingue mayúsculas de minúsculas).
+     * @return Lista con las cuentas encontradas, vacía si no hay ninguna.
+     */
+    List<CuentaBancaria> buscarPorNombre(String nombre);
+
+    /**
+     * Busca todas las cuentas cuyo titular tiene el DNI indicado.
+     *
+     * @param dni DNI del titular (no distingue mayúsculas de minúsculas).
+     * @return Lista con las cuentas encontradas, vacía si no hay ninguna.
+     */
+    List<CuentaBancaria> buscarPorDni(String dni);
+
+    /**
+     * Indica si existe una cuenta con el IBAN indicado.
+     *
+     * @param iban IBAN a comprobar.
+     * @return true si el IBAN está en uso; false, en caso contrario.
+     */
+    boolean contiene(String iban);
+
+    /**
+     * Elimina la cuenta con el IBAN indicado.
+     *
+     * @param iban IBAN de la cuenta a eliminar.
+     * @return Cuenta eliminada o null si no existía.
+     */
+    CuentaBancaria eliminar(String iban);
+
+    /**
+     * Obtiene el número de cuentas almacenadas.
+     *
+     * @return Número de cuentas.
+     */
+    int tamanio();
+
+    /**
+     * Obtiene una vista de solo lectura de las cuentas almacenadas.
+     *
+     * @return Colección no modificable con las cuentas.
+     */
+    Collection<CuentaBancaria> valores();
+
+    /**
+     * Indica si el almacén puede usarse desde varios hilos a la vez.
+     *
+     * @return true si es concurrente; false, en caso contrario.
+     */
+    boolean isConcurrente();
+
+    /**
+     * Indica si el almacén guarda por sí mismo las cuentas en disco, sin necesidad del diario del banco.
+     *
+     * @return true si el almacén es persistente; false, si solo vive en memoria.
+     */
+    default boolean isPersistente() {
+        return false;
+    }
+
+    /**
+     * Asegura que los cambios del almacén están escritos en disco. Solo tiene efecto en almacenes persistentes.
+     *
+     * @throws IOException si no se pueden escribir los cambios.
+     */
+    default void guardar() throws IOException {
+    }
+
+    /**
+     * Suscribe un observador a los cambios de todas las cuentas del almacén.
+     *
+     * @param suscriptor Observador que recibirá los avisos.
+     */
+    void suscribir(ObservadorCuenta suscriptor);
+
+    /**
+     * Cancela la suscripción de un observador.
+     *
+     * @param suscriptor Observador que dejará de recibir avisos.
+     */
+    void cancelarSuscripcion(ObservadorCuenta suscriptor);
+
+    /**
+     * Reserva los cambios de saldo de las cuentas del almacén para un único hilo, o los vuelve a permitir desde
+     * cualquiera. Mientras están reservados, {@link com.alvarobajo.banco.controller.cuentas.OperarCuenta} rechaza
+     * los ingresos, retiros y transferencias que se hacen desde otro hilo (ver {@link BucleOperaciones}).
+     *
+     * @param hilo Único hilo que puede cambiar los saldos, o null para que puedan cambiarlos todos.
+     */
+    void reservarModificaciones(Thread hilo);
+
+    /**
+     * Indica si el hilo actual puede cambiar los saldos de las cuentas del almacén
+     * (ver {@link #reservarModificaciones(Thread)}).
+     *
+     * @return true si los cambios no están reservados o están reservados para el hilo actual.
+     */
+    boolean admiteModificaciones();
+
+    /**
+     * Libera los recursos del almacén, como archivos o hilos. El almacén no se debe usar después de cerrarlo.
+     *
+     * @throws IOException si no se pueden escribir los cambios pendientes.
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,772 @@
+package com.alvarobajo.banco.controller;
+
+import com.alvarobajo.banco.controller.persistencia.Diario;
+import com.alvarobajo.banco.controller.persistencia.Diario.TransferenciaCompartida;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.ObservadorCuenta;
+import com.alvarobajo.banco.models.Persona;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Clase que reparte las cuentas del banco en varios fragmentos independientes según el hash de su IBAN, para que
+ * los accesos de muchos hilos no pasen todos por las mismas estructuras.
+ *
+ * <p>Cada fragmento tiene su propio índice ({@link AlmacenMemoria} concurrente), su propio {@link Diario} con su
+ * instantánea, sus segmentos y su hilo de confirmación, y un hilo de mantenimiento. El hilo de mantenimiento carga
+ * el fragmento al arrancar, abre los lotes de cuentas ({@link #insertarTodas(Collection)}), compacta el diario y
+ * escribe la instantánea, así que esas tareas se hacen en paralelo en todos los fragmentos. Las operaciones sobre
+ * una sola cuenta (insertar, eliminar, modificar el saldo) no pasan por ese hilo: se hacen en el hilo que las pide,
+ * con el cerrojo de su IBAN ({@link BloqueoCuentas}). Esos cerrojos son los mismos para todos los fragmentos y para
+ * el resto de almacenes, así que fragmentar no reparte más los cerrojos; lo que se reparte son los índices, los
+ * diarios y sus hilos de confirmación, de modo que los ingresos y retiros de cuentas de distintos fragmentos no
+ * compiten por el mismo mapa ni por el mismo búfer.</p>
+ *
+ * <p>El almacén es el observador de todas las cuentas y reenvía cada cambio a su fragmento. Una transferencia
+ * entre dos cuentas del mismo fragmento se guarda en un solo registro de su diario. Una transferencia entre cuentas
+ * de distintos fragmentos se guarda en los dos diarios con el mismo número ({@link Diario#transferenciaCompartida});
+ * los números se reparten con un monitor común para que los registros queden en el mismo orden en los dos diarios.
+ * Si una caída deja la transferencia en un solo diario, al abrir el almacén se aplica también a la otra cuenta y se
+ * vuelve a registrar en el diario que la perdió, así que nunca se recupera un lado sin el otro.</p>
+ *
+ * <p>Las búsquedas por titular, el número de cuentas y los recorridos consultan todos los fragmentos y juntan los
+ * resultados. Los recorridos devuelven las cuentas fragmento a fragmento.</p>
+ *
+ * <p>Los archivos de los fragmentos ({@code fragmento-000.dat} y sus segmentos de diario) se guardan en un mismo
+ * directorio, junto con un archivo {@code fragmentos} con el número de fragmentos: un IBAN siempre va al mismo
+ * fragmento, así que el directorio no se puede volver a abrir con otro número.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public final class AlmacenFragmentado implements AlmacenCuentas, ObservadorCuenta {
+
+    /**
+     * Número máximo de fragmentos.
+     */
+    public static final int MAXIMO_FRAGMENTOS = 256;
+
+    private static final String ARCHIVO_NUM_FRAGMENTOS = "fragmentos";
+
+    private final Path directorio;
+    private final Fragmento[] fragmentos;
+    // Reparte los números de las transferencias entre fragmentos; protege "ultimaCompartida"
+    private final Object cerrojoCompartidas = new Object();
+    private long ultimaCompartida;
+    // Único hilo que puede cambiar los saldos mientras hay un bucle de operaciones abierto
+    private volatile Thread escritorReservado;
+
+    /**
+     * Cuentas de un fragmento con su diario y su hilo de mantenimiento. Está suscrito a las cuentas del fragmento
+     * para pasar sus cambios al diario.
+     */
+    private static final class Fragmento implements ObservadorCuenta {
+        final int numero;
+        final int numFragmentos;
+        final AlmacenMemoria cuentas;
+        final Diario diario;
+        final ExecutorService mantenimiento;
+        final AtomicBoolean compactando = new AtomicBoolean();
+
+        Fragmento(Path directorio, int numero, int numFragmentos, ObservadorCuenta observadorCuentas) {
+            this.numero = numero;
+            this.numFragmentos = numFragmentos;
+            String nombre = String.format("fragmento-%03d", numero);
+            cuentas = new AlmacenMemoria(true, observadorCuentas);
+            diario = new Diario(directorio.resolve(nombre + ".dat"));
+            mantenimiento = Executors.newSingleThreadExecutor(tarea -> {
+                Thread hilo = new Thread(tarea, nombre);
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+
+        /**
+         * Carga las cuentas del fragmento. Se ejecuta en el hilo de mantenimiento.
+         *
+         * @return Número de operaciones recuperadas del diario.
+         */
+        int cargar() throws IOException, ClassNotFoundException {
+            return diario.cargar(cuentas);
+        }
+
+        /**
+         * Arranca el diario y lo empieza a alimentar con los cambios del fragmento. Se ejecuta en el hilo de
+         * mantenimiento.
+         */
+        Void iniciar() throws IOException {
+            diario.iniciar();
+            cuentas.suscribir(this);
+            return null;
+        }
+
+        List<CuentaBancaria> insertarTodas(List<CuentaBancaria> nuevas) {
+            List<CuentaBancaria> rechazadas = new ArrayList<>();
+            for (CuentaBancaria cuenta : nuevas) {
+                if (!cuentas.insertar(cuenta)) {
+                    rechazadas.add(cuenta);
+                }
+            }
+            return rechazadas;
+        }
+
+        @Override
+        public void cuentaAbierta(CuentaBancaria cuenta) {
+            diario.cuentaAbierta(cuenta);
+        }
+
+        @Override
+        public void saldoModificado(CuentaBancaria cuenta, long anterior, long nuevo) {
+            diario.saldoModificado(cuenta, anterior, nuevo);
+        }
+
+        @Override
+        public void transferenciaRealizada(CuentaBancaria origen, long anteriorOrigen, long nuevoOrigen,
+                                           CuentaBancaria destino, long anteriorDestino, long nuevoDestino) {
+            // Las transferencias con una cuenta de otro fragmento ya las ha registrado el almacén en los dos diarios
+            if (indice(destino.getIban(), numFragmentos) == numero) {
+                diario.transferenciaRealizada(origen, anteriorOrigen, nuevoOrigen, destino, anteriorDestino,
+                        nuevoDestino);
+            }
+        }
+
+        @Override
+        public void cuentaEliminada(CuentaBancaria cuenta) {
+            diario.cuentaEliminada(cuenta);
+        }
+
+        @Override
+        public void titularCambiado(CuentaBancaria cuenta, Persona anterior, Persona nuevo) {
+            diario.titularCambiado(cuenta, anterior, nuevo);
+        }
+    }
+
+    /**
+     * Constructor para abrir un almacén fragmentado. Carga en paralelo las cuentas de todos los fragmentos y
+     * completa las transferencias entre fragmentos que una caída dejó en un solo diario; si el directorio no
+     * existe, lo crea vacío.
+     *
+     * @param directorio    Directorio con los archivos de los fragmentos.
+     * @param numFragmentos Número de fragmentos; debe coincidir con el del directorio si ya tiene cuentas.
+     * @throws IOException              si no se pueden leer o crear los archivos de los fragmentos, o si el
+     *                                  directorio se creó con otro número de fragmentos.
+     * @throws IllegalArgumentException si el número de fragmentos no está entre 1 y {@link #MAXIMO_FRAGMENTOS}.
+     */
+    public AlmacenFragmentado(Path directorio, int numFragmentos) throws IOException {
+        if (numFragmentos < 1 || numFragmentos > MAXIMO_FRAGMENTOS) {
+            throw new IllegalArgumentException("El número de fragmentos debe estar entre 1 y " + MAXIMO_FRAGMENTOS
+                    + ": " + numFragmentos);
+        }
+        this.directorio = directorio;
+        comprobarNumFragmentos(directorio, numFragmentos);
+        fragmentos = new Fragmento[numFragmentos];
+        for (int i = 0; i < numFragmentos; i++) {
+            fragmentos[i] = new Fragmento(directorio, i, numFragmentos, this);
+        }
+        try {
+            List<Future<Integer>> cargas = new ArrayList<>(numFragmentos);
+            for (Fragmento fragmento : fragmentos) {
+                cargas.add(fragmento.mantenimiento.submit(fragmento::cargar));
+            }
+            esperarTodas(cargas);
+            List<List<TransferenciaCompartida>> perdidas = completarTransferenciasCompartidas();
+            List<Future<Void>> inicios = new ArrayList<>(numFragmentos);
+            for (Fragmento fragmento : fragmentos) {
+                inicios.add(fragmento.mantenimiento.submit(fragmento::iniciar));
+            }
+            esperarTodas(inicios);
+            for (int i = 0; i < numFragmentos; i++) {
+                if (!perdidas.get(i).isEmpty()) {
+                    for (TransferenciaCompartida transferencia : perdidas.get(i)) {
+                        fragmentos[i].diario.transferenciaCompartida(transferencia);
+                    }
+                    fragmentos[i].diario.sincronizar();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                cerrar(fragmentos);
+            } catch (IOException cierre) {
+                e.addSuppressed(cierre);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Comprueba que el directorio se creó con el mismo número de fragmentos o, si es nuevo, anota el número.
+     */
+    private static void comprobarNumFragmentos(Path directorio, int numFragmentos) throws IOException {
+        Files.createDirectories(directorio);
+        Path archivo = directorio.resolve(ARCHIVO_NUM_FRAGMENTOS);
+        if (!Files.exists(archivo)) {
+            Files.writeString(archivo, Integer.toString(numFragmentos), StandardCharsets.UTF_8);
+            return;
+        }
+        String texto = Files.readString(archivo, StandardCharsets.UTF_8).trim();
+        if (!texto.equals(Integer.toString(numFragmentos))) {
+            throw new IOException("El directorio " + directorio + " tiene " + texto + " fragmentos, no "
+                    + numFragmentos);
+        }
+    }
+
+    /**
+     * Aplica las transferencias entre fragmentos que solo están en el diario de una de sus dos cuentas.
+     *
+     * <p>Cada diario guarda sus registros en el orden en que se numeraron las transferencias, y se recupera hasta
+     * el primer registro perdido. Si a un diario le falta una transferencia que no había compactado (su número es
+     * mayor que su horizonte), tampoco tiene nada posterior de esa cuenta, así que se le suma o se le resta el
+     * importe al saldo recuperado. Se aplican en orden de número para que cada una registre el saldo que deja.</p>
+     *
+     * @return Transferencias aplicadas a cada fragmento, con el saldo que dejan, que hay que volver a registrar en
+     * su diario.
+     */
+    private List<List<TransferenciaCompartida>> completarTransferenciasCompartidas() {
+        List<Set<Long>> registradas = new ArrayList<>(fragmentos.length);
+        long ultima = 0;
+        for (Fragmento fragmento : fragmentos) {
+            Set<Long> numeros = new HashSet<>();
+            for (TransferenciaCompartida transferencia : fragmento.diario.getTransferenciasCompartidas()) {
+                numeros.add(transferencia.getNumero());
+                ultima = Math.max(ultima, transferencia.getNumero());
+            }
+            registradas.add(numeros);
+            ultima = Math.max(ultima, fragmento.diario.getHorizonteCompartidas());
+        }
+        synchronized (cerrojoCompartidas) {
+            ultimaCompartida = ultima;
+        }
+        List<List<TransferenciaCompartida>> perdidas = new ArrayList<>(fragmentos.length);
+        for (int i = 0; i < fragmentos.length; i++) {
+            perdidas.add(new ArrayList<>());
+        }
+        for (int i = 0; i < fragmentos.length; i++) {
+            for (TransferenciaCompartida transferencia : fragmentos[i].diario.getTransferenciasCompartidas()) {
+                int origen = indice(transferencia.getIbanOrigen());
+                int otro = origen == i ? indice(transferencia.getIbanDestino()) : origen;
+                if (!registradas.get(otro).contains(transferencia.getNumero())
+                        && transferencia.getNumero() > fragmentos[otro].diario.getHorizonteCompartidas()) {
+                    perdidas.get(otro).add(transferencia);
+                }
+            }
+        }
+        List<List<TransferenciaCompartida>> aplicadas = new ArrayList<>(fragmentos.length);
+        for (int i = 0; i < fragmentos.length; i++) {
+            List<TransferenciaCompartida> pendientes = perdidas.get(i);
+            pendientes.sort(Comparator.comparingLong(TransferenciaCompartida::getNumero));
+            List<TransferenciaCompartida> completadas = new ArrayList<>(pendientes.size());
+            for (TransferenciaCompartida transferencia : pendientes) {
+                String iban = indice(transferencia.getIbanOrigen()) == i ? transferencia.getIbanOrigen()
+                        : transferencia.getIbanDestino();
+                CuentaBancaria cuenta = fragmentos[i].cuentas.buscar(iban);
+                if (cuenta == null) {
+                    // El diario perdió también la apertura de la cuenta
+                    System.out.println("No se puede completar la transferencia " + transferencia.getNumero()
+                            + ": no existe la cuenta " + iban);
+                } else {
+                    completadas.add(transferencia.aplicar(cuenta));
+                }
+            }
+            aplicadas.add(completadas);
+        }
+        return aplicadas;
+    }
+
+    /**
+     * Obtiene el directorio con los archivos de los fragmentos.
+     *
+     * @return Directorio del almacén.
+     */
+    public Path getDirectorio() {
+        return directorio;
+    }
+
+    /**
+     * Obtiene el número de fragmentos.
+     *
+     * @return Número de fragmentos.
+     */
+    public int getNumFragmentos() {
+        return fragmentos.length;
+    }
+
+    /**
+     * Obtiene el número del fragmento al que pertenece un IBAN. Se mezclan los bits del hash para que los IBAN
+     * que solo se diferencian en los últimos dígitos se repartan igual de bien.
+     */
+    private static int indice(String iban, int numFragmentos) {
+        int hash = AlmacenCuentas.normalizarIban(iban).hashCode();
+        hash ^= hash >>> 16;
+        return Math.floorMod(hash * 0x9E3779B9, numFragmentos);
+    }
+
+    private int indice(String iban) {
+        return indice(iban, fragmentos.length);
+    }
+
+    private Fragmento fragmento(String iban) {
+        return fragmentos[indice(iban)];
+    }
+
+    /**
+     * Pide al hilo de mantenimiento del fragmento que compacte su diario si se han acumulado muchas operaciones.
+     */
+    private void comprobarCompactacion(Fragmento fragmento) {
+        if (!fragmento.diario.necesitaCompactar() || !fragmento.compactando.compareAndSet(false, true)) {
+            return;
+        }
+        fragmento.mantenimiento.execute(() -> {
+            try {
+                compactar(fragmento);
+            } catch (IOException e) {
+                System.out.println("Error al compactar el diario de cuentas: " + e.getMessage());
+            } finally {
+                fragmento.compactando.set(false);
+            }
+        });
+    }
+
+    /**
+     * Compacta el diario de un fragmento. Antes de borrar sus segmentos espera a que los demás diarios tengan en
+     * disco su copia de las transferencias compartidas que se van a borrar: si no, una caída podría dejar una
+     * transferencia solo en la instantánea de este fragmento, sin nada con lo que completarla en el otro.
+     */
+    private void compactar(Fragmento fragmento) throws IOException {
+        fragmento.diario.compactar(fragmento.cuentas.valores(), () -> {
+            // Las transferencias que ya estaban en los segmentos anteriores terminan de registrarse en el otro diario
+            synchronized (cerrojoCompartidas) {
+                for (Fragmento otro : fragmentos) {
+                    if (otro != fragmento) {
+                        otro.diario.sincronizar();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Inserta una cuenta en su fragmento si su IBAN no está en uso.
+     *
+     * @param cuenta Cuenta a insertar.
+     * @return true si la cuenta se insertó; false, si ya existía una cuenta con el mismo IBAN.
+     */
+    @Override
+    public boolean insertar(CuentaBancaria cuenta) {
+        Fragmento fragmento = fragmento(cuenta.getIban());
+        boolean insertada = fragmento.cuentas.insertar(cuenta);
+        comprobarCompactacion(fragmento);
+        return insertada;
+    }
+
+    /**
+     * Inserta un lote de cuentas. Las cuentas se reparten por fragmentos y el hilo de mantenimiento de cada
+     * fragmento inserta las suyas, así que los fragmentos se llenan en paralelo.
+     *
+     * @param cuentas Cuentas a insertar.
+     * @return Lista con las cuentas que no se insertaron porque su IBAN ya estaba en uso, vacía si se insertaron
+     * todas.
+     */
+    @Override
+    public List<CuentaBancaria> insertarTodas(Collection<CuentaBancaria> cuentas) {
+        List<List<CuentaBancaria>> porFragmento = new ArrayList<>(fragmentos.length);
+        for (int i = 0; i < fragmentos.length; i++) {
+            porFragmento.add(new ArrayList<>(cuentas.size() / fragmentos.length + 1));
+        }
+        for (CuentaBancaria cuenta : cuentas) {
+            porFragmento.get(indice(cuenta.getIban())).add(cuenta);
+        }
+        List<Future<List<CuentaBancaria>>> inserciones = new ArrayList<>(fragmentos.length);
+        for (int i = 0; i < fragmentos.length; i++) {
+            Fragmento fragmento = fragmentos[i];
+            List<CuentaBancaria> nuevas = porFragmento.get(i);
+            inserciones.add(nuevas.isEmpty() ? null
+                    : fragmento.mantenimiento.submit(() -> fragmento.insertarTodas(nuevas)));
+        }
+        List<CuentaBancaria> rechazadas = new ArrayList<>();
+        for (Future<List<CuentaBancaria>> insercion : inserciones) {
+            if (insercion != null) {
+                rechazadas.addAll(esperarSinErrores(insercion));
+            }
+        }
+        for (Fragmento fragmento : fragmentos) {
+            comprobarCompactacion(fragmento);
+        }
+        return rechazadas;
+    }
+
+    /**
+     * Busca una cuenta por su IBAN en su fragmento.
+     *
+     * @param iban IBAN de la cuenta a buscar (no distingue mayúsculas de minúsculas).
+     * @return Cuenta encontrada o null si no existe.
+     */
+    @Override
+    public CuentaBancaria buscar(String iban) {
+        return iban == null ? null : fragmento(iban).cuentas.buscar(iban);
+    }
+
+    /**
+     * Busca en todos los fragmentos las cuentas cuyo titular tiene el nombre indicado.
+     *
+     * @param nombre Nombre del titular (no distingue mayúsculas de minúsculas).
+     * @return Lista con las cuentas encontradas, vacía si no hay ninguna.
+     */
+    @Override
+    public List<CuentaBancaria> buscarPorNombre(String nombre) {
+        List<CuentaBancaria> encontradas = new ArrayList<>();
+        for (Fragmento fragmento : fragmentos) {
+            encontradas.addAll(fragmento.cuentas.buscarPorNombre(nombre));
+        }
+        return encontradas;
+    }
+
+    /**
+     * Busca en todos los fragmentos las cuentas cuyo titular tiene el DNI indicado.
+     *
+     * @param dni DNI del titular (no distingue mayúsculas de minúsculas).
+     * @return Lista con las cuentas encontradas, vacía si no hay ninguna.
+     */
+    @Override
+    public List<CuentaBancaria> buscarPorDni(String dni) {
+        List<CuentaBancaria> encontradas = new ArrayList<>();
+        for (Fragmento fragmento : fragmentos) {
+            encontradas.addAll(fragmento.cuentas.buscarPorDni(dni));
+        }
+        return encontradas;
+    }
+
+    /**
+     * Indica si existe una cuenta con el IBAN indicado.
+     *
+     * @param iban IBAN a comprobar.
+     * @return true si el IBAN está en uso; false, en caso contrario.
+     */
+    @Override
+    public boolean contiene(String iban) {
+        return iban != null && fragmento(iban).cuentas.contiene(iban);
+    }
+
+    /**
+     * Elimina la cuenta con el IBAN indicado de su fragmento.
+     *
+     * @param iban IBAN de la cuenta a eliminar.
+     * @return Cuenta eliminada o null si no existía.
+     */
+    @Override
+    public CuentaBancaria eliminar(String iban) {
+        if (iban == null) {
+            return null;
+        }
+        Fragmento fragmento = fragmento(iban);
+        CuentaBancaria cuenta = fragmento.cuentas.eliminar(iban);
+        comprobarCompactacion(fragmento);
+        return cuenta;
+    }
+
+    /**
+     * Obtiene el número de cuentas de todos los fragmentos.
+     *
+     * @return Número de cuentas.
+     */
+    @Override
+    public int tamanio() {
+        int tamanio = 0;
+        for (Fragmento fragmento : fragmentos) {
+            tamanio += fragmento.cuentas.tamanio();
+        }
+        return tamanio;
+    }
+
+    /**
+     * Obtiene una vista de solo lectura de las cuentas de todos los fragmentos, uno detrás de otro.
+     *
+     * @return Colección no modificable con las cuentas.
+     */
+    @Override
+    public Collection<CuentaBancaria> valores() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<CuentaBancaria> iterator() {
+                return new Recorrido();
+            }
+
+            @Override
+            public int size() {
+                return tamanio();
+            }
+        };
+    }
+
+    /**
+     * Recorrido de las cuentas de todos los fragmentos.
+     */
+    private final class Recorrido implements Iterator<CuentaBancaria> {
+        private int siguienteFragmento;
+        private Iterator<CuentaBancaria> actual = Collections.emptyIterator();
+
+        @Override
+        public boolean hasNext() {
+            while (!actual.hasNext() && siguienteFragmento < fragmentos.length) {
+                actual = fragmentos[siguienteFragmento++].cuentas.valores().iterator();
+            }
+            return actual.hasNext();
+        }
+
+        @Override
+        public CuentaBancaria next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return actual.next();
+        }
+    }
+
+    /**
+     * El almacén fragmentado puede usarse desde varios hilos a la vez.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isConcurrente() {
+        return true;
+    }
+
+    /**
+     * El almacén guarda las cuentas con los diarios de sus fragmentos, sin necesidad del diario del banco.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isPersistente() {
+        return true;
+    }
+
+    /**
+     * Escribe una instantánea de cada fragmento y compacta su diario. Los fragmentos se guardan a la vez, cada uno
+     * en su hilo de mantenimiento.
+     *
+     * @throws IOException si no se puede guardar algún fragmento.
+     */
+    @Override
+    public void guardar() throws IOException {
+        List<Future<Void>> guardados = new ArrayList<>(fragmentos.length);
+        for (Fragmento fragmento : fragmentos) {
+            guardados.add(fragmento.mantenimiento.submit(() -> {
+                compactar(fragmento);
+                return null;
+            }));
+        }
+        esperarTodas(guardados);
+    }
+
+    /**
+     * Suscribe un observador a los cambios de las cuentas de todos los fragmentos. Los avisos de cuentas de
+     * distintos fragmentos pueden llegar a la vez desde varios hilos; una transferencia entre fragmentos llega una
+     * sola vez.
+     *
+     * @param suscriptor Observador que recibirá los avisos.
+     */
+    @Override
+    public void suscribir(ObservadorCuenta suscriptor) {
+        for (Fragmento fragmento : fragmentos) {
+            fragmento.cuentas.suscribir(suscriptor);
+        }
+    }
+
+    /**
+     * Cancela la suscripción de un observador en todos los fragmentos.
+     *
+     * @param suscriptor Observador que dejará de recibir avisos.
+     */
+    @Override
+    public void cancelarSuscripcion(ObservadorCuenta suscriptor) {
+        for (Fragmento fragmento : fragmentos) {
+            fragmento.cuentas.cancelarSuscripcion(suscriptor);
+        }
+    }
+
+    /**
+     * Reserva los cambios de saldo de las cuentas de todos los fragmentos para un único hilo, o los vuelve a
+     * permitir desde cualquiera. La reserva es del almacén, que es el observador de todas las cuentas.
+     *
+     * @param hilo Único hilo que puede cambiar los saldos, o null para que puedan cambiarlos todos.
+     */
+    @Override
+    public void reservarModificaciones(Thread hilo) {
+        escritorReservado = hilo;
+    }
+
+    /**
+     * Indica si el hilo actual puede cambiar los saldos de las cuentas.
+     *
+     * @return true si los cambios no están reservados o están reservados para el hilo actual.
+     */
+    @Override
+    public boolean admiteModificaciones() {
+        Thread hilo = escritorReservado;
+        return hilo == null || hilo == Thread.currentThread();
+    }
+
+    // Avisos de las cuentas: cada uno se reenvía al fragmento de la cuenta, que es donde se comprueba si hay que
+    // compactar
+
+    /**
+     * Reenvía el cambio de titular al fragmento de la cuenta, que actualiza sus índices.
+     *
+     * @param cuenta   Cuenta modificada.
+     * @param anterior Titular anterior.
+     * @param nuevo    Titular nuevo.
+     */
+    @Override
+    public void titularCambiado(CuentaBancaria cuenta, Persona anterior, Persona nuevo) {
+        Fragmento fragmento = fragmento(cuenta.getIban());
+        fragmento.cuentas.titularCambiado(cuenta, anterior, nuevo);
+        comprobarCompactacion(fragmento);
+    }
+
+    /**
+     * Reenvía el cambio de saldo al fragmento de la cuenta.
+     *
+     * @param cuenta   Cuenta modificada.
+     * @param anterior Saldo anterior en céntimos.
+     * @param nuevo    Saldo nuevo en céntimos.
+     */
+    @Override
+    public void saldoModificado(CuentaBancaria cuenta, long anterior, long nuevo) {
+        Fragmento fragmento = fragmento(cuenta.getIban());
+        fragmento.cuentas.saldoModificado(cuenta, anterior, nuevo);
+        comprobarCompactacion(fragmento);
+    }
+
+    /**
+     * Reenvía una transferencia a los fragmentos de sus cuentas. Si están en fragmentos distintos, antes la numera
+     * y la registra en los dos diarios. Los suscriptores la reciben una sola vez, a través del fragmento del origen.
+     * Quien hace la transferencia ya tiene los cerrojos de las dos cuentas.
+     *
+     * @param origen          Cuenta de la que sale el dinero.
+     * @param anteriorOrigen  Saldo anterior del origen en céntimos.
+     * @param nuevoOrigen     Saldo nuevo del origen en céntimos.
+     * @param destino         Cuenta a la que llega el dinero.
+     * @param anteriorDestino Saldo anterior del destino en céntimos.
+     * @param nuevoDestino    Saldo nuevo del destino en céntimos.
+     */
+    @Override
+    public void transferenciaRealizada(CuentaBancaria origen, long anteriorOrigen, long nuevoOrigen,
+                                       CuentaBancaria destino, long anteriorDestino, long nuevoDestino) {
+        Fragmento fragmentoOrigen = fragmento(origen.getIban());
+        Fragmento fragmentoDestino = fragmento(destino.getIban());
+        if (fragmentoOrigen != fragmentoDestino) {
+            synchronized (cerrojoCompartidas) {
+                long numero = ++ultimaCompartida;
+                fragmentoOrigen.diario.transferenciaCompartida(numero, origen, anteriorOrigen, nuevoOrigen, destino,
+                        nuevoDestino);
+                fragmentoDestino.diario.transferenciaCompartida(numero, origen, anteriorOrigen, nuevoOrigen, destino,
+                        nuevoDestino);
+            }
+        }
+        fragmentoOrigen.cuentas.transferenciaRealizada(origen, anteriorOrigen, nuevoOrigen, destino,
+                anteriorDestino, nuevoDestino);
+        comprobarCompactacion(fragmentoOrigen);
+        if (fragmentoDestino != fragmentoOrigen) {
+            comprobarCompactacion(fragmentoDestino);
+        }
+    }
+
+    /**
+     * Detiene los hilos de mantenimiento y cierra los diarios de los fragmentos, después de escribir las
+     * operaciones pendientes. No escribe instantáneas (ver {@link #guardar()}).
+     *
+     * @throws IOException si no se pueden escribir las operaciones pendientes de algún fragmento.
+     */
+    @Override
+    public void close() throws IOException {
+        cerrar(fragmentos);
+    }
+
+    /**
+     * Cierra los fragmentos ya creados. El constructor lo usa si falla la carga.
+     */
+    private static void cerrar(Fragmento[] fragmentos) throws IOException {
+        IOException error = null;
+        for (Fragmento fragmento : fragmentos) {
+            if (fragmento == null) {
+                continue;
+            }
+            fragmento.mantenimiento.shutdown();
+            try {
+                fragmento.mantenimiento.awaitTermination(1, TimeUnit.MINUTES);
+                fragmento.diario.close();
+            } catch (IOException e) {
+                error = error == null ? e : error;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Espera a que terminen todas las tareas de los hilos de mantenimiento.
+     *
+     * @throws IOException si alguna tarea falló al leer o escribir sus archivos.
+     */
+    private static void esperarTodas(List<? extends Future<?>> tareas) throws IOException {
+        IOException error = null;
+        for (Future<?> tarea : tareas) {
+            try {
+                esperar(tarea);
+            } catch (IOException e) {
+                error = error == null ? e : error;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static <T> T esperarSinErrores(Future<T> tarea) {
+        try {
+            return esperar(tarea);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static <T> T esperar(Future<T> tarea) throws IOException {
+        try {
+            return tarea.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrumpido esperando a un fragmento del almacén", e);
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof IOException) {
+                throw (IOException) causa;
+            }
+            if (causa instanceof RuntimeException) {
+                throw (RuntimeException) causa;
+            }
+            throw new IOException("Error en un fragmento del almacén: " + causa, causa);
+        }
+    }
+}
@@ -0,0 +1,999 @@
+package com.alvarobajo.banco.controller;
+
+import com.alvarobajo.banco.models.CuentaAhorro;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorrienteEmpresa;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.Dinero;
+import com.alvarobajo.banco.models.ObservadorCuenta;
+import com.alvarobajo.banco.models.Persona;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Clase que almacena las cuentas bancarias en un archivo proyectado en memoria ({@link FileChannel#map}).
+ *
+ * <p>El archivo es una tabla hash de direccionamiento abierto: tras una cabecera de {@value #TAMANIO_CABECERA} bytes
+ * hay una ranura de {@value #TAMANIO_RANURA} bytes por posición, y cada cuenta ocupa la ranura que le corresponde
+ * por el hash de su IBAN normalizado (o la siguiente libre, por sondeo lineal). Como la tabla ya está en el
+ * archivo, abrir el almacén solo proyecta el archivo, sin leer las cuentas: el banco arranca en milisegundos
+ * aunque tenga millones de cuentas, y el sistema operativo carga las páginas a medida que se usan.</p>
+ *
+ * <p>Las cuentas solo se convierten en objetos {@link CuentaBancaria} cuando se buscan o se recorren. El almacén
+ * es el {@link ObservadorCuenta} de esas cuentas, así que los cambios de saldo y de titular se escriben
+ * directamente en su ranura del archivo. Las cuentas convertidas se guardan con referencias débiles: mientras
+ * alguien use una cuenta, todas las búsquedas devuelven el mismo objeto, y cuando nadie la usa el recolector de
+ * basura la libera. Los cambios en otros campos (por ejemplo {@code setTipoInteres}) o directamente sobre la
+ * {@link Persona} no se detectan y no se guardan.</p>
+ *
+ * <p>Las búsquedas por nombre y DNI del titular recorren todas las ranuras, porque mantener índices secundarios
+ * obligaría a leer todo el archivo al arrancar. Cuando la tabla se llena por encima de {@value #CARGA_MAXIMA}
+ * se reconstruye en un archivo nuevo del doble de tamaño, que sustituye al anterior de forma atómica.</p>
+ *
+ * <p>El almacén puede usarse desde varios hilos: las búsquedas y los cambios de saldo se hacen con el cerrojo de
+ * lectura de la tabla y las altas, bajas y reconstrucciones con el de escritura. Las escrituras llegan al archivo
+ * en cuanto se hacen (aunque se cierre la aplicación de forma inesperada); {@link #guardar()} las fuerza además
+ * al disco.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class AlmacenMapeado implements AlmacenCuentas, ObservadorCuenta {
+
+    /**
+     * Cabecera de los archivos de cuentas proyectados ("BNCM").
+     */
+    public static final int MAGICO = 0x424E434D;
+
+    /**
+     * Versión actual del formato. En la versión 1 el saldo se guardaba en euros ({@code double}); desde la
+     * versión 2 se guarda en céntimos ({@code long}). Los archivos de la versión 1 se convierten al abrirlos.
+     */
+    public static final byte VERSION = 2;
+
+    private static final byte VERSION_SALDO_EN_EUROS = 1;
+
+    /**
+     * Número de ranuras de un archivo nuevo.
+     */
+    public static final int CAPACIDAD_INICIAL = 1024;
+
+    /**
+     * Bytes (en UTF-8) que caben en el IBAN de una ranura.
+     */
+    public static final int MAXIMO_BYTES_IBAN = 34;
+
+    /**
+     * Bytes (en UTF-8) que caben en el nombre y en cada apellido del titular de una ranura.
+     */
+    public static final int MAXIMO_BYTES_NOMBRE = 39;
+
+    /**
+     * Bytes (en UTF-8) que caben en la lista de entidades autorizadas de una ranura.
+     */
+    public static final int MAXIMO_BYTES_LISTA_ENTIDADES = 55;
+
+    private static final int TAMANIO_CABECERA = 64;
+    private static final int TAMANIO_RANURA = 256;
+    private static final double CARGA_MAXIMA = 0.7;
+    private static final int RANURAS_POR_REGION = 1 << 22;
+    private static final int CAPACIDAD_MAXIMA = 1 << 30;
+
+    // Cabecera
+    private static final int CAB_MAGICO = 0;
+    private static final int CAB_VERSION = 4;
+    private static final int CAB_CAPACIDAD = 8;
+    private static final int CAB_TAMANIO_RANURA = 12;
+    private static final int CAB_OCUPADAS = 16;
+    private static final int CAB_LAPIDAS = 20;
+
+    // Ranura
+    private static final byte LIBRE = 0;
+    private static final byte OCUPADA = 1;
+    private static final byte LAPIDA = 2;
+
+    private static final byte TIPO_AHORRO = 1;
+    private static final byte TIPO_CORRIENTE_PERSONAL = 2;
+    private static final byte TIPO_CORRIENTE_EMPRESA = 3;
+
+    private static final int RAN_ESTADO = 0;
+    private static final int RAN_TIPO = 1;
+    private static final int RAN_IBAN = 2;
+    private static final int RAN_SALDO = 40;
+    private static final int RAN_CAMPO1 = 48;
+    private static final int RAN_CAMPO2 = 56;
+    private static final int RAN_NOMBRE = 64;
+    private static final int RAN_APELLIDO1 = 104;
+    private static final int RAN_APELLIDO2 = 144;
+    private static final int RAN_DNI = 184;
+    private static final int RAN_LISTA_ENTIDADES = 200;
+
+    private static final int MAX_DNI = 15;
+    private static final int TEXTO_NULO = 0xFF;
+
+    private final Path archivo;
+    private final ReadWriteLock cerrojoTabla = new ReentrantReadWriteLock();
+    private final List<ObservadorCuenta> suscriptores = new CopyOnWriteArrayList<>();
+    // Único hilo que puede cambiar los saldos mientras hay un bucle de operaciones abierto
+    private volatile Thread escritorReservado;
+    private final ConcurrentHashMap<String, ReferenciaCuenta> materializadas = new ConcurrentHashMap<>();
+    private final ReferenceQueue<CuentaBancaria> liberadas = new ReferenceQueue<>();
+
+    private MappedByteBuffer cabecera;
+    private MappedByteBuffer[] regiones;
+    private int capacidad;
+    private int ocupadas;
+    private int lapidas;
+
+    /**
+     * Constructor para abrir un almacén proyectado. Si el archivo no existe se crea vacío.
+     *
+     * @param archivo Ruta del archivo de cuentas proyectado.
+     * @throws IOException si no se puede abrir o crear el archivo, o si no es un archivo de cuentas válido.
+     */
+    public AlmacenMapeado(Path archivo) throws IOException {
+        this.archivo = archivo;
+        if (Files.exists(archivo)) {
+            proyectar(archivo);
+            if (cabecera.get(CAB_VERSION) == VERSION_SALDO_EN_EUROS) {
+                migrarSaldos();
+                proyectar(archivo);
+            }
+        } else {
+            crear(temporal(), CAPACIDAD_INICIAL);
+            Files.move(temporal(), archivo, StandardCopyOption.ATOMIC_MOVE);
+            proyectar(archivo);
+        }
+        recontar();
+    }
+
+    /**
+     * Obtiene la ruta del archivo proyectado.
+     *
+     * @return Ruta del archivo.
+     */
+    public Path getArchivo() {
+        return archivo;
+    }
+
+    /**
+     * Indica si el almacén puede usarse desde varios hilos a la vez. El almacén proyectado siempre lo permite.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isConcurrente() {
+        return true;
+    }
+
+    /**
+     * Indica si el almacén guarda por sí mismo las cuentas en disco. El almacén proyectado siempre lo hace.
+     *
+     * @return true.
+     */
+    @Override
+    public boolean isPersistente() {
+        return true;
+    }
+
+    @Override
+    public void suscribir(ObservadorCuenta suscriptor) {
+        suscriptores.add(suscriptor);
+    }
+
+    @Override
+    public void cancelarSuscripcion(ObservadorCuenta suscriptor) {
+        suscriptores.remove(suscriptor);
+    }
+
+    /**
+     * Reserva los cambios de saldo de las cuentas para un único hilo, o los vuelve a permitir desde cualquiera.
+     *
+     * @param hilo Único hilo que puede cambiar los saldos, o null para que puedan cambiarlos todos.
+     */
+    @Override
+    public void reservarModificaciones(Thread hilo) {
+        escritorReservado = hilo;
+    }
+
+    /**
+     * Indica si el hilo actual puede cambiar los saldos de las cuentas.
+     *
+     * @return true si los cambios no están reservados o están reservados para el hilo actual.
+     */
+    @Override
+    public boolean admiteModificaciones() {
+        Thread hilo = escritorReservado;
+        return hilo == null || hilo == Thread.currentThread();
+    }
+
+    /**
+     * Inserta una cuenta en el almacén si su IBAN no está en uso.
+     *
+     * @param cuenta Cuenta a insertar.
+     * @return true si la cuenta se insertó; false, si ya existía una cuenta con el mismo IBAN.
+     * @throws IllegalArgumentException si algún texto de la cuenta no cabe en la ranura.
+     * @throws IllegalStateException    si no se puede ampliar el archivo.
+     */
+    @Override
+    public boolean insertar(CuentaBancaria cuenta) {
+        String clave = AlmacenCuentas.normalizarIban(cuenta.getIban());
+        byte[] iban = codificar(clave, MAXIMO_BYTES_IBAN);
+        Lock cerrojo = BloqueoCuentas.de(clave);
+        cerrojo.lock();
+        try {
+            cerrojoTabla.writeLock().lock();
+            try {
+                if (buscarRanura(iban) >= 0) {
+                    return false;
+                }
+                if (ocupadas + lapidas + 1 > capacidad * CARGA_MAXIMA) {
+                    reconstruir(ocupadas + 1 > capacidad * CARGA_MAXIMA / 2 ? capacidad * 2 : capacidad);
+                }
+                int ranura = ranuraLibre(iban);
+                boolean eraLapida = estado(ranura) == LAPIDA;
+                escribirCuenta(ranura, iban, cuenta);
+                if (eraLapida) {
+                    lapidas--;
+                }
+                regionDe(ranura).put(desplazamiento(ranura) + RAN_ESTADO, OCUPADA);
+                ocupadas++;
+                escribirContadores();
+            } finally {
+                cerrojoTabla.writeLock().unlock();
+            }
+            registrar(clave, cuenta);
+            for (ObservadorCuenta suscriptor : suscriptores) {
+                suscriptor.cuentaAbierta(cuenta);
+            }
+            return true;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Busca una cuenta por su IBAN y la convierte en objeto si nadie la estaba usando.
+     *
+     * @param iban IBAN de la cuenta a buscar (no distingue mayúsculas de minúsculas).
+     * @return Cuenta encontrada o null si no existe.
+     */
+    @Override
+    public CuentaBancaria buscar(String iban) {
+        if (iban == null) {
+            return null;
+        }
+        String clave = AlmacenCuentas.normalizarIban(iban);
+        CuentaBancaria cuenta = enUso(clave);
+        if (cuenta != null) {
+            return cuenta;
+        }
+        byte[] bytes = clave.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAXIMO_BYTES_IBAN) {
+            return null;
+        }
+        cerrojoTabla.readLock().lock();
+        try {
+            int ranura = buscarRanura(bytes);
+            return ranura < 0 ? null : materializar(ranura);
+        } finally {
+            cerrojoTabla.readLock().unlock();
+        }
+    }
+
+    /**
+     * Busca todas las cuentas cuyo titular tiene el nombre indicado, recorriendo todas las ranuras.
+     *
+     * @param nombre Nombre del titular (no distingue mayúsculas de minúsculas).
+     * @return Lista con las cuentas encontradas, vacía si no hay ninguna.
+     */
+    @Override
+    public List<CuentaBancaria> buscarPorNombre(String nombre) {
+        return buscarPorCampo(RAN_NOMBRE, nombre);
+    }
+
+    /**
+     * Busca todas las cuentas cuyo titular tiene el DNI indicado, recorriendo todas las ranuras.
+     *
+     * @param dni DNI del titular (no distingue mayúsculas de minúsculas).
+     * @return Lista con las cuentas encontradas, vacía si no hay ninguna.
+     */
+    @Override
+    public List<CuentaBancaria> buscarPorDni(String dni) {
+        return buscarPorCampo(RAN_DNI, dni);
+    }
+
+    @Override
+    public boolean contiene(String iban) {
+        if (iban == null) {
+            return false;
+        }
+        byte[] bytes = AlmacenCuentas.normalizarIban(iban).getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAXIMO_BYTES_IBAN) {
+            return false;
+        }
+        cerrojoTabla.readLock().lock();
+        try {
+            return buscarRanura(bytes) >= 0;
+        } finally {
+            cerrojoTabla.readLock().unlock();
+        }
+    }
+
+    /**
+     * Elimina la cuenta con el IBAN indicado, dejando una lápida en su ranura.
+     *
+     * @param iban IBAN de la cuenta a eliminar.
+     * @return Cuenta eliminada o null si no existía.
+     */
+    @Override
+    public CuentaBancaria eliminar(String iban) {
+        if (iban == null) {
+            return null;
+        }
+        String clave = AlmacenCuentas.normalizarIban(iban);
+        byte[] bytes = clave.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAXIMO_BYTES_IBAN) {
+            return null;
+        }
+        Lock cerrojo = BloqueoCuentas.de(clave);
+        cerrojo.lock();
+        try {
+            CuentaBancaria cuenta;
+            cerrojoTabla.writeLock().lock();
+            try {
+                int ranura = buscarRanura(bytes);
+                if (ranura < 0) {
+                    return null;
+                }
+                cuenta = materializar(ranura);
+                regionDe(ranura).put(desplazamiento(ranura) + RAN_ESTADO, LAPIDA);
+                ocupadas--;
+                lapidas++;
+                escribirContadores();
+            } finally {
+                cerrojoTabla.writeLock().unlock();
+            }
+            materializadas.remove(clave);
+            if (cuenta.getObservador() == this) {
+                cuenta.setObservador(null);
+            }
+            for (ObservadorCuenta suscriptor : suscriptores) {
+                suscriptor.cuentaEliminada(cuenta);
+            }
+            return cuenta;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    @Override
+    public int tamanio() {
+        cerrojoTabla.readLock().lock();
+        try {
+            return ocupadas;
+        } finally {
+            cerrojoTabla.readLock().unlock();
+        }
+    }
+
+    /**
+     * Obtiene una vista de solo lectura de las cuentas almacenadas. Las cuentas se convierten en objetos a medida
+     * que se recorren, en el orden de sus ranuras. Si se abren o eliminan cuentas durante el recorrido, puede que
+     * alguna de ellas no aparezca, pero las demás aparecen una sola vez aunque el archivo crezca entretanto.
+     *
+     * @return Colección no modificable con las cuentas.
+     */
+    @Override
+    public Collection<CuentaBancaria> valores() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<CuentaBancaria> iterator() {
+                return new Recorrido();
+            }
+
+            @Override
+            public int size() {
+                return tamanio();
+            }
+        };
+    }
+
+    /**
+     * Fuerza al disco todos los cambios hechos en el archivo proyectado.
+     */
+    @Override
+    public void guardar() {
+        cerrojoTabla.readLock().lock();
+        try {
+            forzar();
+        } finally {
+            cerrojoTabla.readLock().unlock();
+        }
+    }
+
+    /**
+     * Fuerza al disco las regiones y la cabecera proyectadas. Se llama con algún cerrojo de la tabla, o desde el
+     * constructor, que no puede usar {@link #guardar()} porque una subclase podría redefinirlo.
+     */
+    private void forzar() {
+        for (MappedByteBuffer region : regiones) {
+            region.force();
+        }
+        cabecera.force();
+    }
+
+    /**
+     * Escribe el nuevo saldo en la ranura de la cuenta y lo reenvía a los suscriptores.
+     * Quien modifica el saldo ya tiene el cerrojo de la cuenta (ver {@link com.alvarobajo.banco.controller.cuentas.OperarCuenta}).
+     *
+     * @param cuenta   Cuenta modificada.
+     * @param anterior Saldo anterior en céntimos.
+     * @param nuevo    Saldo nuevo en céntimos.
+     */
+    @Override
+    public void saldoModificado(CuentaBancaria cuenta, long anterior, long nuevo) {
+        cerrojoTabla.readLock().lock();
+        try {
+            int ranura = ranuraDe(cuenta);
+            if (ranura >= 0) {
+                regionDe(ranura).putLong(desplazamiento(ranura) + RAN_SALDO, nuevo);
+            }
+        } finally {
+            cerrojoTabla.readLock().unlock();
+        }
+        for (ObservadorCuenta suscriptor : suscriptores) {
+            suscriptor.saldoModificado(cuenta, anterior, nuevo);
+        }
+    }
+
+    /**
+     * Escribe los nuevos saldos en las ranuras de las dos cuentas de una transferencia y la reenvía a los
+     * suscriptores como un único aviso. Quien hace la transferencia ya tiene los cerrojos de las dos cuentas.
+     *
+     * @param origen          Cuenta de la que sale el dinero.
+     * @param anteriorOrigen  Saldo anterior del origen en céntimos.
+     * @param nuevoOrigen     Saldo nuevo del origen en céntimos.
+     * @param destino         Cuenta a la que llega el dinero.
+     * @param anteriorDestino Saldo anterior del destino en céntimos.
+     * @param nuevoDestino    Saldo nuevo del destino en céntimos.
+     */
+    @Override
+    public void transferenciaRealizada(CuentaBancaria origen, long anteriorOrigen, long nuevoOrigen,
+                                       CuentaBancaria destino, long anteriorDestino, long nuevoDestino) {
+        cerrojoTabla.readLock().lock();
+        try {
+            int ranura = ranuraDe(origen);
+            if (ranura >= 0) {
+                regionDe(ranura).putLong(desplazamiento(ranura) + RAN_SALDO, nuevoOrigen);
+            }
+            ranura = ranuraDe(destino);
+            if (ranura >= 0) {
+                regionDe(ranura).putLong(desplazamiento(ranura) + RAN_SALDO, nuevoDestino);
+            }
+        } finally {
+            cerrojoTabla.readLock().unlock();
+        }
+        for (ObservadorCuenta suscriptor : suscriptores) {
+            suscriptor.transferenciaRealizada(origen, anteriorOrigen, nuevoOrigen, destino, anteriorDestino,
+                    nuevoDestino);
+        }
+    }
+
+    /**
+     * Escribe el nuevo titular en la ranura de la cuenta y lo reenvía a los suscriptores.
+     *
+     * @param cuenta   Cuenta modificada.
+     * @param anterior Titular anterior.
+     * @param nuevo    Titular nuevo.
+     * @throws IllegalArgumentException si algún dato del titular no cabe en la ranura.
+     */
+    @Override
+    public void titularCambiado(CuentaBancaria cuenta, Persona anterior, Persona nuevo) {
+        Lock cerrojo = BloqueoCuentas.de(cuenta.getIban());
+        cerrojo.lock();
+        try {
+            cerrojoTabla.readLock().lock();
+            try {
+                int ranura = ranuraDe(cuenta);
+                if (ranura >= 0) {
+                    escribirTitular(regionDe(ranura), desplazamiento(ranura), nuevo);
+                }
+            } finally {
+                cerrojoTabla.readLock().unlock();
+            }
+            for (ObservadorCuenta suscriptor : suscriptores) {
+                suscriptor.titularCambiado(cuenta, anterior, nuevo);
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------- Tabla hash
+
+    private int buscarRanura(byte[] iban) {
+        int mascara = capacidad - 1;
+        for (int i = hash(iban) & mascara, n = 0; n < capacidad; i = (i + 1) & mascara, n++) {
+            byte estado = estado(i);
+            if (estado == LIBRE) {
+                return -1;
+            }
+            if (estado == OCUPADA && mismoIban(i, iban)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int ranuraLibre(byte[] iban) {
+        int mascara = capacidad - 1;
+        for (int i = hash(iban) & mascara, n = 0; n < capacidad; i = (i + 1) & mascara, n++) {
+            if (estado(i) != OCUPADA) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("El archivo de cuentas está lleno: " + archivo);
+    }
+
+    private int ranuraDe(CuentaBancaria cuenta) {
+        byte[] iban = AlmacenCuentas.normalizarIban(cuenta.getIban()).getBytes(StandardCharsets.UTF_8);
+        return iban.length > MAXIMO_BYTES_IBAN ? -1 : buscarRanura(iban);
+    }
+
+    private boolean mismoIban(int ranura, byte[] iban) {
+        MappedByteBuffer region = regionDe(ranura);
+        int base = desplazamiento(ranura) + RAN_IBAN;
+        if ((region.get(base) & 0xFF) != iban.length) {
+            return false;
+        }
+        for (int i = 0; i < iban.length; i++) {
+            if (region.get(base + 1 + i) != iban[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(byte[] iban) {
+        int h = 1;
+        for (byte b : iban) {
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private byte estado(int ranura) {
+        return regionDe(ranura).get(desplazamiento(ranura) + RAN_ESTADO);
+    }
+
+    private MappedByteBuffer regionDe(int ranura) {
+        return regiones[ranura / RANURAS_POR_REGION];
+    }
+
+    private static int desplazamiento(int ranura) {
+        return (ranura % RANURAS_POR_REGION) * TAMANIO_RANURA;
+    }
+
+    private void escribirContadores() {
+        cabecera.putInt(CAB_OCUPADAS, ocupadas);
+        cabecera.putInt(CAB_LAPIDAS, lapidas);
+    }
+
+    /**
+     * Vuelve a contar las ranuras ocupadas y las lápidas al abrir el archivo. Los contadores de la cabecera se
+     * escriben aparte de las ranuras, así que si el proceso se cae entre una escritura y otra no coinciden con
+     * ellas, y la tabla crecería antes o después de tiempo.
+     */
+    private void recontar() {
+        int ocupadasReales = 0;
+        int lapidasReales = 0;
+        for (int ranura = 0; ranura < capacidad; ranura++) {
+            byte estado = estado(ranura);
+            if (estado == OCUPADA) {
+                ocupadasReales++;
+            } else if (estado == LAPIDA) {
+                lapidasReales++;
+            }
+        }
+        if (ocupadasReales != ocupadas || lapidasReales != lapidas) {
+            ocupadas = ocupadasReales;
+            lapidas = lapidasReales;
+            escribirContadores();
+        }
+    }
+
+    /**
+     * Copia las cuentas a un archivo nuevo con la capacidad indicada, sin lápidas, y lo pone en lugar del actual.
+     * Se llama con el cerrojo de escritura de la tabla.
+     */
+    private void reconstruir(int nuevaCapacidad) {
+        if (nuevaCapacidad > CAPACIDAD_MAXIMA) {
+            throw new IllegalStateException("El archivo de cuentas no admite más de " + CAPACIDAD_MAXIMA + " ranuras");
+        }
+        try {
+            forzar();
+            MappedByteBuffer[] anteriores = regiones;
+            int capacidadAnterior = capacidad;
+            crear(temporal(), nuevaCapacidad);
+            proyectar(temporal());
+            byte[] ranura = new byte[TAMANIO_RANURA];
+            for (int i = 0; i < capacidadAnterior; i++) {
+                MappedByteBuffer origen = anteriores[i / RANURAS_POR_REGION];
+                int base = desplazamiento(i);
+                if (origen.get(base + RAN_ESTADO) == OCUPADA) {
+                    origen.get(base, ranura);
+                    byte[] iban = new byte[ranura[RAN_IBAN] & 0xFF];
+                    System.arraycopy(ranura, RAN_IBAN + 1, iban, 0, iban.length);
+                    int destino = ranuraLibre(iban);
+                    regionDe(destino).put(desplazamiento(destino), ranura);
+                    ocupadas++;
+                }
+            }
+            escribirContadores();
+            forzar();
+            Files.move(temporal(), archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudo ampliar el archivo de cuentas: " + e.getMessage(), e);
+        }
+    }
+
+    private Path temporal() {
+        return archivo.resolveSibling(archivo.getFileName() + ".tmp");
+    }
+
+    private static void crear(Path ruta, int capacidad) throws IOException {
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer cab = canal.map(FileChannel.MapMode.READ_WRITE, 0, TAMANIO_CABECERA);
+            cab.putInt(CAB_MAGICO, MAGICO);
+            cab.put(CAB_VERSION, VERSION);
+            cab.putInt(CAB_CAPACIDAD, capacidad);
+            cab.putInt(CAB_TAMANIO_RANURA, TAMANIO_RANURA);
+            cab.putInt(CAB_OCUPADAS, 0);
+            cab.putInt(CAB_LAPIDAS, 0);
+            cab.force();
+            // Al ampliar el archivo el sistema lo rellena de ceros, que es el estado de una ranura libre
+            canal.write(ByteBuffer.allocate(1), TAMANIO_CABECERA + (long) capacidad * TAMANIO_RANURA - 1);
+        }
+    }
+
+    private void proyectar(Path ruta) throws IOException {
+        try (FileChannel canal = FileChannel.open(ruta, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (canal.size() < TAMANIO_CABECERA) {
+                throw new IOException("El archivo no es un archivo de cuentas proyectado: " + ruta);
+            }
+            MappedByteBuffer cab = canal.map(FileChannel.MapMode.READ_WRITE, 0, TAMANIO_CABECERA);
+            if (cab.getInt(CAB_MAGICO) != MAGICO) {
+                throw new IOException("El archivo no es un archivo de cuentas proyectado: " + ruta);
+            }
+            byte version = cab.get(CAB_VERSION);
+            if ((version != VERSION && version != VERSION_SALDO_EN_EUROS)
+                    || cab.getInt(CAB_TAMANIO_RANURA) != TAMANIO_RANURA) {
+                throw new IOException("Versión del archivo de cuentas no soportada: " + version);
+            }
+            int cap = cab.getInt(CAB_CAPACIDAD);
+            if (cap <= 0 || Integer.bitCount(cap) != 1
+                    || canal.size() < TAMANIO_CABECERA + (long) cap * TAMANIO_RANURA) {
+                throw new IOException("El archivo de cuentas está dañado: " + ruta);
+            }
+            int numRegiones = (cap + RANURAS_POR_REGION - 1) / RANURAS_POR_REGION;
+            MappedByteBuffer[] nuevas = new MappedByteBuffer[numRegiones];
+            for (int r = 0; r < numRegiones; r++) {
+                long inicio = TAMANIO_CABECERA + (long) r * RANURAS_POR_REGION * TAMANIO_RANURA;
+                long tamanio = (long) Math.min(RANURAS_POR_REGION, cap - r * RANURAS_POR_REGION) * TAMANIO_RANURA;
+                nuevas[r] = canal.map(FileChannel.MapMode.READ_WRITE, inicio, tamanio);
+            }
+            cabecera = cab;
+            regiones = nuevas;
+            capacidad = cap;
+            ocupadas = cab.getInt(CAB_OCUPADAS);
+            lapidas = cab.getInt(CAB_LAPIDAS);
+        }
+    }
+
+    /**
+     * Convierte a céntimos los saldos de un archivo de la versión 1, que los guardaba en euros. La conversión se
+     * hace sobre una copia que luego sustituye al archivo de forma atómica, así que si se interrumpe el archivo
+     * original queda intacto y se vuelve a convertir la próxima vez.
+     */
+    private void migrarSaldos() throws IOException {
+        Files.copy(archivo, temporal(), StandardCopyOption.REPLACE_EXISTING);
+        proyectar(temporal());
+        for (int ranura = 0; ranura < capacidad; ranura++) {
+            MappedByteBuffer region = regionDe(ranura);
+            int base = desplazamiento(ranura);
+            if (region.get(base + RAN_ESTADO) == OCUPADA) {
+                region.putLong(base + RAN_SALDO, Dinero.deEuros(region.getDouble(base + RAN_SALDO)));
+            }
+        }
+        cabecera.put(CAB_VERSION, VERSION);
+        forzar();
+        Files.move(temporal(), archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ---------------------------------------------------------------- Ranuras y cuentas
+
+    private void escribirCuenta(int ranura, byte[] iban, CuentaBancaria cuenta) {
+        MappedByteBuffer region = regionDe(ranura);
+        int base = desplazamiento(ranura);
+        // Se comprueba que todo cabe antes de escribir nada, para no dejar la ranura a medias
+        byte[] listaEntidades = null;
+        if (cuenta instanceof CuentaCorrientePersonal) {
+            listaEntidades = codificar(((CuentaCorrientePersonal) cuenta).getListaEntidades(),
+                    MAXIMO_BYTES_LISTA_ENTIDADES);
+        } else if (cuenta instanceof CuentaCorrienteEmpresa) {
+            listaEntidades = codificar(((CuentaCorrienteEmpresa) cuenta).getListaEntidades(),
+                    MAXIMO_BYTES_LISTA_ENTIDADES);
+        } else if (!(cuenta instanceof CuentaAhorro)) {
+            throw new IllegalArgumentException("Tipo de cuenta desconocido: " + cuenta.getClass().getName());
+        }
+        byte[][] titular = codificarTitular(cuenta.getTitular());
+
+        escribirTexto(region, base + RAN_IBAN, iban);
+        region.putLong(base + RAN_SALDO, cuenta.getSaldoCentimos());
+        escribirTitular(region, base, titular);
+        if (cuenta instanceof CuentaAhorro) {
+            region.put(base + RAN_TIPO, TIPO_AHORRO);
+            region.putDouble(base + RAN_CAMPO1, ((CuentaAhorro) cuenta).getTipoInteres());
+        } else if (cuenta instanceof CuentaCorrientePersonal) {
+            region.put(base + RAN_TIPO, TIPO_CORRIENTE_PERSONAL);
+            region.putDouble(base + RAN_CAMPO1, ((CuentaCorrientePersonal) cuenta).getComisionMantenimiento());
+            escribirTexto(region, base + RAN_LISTA_ENTIDADES, listaEntidades);
+        } else {
+            CuentaCorrienteEmpresa empresa = (CuentaCorrienteEmpresa) cuenta;
+            region.put(base + RAN_TIPO, TIPO_CORRIENTE_EMPRESA);
+            region.putDouble(base + RAN_CAMPO1, empresa.getTipoInteresDescubierto());
+            region.putDouble(base + RAN_CAMPO2, empresa.getMaximoDescubierto());
+            escribirTexto(region, base + RAN_LISTA_ENTIDADES, listaEntidades);
+        }
+    }
+
+    private static byte[][] codificarTitular(Persona titular) {
+        return new byte[][]{
+                codificar(titular.getNombre(), MAXIMO_BYTES_NOMBRE),
+                codificar(titular.getApellido1(), MAXIMO_BYTES_NOMBRE),
+                codificar(titular.getApellido2(), MAXIMO_BYTES_NOMBRE),
+                codificar(titular.getDni(), MAX_DNI)
+        };
+    }
+
+    private static void escribirTitular(MappedByteBuffer region, int base, Persona titular) {
+        escribirTitular(region, base, codificarTitular(titular));
+    }
+
+    private static void escribirTitular(MappedByteBuffer region, int base, byte[][] titular) {
+        escribirTexto(region, base + RAN_NOMBRE, titular[0]);
+        escribirTexto(region, base + RAN_APELLIDO1, titular[1]);
+        escribirTexto(region, base + RAN_APELLIDO2, titular[2]);
+        escribirTexto(region, base + RAN_DNI, titular[3]);
+    }
+
+    /**
+     * Convierte una cuenta guardada en objeto, o devuelve el objeto que ya está en uso.
+     * Se llama con el cerrojo de la tabla (de lectura o de escritura).
+     */
+    private CuentaBancaria materializar(int ranura) {
+        MappedByteBuffer region = regionDe(ranura);
+        int base = desplazamiento(ranura);
+        String iban = leerTexto(region, base + RAN_IBAN);
+        CuentaBancaria enUso = enUso(iban);
+        if (enUso != null) {
+            return enUso;
+        }
+        long saldo = region.getLong(base + RAN_SALDO);
+        Persona titular = new Persona(leerTexto(region, base + RAN_NOMBRE), leerTexto(region, base + RAN_APELLIDO1),
+                leerTexto(region, base + RAN_APELLIDO2), leerTexto(region, base + RAN_DNI));
+        byte tipo = region.get(base + RAN_TIPO);
+        CuentaBancaria cuenta;
+        switch (tipo) {
+            case TIPO_AHORRO:
+                cuenta = new CuentaAhorro(titular, 0, iban, region.getDouble(base + RAN_CAMPO1));
+                break;
+            case TIPO_CORRIENTE_PERSONAL:
+                cuenta = new CuentaCorrientePersonal(titular, 0, iban,
+                        leerTexto(region, base + RAN_LISTA_ENTIDADES), region.getDouble(base + RAN_CAMPO1));
+                break;
+            case TIPO_CORRIENTE_EMPRESA:
+                cuenta = new CuentaCorrienteEmpresa(titular, 0, iban, leerTexto(region, base + RAN_LISTA_ENTIDADES),
+                        region.getDouble(base + RAN_CAMPO1), region.getDouble(base + RAN_CAMPO2));
+                break;
+            default:
+                throw new IllegalStateException("Tipo de cuenta desconocido en el archivo: " + tipo);
+        }
+        // Todavía no tiene observador, así que fijar el saldo no vuelve a escribirlo en la ranura
+        cuenta.setSaldoCentimos(saldo);
+        return registrar(iban, cuenta);
+    }
+
+    /**
+     * Guarda la cuenta como objeto en uso de su IBAN, salvo que otro hilo se haya adelantado, y la observa.
+     *
+     * @return La cuenta en uso para ese IBAN.
+     */
+    private CuentaBancaria registrar(String clave, CuentaBancaria cuenta) {
+        purgarLiberadas();
+        CuentaBancaria[] resultado = new CuentaBancaria[1];
+        materializadas.compute(clave, (k, referencia) -> {
+            CuentaBancaria actual = referencia == null ? null : referencia.get();
+            if (actual != null) {
+                resultado[0] = actual;
+                return referencia;
+            }
+            resultado[0] = cuenta;
+            return new ReferenciaCuenta(k, cuenta, liberadas);
+        });
+        if (resultado[0] == cuenta) {
+            cuenta.setObservador(this);
+        }
+        return resultado[0];
+    }
+
+    private CuentaBancaria enUso(String clave) {
+        ReferenciaCuenta referencia = materializadas.get(clave);
+        return referencia == null ? null : referencia.get();
+    }
+
+    private void purgarLiberadas() {
+        ReferenciaCuenta referencia;
+        while ((referencia = (ReferenciaCuenta) liberadas.poll()) != null) {
+            materializadas.remove(referencia.clave, referencia);
+        }
+    }
+
+    private List<CuentaBancaria> buscarPorCampo(int campo, String valor) {
+        List<CuentaBancaria> encontradas = new ArrayList<>();
+        if (valor == null) {
+            return encontradas;
+        }
+        String buscado = AlmacenCuentas.normalizarIban(valor);
+        cerrojoTabla.readLock().lock();
+        try {
+            for (int i = 0; i < capacidad; i++) {
+                if (estado(i) == OCUPADA) {
+                    String texto = leerTexto(regionDe(i), desplazamiento(i) + campo);
+                    if (texto != null && buscado.equals(AlmacenCuentas.normalizarIban(texto))) {
+                        encontradas.add(materializar(i));
+                    }
+                }
+            }
+        } finally {
+            cerrojoTabla.readLock().unlock();
+        }
+        return encontradas;
+    }
+
+    private static byte[] codificar(String texto, int maximo) {
+        if (texto == null) {
+            return null;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maximo) {
+            throw new IllegalArgumentException("El texto \"" + texto + "\" no cabe en el archivo de cuentas (máximo "
+                    + maximo + " bytes)");
+        }
+        return bytes;
+    }
+
+    private static void escribirTexto(MappedByteBuffer region, int posicion, byte[] bytes) {
+        if (bytes == null) {
+            region.put(posicion, (byte) TEXTO_NULO);
+        } else {
+            region.put(posicion, (byte) bytes.length);
+            region.put(posicion + 1, bytes);
+        }
+    }
+
+    private static String leerTexto(MappedByteBuffer region, int posicion) {
+        int longitud = region.get(posicion) & 0xFF;
+        if (longitud == TEXTO_NULO) {
+            return null;
+        }
+        byte[] bytes = new byte[longitud];
+        region.get(posicion + 1, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Referencia débil a una cuenta en uso que recuerda su IBAN, para quitarla del mapa cuando se libere.
+     */
+    private static final class ReferenciaCuenta extends WeakReference<CuentaBancaria> {
+        private final String clave;
+
+        ReferenciaCuenta(String clave, CuentaBancaria cuenta, ReferenceQueue<CuentaBancaria> cola) {
+            super(cuenta, cola);
+            this.clave = clave;
+        }
+    }
+
+    /**
+     * Recorrido de las ranuras ocupadas que convierte cada cuenta en objeto al llegar a ella.
+     *
+     * <p>Recorre las ranuras del archivo proyectado al empezar. Si el archivo se reconstruye durante el recorrido,
+     * las cuentas cambian de ranura, así que sigue por la proyección anterior, que ya no cambia, y busca cada
+     * cuenta por su IBAN en la tabla actual. No se guarda el cerrojo de la tabla entre una cuenta y otra: quien
+     * recorre puede abrir o eliminar cuentas, o dejar el recorrido a medias.</p>
+     */
+    private final class Recorrido implements Iterator<CuentaBancaria> {
+        private final MappedByteBuffer[] regionesRecorridas;
+        private final int capacidadRecorrida;
+        private int siguiente = -1;
+        private CuentaBancaria pendiente;
+
+        Recorrido() {
+            cerrojoTabla.readLock().lock();
+            try {
+                regionesRecorridas = regiones;
+                capacidadRecorrida = capacidad;
+            } finally {
+                cerrojoTabla.readLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pendiente != null) {
+                return true;
+            }
+            cerrojoTabla.readLock().lock();
+            try {
+                while (++siguiente < capacidadRecorrida) {
+                    int ranura = regionesRecorridas == regiones ? siguiente : ranuraActual(siguiente);
+                    if (ranura >= 0 && estado(ranura) == OCUPADA) {
+                        pendiente = materializar(ranura);
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                cerrojoTabla.readLock().unlock();
+            }
+        }
+
+        @Override
+        public CuentaBancaria next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            CuentaBancaria cuenta = pendiente;
+            pendiente = null;
+            return cuenta;
+        }
+
+        /**
+         * Busca en la tabla actual la cuenta de una ranura de la proyección anterior a la reconstrucción.
+         *
+         * @return Ranura actual de la cuenta, o -1 si la ranura anterior no estaba ocupada o la cuenta ya no existe.
+         */
+        private int ranuraActual(int ranuraAnterior) {
+            MappedByteBuffer region = regionesRecorridas[ranuraAnterior / RANURAS_POR_REGION];
+            int base = desplazamiento(ranuraAnterior);
+            if (region.get(base + RAN_ESTADO) != OCUPADA) {
+                return -1;
+            }
+            byte[] iban = new byte[region.get(base + RAN_IBAN) & 0xFF];
+            region.get(base + RAN_IBAN + 1, iban);
+            return buscarRanura(iban);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.alvarobajo.banco.controller;
+
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.ObservadorCuenta;
+import com.alvarobajo.banco.models.Persona;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Clase que almacena en memoria las cuentas bancarias del banco indexadas por su IBAN.
+ *
+ * <p>Las cuentas se guardan en una tabla hash cuya clave es el IBAN normalizado (en mayúsculas y sin espacios
+ * a los lados), de modo que buscar, insertar y eliminar una cuenta cuesta O(1) en lugar de recorrer todas las
+ * cuentas del banco. Se mantiene el orden de inserción para que los listados salgan en el mismo orden que antes.</p>
+ *
+ * <p>Además mantiene dos índices secundarios, por nombre del titular y por DNI, que devuelven todas las cuentas
+ * de un cliente sin recorrer el banco. El almacén se registra como {@link ObservadorCuenta} de cada cuenta
+ * insertada, así que los índices se actualizan al cambiar el titular con {@link CuentaBancaria#setTitular}.
+ * Los cambios hechos directamente sobre la {@link Persona} (por ejemplo {@code setNombre}) no se detectan.</p>
+ *
+ * <p>En modo concurrente los índices usan {@link ConcurrentHashMap} y pueden usarse desde varios hilos a la vez;
+ * a cambio, los listados ya no siguen el orden de inserción. Las inserciones, eliminaciones y cambios de titular
+ * de una cuenta se hacen con el cerrojo de su IBAN ({@link BloqueoCuentas}) para que los índices secundarios
+ * no queden desfasados respecto al índice por IBAN.</p>
+ *
+ * <p>Otros componentes (por ejemplo el diario de operaciones) pueden {@link #suscribir suscribirse} al almacén
+ * para recibir las aperturas, eliminaciones y cambios de saldo o de titular de todas sus cuentas. Los avisos se
+ * envían con el cerrojo de la cuenta tomado, así que para una misma cuenta llegan en el orden en que ocurren.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class AlmacenMemoria implements AlmacenCuentas, ObservadorCuenta {
+
+    private final boolean concurrente;
+    private final Map<String, CuentaBancaria> porIban;
+    private final Map<String, Set<CuentaBancaria>> porNombre;
+    private final Map<String, Set<CuentaBancaria>> porDni;
+    private final List<ObservadorCuenta> suscriptores = new CopyOnWriteArrayList<>();
+    // Observador que se asigna a las cuentas insertadas: el propio almacén, salvo en los fragmentos de un
+    // AlmacenFragmentado
+    private final ObservadorCuenta observadorCuentas;
+    // Único hilo que puede cambiar los saldos mientras hay un bucle de operaciones abierto
+    private volatile Thread escritorReservado;
+
+    /**
+     * Constructor para un almacén de un solo hilo que mantiene el orden de inserción.
+     */
+    public AlmacenMemoria() {
+        this(false);
+    }
+
+    /**
+     * Constructor para inicializar un almacén de cuentas.
+     *
+     * @param concurrente true para poder usarlo desde varios hilos a la vez; false para un almacén de un solo hilo.
+     */
+    public AlmacenMemoria(boolean concurrente) {
+        this(concurrente, null);
+    }
+
+    /**
+     * Constructor para un almacén cuyas cuentas avisan de sus cambios a otro observador, que debe reenviárselos al
+     * almacén (ver {@link AlmacenFragmentado}).
+     *
+     * @param concurrente       true para poder usarlo desde varios hilos a la vez.
+     * @param observadorCuentas Observador que se asigna a las cuentas insertadas, o null para el propio almacén.
+     */
+    AlmacenMemoria(boolean concurrente, ObservadorCuenta observadorCuentas) {
+        this.concurrente = concurrente;
+        this.porIban = nuevoMapa();
+        this.porNombre = nuevoMapa();
+        this.porDni = nuevoMapa();
+        this.observadorCuentas = observadorCuentas != null ? observadorCuentas : this;
+    }
+
+    /**
+     * Indica si el almacén puede usarse desde varios hilos a la vez.
+     *
+     * @return true si es concurrente; false, en caso contrario.
+     */
+    @Override
+    public boolean isConcurrente() {
+        return concurrente;
+    }
+
+    /**
+     * Suscribe un observador a los cambios de todas las cuentas del almacén.
+     *
+     * @param suscriptor Observador que recibirá los avisos.
+     */
+    @Override
+    public void suscribir(ObservadorCuenta suscriptor) {
+        suscriptores.add(suscriptor);
+    }
+
+    /**
+     * Cancela la suscripción de un observador.
+     *
+     * @param suscriptor Observador que dejará de recibir avisos.
+     */
+    @Override
+    public void cancelarSuscripcion(ObservadorCuenta suscriptor) {
+        suscriptores.remove(suscriptor);
+    }
+
+    /**
+     * Reserva los cambios de saldo de las cuentas para un único hilo, o los vuelve a permitir desde cualquiera.
+     *
+     * @param hilo Único hilo que puede cambiar los saldos, o null para que puedan cambiarlos todos.
+     */
+    @Override
+    public void reservarModificaciones(Thread hilo) {
+        escritorReservado = hilo;
+    }
+
+    /**
+     * Indica si el hilo actual puede cambiar los saldos de las cuentas.
+     *
+     * @return true si los cambios no están reservados o están reservados para el hilo actual.
+     */
+    @Override
+    public boolean admiteModificaciones() {
+        Thread hilo = escritorReservado;
+        return hilo == null || hilo == Thread.currentThread();
+    }
+
+    /**
+     * Normaliza un texto (nombre o DNI) para usarlo como clave de un índice.
+     *
+     * @param texto Texto a normalizar.
+     * @return Texto en mayúsculas y sin espacios a los lados, o null si el texto es null.
+     */
+    private static String normalizarClave(String texto) {
+        return AlmacenCuentas.normalizarIban(texto);
+    }
+
+    /**
+     * Inserta una cuenta en el almacén si su IBAN no está en uso.
+     *
+     * @param cuenta Cuenta a insertar.
+     * @return true si la cuenta se insertó; false, si ya existía una cuenta con el mismo IBAN.
+     */
+    @Override
+    public boolean insertar(CuentaBancaria cuenta) {
+        Lock cerrojo = BloqueoCuentas.de(cuenta.getIban());
+        cerrojo.lock();
+        try {
+            if (porIban.putIfAbsent(AlmacenCuentas.normalizarIban(cuenta.getIban()), cuenta) != null) {
+                return false;
+            }
+            indexarTitular(cuenta, cuenta.getTitular());
+            cuenta.setObservador(observadorCuentas);
+            for (ObservadorCuenta suscriptor : suscriptores) {
+                suscriptor.cuentaAbierta(cuenta);
+            }
+            return true;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Busca una cuenta por su IBAN.
+     *
+     * @param iban IBAN de la cuenta a buscar (no distingue mayúsculas de minúsculas).
+     * @return Cuenta encontrada o null si no existe.
+     */
+    @Override
+    public CuentaBancaria buscar(String iban) {
+        return iban == null ? null : porIban.get(AlmacenCuentas.normalizarIban(iban));
+    }
+
+    /**
+     * Busca todas las cuentas cuyo titular tiene el nombre indicado.
+     *
+     * @param nombre Nombre del titular (no distingue mayúsculas de minúsculas).
+     * @return Lista con las cuentas encontradas, vacía si no hay ninguna.
+     */
+    @Override
+    public List<CuentaBancaria> buscarPorNombre(String nombre) {
+        return copiar(porNombre.get(normalizarClave(nombre)));
+    }
+
+    /**
+     * Busca todas las cuentas cuyo titular tiene el DNI indicado.
+     *
+     * @param dni DNI del titular (no distingue mayúsculas de minúsculas).
+     * @return Lista con las cuentas encontradas, vacía si no hay ninguna.
+     */
+    @Override
+    public List<CuentaBancaria> buscarPorDni(String dni) {
+        return copiar(porDni.get(normalizarClave(dni)));
+    }
+
+    /**
+     * Indica si existe una cuenta con el IBAN indicado.
+     *
+     * @param iban IBAN a comprobar.
+     * @return true si el IBAN está en uso; false, en caso contrario.
+     */
+    @Override
+    public boolean contiene(String iban) {
+        return iban != null && porIban.containsKey(AlmacenCuentas.normalizarIban(iban));
+    }
+
+    /**
+     * Elimina la cuenta con el IBAN indicado.
+     *
+     * @param iban IBAN de la cuenta a eliminar.
+     * @return Cuenta eliminada o null si no existía.
+     */
+    @Override
+    public CuentaBancaria eliminar(String iban) {
+        if (iban == null) {
+            return null;
+        }
+        Lock cerrojo = BloqueoCuentas.de(iban);
+        cerrojo.lock();
+        try {
+            CuentaBancaria cuenta = porIban.remove(AlmacenCuentas.normalizarIban(iban));
+            if (cuenta != null) {
+                desindexarTitular(cuenta, cuenta.getTitular());
+                if (cuenta.getObservador() == observadorCuentas) {
+                    cuenta.setObservador(null);
+                }
+                for (ObservadorCuenta suscriptor : suscriptores) {
+                    suscriptor.cuentaEliminada(cuenta);
+                }
+            }
+            return cuenta;
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Obtiene el número de cuentas almacenadas.
+     *
+     * @return Número de cuentas.
+     */
+    @Override
+    public int tamanio() {
+        return porIban.size();
+    }
+
+    /**
+     * Obtiene una vista de solo lectura de las cuentas almacenadas, en orden de inserción si el almacén
+     * no es concurrente.
+     *
+     * @return Colección no modificable con las cuentas.
+     */
+    @Override
+    public Collection<CuentaBancaria> valores() {
+        return Collections.unmodifiableCollection(porIban.values());
+    }
+
+    /**
+     * Actualiza los índices secundarios cuando cambia el titular de una cuenta almacenada.
+     *
+     * @param cuenta   Cuenta modificada.
+     * @param anterior Titular anterior.
+     * @param nuevo    Titular nuevo.
+     */
+    @Override
+    public void titularCambiado(CuentaBancaria cuenta, Persona anterior, Persona nuevo) {
+        Lock cerrojo = BloqueoCuentas.de(cuenta.getIban());
+        cerrojo.lock();
+        try {
+            desindexarTitular(cuenta, anterior);
+            indexarTitular(cuenta, nuevo);
+            for (ObservadorCuenta suscriptor : suscriptores) {
+                suscriptor.titularCambiado(cuenta, anterior, nuevo);
+            }
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Reenvía a los suscriptores el cambio de saldo de una cuenta almacenada.
+     * Quien modifica el saldo ya tiene el cerrojo de la cuenta (ver {@link com.alvarobajo.banco.controller.cuentas.OperarCuenta}).
+     *
+     * @param cuenta   Cuenta modificada.
+     * @param anterior Saldo anterior en céntimos.
+     * @param nuevo    Saldo nuevo en céntimos.
+     */
+    @Override
+    public void saldoModificado(CuentaBancaria cuenta, long anterior, long nuevo) {
+        for (ObservadorCuenta suscriptor : suscriptores) {
+            suscriptor.saldoModificado(cuenta, anterior, nuevo);
+        }
+    }
+
+    /**
+     * Reenvía a los suscriptores una transferencia entre dos cuentas almacenadas, como un único aviso.
+     * Quien hace la transferencia ya tiene los cerrojos de las dos cuentas.
+     *
+     * @param origen          Cuenta de la que sale el dinero.
+     * @param anteriorOrigen  Saldo anterior del origen en céntimos.
+     * @param nuevoOrigen     Saldo nuevo del origen en céntimos.
+     * @param destino         Cuenta a la que llega el dinero.
+     * @param anteriorDestino Saldo anterior del destino en céntimos.
+     * @param nuevoDestino    Saldo nuevo del destino en céntimos.
+     */
+    @Override
+    public void transferenciaRealizada(CuentaBancaria origen, long anteriorOrigen, long nuevoOrigen,
+                                       CuentaBancaria destino, long anteriorDestino, long nuevoDestino) {
+        for (ObservadorCuenta suscriptor : suscriptores) {
+            suscriptor.transferenciaRealizada(origen, anteriorOrigen, nuevoOrigen, destino, anteriorDestino,
+                    nuevoDestino);
+        }
+    }
+
+    private void indexarTitular(CuentaBancaria cuenta, Persona titular) {
+        if (titular == null) {
+            return;
+        }
+        agregar(porNombre, titular.getNombre(), cuenta);
+        agregar(porDni, titular.getDni(), cuenta);
+    }
+
+    private void desindexarTitular(CuentaBancaria cuenta, Persona titular) {
+        if (titular == null) {
+            return;
+        }
+        quitar(porNombre, titular.getNombre(), cuenta);
+        quitar(porDni, titular.getDni(), cuenta);
+    }
+
+    private void agregar(Map<String, Set<CuentaBancaria>> indice, String clave, CuentaBancaria cuenta) {
+        if (clave != null) {
+            indice.compute(normalizarClave(clave), (k, cuentas) -> {
+                Set<CuentaBancaria> conjunto = cuentas != null ? cuentas : nuevoConjunto();
+                conjunto.add(cuenta);
+                return conjunto;
+            });
+        }
+    }
+
+    private static void quitar(Map<String, Set<CuentaBancaria>> indice, String clave, CuentaBancaria cuenta) {
+        if (clave != null) {
+            indice.computeIfPresent(normalizarClave(clave), (k, cuentas) -> {
+                cuentas.remove(cuenta);
+                return cuentas.isEmpty() ? null : cuentas;
+            });
+        }
+    }
+
+    private <K, V> Map<K, V> nuevoMapa() {
+        return concurrente ? new ConcurrentHashMap<>() : new LinkedHashMap<>();
+    }
+
+    private Set<CuentaBancaria> nuevoConjunto() {
+        return concurrente ? ConcurrentHashMap.newKeySet() : new LinkedHashSet<>();
+    }
+
+    private static List<CuentaBancaria> copiar(Set<CuentaBancaria> cuentas) {
+        return cuentas == null ? new ArrayList<>() : new ArrayList<>(cuentas);
+    }
+}
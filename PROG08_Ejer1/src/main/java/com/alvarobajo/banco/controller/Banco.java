@@ -1,34 +1,197 @@
 package com.alvarobajo.banco.controller;
 
+import com.alvarobajo.banco.controller.agregados.EstadisticasBanco;
+import com.alvarobajo.banco.controller.agregados.IndicesListado;
+import com.alvarobajo.banco.controller.agregados.OrdenListado;
+import com.alvarobajo.banco.controller.agregados.PaginaCuentas;
+import com.alvarobajo.banco.controller.exportacion.EscritorCuentas;
+import com.alvarobajo.banco.controller.exportacion.FormatoExportacion;
+import com.alvarobajo.banco.controller.historial.HistorialMovimientos;
+import com.alvarobajo.banco.controller.metricas.Histograma;
+import com.alvarobajo.banco.controller.metricas.RegistroMetricas;
+import com.alvarobajo.banco.controller.persistencia.Diario;
+import com.alvarobajo.banco.controller.persistencia.ExportadorListado;
+import com.alvarobajo.banco.controller.procesos.ProcesadorLotes;
+import com.alvarobajo.banco.controller.procesos.ProgresoLote;
+import com.alvarobajo.banco.controller.procesos.ResultadoLote;
 import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Movimiento;
+import com.alvarobajo.banco.models.ObservadorCuenta;
+import com.alvarobajo.banco.models.Persona;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Clase que representa un banco y gestiona cuentas bancarias.
  *
+ * <p>Las cuentas se guardan con un {@link Diario}: cada apertura, ingreso, retiro o eliminación se añade al diario
+ * en cuanto ocurre, y de vez en cuando (o al llamar a {@link #guardarCuentas()}) se escribe una instantánea
+ * completa en {@code datoscuentasbancarias.dat}. Si la aplicación se cierra de forma inesperada, al volver a
+ * arrancar se recuperan las operaciones del diario.</p>
+ *
+ * <p>También puede abrirse sobre un almacén que guarda por sí mismo las cuentas, como {@link AlmacenMapeado}
+ * (ver {@link #Banco(AlmacenCuentas, AsignadorIban)}), o sobre un {@link AlmacenFragmentado}, que reparte las
+ * cuentas en fragmentos con su propio diario. En ese caso no se usa el diario ni la instantánea del banco.</p>
+ *
+ * <p>Los IBAN de las cuentas nuevas los reparte un {@link AsignadorIban}, que guarda su secuencia junto al archivo
+ * de datos para no repetir números después de reiniciar.</p>
+ *
+ * <p>Cada cambio de saldo se anota además en un {@link HistorialMovimientos}, que permite consultar los últimos
+ * movimientos de una cuenta (ver {@link #ultimosMovimientos(String, int)}).</p>
+ *
+ * <p>Los totales del banco y las cuentas con más y menos saldo salen de las {@link EstadisticasBanco}
+ * (ver {@link #getEstadisticas()}), que copian el saldo y el tipo de cada cuenta en unas columnas de tipos
+ * primitivos y se mantienen al día con cada operación, para consultarlos sin recorrer nada.</p>
+ *
+ * <p>Las cuentas se pueden listar por páginas, ordenadas por IBAN, por titular o por saldo
+ * (ver {@link #paginaCuentas(OrdenListado, PaginaCuentas, int)}), sin recorrer todo el banco en cada página.</p>
+ *
+ * <p>La apertura, la búsqueda por IBAN, la eliminación y el guardado de cuentas se cuentan y se miden en el
+ * {@link RegistroMetricas}. La búsqueda por IBAN es tan rápida que solo se mide una de cada 64.</p>
+ *
  * @author Álvaro Bajo Tabero
  */
-public class Banco implements Serializable {
+public class Banco implements Serializable, AutoCloseable {
     private static final long serialVersionUID = 1L;
 
+    private static final Histograma METRICA_APERTURA = RegistroMetricas.histograma(
+            "banco_apertura_cuenta_segundos", "Apertura de cuentas", 1);
+    private static final Histograma METRICA_BUSQUEDA_IBAN = RegistroMetricas.histograma(
+            "banco_busqueda_iban_segundos", "Búsqueda de cuentas por IBAN", 64);
+    private static final Histograma METRICA_ELIMINACION = RegistroMetricas.histograma(
+            "banco_eliminacion_cuenta_segundos", "Eliminación de cuentas", 1);
+    private static final Histograma METRICA_GUARDADO = RegistroMetricas.histograma(
+            "banco_guardado_segundos", "Guardado de las cuentas", 1);
+
     private static final String NOMBRE_ARCHIVO = System.getProperty("user.home") + File.separator + "Desktop" + File.separator + "datoscuentasbancarias.dat";
 
 
     private static final String NOMBRE_TXT = "ListadoClientesCCC.txt";
-    private List<CuentaBancaria> cuentas;
+    private static final String NOMBRE_EXPORTACION = "ExportacionCuentas";
+    private static final String NOMBRE_METRICAS = "MetricasBanco.prom";
+    private static final String PROPIEDAD_DIRECTORIO_SALIDA = "banco.directorioSalida";
+    private final transient AlmacenCuentas cuentas;
+    private final transient Diario diario;
+    private final transient AsignadorIban asignadorIban;
+    private final transient HistorialMovimientos historial = abrirHistorial();
+    private final transient EstadisticasBanco estadisticas;
+    private final transient IndicesListado indicesListado;
+    private final transient AtomicBoolean compactando = new AtomicBoolean();
+    // Los cambios de saldo y de titular se hacen sobre la cuenta, sin pasar por el banco: este suscriptor comprueba
+    // después de cada uno si hay que compactar el diario
+    private final transient ObservadorCuenta avisoCompactacion = new ObservadorCuenta() {
+        @Override
+        public void titularCambiado(CuentaBancaria cuenta, Persona anterior, Persona nuevo) {
+            comprobarCompactacion();
+        }
+
+        @Override
+        public void saldoModificado(CuentaBancaria cuenta, long anterior, long nuevo) {
+            comprobarCompactacion();
+        }
+
+        @Override
+        public void transferenciaRealizada(CuentaBancaria origen, long anteriorOrigen, long nuevoOrigen,
+                                           CuentaBancaria destino, long anteriorDestino, long nuevoDestino) {
+            comprobarCompactacion();
+        }
+    };
+    private transient Path directorioSalida = directorioSalidaPorDefecto();
+    // Hilo aplicador del bucle de operaciones abierto sobre el banco, o null si no hay ninguno
+    private transient volatile Thread aplicadorBucle;
 
     /**
-     * Constructor para inicializar una instancia de Banco.
-     * Inicializa la lista de cuentas.
+     * Constructor para inicializar una instancia de Banco de un solo hilo, como la que usa el menú.
+     * Carga las cuentas guardadas en el archivo de datos, si existe.
      */
     public Banco() {
+        this(false);
+    }
+
+    /**
+     * Constructor para inicializar una instancia de Banco.
+     * Carga las cuentas guardadas en el archivo de datos, si existe.
+     *
+     * <p>En modo concurrente varios hilos pueden abrir, buscar, eliminar y operar con cuentas a la vez: los índices
+     * son concurrentes y las operaciones sobre el saldo de una cuenta se hacen con el cerrojo de su IBAN
+     * (ver {@link BloqueoCuentas} y {@link com.alvarobajo.banco.controller.cuentas.OperarCuenta}).</p>
+     *
+     * @param concurrente true para permitir el acceso desde varios hilos; false para un banco de un solo hilo.
+     */
+    public Banco(boolean concurrente) {
+        this(Paths.get(NOMBRE_ARCHIVO), concurrente);
+    }
+
+    /**
+     * Constructor para inicializar una instancia de Banco que guarda sus datos en un archivo concreto.
+     * Los segmentos del diario se crean en el mismo directorio que el archivo de datos.
+     *
+     * @param archivoDatos Ruta del archivo de datos (instantánea) del banco.
+     * @param concurrente  true para permitir el acceso desde varios hilos; false para un banco de un solo hilo.
+     */
+    public Banco(Path archivoDatos, boolean concurrente) {
+        cuentas = new AlmacenMemoria(concurrente);
+        diario = new Diario(archivoDatos);
+        asignadorIban = abrirAsignador(AsignadorIban.archivoPara(archivoDatos));
         cargarCuentas();
-        if (cuentas == null) {
-            cuentas = new ArrayList<>();
+        cuentas.suscribir(historial);
+        estadisticas = new EstadisticasBanco(cuentas);
+        indicesListado = new IndicesListado(cuentas);
+        try {
+            diario.iniciar();
+            cuentas.suscribir(diario);
+            cuentas.suscribir(avisoCompactacion);
+        } catch (IOException e) {
+            System.out.println("Error al abrir el diario de cuentas, las operaciones no se guardarán hasta salir: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Constructor para inicializar una instancia de Banco sobre un almacén persistente, por ejemplo un
+     * {@link AlmacenMapeado}. Las cuentas no se cargan al arrancar: el almacén las lee cuando se usan y guarda
+     * él mismo los cambios, así que no se usa el diario.
+     *
+     * @param almacen       Almacén persistente con las cuentas del banco.
+     * @param asignadorIban Asignador de los IBAN de las cuentas nuevas, normalmente guardado junto al almacén
+     *                      (ver {@link AsignadorIban#archivoPara(Path)}).
+     * @throws IllegalArgumentException si el almacén no es persistente.
+     */
+    public Banco(AlmacenCuentas almacen, AsignadorIban asignadorIban) {
+        if (!almacen.isPersistente()) {
+            throw new IllegalArgumentException("El almacén de cuentas debe guardar por sí mismo las cuentas");
+        }
+        cuentas = almacen;
+        diario = null;
+        this.asignadorIban = asignadorIban;
+        cuentas.suscribir(historial);
+        estadisticas = new EstadisticasBanco(cuentas);
+        indicesListado = new IndicesListado(cuentas);
+    }
+
+    private static AsignadorIban abrirAsignador(Path archivo) {
+        try {
+            return new AsignadorIban(archivo);
+        } catch (IOException e) {
+            System.out.println("Error al abrir la secuencia de IBAN, se empezará desde el principio: " + e.getMessage());
+            return new AsignadorIban();
+        }
+    }
+
+    private static HistorialMovimientos abrirHistorial() {
+        try {
+            return new HistorialMovimientos(HistorialMovimientos.CAPACIDAD_POR_DEFECTO,
+                    Files.createTempFile("movimientos", ".historial"));
+        } catch (IOException e) {
+            System.out.println("Error al crear el archivo del historial, solo se guardarán los últimos movimientos de cada cuenta: " + e.getMessage());
+            return new HistorialMovimientos(HistorialMovimientos.CAPACIDAD_POR_DEFECTO);
         }
     }
 
@@ -37,42 +200,94 @@ public class Banco implements Serializable {
      *
      * @param nuevaCuenta Nueva cuenta bancaria a abrir.
      * @return true si la cuenta se abrió con éxito; false, si no se pudo abrir la cuenta.
+     * @throws IllegalStateException si el banco tiene un {@link BucleOperaciones} abierto.
      * @throws RuntimeException si se alcanza el límite de cuentas (si decides establecer un límite).
      */
     public boolean abrirCuenta(CuentaBancaria nuevaCuenta) {
-        if (!estaIBANEnUso(nuevaCuenta.getIban())) {
-            cuentas.add(nuevaCuenta);
-            return true;
-        } else {
-            throw new RuntimeException("No se pueden abrir más cuentas. Límite alcanzado.");
+        comprobarSinBucle();
+        long inicio = METRICA_APERTURA.iniciar();
+        try {
+            comprobarCompactacion();
+            if (cuentas.insertar(nuevaCuenta)) {
+                return true;
+            } else {
+                throw new RuntimeException("No se pueden abrir más cuentas. Límite alcanzado.");
+            }
+        } finally {
+            METRICA_APERTURA.registrar(inicio);
         }
     }
 
+    /**
+     * Abre un lote de cuentas bancarias de una vez, por ejemplo al importarlas desde un archivo.
+     * A diferencia de {@link #abrirCuenta(CuentaBancaria)}, no lanza una excepción si un IBAN ya está en uso:
+     * devuelve las cuentas que no se pudieron abrir.
+     *
+     * @param nuevasCuentas Cuentas a abrir.
+     * @return Lista con las cuentas que no se abrieron porque su IBAN ya estaba en uso, vacía si se abrieron todas.
+     * @throws IllegalStateException si el banco tiene un {@link BucleOperaciones} abierto.
+     */
+    public List<CuentaBancaria> abrirCuentas(Collection<CuentaBancaria> nuevasCuentas) {
+        comprobarSinBucle();
+        comprobarCompactacion();
+        return cuentas.insertarTodas(nuevasCuentas);
+    }
+
     /**
      * Elimina una cuenta bancaria del banco si existe y su saldo es 0.
      *
      * @param iban Número de IBAN de la cuenta a eliminar.
      * @return true si la cuenta se eliminó con éxito; false, si no se pudo eliminar la cuenta.
+     * @throws IllegalStateException si el banco tiene un {@link BucleOperaciones} abierto.
      */
     public boolean eliminarCuenta(String iban) {
-        Iterator<CuentaBancaria> iterator = cuentas.iterator();
-        while (iterator.hasNext()) {
-            CuentaBancaria cuenta = iterator.next();
-            if (cuenta.getIban().equalsIgnoreCase(iban) && cuenta.getSaldo() == 0) {
-                iterator.remove();
+        if (iban == null) {
+            return false;
+        }
+        comprobarSinBucle();
+        long inicio = METRICA_ELIMINACION.iniciar();
+        comprobarCompactacion();
+        // Se comprueba el saldo con el cerrojo de la cuenta para que nadie ingrese dinero mientras se elimina
+        Lock cerrojo = BloqueoCuentas.de(iban);
+        cerrojo.lock();
+        try {
+            CuentaBancaria cuenta = cuentas.buscar(iban);
+            if (cuenta != null && cuenta.getSaldoCentimos() == 0) {
+                cuentas.eliminar(iban);
                 return true;
             }
+            return false;
+        } finally {
+            cerrojo.unlock();
+            METRICA_ELIMINACION.registrar(inicio);
         }
-        return false;
     }
 
     /**
-     * Lista todas las cuentas registradas en el banco.
+     * Obtiene una página del listado de cuentas del banco.
+     *
+     * <p>La primera vez que se lista en un orden se construye su índice, recorriendo una vez todas las cuentas;
+     * después cada página cuesta lo que su tamaño, esté donde esté en el listado. Las páginas no se solapan ni se
+     * saltan cuentas aunque entretanto se abran o eliminen otras (ver {@link IndicesListado}).</p>
+     *
+     * @param orden    Orden del listado.
+     * @param anterior Página anterior del mismo listado, o null para obtener la primera.
+     * @param tamanio  Número máximo de cuentas de la página.
+     * @return Página con las cuentas que siguen a la página anterior; vacía si no hay más cuentas.
+     * @throws IllegalArgumentException si el tamaño no es mayor que 0 o la página anterior es de otro orden.
+     */
+    public PaginaCuentas paginaCuentas(OrdenListado orden, PaginaCuentas anterior, int tamanio) {
+        return indicesListado.pagina(orden, anterior, tamanio);
+    }
+
+    /**
+     * Lista todas las cuentas registradas en el banco de una vez. Para bancos grandes es mejor listarlas por
+     * páginas con {@link #paginaCuentas(OrdenListado, PaginaCuentas, int)}.
      */
     public void listarCuentas() {
-        if (!cuentas.isEmpty()) {
+        if (cuentas.tamanio() > 0) {
             System.out.println("Listado de cuentas:");
-            for (CuentaBancaria cuenta : cuentas) {
+            for (CuentaBancaria cuenta : cuentas.valores()) {
                 System.out.println(cuenta);
             }
         } else {
@@ -82,17 +297,35 @@ public class Banco implements Serializable {
 
     /**
      * Busca una cuenta bancaria por el nombre del titular.
+     * Si el titular tiene varias cuentas devuelve la primera; para obtenerlas todas
+     * se debe usar {@link #buscarCuentasPorTitular(String)}.
      *
      * @param nombreTitular Nombre del titular de la cuenta a buscar.
      * @return Cuenta bancaria encontrada o null si no se encuentra.
      */
     public CuentaBancaria buscarCuentaPorTitular(String nombreTitular) {
-        for (CuentaBancaria cuenta : cuentas) {
-            if (cuenta.getTitular().getNombre().equalsIgnoreCase(nombreTitular)) {
-                return cuenta;
-            }
-        }
-        return null;
+        List<CuentaBancaria> encontradas = cuentas.buscarPorNombre(nombreTitular);
+        return encontradas.isEmpty() ? null : encontradas.get(0);
+    }
+
+    /**
+     * Busca todas las cuentas bancarias de un titular por su nombre.
+     *
+     * @param nombreTitular Nombre del titular (no distingue mayúsculas de minúsculas).
+     * @return Lista con las cuentas del titular, vacía si no tiene ninguna.
+     */
+    public List<CuentaBancaria> buscarCuentasPorTitular(String nombreTitular) {
+        return cuentas.buscarPorNombre(nombreTitular);
+    }
+
+    /**
+     * Busca todas las cuentas bancarias de un titular por su DNI.
+     *
+     * @param dni DNI del titular (no distingue mayúsculas de minúsculas).
+     * @return Lista con las cuentas del titular, vacía si no tiene ninguna.
+     */
+    public List<CuentaBancaria> buscarCuentasPorDni(String dni) {
+        return cuentas.buscarPorDni(dni);
     }
 
     /**
@@ -102,12 +335,10 @@ public class Banco implements Serializable {
      * @return Cuenta bancaria encontrada o null si no se encuentra.
      */
     public CuentaBancaria buscarCuentaPorIBAN(String iban) {
-        for (CuentaBancaria cuenta : cuentas) {
-            if (cuenta.getIban().equalsIgnoreCase(iban)) {
-                return cuenta;
-            }
-        }
-        return null;
+        long inicio = METRICA_BUSQUEDA_IBAN.iniciar();
+        CuentaBancaria cuenta = cuentas.buscar(iban);
+        METRICA_BUSQUEDA_IBAN.registrar(inicio);
+        return cuenta;
     }
 
     /**
@@ -117,12 +348,48 @@ public class Banco implements Serializable {
      * @return true si el IBAN está en uso; false, si no está en uso.
      */
     public boolean estaIBANEnUso(String iban) {
-        for (CuentaBancaria cuenta : cuentas) {
-            if (cuenta.getIban().equalsIgnoreCase(iban)) {
-                return true;
-            }
-        }
-        return false;
+        return cuentas.contiene(iban);
+    }
+
+    /**
+     * Genera un IBAN que no está en uso para una cuenta nueva.
+     *
+     * <p>El número sale de la secuencia del {@link AsignadorIban}, así que no hace falta probar números al azar
+     * hasta dar con uno libre. Solo se salta un número si ya lo tiene una cuenta, lo que únicamente ocurre si se
+     * importó una cuenta con ese IBAN o si se perdió el archivo de la secuencia.</p>
+     *
+     * @return IBAN nuevo con dígitos de control válidos.
+     */
+    public String generarIban() {
+        String iban;
+        do {
+            iban = asignadorIban.siguienteIban();
+        } while (cuentas.contiene(iban));
+        return iban;
+    }
+
+    /**
+     * Obtiene los últimos movimientos de una cuenta desde que se abrió el banco.
+     *
+     * @param iban Número de IBAN de la cuenta.
+     * @param n    Número máximo de movimientos a obtener.
+     * @return Lista con los movimientos, del más reciente al más antiguo; vacía si la cuenta no existe o no ha
+     * tenido movimientos.
+     */
+    public List<Movimiento> ultimosMovimientos(String iban, int n) {
+        CuentaBancaria cuenta = buscarCuentaPorIBAN(iban);
+        return cuenta != null ? historial.ultimosMovimientos(cuenta.getIban(), n) : new ArrayList<>();
+    }
+
+    /**
+     * Obtiene las estadísticas del banco: saldo total, descubierto, número de cuentas y saldo de cada tipo y cuentas
+     * con más y menos saldo. La primera consulta recorre una vez las cuentas; desde entonces se mantienen al día con
+     * cada operación y consultarlas no recorre nada, salvo el saldo de cada tipo, que recorre las columnas.
+     *
+     * @return Estadísticas del banco.
+     */
+    public EstadisticasBanco getEstadisticas() {
+        return estadisticas;
     }
 
     /**
@@ -133,15 +400,17 @@ public class Banco implements Serializable {
     }
 
     /**
-     * Imprime la información de la cuenta bancaria asociada al titular.
+     * Imprime la información de las cuentas bancarias asociadas al titular.
      *
-     * @param nombreTitular Nombre del titular de la cuenta a imprimir.
+     * @param nombreTitular Nombre del titular de las cuentas a imprimir.
      */
     public void imprimirCuentaPorTitular(String nombreTitular) {
-        CuentaBancaria cuenta = buscarCuentaPorTitular(nombreTitular);
-        if (cuenta != null) {
-            System.out.println("Cuenta encontrada para el titular " + nombreTitular + ":");
-            System.out.println(cuenta);
+        List<CuentaBancaria> encontradas = buscarCuentasPorTitular(nombreTitular);
+        if (!encontradas.isEmpty()) {
+            System.out.println("Cuentas encontradas para el titular " + nombreTitular + ":");
+            for (CuentaBancaria cuenta : encontradas) {
+                System.out.println(cuenta);
+            }
         } else {
             System.out.println("No se encontró ninguna cuenta para el titular " + nombreTitular + ".");
         }
@@ -162,88 +431,351 @@ public class Banco implements Serializable {
         }
     }
 
+    /**
+     * Indica si el banco admite el acceso desde varios hilos a la vez.
+     *
+     * @return true si el banco es concurrente.
+     */
+    public boolean isConcurrente() {
+        return cuentas.isConcurrente();
+    }
+
+    /**
+     * Obtiene el almacén de las cuentas, para los componentes del propio paquete que se suscriben a él.
+     *
+     * @return Almacén de cuentas del banco.
+     */
+    AlmacenCuentas getAlmacen() {
+        return cuentas;
+    }
+
+    /**
+     * Obtiene el diario del banco, para los componentes del propio paquete que le pasan los cambios directamente
+     * (ver {@link BucleOperaciones}).
+     *
+     * @return Diario del banco, o null si el banco usa un almacén persistente.
+     */
+    Diario getDiario() {
+        return diario;
+    }
+
+    /**
+     * Indica si el banco tiene un {@link BucleOperaciones} abierto. Mientras lo tiene, las cuentas solo se pueden
+     * abrir, eliminar y modificar a través del bucle: los demás métodos que las modifican lanzan una
+     * {@link IllegalStateException}.
+     *
+     * @return true si hay un bucle de operaciones abierto sobre el banco.
+     */
+    public boolean isBucleAbierto() {
+        return aplicadorBucle != null;
+    }
+
+    /**
+     * Reserva las modificaciones de las cuentas para el hilo aplicador de un {@link BucleOperaciones}, que es el
+     * único que puede hacerlas hasta que se llame a {@link #cerrarBucle()}.
+     *
+     * @param aplicador Hilo aplicador del bucle.
+     * @throws IllegalStateException si el banco ya tiene un bucle abierto.
+     */
+    synchronized void abrirBucle(Thread aplicador) {
+        if (aplicadorBucle != null) {
+            throw new IllegalStateException("El banco ya tiene un bucle de operaciones abierto");
+        }
+        aplicadorBucle = aplicador;
+        cuentas.reservarModificaciones(aplicador);
+    }
+
+    /**
+     * Vuelve a permitir que se modifiquen las cuentas desde cualquier hilo al cerrar el {@link BucleOperaciones}.
+     */
+    synchronized void cerrarBucle() {
+        cuentas.reservarModificaciones(null);
+        aplicadorBucle = null;
+    }
+
+    /**
+     * Comprueba que el hilo actual puede modificar las cuentas: no hay un bucle de operaciones abierto o el hilo
+     * actual es su aplicador.
+     */
+    private void comprobarSinBucle() {
+        Thread aplicador = aplicadorBucle;
+        if (aplicador != null && aplicador != Thread.currentThread()) {
+            throw new IllegalStateException("Las cuentas del banco se están modificando a través de un bucle de operaciones");
+        }
+    }
+
     /**
      * Obtiene el número total de cuentas registradas en el banco.
      *
      * @return Número total de cuentas registradas.
      */
     public int getNumCuentas() {
-        return cuentas.size();
+        return cuentas.tamanio();
     }
 
     /**
-     * Obtiene la lista de cuentas bancarias registradas en el banco.
+     * Obtiene las cuentas bancarias registradas en el banco.
      *
-     * @return Lista de cuentas bancarias.
+     * <p>La colección es de solo lectura: para abrir o eliminar cuentas se deben usar
+     * {@link #abrirCuenta(CuentaBancaria)} y {@link #eliminarCuenta(String)}, que mantienen el índice por IBAN.</p>
+     *
+     * @return Colección no modificable de cuentas bancarias.
      */
-    public List<CuentaBancaria> getCuentas() {
-        return cuentas;
+    public Collection<CuentaBancaria> getCuentas() {
+        return cuentas.valores();
     }
 
 
     /**
-     * Carga las cuentas bancarias desde un archivo de datos.
+     * Carga las cuentas bancarias desde el archivo de datos y recupera las operaciones del diario.
      *
-     * <p>Este método lee las cuentas bancarias desde el archivo especificado por la constante {@code NOMBRE_ARCHIVO}.
-     * Si el archivo no existe, muestra un mensaje indicando que se creará uno nuevo al salir.
-     * Si ocurre un error durante la lectura del archivo o la deserialización de las cuentas,
-     * se muestra un mensaje de error detallado.
+     * <p>Este método lee la última instantánea de las cuentas y vuelve a aplicar las operaciones registradas en
+     * el diario después de ella. Si no hay instantánea, muestra un mensaje indicando que se creará una nueva.
+     * Si ocurre un error durante la lectura, se muestra un mensaje de error detallado.</p>
      */
     private void cargarCuentas() {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(NOMBRE_ARCHIVO))) {
-            cuentas = (List<CuentaBancaria>) ois.readObject();
-            System.out.println("Cuentas cargadas correctamente desde el archivo: " + NOMBRE_ARCHIVO);
-        } catch (FileNotFoundException e) {
-            System.out.println("No se encontró el archivo de cuentas. Se creará uno nuevo al salir.");
+        try {
+            boolean habiaInstantanea = diario.existeInstantanea();
+            int recuperadas = diario.cargar(cuentas);
+            if (habiaInstantanea) {
+                System.out.println("Cuentas cargadas correctamente desde el archivo: " + diario.getArchivoInstantanea());
+            } else {
+                System.out.println("No se encontró el archivo de cuentas. Se creará uno nuevo al salir.");
+            }
+            if (recuperadas > 0) {
+                System.out.println("Se han recuperado " + recuperadas + " operaciones del diario.");
+            }
         } catch (IOException | ClassNotFoundException e) {
             System.out.println("Error al cargar las cuentas: " + e.getMessage());
         }
     }
 
     /**
-     * Guarda las cuentas bancarias en un archivo de datos.
+     * Guarda las cuentas bancarias en el archivo de datos.
      *
-     * <p>Este método guarda las cuentas bancarias en el archivo especificado por la constante {@code NOMBRE_ARCHIVO}.
-     * Si ocurre un error durante la escritura en el archivo, se muestra un mensaje de error detallado.
+     * <p>Las operaciones ya se van guardando en el diario según ocurren; este método escribe además una
+     * instantánea completa y compacta el diario, para que el siguiente arranque sea más rápido.
+     * Si el banco usa un almacén persistente, solo fuerza al disco los cambios del almacén.
+     * Si ocurre un error durante la escritura en el archivo, se muestra un mensaje de error detallado.</p>
      */
     public void guardarCuentas() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(NOMBRE_ARCHIVO))) {
-            oos.writeObject(cuentas);
-            System.out.println("Cuentas guardadas correctamente en el archivo: " + NOMBRE_ARCHIVO);
+        long inicio = METRICA_GUARDADO.iniciar();
+        try {
+            if (diario == null) {
+                cuentas.guardar();
+                System.out.println("Cuentas guardadas correctamente.");
+                return;
+            }
+            diario.compactar(cuentas.valores());
+            System.out.println("Cuentas guardadas correctamente en el archivo: " + diario.getArchivoInstantanea());
         } catch (IOException e) {
             System.out.println("Error al guardar las cuentas: " + e.getMessage());
+        } finally {
+            METRICA_GUARDADO.registrar(inicio);
         }
     }
 
+    /**
+     * Cierra el diario (o el almacén) y el historial de movimientos, por ejemplo para volver a abrir el mismo archivo de datos
+     * con otro {@code Banco}. Las operaciones pendientes se escriben en el diario antes de cerrarlo, pero no se
+     * escribe una instantánea (ver {@link #guardarCuentas()}). El banco no se debe usar después de cerrarlo.
+     */
+    @Override
+    public void close() {
+        try {
+            if (diario != null) {
+                diario.close();
+            }
+            cuentas.close();
+            historial.close();
+        } catch (IOException e) {
+            System.out.println("Error al cerrar el banco: " + e.getMessage());
+        }
+    }
 
     /**
-     * Genera y guarda el listado de clientes en un archivo de texto en el escritorio del usuario.
-     * Si el archivo ya existe, lo sobrescribe.
+     * Espera a que todas las operaciones realizadas hasta ahora estén escritas en el diario en disco
+     * (o, si el banco usa un almacén persistente, en el propio almacén).
+     *
+     * @throws IOException si no se ha podido escribir el diario.
+     */
+    public void sincronizar() throws IOException {
+        if (diario == null) {
+            cuentas.guardar();
+        } else {
+            diario.sincronizar();
+        }
+    }
+
+    /**
+     * Compacta el diario si se han acumulado muchas operaciones desde la última instantánea.
+     * En un banco de un solo hilo se compacta en el propio hilo, que es el único que modifica las cuentas;
+     * en un banco concurrente se hace en un hilo aparte para no detener las operaciones.
+     */
+    private void comprobarCompactacion() {
+        if (diario == null || !diario.necesitaCompactar() || !compactando.compareAndSet(false, true)) {
+            return;
+        }
+        Runnable compactacion = () -> {
+            try {
+                diario.compactar(cuentas.valores());
+            } catch (IOException e) {
+                System.out.println("Error al compactar el diario de cuentas: " + e.getMessage());
+            } finally {
+                compactando.set(false);
+            }
+        };
+        if (cuentas.isConcurrente()) {
+            Thread hilo = new Thread(compactacion, "compactacion-diario");
+            hilo.setDaemon(true);
+            hilo.start();
+        } else {
+            compactacion.run();
+        }
+    }
+
+
+    /**
+     * Ejecuta un proceso periódico, como la liquidación de intereses, sobre todas las cuentas del banco.
+     *
+     * <p>Las cuentas se procesan en paralelo y sin bloquear el banco (ver {@link ProcesadorLotes}): mientras dura
+     * el proceso se pueden seguir abriendo cuentas y operando con ellas. Los cambios de saldo se guardan en el
+     * diario igual que cualquier otra operación. Mientras el banco tiene un {@link BucleOperaciones} abierto solo se
+     * puede ejecutar en modo simulación.</p>
+     *
+     * @param proceso    Proceso a ejecutar.
+     * @param simulacion true para calcular los totales sin modificar ningún saldo.
+     * @param progreso   Destino de los avisos de avance.
+     * @return Resumen del proceso.
+     * @throws IllegalStateException si no es una simulación y el banco tiene un bucle de operaciones abierto.
+     */
+    public ResultadoLote ejecutarProceso(ProcesadorLotes proceso, boolean simulacion, ProgresoLote progreso) {
+        if (!simulacion) {
+            comprobarSinBucle();
+        }
+        ResultadoLote resultado = proceso.ejecutar(cuentas.valores(), simulacion, progreso);
+        comprobarCompactacion();
+        return resultado;
+    }
+
+
+    /**
+     * Obtiene el directorio donde se crean el listado de clientes y las exportaciones.
+     *
+     * @return Directorio de salida.
+     */
+    public Path getDirectorioSalida() {
+        return directorioSalida;
+    }
+
+    /**
+     * Establece el directorio donde se crean el listado de clientes y las exportaciones.
+     * Por defecto es el indicado en la propiedad del sistema {@code banco.directorioSalida} o, si no se indica,
+     * el escritorio del usuario.
+     *
+     * @param directorioSalida Nuevo directorio de salida.
+     */
+    public void setDirectorioSalida(Path directorioSalida) {
+        this.directorioSalida = directorioSalida;
+    }
+
+    /**
+     * Genera y guarda el listado de clientes en un archivo de texto en el directorio de salida
+     * (por defecto, el escritorio del usuario). Si el archivo ya existe, lo sobrescribe.
      * <p>
      * El listado incluirá el nombre del titular, el número de IBAN y el saldo de cada cuenta bancaria
      * almacenada en el banco. Al final del archivo se incluirá el número total de cuentas.
      * <p>
-     * El archivo se guardará en el escritorio del usuario con el nombre "ListadoClientesCCC.txt".
+     * El archivo se guardará con el nombre "ListadoClientesCCC.txt".
      * Si el archivo ya existe, se sobrescribirá con el nuevo listado generado.
+     */
+    public void generarListadoClientes() {
+        generarListadoClientes(directorioSalida.resolve(NOMBRE_TXT));
+    }
+
+    /**
+     * Genera y guarda el listado de clientes en el archivo indicado. Si el archivo ya existe, lo sobrescribe.
+     * <p>
+     * Las líneas se formatean en paralelo y se escriben por bloques grandes con {@link ExportadorListado}.
      * <p>
      * Si ocurre algún error durante la generación o escritura del listado, se imprimirá un mensaje
      * de error en la consola.
+     *
+     * @param archivo Archivo de destino.
      */
-    public void generarListadoClientes() {
-        File ARCHIVO_TXT = new File(System.getProperty("user.home") + File.separator + "Desktop" + File.separator + NOMBRE_TXT);
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(ARCHIVO_TXT))) {
-            for (CuentaBancaria cuenta : cuentas) {
-                String linea = cuenta.getTitular().getNombre() + " - " + cuenta.getIban() + " - " + cuenta.getSaldo();
-                writer.write(linea);
-                writer.newLine();
-            }
-            writer.write("Número total de cuentas: " + cuentas.size());
+    public void generarListadoClientes(Path archivo) {
+        try {
+            ExportadorListado.exportar(cuentas.valores(), archivo);
             System.out.println("Listado de clientes generado con éxito.");
-            System.out.println("el archivo se ha creado en el escritorio con el nombre de .");
-        } catch (IOException e) {
+            System.out.println("El archivo se ha creado en: " + archivo);
+        } catch (IOException | RuntimeException e) {
             System.out.println("Error al generar el listado de clientes: " + e.getMessage());
         }
     }
 
+    /**
+     * Exporta todas las cuentas en el formato indicado a un archivo {@code ExportacionCuentas} del directorio
+     * de salida, con la extensión del formato.
+     *
+     * @param formato Formato de la exportación.
+     * @return true si se exportaron las cuentas; false, si hubo algún error.
+     */
+    public boolean exportarCuentas(FormatoExportacion formato) {
+        return exportarCuentas(formato, directorioSalida.resolve(NOMBRE_EXPORTACION + "." + formato.getExtension()));
+    }
+
+    /**
+     * Exporta todas las cuentas en el formato indicado, con todos los campos de cada tipo de cuenta.
+     * Las cuentas se escriben según se recorren, sin copiarlas, así que la memoria usada no depende
+     * del número de cuentas. Si el archivo ya existe, lo sobrescribe.
+     *
+     * @param formato Formato de la exportación.
+     * @param archivo Archivo de destino.
+     * @return true si se exportaron las cuentas; false, si hubo algún error.
+     */
+    public boolean exportarCuentas(FormatoExportacion formato, Path archivo) {
+        try (EscritorCuentas escritor = formato.abrir(archivo)) {
+            long escritas = escritor.escribirTodas(cuentas.valores());
+            System.out.println("Se han exportado " + escritas + " cuentas al archivo: " + archivo);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error al exportar las cuentas: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Exporta las métricas de rendimiento en el formato de texto de Prometheus a un archivo
+     * {@code MetricasBanco.prom} del directorio de salida.
+     *
+     * @return true si se exportaron las métricas; false, si hubo algún error.
+     */
+    public boolean exportarMetricas() {
+        return exportarMetricas(directorioSalida.resolve(NOMBRE_METRICAS));
+    }
+
+    /**
+     * Exporta las métricas de rendimiento de {@link RegistroMetricas} en el formato de texto de Prometheus.
+     * Si el archivo ya existe, lo sobrescribe.
+     *
+     * @param archivo Archivo de destino.
+     * @return true si se exportaron las métricas; false, si hubo algún error.
+     */
+    public boolean exportarMetricas(Path archivo) {
+        try {
+            RegistroMetricas.exportarPrometheus(archivo);
+            System.out.println("Se han exportado las métricas al archivo: " + archivo);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error al exportar las métricas: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static Path directorioSalidaPorDefecto() {
+        String directorio = System.getProperty(PROPIEDAD_DIRECTORIO_SALIDA);
+        return directorio != null ? Paths.get(directorio) : Paths.get(System.getProperty("user.home"), "Desktop");
+    }
+
 
 }
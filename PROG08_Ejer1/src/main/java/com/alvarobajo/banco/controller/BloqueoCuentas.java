@@ -0,0 +1,95 @@
+package com.alvarobajo.banco.controller;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Clase que reparte los cerrojos de las cuentas bancarias en franjas según su IBAN.
+ *
+ * <p>En lugar de un cerrojo global para todo el banco, cada IBAN se asocia a uno de {@link #NUM_FRANJAS}
+ * cerrojos. Las operaciones sobre cuentas de franjas distintas no se bloquean entre sí, y todas las
+ * operaciones sobre una misma cuenta usan siempre el mismo cerrojo, por lo que no se pierden actualizaciones
+ * del saldo. Los cerrojos son reentrantes: quien ya tiene el cerrojo de una cuenta puede volver a pedirlo.</p>
+ *
+ * <p>Cuando una operación necesita los cerrojos de dos cuentas (por ejemplo una transferencia) debe tomarlos
+ * siempre en orden creciente de franja, que depende solo del IBAN, y tomar uno solo si las dos cuentas caen en la
+ * misma franja. Así dos transferencias cruzadas entre las mismas cuentas nunca se bloquean mutuamente.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class BloqueoCuentas {
+
+    /**
+     * Número de franjas. Es potencia de dos para calcular la franja con una máscara.
+     */
+    public static final int NUM_FRANJAS = 1024;
+
+    private static final ReentrantLock[] FRANJAS = new ReentrantLock[NUM_FRANJAS];
+
+    static {
+        for (int i = 0; i < NUM_FRANJAS; i++) {
+            FRANJAS[i] = new ReentrantLock();
+        }
+    }
+
+    private BloqueoCuentas() {
+    }
+
+    /**
+     * Calcula la franja a la que pertenece un IBAN.
+     *
+     * @param iban IBAN de la cuenta (no distingue mayúsculas de minúsculas).
+     * @return Índice de la franja, entre 0 y {@link #NUM_FRANJAS} - 1.
+     */
+    public static int franja(String iban) {
+        int h = hashNormalizado(iban);
+        h ^= (h >>> 16);
+        return h & (NUM_FRANJAS - 1);
+    }
+
+    /**
+     * Calcula el hash del IBAN normalizado ({@link AlmacenCuentas#normalizarIban(String)}) sin crear la cadena
+     * normalizada, ya que se calcula cada vez que se toma el cerrojo de una cuenta. Da el mismo valor que
+     * {@code normalizarIban(iban).hashCode()}; si el IBAN tiene caracteres que no son ASCII, se normaliza sin más.
+     */
+    static int hashNormalizado(String iban) {
+        int inicio = 0;
+        int fin = iban.length();
+        while (inicio < fin && iban.charAt(inicio) <= ' ') {
+            inicio++;
+        }
+        while (fin > inicio && iban.charAt(fin - 1) <= ' ') {
+            fin--;
+        }
+        int h = 0;
+        for (int i = inicio; i < fin; i++) {
+            char c = iban.charAt(i);
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            } else if (c > 0x7F) {
+                return AlmacenCuentas.normalizarIban(iban).hashCode();
+            }
+            h = 31 * h + c;
+        }
+        return h;
+    }
+
+    /**
+     * Obtiene el cerrojo que protege la cuenta con el IBAN indicado.
+     *
+     * @param iban IBAN de la cuenta.
+     * @return Cerrojo de la franja del IBAN.
+     */
+    public static ReentrantLock de(String iban) {
+        return FRANJAS[franja(iban)];
+    }
+
+    /**
+     * Obtiene el cerrojo de una franja concreta.
+     *
+     * @param franja Índice de la franja, calculado con {@link #franja(String)}.
+     * @return Cerrojo de la franja.
+     */
+    public static ReentrantLock deFranja(int franja) {
+        return FRANJAS[franja];
+    }
+}
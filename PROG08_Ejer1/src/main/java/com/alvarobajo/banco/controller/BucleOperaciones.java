@@ -0,0 +1,569 @@
+package com.alvarobajo.banco.controller;
+
+import com.alvarobajo.banco.controller.metricas.Contador;
+import com.alvarobajo.banco.controller.metricas.Histograma;
+import com.alvarobajo.banco.controller.metricas.RegistroMetricas;
+import com.alvarobajo.banco.controller.persistencia.Diario;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Dinero;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Clase que aplica todas las modificaciones de las cuentas de un banco en un único hilo, al estilo de LMAX: las
+ * aperturas, eliminaciones, ingresos, retiros y transferencias se publican en un anillo de huecos reservados de
+ * antemano y un hilo aplicador las ejecuta una detrás de otra.
+ *
+ * <p>Como solo el hilo aplicador modifica los saldos, no se toman los cerrojos de {@link BloqueoCuentas} para
+ * operar con ellos: el aplicador lee el saldo, lo comprueba y lo escribe sin esperar a nadie, y las lecturas desde
+ * otros hilos ven el último saldo escrito. Los almacenes siguen tomando sus cerrojos al abrir o eliminar cuentas,
+ * pero nunca están en disputa. Mientras el bucle está abierto, todas las modificaciones de las cuentas del banco
+ * deben pasar por él, porque un ingreso hecho a la vez con
+ * {@link com.alvarobajo.banco.controller.cuentas.OperarCuenta} podría perderse: el banco queda marcado
+ * ({@link Banco#isBucleAbierto()}) y sus métodos que modifican cuentas, los procesos periódicos y
+ * {@code OperarCuenta} lanzan una {@link IllegalStateException} si se llaman desde otro hilo que no sea el
+ * aplicador. Un banco solo puede tener un bucle abierto a la vez.</p>
+ *
+ * <p>Detrás del aplicador hay dos consumidores más, cada uno en su hilo, que recorren los mismos huecos uno detrás
+ * de otro: el del diario, que pasa al {@link Diario} del banco los cambios ya aplicados (mientras el bucle está
+ * abierto el diario deja de estar suscrito al almacén, así que el aplicador no paga su coste), y el de las
+ * métricas, que anota por lotes la latencia de cada operación desde que se publicó hasta que se aplicó. Como es el
+ * último en pasar por cada hueco, el de las métricas suelta además las cuentas a las que apunta, para que un
+ * hueco que tarda en reutilizarse no retenga una cuenta ya eliminada. Si el banco no tiene diario propio (por ejemplo con un {@link AlmacenFragmentado}), los cambios se
+ * siguen guardando a través del almacén.</p>
+ *
+ * <p>Los huecos del anillo se crean de antemano, así que publicar una operación no crea ningún mensaje: el productor
+ * reserva una secuencia con una operación atómica, espera a que el hueco correspondiente haya pasado por todos los
+ * consumidores, rellena sus campos y lo publica. Aplicarla sí puede crear objetos, por ejemplo al normalizar un
+ * IBAN que no viene en mayúsculas para buscar la cuenta, o los de los suscriptores del almacén. Los
+ * métodos {@link #ingresar}, {@link #retirar}, etc. esperan además al resultado; {@link #publicarIngreso} y
+ * {@link #publicarRetiro} vuelven en cuanto la operación está en el anillo. Las esperas empiezan girando, luego
+ * ceden el procesador y al final duermen unos microsegundos.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class BucleOperaciones implements AutoCloseable {
+
+    /**
+     * Número de huecos del anillo si no se indica otro.
+     */
+    public static final int CAPACIDAD_POR_DEFECTO = 1 << 16;
+
+    /**
+     * Resultado de una operación del bucle.
+     */
+    public enum Resultado {
+        /**
+         * La operación se aplicó.
+         */
+        HECHA,
+        /**
+         * La operación no se aplicó por falta de saldo, porque el IBAN ya está en uso, porque la cuenta a
+         * eliminar tiene saldo o porque la cantidad no es válida.
+         */
+        RECHAZADA,
+        /**
+         * La cuenta (o alguna de las dos de una transferencia) no existe.
+         */
+        NO_EXISTE
+    }
+
+    private static final byte ABRIR = 0;
+    private static final byte ELIMINAR = 1;
+    private static final byte INGRESO = 2;
+    private static final byte RETIRO = 3;
+    private static final byte TRANSFERENCIA = 4;
+
+    // Operaciones que aplica como mucho el aplicador antes de avisar a los consumidores
+    private static final int MAXIMO_LOTE = 1024;
+    private static final int GIROS = 100;
+    private static final int CESIONES = 200;
+    private static final long ESPERA_NANOS = 20_000;
+
+    private static final Histograma METRICA_OPERACION = RegistroMetricas.histograma(
+            "banco_bucle_operacion_segundos", "Operaciones del bucle, desde que se publican hasta que se aplican", 1);
+    private static final Contador OPERACIONES_RECHAZADAS = RegistroMetricas.contador(
+            "banco_bucle_rechazadas_total", "Operaciones del bucle rechazadas o sobre cuentas que no existen");
+
+    private final Banco banco;
+    private final Diario diario;
+    private final Hueco[] huecos;
+    private final int mascara;
+
+    // Siguiente secuencia que reservará un productor
+    private final AtomicLong reservadas = new AtomicLong();
+    // Número de operaciones que ha terminado cada hilo; la siguiente que procesará es la de ese número
+    private final AtomicLong aplicadas = new AtomicLong();
+    private final AtomicLong enDiario = new AtomicLong();
+    private final AtomicLong medidas = new AtomicLong();
+
+    private final Thread aplicador;
+    private final Thread hiloDiario;
+    private final Thread hiloMetricas;
+    private volatile boolean cerrado;
+
+    /**
+     * Operación publicada en el anillo. Los productores escriben los datos de entrada, el aplicador el resultado y
+     * los saldos antes y después, y los consumidores solo leen.
+     */
+    private static final class Hueco {
+        // Secuencia de la operación que ocupa el hueco; se escribe la última al publicar
+        volatile long secuencia = -1;
+        // true mientras el productor no ha leído el resultado; el hueco no se puede reutilizar hasta entonces
+        volatile boolean pendiente;
+
+        byte tipo;
+        String iban;
+        String ibanDestino;
+        long centimos;
+        CuentaBancaria cuentaNueva;
+        long publicadaNanos;
+
+        Resultado resultado;
+        CuentaBancaria cuenta;
+        CuentaBancaria destino;
+        long anterior;
+        long nuevo;
+        long anteriorDestino;
+        long nuevoDestino;
+        long aplicadaNanos;
+    }
+
+    /**
+     * Constructor para inicializar el bucle con la capacidad por defecto y arrancar sus hilos.
+     *
+     * @param banco Banco concurrente cuyas cuentas se modifican a través del bucle.
+     * @throws IllegalArgumentException si el banco no es concurrente.
+     * @throws IllegalStateException    si el banco ya tiene un bucle abierto.
+     */
+    public BucleOperaciones(Banco banco) {
+        this(banco, CAPACIDAD_POR_DEFECTO);
+    }
+
+    /**
+     * Constructor para inicializar el bucle y arrancar sus hilos.
+     *
+     * @param banco     Banco concurrente cuyas cuentas se modifican a través del bucle.
+     * @param capacidad Número de huecos del anillo; debe ser una potencia de 2.
+     * @throws IllegalArgumentException si el banco no es concurrente o la capacidad no es una potencia de 2.
+     * @throws IllegalStateException    si el banco ya tiene un bucle abierto.
+     */
+    public BucleOperaciones(Banco banco, int capacidad) {
+        if (!banco.isConcurrente()) {
+            throw new IllegalArgumentException("El bucle de operaciones necesita un banco concurrente");
+        }
+        if (capacidad <= 0 || Integer.bitCount(capacidad) != 1) {
+            throw new IllegalArgumentException("La capacidad debe ser una potencia de 2: " + capacidad);
+        }
+        this.banco = banco;
+        huecos = new Hueco[capacidad];
+        for (int i = 0; i < capacidad; i++) {
+            huecos[i] = new Hueco();
+        }
+        mascara = capacidad - 1;
+        aplicador = crearHilo(this::aplicar, "bucle-aplicador");
+        hiloDiario = crearHilo(this::consumirDiario, "bucle-diario");
+        hiloMetricas = crearHilo(this::consumirMetricas, "bucle-metricas");
+        banco.abrirBucle(aplicador);
+        diario = banco.getDiario();
+        if (diario != null) {
+            banco.getAlmacen().cancelarSuscripcion(diario);
+        }
+        aplicador.start();
+        hiloDiario.start();
+        hiloMetricas.start();
+    }
+
+    private static Thread crearHilo(Runnable tarea, String nombre) {
+        Thread hilo = new Thread(tarea, nombre);
+        hilo.setDaemon(true);
+        return hilo;
+    }
+
+    // ---------------------------------------------------------------- Productores
+
+    /**
+     * Abre una cuenta y espera al resultado.
+     *
+     * @param cuenta Cuenta a abrir, con su IBAN.
+     * @return {@link Resultado#HECHA} o {@link Resultado#RECHAZADA} si el IBAN ya está en uso.
+     */
+    public Resultado abrirCuenta(CuentaBancaria cuenta) {
+        return esperarResultado(publicar(ABRIR, cuenta.getIban(), null, 0, cuenta, true));
+    }
+
+    /**
+     * Elimina una cuenta si su saldo es 0 y espera al resultado.
+     *
+     * @param iban IBAN de la cuenta a eliminar.
+     * @return {@link Resultado#HECHA}, {@link Resultado#RECHAZADA} si el saldo no es 0 o
+     * {@link Resultado#NO_EXISTE}.
+     */
+    public Resultado eliminarCuenta(String iban) {
+        return esperarResultado(publicar(ELIMINAR, iban, null, 0, null, true));
+    }
+
+    /**
+     * Ingresa una cantidad en una cuenta y espera al resultado.
+     *
+     * @param iban     IBAN de la cuenta.
+     * @param centimos Cantidad en céntimos.
+     * @return {@link Resultado#HECHA}, {@link Resultado#RECHAZADA} si la cantidad no es positiva o
+     * {@link Resultado#NO_EXISTE}.
+     */
+    public Resultado ingresar(String iban, long centimos) {
+        return esperarResultado(publicar(INGRESO, iban, null, centimos, null, true));
+    }
+
+    /**
+     * Retira una cantidad de una cuenta y espera al resultado.
+     *
+     * @param iban     IBAN de la cuenta.
+     * @param centimos Cantidad en céntimos.
+     * @return {@link Resultado#HECHA}, {@link Resultado#RECHAZADA} si la cantidad no es positiva o el saldo
+     * quedaría por debajo del mínimo de la cuenta, o {@link Resultado#NO_EXISTE}.
+     */
+    public Resultado retirar(String iban, long centimos) {
+        return esperarResultado(publicar(RETIRO, iban, null, centimos, null, true));
+    }
+
+    /**
+     * Transfiere una cantidad entre dos cuentas y espera al resultado.
+     *
+     * @param origen   IBAN de la cuenta de la que sale el dinero.
+     * @param destino  IBAN de la cuenta a la que llega el dinero.
+     * @param centimos Cantidad en céntimos.
+     * @return {@link Resultado#HECHA}, {@link Resultado#RECHAZADA} si la cantidad no es positiva, las cuentas son
+     * la misma o el saldo del origen quedaría por debajo de su mínimo, o {@link Resultado#NO_EXISTE}.
+     */
+    public Resultado transferir(String origen, String destino, long centimos) {
+        return esperarResultado(publicar(TRANSFERENCIA, origen, destino, centimos, null, true));
+    }
+
+    /**
+     * Publica un ingreso sin esperar a que se aplique.
+     *
+     * @param iban     IBAN de la cuenta.
+     * @param centimos Cantidad en céntimos.
+     * @return Secuencia de la operación, para {@link #esperar(long)}.
+     */
+    public long publicarIngreso(String iban, long centimos) {
+        return publicar(INGRESO, iban, null, centimos, null, false);
+    }
+
+    /**
+     * Publica un retiro sin esperar a que se aplique. Si no hay saldo suficiente, el retiro se descarta.
+     *
+     * @param iban     IBAN de la cuenta.
+     * @param centimos Cantidad en céntimos.
+     * @return Secuencia de la operación, para {@link #esperar(long)}.
+     */
+    public long publicarRetiro(String iban, long centimos) {
+        return publicar(RETIRO, iban, null, centimos, null, false);
+    }
+
+    /**
+     * Espera a que se aplique una operación publicada.
+     *
+     * @param secuencia Secuencia devuelta al publicarla.
+     * @throws IllegalStateException si el bucle se cerró sin aplicarla.
+     */
+    public void esperar(long secuencia) {
+        esperarCursor(aplicadas, secuencia + 1, aplicador);
+    }
+
+    /**
+     * Espera a que todas las operaciones publicadas hasta ahora estén aplicadas, pasadas al diario y medidas.
+     * Para esperar además a que el diario las escriba en disco se debe llamar después a
+     * {@link Banco#sincronizar()}.
+     *
+     * @throws IllegalStateException si el bucle se cerró sin procesarlas.
+     */
+    public void sincronizar() {
+        long objetivo = reservadas.get();
+        esperarCursor(enDiario, objetivo, hiloDiario);
+        esperarCursor(medidas, objetivo, hiloMetricas);
+    }
+
+    private long publicar(byte tipo, String iban, String ibanDestino, long centimos, CuentaBancaria cuentaNueva,
+                          boolean esperaResultado) {
+        if (cerrado) {
+            throw new IllegalStateException("El bucle de operaciones está cerrado");
+        }
+        long secuencia = reservadas.getAndIncrement();
+        Hueco hueco = huecos[(int) secuencia & mascara];
+        // El hueco lo ocupó la secuencia de una vuelta antes: debe haber pasado por los dos últimos consumidores
+        // y su productor debe haber leído el resultado
+        long anterior = secuencia - huecos.length;
+        int intentos = 0;
+        while (anterior >= 0 && (enDiario.get() <= anterior || medidas.get() <= anterior || hueco.pendiente)) {
+            if (!hiloMetricas.isAlive()) {
+                throw new IllegalStateException("El bucle de operaciones está cerrado");
+            }
+            intentos = esperar(intentos);
+        }
+        hueco.tipo = tipo;
+        hueco.iban = iban;
+        hueco.ibanDestino = ibanDestino;
+        hueco.centimos = centimos;
+        hueco.cuentaNueva = cuentaNueva;
+        hueco.publicadaNanos = RegistroMetricas.isActivas() ? System.nanoTime() : 0;
+        hueco.pendiente = esperaResultado;
+        hueco.secuencia = secuencia;
+        return secuencia;
+    }
+
+    private Resultado esperarResultado(long secuencia) {
+        Hueco hueco = huecos[(int) secuencia & mascara];
+        try {
+            esperar(secuencia);
+            return hueco.resultado;
+        } finally {
+            hueco.pendiente = false;
+        }
+    }
+
+    private void esperarCursor(AtomicLong cursor, long objetivo, Thread hilo) {
+        int intentos = 0;
+        while (cursor.get() < objetivo) {
+            if (!hilo.isAlive()) {
+                throw new IllegalStateException("El bucle de operaciones está cerrado");
+            }
+            intentos = esperar(intentos);
+        }
+    }
+
+    /**
+     * Espera un poco antes de volver a comprobar una condición: primero girando, luego cediendo el procesador y al
+     * final durmiendo, para no gastar un núcleo entero cuando no hay trabajo.
+     *
+     * @return Número de intentos hechos.
+     */
+    private static int esperar(int intentos) {
+        if (intentos < GIROS) {
+            Thread.onSpinWait();
+        } else if (intentos < CESIONES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(ESPERA_NANOS);
+        }
+        return intentos + 1;
+    }
+
+    // ---------------------------------------------------------------- Aplicador
+
+    private void aplicar() {
+        long siguiente = 0;
+        int intentos = 0;
+        while (true) {
+            Hueco hueco = huecos[(int) siguiente & mascara];
+            if (hueco.secuencia != siguiente) {
+                if (cerrado && siguiente == reservadas.get()) {
+                    return;
+                }
+                intentos = esperar(intentos);
+                continue;
+            }
+            intentos = 0;
+            long primera = siguiente;
+            do {
+                aplicar(hueco);
+                siguiente++;
+                hueco = huecos[(int) siguiente & mascara];
+            } while (hueco.secuencia == siguiente && siguiente - primera < MAXIMO_LOTE);
+            // Una sola lectura del reloj por lote
+            long ahora = RegistroMetricas.isActivas() ? System.nanoTime() : 0;
+            for (long s = primera; s < siguiente; s++) {
+                huecos[(int) s & mascara].aplicadaNanos = ahora;
+            }
+            aplicadas.set(siguiente);
+        }
+    }
+
+    private void aplicar(Hueco hueco) {
+        hueco.cuenta = null;
+        hueco.destino = null;
+        try {
+            hueco.resultado = ejecutar(hueco);
+        } catch (RuntimeException e) {
+            // Por ejemplo, un saldo que se sale del rango de Dinero; el aplicador no debe detenerse
+            hueco.resultado = Resultado.RECHAZADA;
+        }
+    }
+
+    private Resultado ejecutar(Hueco hueco) {
+        switch (hueco.tipo) {
+            case ABRIR:
+                if (banco.estaIBANEnUso(hueco.iban)) {
+                    return Resultado.RECHAZADA;
+                }
+                banco.abrirCuenta(hueco.cuentaNueva);
+                hueco.cuenta = hueco.cuentaNueva;
+                return Resultado.HECHA;
+            case ELIMINAR: {
+                CuentaBancaria cuenta = banco.buscarCuentaPorIBAN(hueco.iban);
+                if (cuenta == null) {
+                    return Resultado.NO_EXISTE;
+                }
+                if (!banco.eliminarCuenta(hueco.iban)) {
+                    return Resultado.RECHAZADA;
+                }
+                hueco.cuenta = cuenta;
+                return Resultado.HECHA;
+            }
+            case INGRESO:
+            case RETIRO: {
+                CuentaBancaria cuenta = banco.buscarCuentaPorIBAN(hueco.iban);
+                if (cuenta == null) {
+                    return Resultado.NO_EXISTE;
+                }
+                long anterior = cuenta.getSaldoCentimos();
+                if (hueco.centimos <= 0 || (hueco.tipo == RETIRO
+                        && !Dinero.alcanza(anterior, hueco.centimos, cuenta.getSaldoMinimoCentimos()))) {
+                    return Resultado.RECHAZADA;
+                }
+                long nuevo = hueco.tipo == INGRESO ? Dinero.sumar(anterior, hueco.centimos)
+                        : Dinero.restar(anterior, hueco.centimos);
+                cuenta.setSaldoCentimos(nuevo);
+                hueco.cuenta = cuenta;
+                hueco.anterior = anterior;
+                hueco.nuevo = nuevo;
+                return Resultado.HECHA;
+            }
+            case TRANSFERENCIA: {
+                CuentaBancaria origen = banco.buscarCuentaPorIBAN(hueco.iban);
+                CuentaBancaria destino = banco.buscarCuentaPorIBAN(hueco.ibanDestino);
+                if (origen == null || destino == null) {
+                    return Resultado.NO_EXISTE;
+                }
+                long anteriorOrigen = origen.getSaldoCentimos();
+                long anteriorDestino = destino.getSaldoCentimos();
+                if (hueco.centimos <= 0 || origen == destino
+                        || !Dinero.alcanza(anteriorOrigen, hueco.centimos, origen.getSaldoMinimoCentimos())) {
+                    return Resultado.RECHAZADA;
+                }
+                long nuevoDestino = Dinero.sumar(anteriorDestino, hueco.centimos);
+                long nuevoOrigen = Dinero.restar(anteriorOrigen, hueco.centimos);
+                CuentaBancaria.transferirSaldo(origen, nuevoOrigen, destino, nuevoDestino);
+                hueco.cuenta = origen;
+                hueco.destino = destino;
+                hueco.anterior = anteriorOrigen;
+                hueco.nuevo = nuevoOrigen;
+                hueco.anteriorDestino = anteriorDestino;
+                hueco.nuevoDestino = nuevoDestino;
+                return Resultado.HECHA;
+            }
+            default:
+                throw new IllegalStateException("Tipo de operación desconocido: " + hueco.tipo);
+        }
+    }
+
+    // ---------------------------------------------------------------- Consumidores
+
+    /**
+     * Bucle del consumidor del diario: pasa al diario los cambios que el aplicador ya ha hecho, en orden.
+     */
+    private void consumirDiario() {
+        long siguiente = 0;
+        int intentos = 0;
+        while (true) {
+            long hasta = aplicadas.get();
+            if (siguiente == hasta) {
+                if (!aplicador.isAlive() && siguiente == aplicadas.get()) {
+                    return;
+                }
+                intentos = esperar(intentos);
+                continue;
+            }
+            intentos = 0;
+            for (; siguiente < hasta; siguiente++) {
+                Hueco hueco = huecos[(int) siguiente & mascara];
+                if (diario != null && hueco.resultado == Resultado.HECHA) {
+                    registrarEnDiario(hueco);
+                }
+                enDiario.lazySet(siguiente + 1);
+            }
+        }
+    }
+
+    private void registrarEnDiario(Hueco hueco) {
+        switch (hueco.tipo) {
+            case ABRIR:
+                diario.cuentaAbierta(hueco.cuenta);
+                break;
+            case ELIMINAR:
+                diario.cuentaEliminada(hueco.cuenta);
+                break;
+            case TRANSFERENCIA:
+                diario.transferenciaRealizada(hueco.cuenta, hueco.anterior, hueco.nuevo, hueco.destino,
+                        hueco.anteriorDestino, hueco.nuevoDestino);
+                break;
+            case INGRESO:
+            case RETIRO:
+                diario.saldoModificado(hueco.cuenta, hueco.anterior, hueco.nuevo);
+                break;
+            default:
+                throw new IllegalStateException("Tipo de operación desconocido: " + hueco.tipo);
+        }
+    }
+
+    /**
+     * Bucle del consumidor de métricas: anota la latencia de cada operación que ya ha pasado por el diario, suma
+     * las rechazadas de cada lote de una vez y suelta las cuentas de los huecos.
+     */
+    private void consumirMetricas() {
+        long siguiente = 0;
+        int intentos = 0;
+        while (true) {
+            long hasta = enDiario.get();
+            if (siguiente == hasta) {
+                if (!hiloDiario.isAlive() && siguiente == enDiario.get()) {
+                    return;
+                }
+                intentos = esperar(intentos);
+                continue;
+            }
+            intentos = 0;
+            long rechazadas = 0;
+            for (; siguiente < hasta; siguiente++) {
+                Hueco hueco = huecos[(int) siguiente & mascara];
+                if (hueco.publicadaNanos != 0 && hueco.aplicadaNanos != 0) {
+                    METRICA_OPERACION.registrarDuracion(hueco.aplicadaNanos - hueco.publicadaNanos);
+                }
+                if (hueco.resultado != Resultado.HECHA) {
+                    rechazadas++;
+                }
+                hueco.cuentaNueva = null;
+                hueco.cuenta = null;
+                hueco.destino = null;
+            }
+            OPERACIONES_RECHAZADAS.sumar(rechazadas);
+            medidas.set(siguiente);
+        }
+    }
+
+    /**
+     * Deja de aceptar operaciones, espera a que se apliquen y se pasen al diario las ya publicadas y vuelve a
+     * suscribir el diario al almacén del banco, que a partir de ahí se puede modificar de la forma habitual
+     * (ver {@link Banco#isBucleAbierto()}).
+     */
+    @Override
+    public void close() {
+        if (cerrado) {
+            return;
+        }
+        cerrado = true;
+        try {
+            aplicador.join();
+            hiloDiario.join();
+            hiloMetricas.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (diario != null) {
+            banco.getAlmacen().suscribir(diario);
+        }
+        banco.cerrarBucle();
+    }
+}
@@ -0,0 +1,143 @@
+package com.alvarobajo.banco.controller.agregados;
+
+import com.alvarobajo.banco.controller.agregados.EstadisticasBanco.SaldoCuenta;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Clasificación de las cuentas con más saldo (o con menos) que usan las {@link EstadisticasBanco}.
+ *
+ * <p>Solo se guardan las primeras cuentas de la clasificación, como mucho {@link #CAPACIDAD_MINIMA} o tantas como
+ * se hayan pedido. Todas las cuentas que quedan fuera están por debajo de un umbral y todas las de dentro están en el
+ * umbral o por encima, así que un cambio de saldo que deja la cuenta por debajo del umbral, y que ya lo estaba, no
+ * toca la clasificación ni toma su monitor: es lo que ocurre con casi todas las operaciones. Solo los cambios de las
+ * cuentas de arriba entran en la clasificación, en O(log k).</p>
+ *
+ * <p>Cuando una cuenta de dentro baja del umbral o se elimina, la clasificación se queda con una cuenta menos, pero
+ * sigue siendo exacta. Si se piden más cuentas de las que tiene, se vuelve a llenar recorriendo las
+ * {@link ColumnasCuentas}, en O(n); mientras tanto el umbral es mínimo, de modo que los cambios de saldo esperan al
+ * monitor y se aplican sobre la clasificación nueva.</p>
+ *
+ * <p>Los saldos llegan como números: solo se crea un {@link SaldoCuenta} cuando una cuenta entra en la
+ * clasificación.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+final class ClasificacionSaldos {
+
+    /**
+     * Número mínimo de cuentas que se guardan en la clasificación.
+     */
+    static final int CAPACIDAD_MINIMA = 128;
+
+    /**
+     * Saldo que se pasa a {@link #actualizar} cuando la cuenta no existía antes del cambio o ya no existe después.
+     * Ningún saldo puede valer esto, porque están acotados por {@link com.alvarobajo.banco.models.Dinero#MAXIMO_EUROS}.
+     */
+    static final long SIN_SALDO = Long.MIN_VALUE;
+
+    private final boolean mayores;
+    private final ColumnasCuentas columnas;
+    // Protegidos por el monitor de la clasificación
+    private final TreeSet<SaldoCuenta> primeras;
+    private int capacidad = CAPACIDAD_MINIMA;
+    // Clave de la última cuenta que salió de la clasificación; Long.MIN_VALUE si no ha salido ninguna
+    private volatile long umbral = Long.MIN_VALUE;
+
+    /**
+     * Constructor para inicializar una clasificación vacía.
+     *
+     * @param mayores  true para clasificar de más saldo a menos; false, de menos saldo a más.
+     * @param columnas Columnas con los saldos de todas las cuentas, para volver a llenar la clasificación.
+     */
+    ClasificacionSaldos(boolean mayores, ColumnasCuentas columnas) {
+        this.mayores = mayores;
+        this.columnas = columnas;
+        primeras = new TreeSet<>(new Comparator<SaldoCuenta>() {
+            @Override
+            public int compare(SaldoCuenta a, SaldoCuenta b) {
+                int orden = Long.compare(clave(b.getSaldoCentimos()), clave(a.getSaldoCentimos()));
+                return orden != 0 ? orden : a.getIban().compareTo(b.getIban());
+            }
+        });
+    }
+
+    /**
+     * Clave por la que se ordena la clasificación, de mayor a menor. Los saldos están acotados por
+     * {@link com.alvarobajo.banco.models.Dinero#MAXIMO_EUROS}, así que cambiarles el signo no desborda.
+     */
+    private long clave(long saldo) {
+        return mayores ? saldo : -saldo;
+    }
+
+    /**
+     * Aplica el cambio de saldo de una cuenta. Quien llama ya ha guardado el saldo nuevo en las columnas y tiene el
+     * cerrojo de la cuenta, así que los cambios de una misma cuenta llegan de uno en uno y en orden.
+     *
+     * @param iban     IBAN de la cuenta.
+     * @param anterior Saldo anterior de la cuenta, o {@link #SIN_SALDO} si la cuenta se acaba de abrir.
+     * @param nuevo    Saldo nuevo de la cuenta, o {@link #SIN_SALDO} si la cuenta se ha eliminado.
+     */
+    void actualizar(String iban, long anterior, long nuevo) {
+        // Se lee el umbral después de guardar el saldo: si se está llenando la clasificación, o bien el recorrido
+        // ve el saldo nuevo, o bien aquí se ve el umbral mínimo y se espera al monitor
+        long minimo = umbral;
+        if ((anterior == SIN_SALDO || clave(anterior) < minimo) && (nuevo == SIN_SALDO || clave(nuevo) < minimo)) {
+            return;
+        }
+        synchronized (this) {
+            if (anterior != SIN_SALDO) {
+                primeras.remove(new SaldoCuenta(iban, anterior));
+            }
+            if (nuevo != SIN_SALDO && clave(nuevo) >= umbral) {
+                primeras.add(new SaldoCuenta(iban, nuevo));
+                if (primeras.size() > capacidad) {
+                    umbral = clave(primeras.pollLast().getSaldoCentimos());
+                }
+            }
+        }
+    }
+
+    /**
+     * Obtiene las primeras cuentas de la clasificación.
+     *
+     * @param k Número máximo de cuentas.
+     * @return Lista con las cuentas, en el orden de la clasificación.
+     */
+    synchronized List<SaldoCuenta> primeras(int k) {
+        if (k > primeras.size() && umbral != Long.MIN_VALUE) {
+            rellenar(k);
+        }
+        List<SaldoCuenta> resultado = new ArrayList<>(Math.max(0, Math.min(k, primeras.size())));
+        Iterator<SaldoCuenta> recorrido = primeras.iterator();
+        while (resultado.size() < k && recorrido.hasNext()) {
+            resultado.add(recorrido.next());
+        }
+        return resultado;
+    }
+
+    /**
+     * Vuelve a llenar la clasificación con los saldos de las columnas.
+     *
+     * @param k Número de cuentas que se han pedido; la clasificación crece hasta ese tamaño si hace falta.
+     */
+    private void rellenar(int k) {
+        capacidad = Math.max(capacidad, k);
+        umbral = Long.MIN_VALUE;
+        primeras.clear();
+        long[] salida = {Long.MIN_VALUE};
+        columnas.recorrerSaldos((iban, saldo) -> {
+            if (clave(saldo) >= salida[0]) {
+                primeras.add(new SaldoCuenta(iban, saldo));
+                if (primeras.size() > capacidad) {
+                    salida[0] = clave(primeras.pollLast().getSaldoCentimos());
+                }
+            }
+        });
+        umbral = salida[0];
+    }
+}
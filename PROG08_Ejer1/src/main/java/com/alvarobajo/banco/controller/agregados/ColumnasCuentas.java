@@ -0,0 +1,552 @@
+package com.alvarobajo.banco.controller.agregados;
+
+import com.alvarobajo.banco.controller.AlmacenCuentas;
+import com.alvarobajo.banco.controller.exportacion.EscritorTexto;
+import com.alvarobajo.banco.models.CuentaAhorro;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorrienteEmpresa;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.ObservadorCuenta;
+import com.alvarobajo.banco.models.Persona;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.ObjLongConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Clase que guarda el saldo y el tipo de todas las cuentas del banco en columnas de tipos primitivos, para
+ * calcular los totales del banco sin recorrer los objetos de las cuentas.
+ *
+ * <p>Cada cuenta ocupa una ranura: su saldo en céntimos está en una columna de {@code long}, su tipo en una
+ * columna de {@code byte} y su IBAN en una columna de referencias, en la misma posición. Las columnas se dividen en
+ * bloques de tamaño fijo que no se mueven nunca; al crecer solo se copia el directorio de bloques, así que un cambio
+ * de saldo no se pierde aunque las columnas crezcan a la vez. Las ranuras de las cuentas eliminadas quedan con
+ * saldo 0 y tipo {@link #LIBRE} y se reutilizan para las siguientes cuentas.</p>
+ *
+ * <p>La ranura de cada cuenta se busca en una tabla hash de {@code int} con direccionamiento abierto: cada celda
+ * guarda el número de una ranura, y la columna de IBAN dice de qué cuenta es. Así las columnas no crean ningún
+ * objeto por cuenta, solo guardan la referencia al IBAN de la propia cuenta. La tabla se lee sin cerrojos; las
+ * altas y bajas se hacen con el monitor de la clase, y al crecer se sustituye por una copia. Cada celda se escribe
+ * con semántica de liberación después de llenar la ranura, y se lee con semántica de adquisición, así que quien
+ * encuentra una ranura sin el monitor ve su IBAN, su tipo y su saldo.</p>
+ *
+ * <p>Las columnas no se construyen hasta que se pide el primer total: entonces se suscriben al almacén de cuentas
+ * como {@link ObservadorCuenta}, igual que el diario o el historial, y lo recorren una vez. Un banco que nunca
+ * consulta sus totales no paga nada, ni al arrancar (con un {@link com.alvarobajo.banco.controller.AlmacenMapeado}
+ * no se leen las cuentas del archivo) ni en cada operación. Desde ese momento reciben todos los cambios de saldo,
+ * vengan de {@code OperarCuenta}, del bucle de operaciones o de un proceso de fin de mes. Quien modifica el saldo
+ * tiene el cerrojo de la cuenta (o es el único hilo que escribe), así que cada ranura solo la escribe un hilo a la
+ * vez y no hace falta ningún cerrojo para actualizarla.</p>
+ *
+ * <p>Las {@link EstadisticasBanco} del banco se construyen sobre unas columnas propias: cada vez que una ranura se
+ * ocupa, cambia de saldo o se libera, las columnas les pasan el tipo y el saldo anterior de la ranura, así que las
+ * estadísticas se mantienen al día sin guardar nada más por cuenta.</p>
+ *
+ * <p>Los totales recorren los bloques en paralelo con bucles sencillos sobre arrays, sin saltos ni accesos a otros
+ * objetos, que el compilador JIT puede vectorizar. Los recorridos no detienen las operaciones: un total calculado
+ * mientras se opera con las cuentas puede no incluir los cambios más recientes. Los totales se suman en
+ * {@code long}, que alcanza para más de 92 billones de euros.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class ColumnasCuentas implements ObservadorCuenta {
+
+    /**
+     * Tipo de las ranuras libres.
+     */
+    public static final byte LIBRE = 0;
+
+    /**
+     * Nombres de los tipos de cuenta. El tipo de una ranura ocupada es la posición de su nombre más uno, y
+     * {@link #contarPorTipo()} y {@link #saldoPorTipoCentimos()} devuelven los totales en el mismo orden.
+     */
+    public static final String[] TIPOS = {EscritorTexto.TIPO_AHORRO, EscritorTexto.TIPO_CORRIENTE_PERSONAL,
+            EscritorTexto.TIPO_CORRIENTE_EMPRESA};
+
+    // Primer tipo de las ranuras ocupadas; las estadísticas solo cuentan los tipos entre este y TIPOS.length
+    static final byte AHORRO = 1;
+    private static final byte CORRIENTE_PERSONAL = 2;
+    private static final byte CORRIENTE_EMPRESA = 3;
+    // Otros tipos de cuenta que pudieran añadirse; no se cuentan en ningún tipo
+    private static final byte OTRO = 4;
+
+    private static final int BITS_BLOQUE = 14;
+    private static final int TAMANIO_BLOQUE = 1 << BITS_BLOQUE;
+    private static final int MASCARA_BLOQUE = TAMANIO_BLOQUE - 1;
+
+    // Celdas de la tabla de ranuras que no guardan ninguna ranura
+    private static final int VACIA = -1;
+    private static final int BORRADA = -2;
+    private static final int CAPACIDAD_INICIAL_TABLA = 64;
+    // Acceso a las celdas de la tabla, que se leen sin el monitor
+    private static final VarHandle CELDA = MethodHandles.arrayElementVarHandle(int[].class);
+
+    /**
+     * Bloque de las columnas. Sus arrays no cambian nunca de tamaño.
+     */
+    private static final class Bloque {
+        final long[] saldos = new long[TAMANIO_BLOQUE];
+        final byte[] tipos = new byte[TAMANIO_BLOQUE];
+        final String[] ibans = new String[TAMANIO_BLOQUE];
+    }
+
+    private final AlmacenCuentas almacen;
+    // Estadísticas a las que se pasan los cambios de las ranuras, o null si no hay
+    private final EstadisticasBanco estadisticas;
+    // Monitor con el que se construyen las columnas; no es el de la clase para no detener las operaciones mientras
+    private final Object construccion = new Object();
+    private volatile boolean construidas;
+
+    // Directorio de bloques; se sustituye por una copia más grande con el monitor de la clase
+    private volatile Bloque[] bloques = {new Bloque()};
+    // Tabla de ranuras por IBAN; se sustituye por una copia más grande con el monitor de la clase
+    private volatile int[] tabla = nuevaTabla(CAPACIDAD_INICIAL_TABLA);
+    // Protegidos por el monitor de la clase: celdas borradas de la tabla, ranuras libres y primera ranura sin usar
+    private int borradas;
+    private int[] libres = new int[16];
+    private int numLibres;
+    private int siguiente;
+    private volatile int numCuentas;
+
+    /**
+     * Constructor para inicializar las columnas de un almacén. No recorre el almacén ni se suscribe a él hasta que
+     * se pide el primer total.
+     *
+     * @param almacen Almacén de cuentas del banco.
+     */
+    public ColumnasCuentas(AlmacenCuentas almacen) {
+        this(almacen, null);
+    }
+
+    /**
+     * Constructor para inicializar las columnas sobre las que se construyen unas estadísticas.
+     *
+     * @param almacen      Almacén de cuentas del banco.
+     * @param estadisticas Estadísticas a las que se pasan los cambios de las ranuras.
+     */
+    ColumnasCuentas(AlmacenCuentas almacen, EstadisticasBanco estadisticas) {
+        this.almacen = almacen;
+        this.estadisticas = estadisticas;
+    }
+
+    /**
+     * Construye las columnas la primera vez que se piden. Se suscribe al almacén antes de recorrerlo, así que las
+     * cuentas que se abren o cambian mientras tanto tampoco se pierden: si una cuenta cambia antes de recorrerla,
+     * el aviso le reserva la ranura y el recorrido la salta; si cambia después, el aviso escribe el saldo nuevo en
+     * la ranura del recorrido. Una cuenta eliminada justo antes de recorrerla se vuelve a quitar.
+     */
+    void construir() {
+        if (construidas) {
+            return;
+        }
+        synchronized (construccion) {
+            if (construidas) {
+                return;
+            }
+            almacen.suscribir(this);
+            for (CuentaBancaria cuenta : almacen.valores()) {
+                if (anadir(cuenta) && !almacen.contiene(cuenta.getIban())) {
+                    quitar(cuenta.getIban());
+                }
+            }
+            construidas = true;
+        }
+    }
+
+    /**
+     * Reserva una ranura para la cuenta al abrirla.
+     *
+     * @param cuenta Cuenta abierta.
+     */
+    @Override
+    public void cuentaAbierta(CuentaBancaria cuenta) {
+        escribirSaldo(ranura(cuenta), cuenta.getIban(), cuenta.getSaldoCentimos());
+    }
+
+    /**
+     * Escribe el nuevo saldo en la ranura de la cuenta.
+     *
+     * @param cuenta   Cuenta modificada.
+     * @param anterior Saldo anterior en céntimos.
+     * @param nuevo    Saldo nuevo en céntimos.
+     */
+    @Override
+    public void saldoModificado(CuentaBancaria cuenta, long anterior, long nuevo) {
+        escribirSaldo(ranura(cuenta), cuenta.getIban(), nuevo);
+    }
+
+    /**
+     * Libera la ranura de la cuenta eliminada.
+     *
+     * @param cuenta Cuenta eliminada.
+     */
+    @Override
+    public void cuentaEliminada(CuentaBancaria cuenta) {
+        quitar(cuenta.getIban());
+    }
+
+    /**
+     * El titular no se guarda en las columnas.
+     */
+    @Override
+    public void titularCambiado(CuentaBancaria cuenta, Persona anterior, Persona nuevo) {
+    }
+
+    /**
+     * Obtiene la ranura de una cuenta, reservándola si aún no tiene. Al reservarla se escribe el saldo actual de la
+     * cuenta; quien llama debe escribir después el saldo que conozca, por si el de la cuenta ya había cambiado.
+     */
+    private int ranura(CuentaBancaria cuenta) {
+        int ranura = buscar(tabla, cuenta.getIban());
+        if (ranura < 0) {
+            // Puede que la reservara otro hilo, por ejemplo el recorrido inicial, y aún no se vea sin el monitor
+            synchronized (this) {
+                ranura = buscar(tabla, cuenta.getIban());
+                if (ranura < 0) {
+                    ranura = reservar(cuenta);
+                }
+            }
+        }
+        return ranura;
+    }
+
+    /**
+     * Reserva una ranura para la cuenta si aún no tiene, con su saldo actual.
+     *
+     * @return true si se ha reservado; false, si la cuenta ya tenía ranura.
+     */
+    private synchronized boolean anadir(CuentaBancaria cuenta) {
+        if (buscar(tabla, cuenta.getIban()) >= 0) {
+            return false;
+        }
+        reservar(cuenta);
+        return true;
+    }
+
+    /**
+     * Libera la ranura de la cuenta con el IBAN indicado, si tiene.
+     */
+    private synchronized void quitar(String iban) {
+        int[] celdas = tabla;
+        int mascara = celdas.length - 1;
+        for (int i = dispersar(iban) & mascara; celdas[i] != VACIA; i = (i + 1) & mascara) {
+            int ranura = celdas[i];
+            if (ranura >= 0 && iban.equals(iban(ranura))) {
+                CELDA.setRelease(celdas, i, BORRADA);
+                borradas++;
+                liberar(ranura);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Busca la ranura de un IBAN en la tabla. Se puede llamar sin el monitor: una celda vacía solo se ocupa, nunca
+     * vuelve a estar vacía, así que la búsqueda no se detiene antes de llegar a la celda del IBAN, y la columna de
+     * IBAN confirma que la ranura de la celda es de la cuenta buscada. Sin el monitor puede no verse una ranura
+     * recién reservada por otro hilo; quien necesita la ranura vuelve a buscarla con el monitor.
+     *
+     * @return Número de la ranura, o -1 si el IBAN no tiene.
+     */
+    private int buscar(int[] celdas, String iban) {
+        int mascara = celdas.length - 1;
+        for (int i = dispersar(iban) & mascara; ; i = (i + 1) & mascara) {
+            int ranura = (int) CELDA.getAcquire(celdas, i);
+            if (ranura == VACIA) {
+                return -1;
+            }
+            if (ranura >= 0 && iban.equals(iban(ranura))) {
+                return ranura;
+            }
+        }
+    }
+
+    private static int dispersar(String iban) {
+        int h = iban.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private static int[] nuevaTabla(int capacidad) {
+        int[] celdas = new int[capacidad];
+        Arrays.fill(celdas, VACIA);
+        return celdas;
+    }
+
+    private String iban(int ranura) {
+        // Sin el monitor, la celda puede apuntar a un bloque recién añadido que este hilo aún no ve
+        Bloque[] directorio = bloques;
+        int bloque = ranura >>> BITS_BLOQUE;
+        return bloque < directorio.length ? directorio[bloque].ibans[ranura & MASCARA_BLOQUE] : null;
+    }
+
+    /**
+     * Escribe el saldo de una ranura y pasa la diferencia a las estadísticas. Quien llama tiene el cerrojo de la
+     * cuenta, así que el saldo que había en la ranura es el último que se escribió.
+     */
+    private void escribirSaldo(int ranura, String iban, long saldo) {
+        Bloque bloque = bloques[ranura >>> BITS_BLOQUE];
+        long anterior = bloque.saldos[ranura & MASCARA_BLOQUE];
+        bloque.saldos[ranura & MASCARA_BLOQUE] = saldo;
+        if (estadisticas != null && anterior != saldo) {
+            estadisticas.saldoCambiado(iban, bloque.tipos[ranura & MASCARA_BLOQUE], anterior, saldo);
+        }
+    }
+
+    /**
+     * Reserva una ranura para la cuenta, con su saldo y tipo actuales, y la añade a la tabla. Se llama con el
+     * monitor de la clase y después de comprobar que la cuenta no tiene ranura.
+     */
+    private int reservar(CuentaBancaria cuenta) {
+        int ranura;
+        if (numLibres > 0) {
+            ranura = libres[--numLibres];
+        } else {
+            if (siguiente == Integer.MAX_VALUE) {
+                throw new IllegalStateException("No caben más cuentas en las columnas");
+            }
+            ranura = siguiente++;
+            int bloque = ranura >>> BITS_BLOQUE;
+            if (bloque == bloques.length) {
+                Bloque[] nuevos = Arrays.copyOf(bloques, bloques.length * 2);
+                for (int i = bloques.length; i < nuevos.length; i++) {
+                    nuevos[i] = new Bloque();
+                }
+                bloques = nuevos;
+            }
+        }
+        Bloque bloque = bloques[ranura >>> BITS_BLOQUE];
+        bloque.ibans[ranura & MASCARA_BLOQUE] = cuenta.getIban();
+        bloque.saldos[ranura & MASCARA_BLOQUE] = cuenta.getSaldoCentimos();
+        bloque.tipos[ranura & MASCARA_BLOQUE] = tipo(cuenta);
+        numCuentas++;
+        insertarEnTabla(ranura);
+        if (estadisticas != null) {
+            estadisticas.cuentaAnadida(cuenta.getIban(), bloque.tipos[ranura & MASCARA_BLOQUE],
+                    bloque.saldos[ranura & MASCARA_BLOQUE]);
+        }
+        return ranura;
+    }
+
+    /**
+     * Añade una ranura a la tabla. Si la tabla pasa de la mitad de celdas usadas, se sustituye por una copia sin
+     * celdas borradas y, si hace falta, más grande.
+     */
+    private void insertarEnTabla(int ranura) {
+        int[] celdas = tabla;
+        if ((numCuentas + borradas) * 2 > celdas.length) {
+            int capacidad = celdas.length;
+            while (numCuentas * 4 > capacidad) {
+                capacidad *= 2;
+            }
+            int[] nuevas = nuevaTabla(capacidad);
+            for (int anterior : celdas) {
+                if (anterior >= 0) {
+                    colocar(nuevas, anterior);
+                }
+            }
+            colocar(nuevas, ranura);
+            borradas = 0;
+            tabla = nuevas;
+        } else {
+            colocar(celdas, ranura);
+        }
+    }
+
+    /**
+     * Escribe la ranura en la primera celda vacía o borrada a partir de la posición de su IBAN. La ranura ya tiene
+     * su IBAN, su tipo y su saldo, y la escritura de la celda los publica para quien la lea sin el monitor.
+     */
+    private void colocar(int[] celdas, int ranura) {
+        int mascara = celdas.length - 1;
+        int i = dispersar(iban(ranura)) & mascara;
+        while (celdas[i] >= 0) {
+            i = (i + 1) & mascara;
+        }
+        if (celdas[i] == BORRADA) {
+            borradas--;
+        }
+        CELDA.setRelease(celdas, i, ranura);
+    }
+
+    private void liberar(int ranura) {
+        Bloque bloque = bloques[ranura >>> BITS_BLOQUE];
+        if (estadisticas != null) {
+            estadisticas.cuentaQuitada(bloque.ibans[ranura & MASCARA_BLOQUE], bloque.tipos[ranura & MASCARA_BLOQUE],
+                    bloque.saldos[ranura & MASCARA_BLOQUE]);
+        }
+        bloque.saldos[ranura & MASCARA_BLOQUE] = 0;
+        bloque.tipos[ranura & MASCARA_BLOQUE] = LIBRE;
+        bloque.ibans[ranura & MASCARA_BLOQUE] = null;
+        numCuentas--;
+        if (numLibres == libres.length) {
+            libres = Arrays.copyOf(libres, libres.length * 2);
+        }
+        libres[numLibres++] = ranura;
+    }
+
+    /**
+     * Obtiene el tipo de una cuenta tal y como se guarda en la columna de tipos.
+     */
+    static byte tipo(CuentaBancaria cuenta) {
+        if (cuenta instanceof CuentaAhorro) {
+            return AHORRO;
+        } else if (cuenta instanceof CuentaCorrientePersonal) {
+            return CORRIENTE_PERSONAL;
+        } else if (cuenta instanceof CuentaCorrienteEmpresa) {
+            return CORRIENTE_EMPRESA;
+        }
+        return OTRO;
+    }
+
+    /**
+     * Obtiene el número de cuentas de las columnas.
+     *
+     * @return Número de cuentas.
+     */
+    public int numCuentas() {
+        construir();
+        return numCuentas;
+    }
+
+    /**
+     * Calcula la suma de los saldos de todas las cuentas.
+     *
+     * @return Saldo total en céntimos.
+     */
+    public long saldoTotalCentimos() {
+        construir();
+        Bloque[] recorrido = bloques;
+        return IntStream.range(0, recorrido.length).parallel()
+                .mapToLong(i -> sumar(recorrido[i].saldos))
+                .sum();
+    }
+
+    /**
+     * Calcula cuánto dinero deben al banco las cuentas en descubierto, es decir, la suma de los saldos negativos.
+     *
+     * @return Descubierto total en céntimos, positivo o 0.
+     */
+    public long descubiertoTotalCentimos() {
+        construir();
+        Bloque[] recorrido = bloques;
+        return -IntStream.range(0, recorrido.length).parallel()
+                .mapToLong(i -> sumarNegativos(recorrido[i].saldos))
+                .sum();
+    }
+
+    /**
+     * Cuenta las cuentas con saldo negativo.
+     *
+     * @return Número de cuentas en descubierto.
+     */
+    public long numCuentasEnDescubierto() {
+        construir();
+        Bloque[] recorrido = bloques;
+        return IntStream.range(0, recorrido.length).parallel()
+                .mapToLong(i -> contarNegativos(recorrido[i].saldos))
+                .sum();
+    }
+
+    /**
+     * Cuenta las cuentas de cada tipo.
+     *
+     * @return Número de cuentas de cada tipo, en el orden de {@link #TIPOS}.
+     */
+    public long[] contarPorTipo() {
+        construir();
+        Bloque[] recorrido = bloques;
+        long[] total = IntStream.range(0, recorrido.length).parallel()
+                .mapToObj(i -> contarTipos(recorrido[i].tipos))
+                .reduce(new long[OTRO + 1], ColumnasCuentas::sumarRecuentos);
+        return Arrays.copyOfRange(total, AHORRO, OTRO);
+    }
+
+    /**
+     * Calcula la suma de los saldos de las cuentas de cada tipo. Las {@link EstadisticasBanco} no la mantienen al
+     * día con cada operación, así que se calcula recorriendo en paralelo las columnas de saldos y de tipos.
+     *
+     * @return Saldo total en céntimos de cada tipo, en el orden de {@link #TIPOS}.
+     */
+    public long[] saldoPorTipoCentimos() {
+        construir();
+        Bloque[] recorrido = bloques;
+        long[] total = IntStream.range(0, recorrido.length).parallel()
+                .mapToObj(i -> sumarPorTipo(recorrido[i].tipos, recorrido[i].saldos))
+                .reduce(new long[OTRO + 1], ColumnasCuentas::sumarRecuentos);
+        return Arrays.copyOfRange(total, AHORRO, OTRO);
+    }
+
+    /**
+     * Recorre el IBAN y el saldo de todas las ranuras ocupadas, sin detener las operaciones: una ranura que se
+     * ocupa o se libera durante el recorrido puede aparecer o no.
+     *
+     * @param accion Acción que recibe el IBAN y el saldo en céntimos de cada cuenta.
+     */
+    void recorrerSaldos(ObjLongConsumer<String> accion) {
+        Bloque[] recorrido = bloques;
+        for (Bloque bloque : recorrido) {
+            for (int i = 0; i < TAMANIO_BLOQUE; i++) {
+                String iban = bloque.ibans[i];
+                if (iban != null) {
+                    accion.accept(iban, bloque.saldos[i]);
+                }
+            }
+        }
+    }
+
+    private static long sumar(long[] saldos) {
+        long total = 0;
+        for (long saldo : saldos) {
+            total += saldo;
+        }
+        return total;
+    }
+
+    private static long sumarNegativos(long[] saldos) {
+        long total = 0;
+        for (long saldo : saldos) {
+            total += Math.min(saldo, 0);
+        }
+        return total;
+    }
+
+    private static long contarNegativos(long[] saldos) {
+        long total = 0;
+        for (long saldo : saldos) {
+            // El bit de signo vale 1 solo si el saldo es negativo
+            total += saldo >>> 63;
+        }
+        return total;
+    }
+
+    private static long[] contarTipos(byte[] tipos) {
+        int[] recuento = new int[OTRO + 1];
+        for (byte tipo : tipos) {
+            recuento[tipo]++;
+        }
+        long[] resultado = new long[OTRO + 1];
+        for (int i = 0; i < recuento.length; i++) {
+            resultado[i] = recuento[i];
+        }
+        return resultado;
+    }
+
+    private static long[] sumarPorTipo(byte[] tipos, long[] saldos) {
+        // Las ranuras libres tienen saldo 0, así que se pueden sumar sin comprobar el tipo
+        long[] suma = new long[OTRO + 1];
+        for (int i = 0; i < tipos.length; i++) {
+            suma[tipos[i]] += saldos[i];
+        }
+        return suma;
+    }
+
+    private static long[] sumarRecuentos(long[] a, long[] b) {
+        long[] suma = new long[a.length];
+        for (int i = 0; i < suma.length; i++) {
+            suma[i] = a[i] + b[i];
+        }
+        return suma;
+    }
+}
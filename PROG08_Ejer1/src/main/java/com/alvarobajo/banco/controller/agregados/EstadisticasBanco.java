@@ -0,0 +1,222 @@
+package com.alvarobajo.banco.controller.agregados;
+
+import com.alvarobajo.banco.controller.AlmacenCuentas;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Clase que mantiene al día las estadísticas del banco: saldo total, número de cuentas de cada tipo, descubierto
+ * total y las cuentas con más y menos saldo.
+ *
+ * <p>Las estadísticas salen de unas {@link ColumnasCuentas} propias, que les pasan cada apertura, eliminación y
+ * cambio de saldo junto con el tipo y el saldo anterior que ya tenían en la ranura de la cuenta. Así no se guarda
+ * nada por cuenta fuera de las columnas, y un cambio de saldo solo suma la diferencia a unos contadores: no crea
+ * objetos ni toca ningún mapa. Consultarlas no recorre las cuentas, salvo el saldo por tipo, que se calcula
+ * recorriendo las columnas. Como las columnas, no se construyen hasta la primera consulta.</p>
+ *
+ * <p>Las sumas y los recuentos son {@link LongAdder}: cada hilo suma en su propia celda y las operaciones en
+ * paralelo no compiten por el mismo contador. Leer una suma cuesta lo mismo sea cual sea el número de cuentas.</p>
+ *
+ * <p>Las cuentas con más saldo y con menos se guardan en dos {@link ClasificacionSaldos} acotadas: solo las
+ * operaciones que afectan a las primeras cuentas de cada clasificación las modifican, y las {@code k} primeras se
+ * leen en O(k). Cuando una clasificación se queda corta, se vuelve a llenar recorriendo las columnas.</p>
+ *
+ * <p>Los distintos contadores se actualizan uno detrás de otro, de modo que una lectura hecha a la vez que una
+ * operación puede ver el saldo total ya cambiado y la clasificación todavía sin cambiar.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public final class EstadisticasBanco {
+
+    /**
+     * Saldo de una cuenta en la clasificación por saldo.
+     */
+    public static final class SaldoCuenta {
+        private final String iban;
+        private final long saldoCentimos;
+
+        SaldoCuenta(String iban, long saldoCentimos) {
+            this.iban = iban;
+            this.saldoCentimos = saldoCentimos;
+        }
+
+        /**
+         * Obtiene el IBAN de la cuenta.
+         *
+         * @return IBAN de la cuenta.
+         */
+        public String getIban() {
+            return iban;
+        }
+
+        /**
+         * Obtiene el saldo de la cuenta en céntimos.
+         *
+         * @return Saldo en céntimos.
+         */
+        public long getSaldoCentimos() {
+            return saldoCentimos;
+        }
+    }
+
+    private final ColumnasCuentas columnas;
+    private final ClasificacionSaldos mayores;
+    private final ClasificacionSaldos menores;
+    private final LongAdder saldoTotal = new LongAdder();
+    private final LongAdder descubiertoTotal = new LongAdder();
+    private final LongAdder enDescubierto = new LongAdder();
+    private final LongAdder[] porTipo = new LongAdder[ColumnasCuentas.TIPOS.length];
+
+    /**
+     * Constructor para inicializar las estadísticas de un almacén. No recorre el almacén ni se suscribe a él hasta
+     * la primera consulta.
+     *
+     * @param almacen Almacén de cuentas del banco.
+     */
+    public EstadisticasBanco(AlmacenCuentas almacen) {
+        for (int i = 0; i < porTipo.length; i++) {
+            porTipo[i] = new LongAdder();
+        }
+        columnas = new ColumnasCuentas(almacen, this);
+        mayores = new ClasificacionSaldos(true, columnas);
+        menores = new ClasificacionSaldos(false, columnas);
+    }
+
+    /**
+     * Añade a las estadísticas la cuenta a la que las columnas acaban de reservar una ranura.
+     */
+    void cuentaAnadida(String iban, byte tipo, long saldo) {
+        sumar(tipo, saldo);
+        mayores.actualizar(iban, ClasificacionSaldos.SIN_SALDO, saldo);
+        menores.actualizar(iban, ClasificacionSaldos.SIN_SALDO, saldo);
+    }
+
+    /**
+     * Aplica el cambio de saldo de una cuenta. Quien modifica el saldo tiene el cerrojo de la cuenta, así que los
+     * cambios de una misma cuenta llegan de uno en uno.
+     */
+    void saldoCambiado(String iban, byte tipo, long anterior, long nuevo) {
+        restar(tipo, anterior);
+        sumar(tipo, nuevo);
+        mayores.actualizar(iban, anterior, nuevo);
+        menores.actualizar(iban, anterior, nuevo);
+    }
+
+    /**
+     * Quita de las estadísticas la cuenta cuya ranura acaban de liberar las columnas.
+     */
+    void cuentaQuitada(String iban, byte tipo, long saldo) {
+        restar(tipo, saldo);
+        mayores.actualizar(iban, saldo, ClasificacionSaldos.SIN_SALDO);
+        menores.actualizar(iban, saldo, ClasificacionSaldos.SIN_SALDO);
+    }
+
+    private void sumar(byte tipo, long saldo) {
+        saldoTotal.add(saldo);
+        if (saldo < 0) {
+            descubiertoTotal.add(-saldo);
+            enDescubierto.increment();
+        }
+        if (tipo >= ColumnasCuentas.AHORRO && tipo <= porTipo.length) {
+            porTipo[tipo - 1].increment();
+        }
+    }
+
+    private void restar(byte tipo, long saldo) {
+        saldoTotal.add(-saldo);
+        if (saldo < 0) {
+            descubiertoTotal.add(saldo);
+            enDescubierto.decrement();
+        }
+        if (tipo >= ColumnasCuentas.AHORRO && tipo <= porTipo.length) {
+            porTipo[tipo - 1].decrement();
+        }
+    }
+
+    /**
+     * Obtiene el número de cuentas del banco.
+     *
+     * @return Número de cuentas.
+     */
+    public int numCuentas() {
+        return columnas.numCuentas();
+    }
+
+    /**
+     * Obtiene la suma de los saldos de todas las cuentas.
+     *
+     * @return Saldo total en céntimos.
+     */
+    public long saldoTotalCentimos() {
+        columnas.construir();
+        return saldoTotal.sum();
+    }
+
+    /**
+     * Obtiene cuánto dinero deben al banco las cuentas en descubierto, es decir, la suma de los saldos negativos.
+     *
+     * @return Descubierto total en céntimos, positivo o 0.
+     */
+    public long descubiertoTotalCentimos() {
+        columnas.construir();
+        return descubiertoTotal.sum();
+    }
+
+    /**
+     * Obtiene el número de cuentas con saldo negativo.
+     *
+     * @return Número de cuentas en descubierto.
+     */
+    public long numCuentasEnDescubierto() {
+        columnas.construir();
+        return enDescubierto.sum();
+    }
+
+    /**
+     * Obtiene el número de cuentas de cada tipo.
+     *
+     * @return Número de cuentas de cada tipo, en el orden de {@link ColumnasCuentas#TIPOS}.
+     */
+    public long[] contarPorTipo() {
+        columnas.construir();
+        long[] recuento = new long[porTipo.length];
+        for (int i = 0; i < recuento.length; i++) {
+            recuento[i] = porTipo[i].sum();
+        }
+        return recuento;
+    }
+
+    /**
+     * Obtiene la suma de los saldos de las cuentas de cada tipo. No se mantiene al día con cada operación como los
+     * demás totales: se calcula recorriendo las columnas ({@link ColumnasCuentas#saldoPorTipoCentimos()}), así que
+     * cuesta un recorrido en paralelo de los saldos y los tipos de todas las cuentas.
+     *
+     * @return Saldo total en céntimos de cada tipo, en el orden de {@link ColumnasCuentas#TIPOS}.
+     */
+    public long[] saldoPorTipoCentimos() {
+        return columnas.saldoPorTipoCentimos();
+    }
+
+    /**
+     * Obtiene las cuentas con más saldo.
+     *
+     * @param k Número máximo de cuentas.
+     * @return Lista con las cuentas, de más saldo a menos.
+     */
+    public List<SaldoCuenta> mayoresSaldos(int k) {
+        columnas.construir();
+        return mayores.primeras(k);
+    }
+
+    /**
+     * Obtiene las cuentas con menos saldo.
+     *
+     * @param k Número máximo de cuentas.
+     * @return Lista con las cuentas, de menos saldo a más.
+     */
+    public List<SaldoCuenta> menoresSaldos(int k) {
+        columnas.construir();
+        return menores.primeras(k);
+    }
+}
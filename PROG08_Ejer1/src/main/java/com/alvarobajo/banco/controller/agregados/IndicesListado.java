@@ -0,0 +1,270 @@
+package com.alvarobajo.banco.controller.agregados;
+
+import com.alvarobajo.banco.controller.AlmacenCuentas;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.ObservadorCuenta;
+import com.alvarobajo.banco.models.Persona;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Clase que mantiene las cuentas ordenadas por IBAN, por titular y por saldo para listarlas por páginas.
+ *
+ * <p>Cada orden tiene un índice con una clave por cuenta (el titular o el saldo, y el IBAN para desempatar) en un
+ * {@link ConcurrentSkipListSet}. Una página empieza justo después de la última clave de la página anterior
+ * ({@link PaginaCuentas}), así que obtenerla cuesta O(log n + tamaño de la página), no un recorrido del banco.
+ * Los índices guardan solo las claves: las cuentas se buscan por IBAN en el almacén al formar cada página, de modo
+ * que un {@link com.alvarobajo.banco.controller.AlmacenMapeado} no tiene que tener todas las cuentas en memoria.</p>
+ *
+ * <p>Cada índice se construye la primera vez que se pide una página en su orden y desde entonces se mantiene al
+ * día como {@link ObservadorCuenta} del almacén; hasta la primera página ni siquiera se suscribe al almacén. Los
+ * índices por IBAN y por titular solo cambian al abrir o eliminar cuentas y al cambiar de titular; el índice por
+ * saldo cambia con cada ingreso o retiro, así que un banco que nunca lista por saldo no paga ese coste.</p>
+ *
+ * <p>Mientras se construye un índice las cuentas pueden cambiar, y el recorrido puede dejar una clave ya
+ * desfasada. Al formar una página se comprueba que cada clave sigue correspondiendo a su cuenta; las que no se
+ * quitan del índice y se saltan.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class IndicesListado implements ObservadorCuenta {
+
+    /**
+     * Clave de una cuenta en un índice: texto, número y, para desempatar, IBAN. Cada orden usa solo los campos
+     * que le corresponden y deja los demás vacíos.
+     */
+    static final class Clave {
+        final String texto;
+        final long numero;
+        final String iban;
+
+        Clave(String texto, long numero, String iban) {
+            this.texto = texto;
+            this.numero = numero;
+            this.iban = iban;
+        }
+    }
+
+    private static final Comparator<Clave> ORDEN_CLAVES = new Comparator<Clave>() {
+        @Override
+        public int compare(Clave a, Clave b) {
+            int orden = a.texto.compareTo(b.texto);
+            if (orden == 0) {
+                orden = Long.compare(a.numero, b.numero);
+            }
+            return orden != 0 ? orden : a.iban.compareTo(b.iban);
+        }
+    };
+
+    /**
+     * Índice de un orden. Se construye con su propio monitor la primera vez que se usa.
+     */
+    private static final class Indice {
+        final ConcurrentSkipListSet<Clave> claves = new ConcurrentSkipListSet<>(ORDEN_CLAVES);
+        // Desde que está activo, los cambios de las cuentas se aplican al índice
+        volatile boolean activo;
+        volatile boolean construido;
+    }
+
+    private final AlmacenCuentas almacen;
+    private final Indice[] indices = new Indice[OrdenListado.values().length];
+    private boolean suscrito;
+
+    /**
+     * Constructor para inicializar los índices de un almacén. No se suscribe al almacén ni construye ningún índice
+     * hasta que se pide la primera página en su orden.
+     *
+     * @param almacen Almacén de cuentas del banco.
+     */
+    public IndicesListado(AlmacenCuentas almacen) {
+        this.almacen = almacen;
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = new Indice();
+        }
+    }
+
+    /**
+     * Obtiene una página del listado de cuentas.
+     *
+     * @param orden    Orden del listado.
+     * @param anterior Página anterior del mismo listado, o null para obtener la primera.
+     * @param tamanio  Número máximo de cuentas de la página.
+     * @return Página con las cuentas que siguen a la página anterior; vacía si no hay más cuentas.
+     * @throws IllegalArgumentException si el tamaño no es mayor que 0 o la página anterior es de otro orden.
+     */
+    public PaginaCuentas pagina(OrdenListado orden, PaginaCuentas anterior, int tamanio) {
+        if (tamanio <= 0) {
+            throw new IllegalArgumentException("El tamaño de la página debe ser mayor que 0: " + tamanio);
+        }
+        if (anterior != null && anterior.getOrden() != orden) {
+            throw new IllegalArgumentException("La página anterior es de un listado por " + anterior.getOrden().getDescripcion());
+        }
+        Indice indice = construido(orden);
+        NavigableSet<Clave> resto = anterior == null || anterior.getUltimaClave() == null ? indice.claves
+                : indice.claves.tailSet(anterior.getUltimaClave(), false);
+        Iterator<Clave> recorrido = resto.iterator();
+        List<CuentaBancaria> cuentas = new ArrayList<>(tamanio);
+        Clave ultimaClave = anterior != null ? anterior.getUltimaClave() : null;
+        while (cuentas.size() < tamanio && recorrido.hasNext()) {
+            Clave clave = recorrido.next();
+            CuentaBancaria cuenta = comprobar(indice, orden, clave);
+            if (cuenta != null) {
+                cuentas.add(cuenta);
+                ultimaClave = clave;
+            }
+        }
+        boolean ultima = true;
+        while (ultima && recorrido.hasNext()) {
+            ultima = comprobar(indice, orden, recorrido.next()) == null;
+        }
+        return new PaginaCuentas(orden, anterior == null ? 1 : anterior.getNumero() + 1, cuentas, ultima,
+                ultimaClave);
+    }
+
+    private Indice construido(OrdenListado orden) {
+        Indice indice = indices[orden.ordinal()];
+        if (!indice.construido) {
+            synchronized (indice) {
+                if (!indice.construido) {
+                    suscribir();
+                    // Se activa antes de recorrer el almacén para no perder las cuentas que cambian mientras tanto
+                    indice.activo = true;
+                    for (CuentaBancaria cuenta : almacen.valores()) {
+                        indice.claves.add(clave(orden, cuenta));
+                    }
+                    indice.construido = true;
+                }
+            }
+        }
+        return indice;
+    }
+
+    /**
+     * Se suscribe al almacén al construir el primer índice. Los índices que aún no están activos ignoran los avisos.
+     */
+    private synchronized void suscribir() {
+        if (!suscrito) {
+            almacen.suscribir(this);
+            suscrito = true;
+        }
+    }
+
+    /**
+     * Comprueba que la clave sigue correspondiendo a su cuenta. Si no, la quita del índice.
+     *
+     * @return Cuenta de la clave, o null si la clave estaba desfasada.
+     */
+    private CuentaBancaria comprobar(Indice indice, OrdenListado orden, Clave clave) {
+        CuentaBancaria cuenta = almacen.buscar(clave.iban);
+        if (cuenta != null && ORDEN_CLAVES.compare(clave(orden, cuenta), clave) == 0) {
+            return cuenta;
+        }
+        indice.claves.remove(clave);
+        // Si la cuenta acaba de volver a esa clave, su aviso pudo añadirla justo antes de quitarla
+        cuenta = almacen.buscar(clave.iban);
+        if (cuenta != null && ORDEN_CLAVES.compare(clave(orden, cuenta), clave) == 0) {
+            indice.claves.add(clave);
+        }
+        return null;
+    }
+
+    private static Clave clave(OrdenListado orden, CuentaBancaria cuenta) {
+        switch (orden) {
+            case TITULAR:
+                return claveTitular(cuenta.getTitular(), cuenta.getIban());
+            case SALDO:
+                return claveSaldo(cuenta.getSaldoCentimos(), cuenta.getIban());
+            case IBAN:
+            default:
+                return new Clave("", 0, cuenta.getIban());
+        }
+    }
+
+    private static Clave claveTitular(Persona titular, String iban) {
+        String texto = titular == null ? "" : (texto(titular.getApellido1()) + ' ' + texto(titular.getApellido2())
+                + ' ' + texto(titular.getNombre())).toLowerCase(Locale.ROOT);
+        return new Clave(texto, 0, iban);
+    }
+
+    private static String texto(String campo) {
+        return campo != null ? campo : "";
+    }
+
+    private static Clave claveSaldo(long saldo, String iban) {
+        // De más saldo a menos; los saldos están acotados, así que cambiarles el signo no desborda
+        return new Clave("", -saldo, iban);
+    }
+
+    private Indice activo(OrdenListado orden) {
+        Indice indice = indices[orden.ordinal()];
+        return indice.activo ? indice : null;
+    }
+
+    /**
+     * Añade la cuenta abierta a los índices activos.
+     *
+     * @param cuenta Cuenta abierta.
+     */
+    @Override
+    public void cuentaAbierta(CuentaBancaria cuenta) {
+        for (OrdenListado orden : OrdenListado.values()) {
+            Indice indice = activo(orden);
+            if (indice != null) {
+                indice.claves.add(clave(orden, cuenta));
+            }
+        }
+    }
+
+    /**
+     * Quita la cuenta eliminada de los índices activos.
+     *
+     * @param cuenta Cuenta eliminada.
+     */
+    @Override
+    public void cuentaEliminada(CuentaBancaria cuenta) {
+        for (OrdenListado orden : OrdenListado.values()) {
+            Indice indice = activo(orden);
+            if (indice != null) {
+                indice.claves.remove(clave(orden, cuenta));
+            }
+        }
+    }
+
+    /**
+     * Mueve la cuenta a su nuevo sitio en el índice por titular, si está activo.
+     *
+     * @param cuenta   Cuenta modificada.
+     * @param anterior Titular que tenía la cuenta antes del cambio.
+     * @param nuevo    Titular actual de la cuenta.
+     */
+    @Override
+    public void titularCambiado(CuentaBancaria cuenta, Persona anterior, Persona nuevo) {
+        Indice indice = activo(OrdenListado.TITULAR);
+        if (indice != null) {
+            indice.claves.remove(claveTitular(anterior, cuenta.getIban()));
+            indice.claves.add(claveTitular(nuevo, cuenta.getIban()));
+        }
+    }
+
+    /**
+     * Mueve la cuenta a su nuevo sitio en el índice por saldo, si está activo.
+     *
+     * @param cuenta   Cuenta modificada.
+     * @param anterior Saldo anterior en céntimos.
+     * @param nuevo    Saldo nuevo en céntimos.
+     */
+    @Override
+    public void saldoModificado(CuentaBancaria cuenta, long anterior, long nuevo) {
+        Indice indice = activo(OrdenListado.SALDO);
+        if (indice != null && anterior != nuevo) {
+            indice.claves.remove(claveSaldo(anterior, cuenta.getIban()));
+            indice.claves.add(claveSaldo(nuevo, cuenta.getIban()));
+        }
+    }
+}
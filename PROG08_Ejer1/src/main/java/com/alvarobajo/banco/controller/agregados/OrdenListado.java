@@ -0,0 +1,40 @@
+package com.alvarobajo.banco.controller.agregados;
+
+/**
+ * Orden en el que se recorren las cuentas en un listado por páginas (ver {@link IndicesListado}).
+ * A igualdad de titular o de saldo, las cuentas se ordenan por IBAN, así que el orden siempre es estable.
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public enum OrdenListado {
+
+    /**
+     * Por IBAN, de menor a mayor.
+     */
+    IBAN("IBAN"),
+
+    /**
+     * Por el primer apellido, el segundo y el nombre del titular, sin distinguir mayúsculas de minúsculas.
+     */
+    TITULAR("titular"),
+
+    /**
+     * Por saldo, de más saldo a menos.
+     */
+    SALDO("saldo");
+
+    private final String descripcion;
+
+    OrdenListado(String descripcion) {
+        this.descripcion = descripcion;
+    }
+
+    /**
+     * Obtiene la descripción del orden para mostrarla al usuario.
+     *
+     * @return Descripción del orden.
+     */
+    public String getDescripcion() {
+        return descripcion;
+    }
+}
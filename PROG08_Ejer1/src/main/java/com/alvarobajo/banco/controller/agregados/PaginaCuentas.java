@@ -0,0 +1,72 @@
+package com.alvarobajo.banco.controller.agregados;
+
+import com.alvarobajo.banco.models.CuentaBancaria;
+
+import java.util.List;
+
+/**
+ * Página de un listado de cuentas (ver {@link IndicesListado}).
+ *
+ * <p>La página hace de cursor: para obtener la siguiente se pasa la página actual, y el listado continúa a partir
+ * de la última cuenta de esta página. Así las páginas no se solapan ni se saltan cuentas aunque entretanto se abran
+ * o eliminen otras.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public final class PaginaCuentas {
+    private final OrdenListado orden;
+    private final int numero;
+    private final List<CuentaBancaria> cuentas;
+    private final boolean ultima;
+    // Clave de la última cuenta de la página en el índice, de la que parte la página siguiente
+    private final IndicesListado.Clave ultimaClave;
+
+    PaginaCuentas(OrdenListado orden, int numero, List<CuentaBancaria> cuentas, boolean ultima,
+                  IndicesListado.Clave ultimaClave) {
+        this.orden = orden;
+        this.numero = numero;
+        this.cuentas = List.copyOf(cuentas);
+        this.ultima = ultima;
+        this.ultimaClave = ultimaClave;
+    }
+
+    /**
+     * Obtiene el orden del listado.
+     *
+     * @return Orden del listado.
+     */
+    public OrdenListado getOrden() {
+        return orden;
+    }
+
+    /**
+     * Obtiene el número de la página, empezando por 1.
+     *
+     * @return Número de la página.
+     */
+    public int getNumero() {
+        return numero;
+    }
+
+    /**
+     * Obtiene las cuentas de la página, en el orden del listado.
+     *
+     * @return Lista no modificable con las cuentas; vacía si el banco no tiene cuentas.
+     */
+    public List<CuentaBancaria> getCuentas() {
+        return cuentas;
+    }
+
+    /**
+     * Indica si es la última página del listado.
+     *
+     * @return true si no hay más cuentas después de esta página.
+     */
+    public boolean isUltima() {
+        return ultima;
+    }
+
+    IndicesListado.Clave getUltimaClave() {
+        return ultimaClave;
+    }
+}
@@ -1,14 +1,14 @@
 package com.alvarobajo.banco.controller.cuentas;
 
+import com.alvarobajo.banco.controller.AlmacenMapeado;
 import com.alvarobajo.banco.controller.Banco;
 import com.alvarobajo.banco.controller.LecturaTeclado;
 import com.alvarobajo.banco.models.CuentaAhorro;
 import com.alvarobajo.banco.models.CuentaCorrienteEmpresa;
 import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.Dinero;
 import com.alvarobajo.banco.models.Persona;
 
-import java.util.Random;
-
 /**
  * Clase que proporciona métodos para la creación de diferentes tipos de cuentas bancarias.
  * Permite la creación de cuentas de ahorro, cuentas corrientes personales y cuentas corrientes de empresa.
@@ -23,7 +23,6 @@ public class CrearCuenta {
     private static final String MENSAJE_COMISION_MANTENIMIENTO = "Ingrese la comisión de mantenimiento:";
     private static final String MENSAJE_TIPO_INTERES_DESCUBIERTO = "Ingrese el tipo de interés por descubierto:";
     private static final String MENSAJE_MAXIMO_DESCUBIERTO = "Ingrese el máximo descubierto permitido:";
-    private static final String FORMATO_IBAN = "ES%010d";
 
     /**
      * Crea una cuenta de ahorro.
@@ -48,7 +47,7 @@ public class CrearCuenta {
     public static CuentaCorrientePersonal cuentaCorrientePersonal(Banco banco) {
         Persona titular = CrearPersona.crearPersona();
         double saldoInicial = obtenerSaldoInicial();
-        String listaEntidades = LecturaTeclado.recogerTexto(MENSAJE_LISTA_ENTIDADES);
+        String listaEntidades = obtenerListaEntidades();
         double comisionMantenimiento = obtenerComisionMantenimiento();
 
         return new CuentaCorrientePersonal(titular, saldoInicial, generarIBAN(banco), listaEntidades, comisionMantenimiento);
@@ -63,7 +62,7 @@ public class CrearCuenta {
     public static CuentaCorrienteEmpresa cuentaCorrienteEmpresa(Banco banco) {
         Persona titular = CrearPersona.crearPersona();
         double saldoInicial = obtenerSaldoInicial();
-        String listaEntidades = LecturaTeclado.recogerTexto(MENSAJE_LISTA_ENTIDADES);
+        String listaEntidades = obtenerListaEntidades();
         double tipoInteresDescubierto = obtenerTipoInteresDescubierto();
         double maximoDescubierto = obtenerMaximoDescubierto();
 
@@ -75,15 +74,27 @@ public class CrearCuenta {
         double saldoInicial;
         do {
             saldoInicial = LecturaTeclado.recogerDecimal(MENSAJE_SALDO);
-        } while (saldoInicial <= 0);
+        } while (!esValorValido(saldoInicial));
         return saldoInicial;
     }
 
+    private static String obtenerListaEntidades() {
+        String listaEntidades;
+        do {
+            listaEntidades = LecturaTeclado.recogerTexto(MENSAJE_LISTA_ENTIDADES);
+            if (!esListaEntidadesValida(listaEntidades)) {
+                System.out.println("La lista de entidades no puede ocupar más de "
+                        + AlmacenMapeado.MAXIMO_BYTES_LISTA_ENTIDADES + " bytes.");
+            }
+        } while (!esListaEntidadesValida(listaEntidades));
+        return listaEntidades;
+    }
+
     private static double obtenerTipoInteres() {
         double tipoInteres;
         do {
             tipoInteres = LecturaTeclado.recogerDecimal(MENSAJE_TIPO_INTERES);
-        } while (tipoInteres <= 0);
+        } while (!esValorValido(tipoInteres));
         return tipoInteres;
     }
 
@@ -91,7 +102,7 @@ public class CrearCuenta {
         double comisionMantenimiento;
         do {
             comisionMantenimiento = LecturaTeclado.recogerDecimal(MENSAJE_COMISION_MANTENIMIENTO);
-        } while (comisionMantenimiento <= 0);
+        } while (!esValorValido(comisionMantenimiento));
         return comisionMantenimiento;
     }
 
@@ -99,7 +110,7 @@ public class CrearCuenta {
         double tipoInteresDescubierto;
         do {
             tipoInteresDescubierto = LecturaTeclado.recogerDecimal(MENSAJE_TIPO_INTERES_DESCUBIERTO);
-        } while (tipoInteresDescubierto <= 0);
+        } while (!esValorValido(tipoInteresDescubierto));
         return tipoInteresDescubierto;
     }
 
@@ -107,16 +118,47 @@ public class CrearCuenta {
         double maximoDescubierto;
         do {
             maximoDescubierto = LecturaTeclado.recogerDecimal(MENSAJE_MAXIMO_DESCUBIERTO);
-        } while (maximoDescubierto <= 0);
+        } while (!esValorValido(maximoDescubierto));
         return maximoDescubierto;
     }
 
-    private static String generarIBAN(Banco banco) {
-        String nuevoIBAN;
-        do {
-            nuevoIBAN = String.format(FORMATO_IBAN, new Random().nextInt(Integer.MAX_VALUE));
-        } while (banco.estaIBANEnUso(nuevoIBAN));
+    /**
+     * Comprueba si un importe o un tipo es válido para abrir una cuenta: debe ser mayor que 0 y no superar
+     * {@link Dinero#MAXIMO_EUROS}, para que los importes se puedan guardar en céntimos.
+     * Es la regla que aplican tanto la creación interactiva como la importación de cuentas.
+     *
+     * @param valor Valor a comprobar.
+     * @return true si el valor es válido; false, en caso contrario.
+     */
+    public static boolean esValorValido(double valor) {
+        return valor > 0 && valor <= Dinero.MAXIMO_EUROS;
+    }
+
+    /**
+     * Comprueba si una lista de entidades autorizadas cabe en cualquier almacén de cuentas: el archivo proyectado
+     * ({@link AlmacenMapeado}) solo tiene sitio para {@value AlmacenMapeado#MAXIMO_BYTES_LISTA_ENTIDADES} bytes.
+     * Es la regla que aplican tanto la creación interactiva como la importación de cuentas.
+     *
+     * @param listaEntidades Lista a comprobar.
+     * @return true si cabe; false, en caso contrario (también si es null).
+     */
+    public static boolean esListaEntidadesValida(String listaEntidades) {
+        return CrearPersona.cabe(listaEntidades, AlmacenMapeado.MAXIMO_BYTES_LISTA_ENTIDADES);
+    }
+
+    /**
+     * Comprueba si un IBAN indicado por el usuario (por ejemplo, al importar cuentas) cabe en cualquier almacén de
+     * cuentas: el archivo proyectado ({@link AlmacenMapeado}) solo tiene sitio para
+     * {@value AlmacenMapeado#MAXIMO_BYTES_IBAN} bytes, lo mismo que el IBAN más largo permitido.
+     *
+     * @param iban IBAN a comprobar.
+     * @return true si cabe; false, en caso contrario (también si es null).
+     */
+    public static boolean esIbanValido(String iban) {
+        return CrearPersona.cabe(iban, AlmacenMapeado.MAXIMO_BYTES_IBAN);
+    }
 
-        return nuevoIBAN;
+    static String generarIBAN(Banco banco) {
+        return banco.generarIban();
     }
 }
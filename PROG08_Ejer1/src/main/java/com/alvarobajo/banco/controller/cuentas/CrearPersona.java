@@ -1,8 +1,12 @@
 package com.alvarobajo.banco.controller.cuentas;
 
+import com.alvarobajo.banco.controller.AlmacenMapeado;
 import com.alvarobajo.banco.controller.LecturaTeclado;
 import com.alvarobajo.banco.models.Persona;
 
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
 /**
  * Clase que proporciona métodos para la creación de objetos Persona con datos ingresados por el usuario.
  *
@@ -15,6 +19,10 @@ import com.alvarobajo.banco.models.Persona;
  */
 public class CrearPersona {
 
+    // Se compila una sola vez: importar cuentas valida cientos de miles de DNI seguidos
+    private static final Pattern FORMATO_DNI = Pattern.compile("\\d{8}[a-zA-Z]");
+    private static final Pattern ESPACIOS = Pattern.compile("\\s+");
+
     /**
      * Crea un objeto Persona con datos ingresados por el usuario.
      *
@@ -30,7 +38,7 @@ public class CrearPersona {
     }
 
     /**
-     * Obtiene un texto ingresado por el usuario, asegurándose de que no esté vacío.
+     * Obtiene un texto ingresado por el usuario, asegurándose de que no esté vacío y de que no sea demasiado largo.
      *
      * @param mensaje Mensaje a mostrar al usuario.
      * @return Texto ingresado por el usuario.
@@ -38,12 +46,15 @@ public class CrearPersona {
     private static String obtenerTexto(String mensaje) {
         String texto;
         do {
-            texto = LecturaTeclado.recogerTexto(mensaje + " (no puede estar vacío):");
+            texto = capitalizarCadaPalabra(LecturaTeclado.recogerTexto(mensaje + " (no puede estar vacío):"));
             if (texto.isEmpty()) {
                 System.out.println("Por favor, ingrese un valor válido.");
+            } else if (!esNombreValido(texto)) {
+                System.out.println("El texto no puede ocupar más de " + AlmacenMapeado.MAXIMO_BYTES_NOMBRE
+                        + " bytes.");
             }
-        } while (texto.isEmpty());
-        return capitalizarCadaPalabra(texto);
+        } while (texto.isEmpty() || !esNombreValido(texto));
+        return texto;
     }
 
     /**
@@ -52,13 +63,13 @@ public class CrearPersona {
      * @param texto Texto a capitalizar.
      * @return Texto con la primera letra de cada palabra en mayúscula.
      */
-    private static String capitalizarCadaPalabra(String texto) {
+    static String capitalizarCadaPalabra(String texto) {
         if (texto.isEmpty()) {
             return texto;
         }
 
         // Divide el texto en palabras y capitaliza la primera letra de cada palabra
-        String[] palabras = texto.split("\\s+");
+        String[] palabras = ESPACIOS.split(texto);
         StringBuilder resultado = new StringBuilder();
 
         for (String palabra : palabras) {
@@ -89,16 +100,13 @@ public class CrearPersona {
     }
 
     /**
-     * Valida si un DNI tiene el formato correcto.
+     * Valida si un DNI tiene el formato correcto y, si no lo tiene, muestra el motivo.
      *
      * @param dni DNI a validar.
      * @return true si el formato es válido, false de lo contrario.
      */
     private static boolean validarDNI(String dni) {
-        // Utilizar una expresión regular para validar el formato del DNI
-        String regex = "\\d{8}[a-zA-Z]";
-
-        if (!dni.matches(regex)) {
+        if (!esDniValido(dni)) {
             System.out.println("El DNI debe tener 8 números seguidos por una letra.");
             return false;
         }
@@ -106,4 +114,35 @@ public class CrearPersona {
         // La validación fue exitosa
         return true;
     }
+
+    /**
+     * Comprueba si un DNI tiene el formato correcto (8 números seguidos por una letra), sin mostrar nada.
+     * Es la regla que aplican tanto la creación interactiva como la importación de cuentas.
+     *
+     * @param dni DNI a comprobar.
+     * @return true si el formato es válido, false de lo contrario (también si el DNI es null).
+     */
+    public static boolean esDniValido(String dni) {
+        return dni != null && FORMATO_DNI.matcher(dni).matches();
+    }
+
+    /**
+     * Comprueba si un nombre o un apellido cabe en cualquier almacén de cuentas: el archivo proyectado
+     * ({@link AlmacenMapeado}) solo tiene sitio para {@value AlmacenMapeado#MAXIMO_BYTES_NOMBRE} bytes, y se aplica
+     * el mismo límite en todos los modos para que las cuentas se puedan llevar de uno a otro.
+     * Es la regla que aplican tanto la creación interactiva como la importación de cuentas.
+     *
+     * @param texto Nombre o apellido a comprobar, ya capitalizado.
+     * @return true si cabe, false de lo contrario (también si es null).
+     */
+    public static boolean esNombreValido(String texto) {
+        return cabe(texto, AlmacenMapeado.MAXIMO_BYTES_NOMBRE);
+    }
+
+    /**
+     * Comprueba si un texto ocupa en UTF-8 como mucho los bytes indicados.
+     */
+    static boolean cabe(String texto, int maximoBytes) {
+        return texto != null && texto.getBytes(StandardCharsets.UTF_8).length <= maximoBytes;
+    }
 }
@@ -0,0 +1,310 @@
+package com.alvarobajo.banco.controller.cuentas;
+
+import com.alvarobajo.banco.controller.Banco;
+import com.alvarobajo.banco.controller.exportacion.FormatoExportacion;
+import com.alvarobajo.banco.controller.metricas.RegistroMetricas;
+import com.alvarobajo.banco.models.CuentaBancaria;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Clase que ejecuta un archivo de comandos sobre el banco sin pasar por el menú, para los trabajos programados.
+ *
+ * <p>Cada línea del archivo es un comando; las líneas vacías y las que empiezan por {@code #} se ignoran. Los
+ * argumentos se separan con espacios:</p>
+ * <ul>
+ *     <li>{@code abrir {json}}: abre una cuenta. El resto de la línea es un objeto JSON con los mismos campos y
+ *     reglas que una línea de la importación en JSON Lines ({@link ImportadorCuentas}); si no trae IBAN se genera
+ *     uno.</li>
+ *     <li>{@code ingresar IBAN cantidad} y {@code retirar IBAN cantidad}: la cantidad va en euros, con punto
+ *     decimal.</li>
+ *     <li>{@code consultar IBAN}: escribe en la salida el IBAN y el saldo de la cuenta.</li>
+ *     <li>{@code eliminar IBAN}: elimina la cuenta si su saldo es 0.</li>
+ *     <li>{@code exportar formato [archivo]}: el formato es {@code LISTADO} (listado de clientes) o uno de
+ *     {@link FormatoExportacion}. Sin archivo se usa el directorio de salida del banco.</li>
+ *     <li>{@code metricas [archivo]}: sin archivo, escribe en la salida el resumen de las métricas de rendimiento
+ *     ({@link RegistroMetricas}); con archivo, las exporta a él en el formato de texto de Prometheus.</li>
+ * </ul>
+ *
+ * <p>No se muestran mensajes por cada operación: en la salida solo se escriben los saldos consultados, las
+ * cuentas abiertas (con su IBAN) y los comandos que fallan, con su número de línea. La salida se escribe a
+ * través de un búfer y el resumen se devuelve al terminar ({@link ResultadoComandos}). Un comando que falla no
+ * detiene la ejecución.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class EjecutorComandos {
+
+    /**
+     * Nombres de los comandos, en el orden en que aparecen en el resumen.
+     */
+    static final String[] COMANDOS = {"abrir", "ingresar", "retirar", "consultar", "eliminar", "exportar",
+            "metricas"};
+    private static final int ABRIR = 0;
+    private static final int INGRESAR = 1;
+    private static final int RETIRAR = 2;
+    private static final int CONSULTAR = 3;
+    private static final int ELIMINAR = 4;
+    private static final int EXPORTAR = 5;
+    private static final int METRICAS = 6;
+
+    private static final String LISTADO = "LISTADO";
+    private static final int MAXIMO_ARGUMENTOS = 3;
+
+    private final Banco banco;
+    private final Writer salida;
+    private final long[] correctos = new long[COMANDOS.length];
+    private final long[] fallidos = new long[COMANDOS.length];
+    // Argumentos del comando actual; se reutiliza en cada línea
+    private final String[] argumentos = new String[MAXIMO_ARGUMENTOS + 1];
+    private long linea;
+    private long desconocidos;
+
+    private EjecutorComandos(Banco banco, Writer salida) {
+        this.banco = banco;
+        this.salida = salida;
+    }
+
+    /**
+     * Ejecuta los comandos de un archivo.
+     *
+     * @param banco   Banco sobre el que se ejecutan los comandos.
+     * @param archivo Archivo de comandos en UTF-8.
+     * @param salida  Destino de los saldos consultados y de los errores. No se cierra.
+     * @return Resumen de la ejecución.
+     * @throws IOException si no se puede leer el archivo o escribir en la salida.
+     */
+    public static ResultadoComandos ejecutar(Banco banco, Path archivo, Writer salida) throws IOException {
+        try (BufferedReader lector = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            return ejecutar(banco, lector, salida);
+        }
+    }
+
+    /**
+     * Ejecuta los comandos que se leen de un lector, por ejemplo la entrada estándar.
+     *
+     * @param banco  Banco sobre el que se ejecutan los comandos.
+     * @param lector Lector de los comandos, uno por línea.
+     * @param salida Destino de los saldos consultados y de los errores. No se cierra.
+     * @return Resumen de la ejecución.
+     * @throws IOException si no se puede leer de la entrada o escribir en la salida.
+     */
+    public static ResultadoComandos ejecutar(Banco banco, BufferedReader lector, Writer salida) throws IOException {
+        long inicio = System.nanoTime();
+        EjecutorComandos ejecutor = new EjecutorComandos(banco, salida);
+        String texto;
+        while ((texto = lector.readLine()) != null) {
+            ejecutor.linea++;
+            ejecutor.ejecutar(texto);
+        }
+        salida.flush();
+        return new ResultadoComandos(COMANDOS, ejecutor.correctos, ejecutor.fallidos, ejecutor.desconocidos,
+                (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    private void ejecutar(String texto) throws IOException {
+        int inicio = saltarEspacios(texto, 0);
+        if (inicio == texto.length() || texto.charAt(inicio) == '#') {
+            return;
+        }
+        int fin = finDePalabra(texto, inicio);
+        int comando = comando(texto.substring(inicio, fin));
+        if (comando < 0) {
+            desconocidos++;
+            error("Comando desconocido", texto);
+            return;
+        }
+        String motivo;
+        try {
+            motivo = comando == ABRIR ? abrir(texto.substring(fin).trim()) : ejecutar(comando, texto, fin);
+        } catch (IllegalArgumentException e) {
+            motivo = e.getMessage();
+        } catch (RuntimeException e) {
+            motivo = "Error al ejecutar el comando: " + e.getMessage();
+        }
+        if (motivo == null) {
+            correctos[comando]++;
+        } else {
+            fallidos[comando]++;
+            error(motivo, texto);
+        }
+    }
+
+    private static int comando(String nombre) {
+        for (int i = 0; i < COMANDOS.length; i++) {
+            if (COMANDOS[i].equalsIgnoreCase(nombre)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Ejecuta un comando distinto de {@code abrir}.
+     *
+     * @return null si el comando se ejecutó; si no, el motivo del error.
+     */
+    private String ejecutar(int comando, String texto, int desde) throws IOException {
+        int n = separarArgumentos(texto, desde);
+        switch (comando) {
+            case INGRESAR:
+            case RETIRAR: {
+                if (n != 2) {
+                    return "Se esperaba: " + COMANDOS[comando] + " IBAN cantidad";
+                }
+                CuentaBancaria cuenta = banco.buscarCuentaPorIBAN(argumentos[0]);
+                if (cuenta == null) {
+                    return "No existe la cuenta " + argumentos[0];
+                }
+                double cantidad = cantidad(argumentos[1]);
+                if (comando == INGRESAR) {
+                    return OperarCuenta.ingresar(cuenta, cantidad) ? null : "Cantidad no válida: " + argumentos[1];
+                }
+                return OperarCuenta.retirar(cuenta, cantidad) ? null
+                        : "Cantidad no válida o saldo insuficiente: " + argumentos[1];
+            }
+            case CONSULTAR: {
+                if (n != 1) {
+                    return "Se esperaba: consultar IBAN";
+                }
+                CuentaBancaria cuenta = banco.buscarCuentaPorIBAN(argumentos[0]);
+                if (cuenta == null) {
+                    return "No existe la cuenta " + argumentos[0];
+                }
+                salida.write(cuenta.getIban());
+                salida.write(' ');
+                salida.write(Double.toString(cuenta.getSaldo()));
+                salida.write('\n');
+                return null;
+            }
+            case ELIMINAR:
+                if (n != 1) {
+                    return "Se esperaba: eliminar IBAN";
+                }
+                return banco.eliminarCuenta(argumentos[0]) ? null
+                        : "No existe la cuenta o su saldo no es 0: " + argumentos[0];
+            case METRICAS:
+                if (n > 1) {
+                    return "Se esperaba: metricas [archivo]";
+                }
+                return metricas(n == 1 ? argumentos[0] : null);
+            case EXPORTAR:
+            default:
+                if (n < 1 || n > 2) {
+                    return "Se esperaba: exportar formato [archivo]";
+                }
+                return exportar(argumentos[0], n == 2 ? argumentos[1] : null);
+        }
+    }
+
+    private String abrir(String json) throws IOException {
+        if (json.isEmpty()) {
+            return "Se esperaba: abrir {json}";
+        }
+        CuentaBancaria cuenta = ImportadorCuentas.cuentaDesdeJson(banco, json);
+        banco.abrirCuenta(cuenta);
+        salida.write(cuenta.getIban());
+        salida.write('\n');
+        return null;
+    }
+
+    private String exportar(String formato, String archivo) throws IOException {
+        Path destino;
+        try {
+            destino = archivo != null ? Paths.get(archivo) : null;
+        } catch (InvalidPathException e) {
+            return "Ruta no válida: " + archivo;
+        }
+        // La exportación muestra sus propios mensajes; se vacía antes el búfer para no desordenar la salida
+        salida.flush();
+        String nombre = formato.toUpperCase(Locale.ROOT);
+        if (nombre.equals(LISTADO)) {
+            if (destino != null) {
+                banco.generarListadoClientes(destino);
+            } else {
+                banco.generarListadoClientes();
+            }
+            return null;
+        }
+        FormatoExportacion formatoExportacion;
+        try {
+            formatoExportacion = FormatoExportacion.valueOf(nombre);
+        } catch (IllegalArgumentException e) {
+            return "Formato desconocido: " + formato;
+        }
+        boolean exportadas = destino != null ? banco.exportarCuentas(formatoExportacion, destino)
+                : banco.exportarCuentas(formatoExportacion);
+        return exportadas ? null : "No se pudieron exportar las cuentas";
+    }
+
+    private String metricas(String archivo) throws IOException {
+        if (archivo == null) {
+            salida.write(RegistroMetricas.resumen());
+            return null;
+        }
+        Path destino;
+        try {
+            destino = Paths.get(archivo);
+        } catch (InvalidPathException e) {
+            return "Ruta no válida: " + archivo;
+        }
+        salida.flush();
+        return banco.exportarMetricas(destino) ? null : "No se pudieron exportar las métricas";
+    }
+
+    private static double cantidad(String texto) {
+        try {
+            return Double.parseDouble(texto);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("La cantidad no es un número: " + texto);
+        }
+    }
+
+    /**
+     * Separa en {@link #argumentos} las palabras de la línea a partir de una posición.
+     *
+     * @return Número de argumentos, o {@code MAXIMO_ARGUMENTOS + 1} si hay demasiados.
+     */
+    private int separarArgumentos(String texto, int desde) {
+        int n = 0;
+        int i = saltarEspacios(texto, desde);
+        while (i < texto.length() && n <= MAXIMO_ARGUMENTOS) {
+            int fin = finDePalabra(texto, i);
+            argumentos[n++] = texto.substring(i, fin);
+            i = saltarEspacios(texto, fin);
+        }
+        return n;
+    }
+
+    private static int saltarEspacios(String texto, int i) {
+        while (i < texto.length() && Character.isWhitespace(texto.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private static int finDePalabra(String texto, int i) {
+        while (i < texto.length() && !Character.isWhitespace(texto.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private void error(String motivo, String texto) throws IOException {
+        salida.write("Línea ");
+        salida.write(Long.toString(linea));
+        salida.write(": ");
+        salida.write(motivo);
+        salida.write(" [");
+        salida.write(texto.trim());
+        salida.write("]\n");
+    }
+}
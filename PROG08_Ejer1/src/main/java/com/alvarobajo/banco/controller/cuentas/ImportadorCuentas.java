@@ -0,0 +1,629 @@
+package com.alvarobajo.banco.controller.cuentas;
+
+import com.alvarobajo.banco.controller.AlmacenCuentas;
+import com.alvarobajo.banco.controller.AlmacenMapeado;
+import com.alvarobajo.banco.controller.Banco;
+import com.alvarobajo.banco.models.CuentaAhorro;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorrienteEmpresa;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.Persona;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Clase que importa cuentas bancarias desde un archivo CSV o JSON Lines (por ejemplo, una cartera migrada).
+ *
+ * <p>El archivo se lee registro a registro, sin cargarlo entero en memoria. Los formatos son los mismos que
+ * genera la exportación ({@link com.alvarobajo.banco.controller.exportacion.EscritorCsv} y
+ * {@link com.alvarobajo.banco.controller.exportacion.EscritorJsonLineas}), así que un archivo exportado se puede
+ * volver a importar: el CSV debe tener fila de cabecera (las columnas pueden ir en cualquier orden) y cada línea
+ * del JSON Lines es un objeto con los datos del titular en {@code titular}. Se usa JSON Lines si la extensión
+ * del archivo es {@code .jsonl} o {@code .json}, y CSV en cualquier otro caso.</p>
+ *
+ * <p>Cada registro se valida con las mismas reglas que la creación interactiva: el DNI con
+ * {@link CrearPersona#esDniValido(String)}, los importes y tipos con {@link CrearCuenta#esValorValido(double)},
+ * y los nombres y la lista de entidades no pueden estar vacíos ni ser más largos de lo que cabe en cualquier almacén
+ * ({@link CrearPersona#esNombreValido(String)}, {@link CrearCuenta#esListaEntidadesValida(String)} y
+ * {@link CrearCuenta#esIbanValido(String)} para el IBAN). Los nombres se capitalizan igual que al crearlos
+ * por teclado. Si el registro no trae IBAN se genera uno libre; si lo trae, no puede estar ya en uso.</p>
+ *
+ * <p>Las cuentas válidas se abren en el banco en lotes de {@value #CUENTAS_POR_LOTE} con
+ * {@link Banco#abrirCuentas}. Los registros rechazados se escriben en un informe CSV con el número de registro,
+ * el motivo y el contenido original.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class ImportadorCuentas {
+
+    /**
+     * Número de cuentas que se abren en el banco de una vez.
+     */
+    public static final int CUENTAS_POR_LOTE = 10_000;
+
+    private static final String CABECERA_ERRORES = "registro,motivo,contenido";
+
+    // Campos que se leen de cada registro; se guardan en un array en este orden para no crear un mapa por registro
+    private static final String[] CAMPOS = {"tipo", "iban", "nombre", "apellido1", "apellido2", "dni", "saldo",
+            "tipoInteres", "listaEntidades", "comisionMantenimiento", "tipoInteresDescubierto", "maximoDescubierto"};
+    private static final int TIPO = 0;
+    private static final int IBAN = 1;
+    private static final int NOMBRE = 2;
+    private static final int APELLIDO1 = 3;
+    private static final int APELLIDO2 = 4;
+    private static final int DNI = 5;
+    private static final int SALDO = 6;
+    private static final int TIPO_INTERES = 7;
+    private static final int LISTA_ENTIDADES = 8;
+    private static final int COMISION_MANTENIMIENTO = 9;
+    private static final int TIPO_INTERES_DESCUBIERTO = 10;
+    private static final int MAXIMO_DESCUBIERTO = 11;
+    private static final Map<String, Integer> INDICE_CAMPOS = new HashMap<>();
+
+    static {
+        for (int i = 0; i < CAMPOS.length; i++) {
+            INDICE_CAMPOS.put(CAMPOS[i], i);
+        }
+    }
+
+    private final Banco banco;
+    private final Path archivoErrores;
+    private final List<CuentaBancaria> lote = new ArrayList<>(CUENTAS_POR_LOTE);
+    private final long[] registroDeLote = new long[CUENTAS_POR_LOTE];
+    private final Set<String> ibanesDelLote = new HashSet<>();
+    private Writer errores;
+    private long leidos;
+    private long importadas;
+    private long rechazados;
+
+    private ImportadorCuentas(Banco banco, Path archivoErrores) {
+        this.banco = banco;
+        this.archivoErrores = archivoErrores;
+    }
+
+    /**
+     * Importa las cuentas de un archivo. El informe de errores, si hace falta, se crea junto al archivo con el
+     * sufijo {@code .errores.csv}.
+     *
+     * @param banco   Banco en el que se abrirán las cuentas.
+     * @param archivo Archivo CSV o JSON Lines.
+     * @return Resultado de la importación.
+     * @throws IOException si no se puede leer el archivo o escribir el informe de errores.
+     */
+    public static ResultadoImportacion importar(Banco banco, Path archivo) throws IOException {
+        return importar(banco, archivo, archivo.resolveSibling(archivo.getFileName() + ".errores.csv"));
+    }
+
+    /**
+     * Importa las cuentas de un archivo, escribiendo los registros rechazados en el informe indicado.
+     * El informe solo se crea si se rechaza algún registro.
+     *
+     * @param banco          Banco en el que se abrirán las cuentas.
+     * @param archivo        Archivo CSV o JSON Lines.
+     * @param archivoErrores Informe de errores; se sobrescribe si existe.
+     * @return Resultado de la importación.
+     * @throws IOException si no se puede leer el archivo o escribir el informe de errores.
+     */
+    public static ResultadoImportacion importar(Banco banco, Path archivo, Path archivoErrores) throws IOException {
+        String nombre = archivo.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean jsonLineas = nombre.endsWith(".jsonl") || nombre.endsWith(".json");
+        long inicio = System.nanoTime();
+        ImportadorCuentas importador = new ImportadorCuentas(banco, archivoErrores);
+        try (BufferedReader lector = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            if (jsonLineas) {
+                importador.leerJsonLineas(lector);
+            } else {
+                importador.leerCsv(lector);
+            }
+            importador.abrirLote();
+        } finally {
+            if (importador.errores != null) {
+                importador.errores.close();
+            }
+        }
+        return new ResultadoImportacion(importador.leidos, importador.importadas, importador.rechazados,
+                importador.errores != null ? archivoErrores : null, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    // ---------------------------------------------------------------- Lectura de los formatos
+
+    private void leerCsv(BufferedReader lector) throws IOException {
+        LectorCsv csv = new LectorCsv(lector);
+        List<String> cabecera = csv.siguiente();
+        if (cabecera == null) {
+            return;
+        }
+        // Posición en CAMPOS de cada columna de la cabecera, o -1 si la columna no se usa
+        int[] columnas = new int[cabecera.size()];
+        for (int i = 0; i < columnas.length; i++) {
+            columnas[i] = INDICE_CAMPOS.getOrDefault(cabecera.get(i).trim(), -1);
+        }
+        List<String> valores;
+        while ((valores = csv.siguiente()) != null) {
+            leidos++;
+            if (valores.size() != columnas.length) {
+                rechazar(leidos, "El registro tiene " + valores.size() + " campos y la cabecera " + columnas.length,
+                        csv.get());
+                continue;
+            }
+            String[] campos = new String[CAMPOS.length];
+            for (int i = 0; i < columnas.length; i++) {
+                if (columnas[i] >= 0) {
+                    campos[columnas[i]] = valores.get(i);
+                }
+            }
+            procesar(campos, csv);
+        }
+    }
+
+    private void leerJsonLineas(BufferedReader lector) throws IOException {
+        String linea;
+        while ((linea = lector.readLine()) != null) {
+            if (linea.isBlank()) {
+                continue;
+            }
+            leidos++;
+            String[] campos;
+            try {
+                campos = new LectorJson(linea).objeto();
+            } catch (IllegalArgumentException e) {
+                rechazar(leidos, "JSON no válido: " + e.getMessage(), linea);
+                continue;
+            }
+            String original = linea;
+            procesar(campos, () -> original);
+        }
+    }
+
+    // ---------------------------------------------------------------- Validación y lotes
+
+    /**
+     * Valida un registro y, si es correcto, añade su cuenta al lote. El texto original solo se pide si el
+     * registro se rechaza.
+     */
+    private void procesar(String[] campos, Supplier<String> original) throws IOException {
+        CuentaBancaria cuenta;
+        try {
+            cuenta = construir(banco, campos, ibanesDelLote);
+        } catch (IllegalArgumentException e) {
+            rechazar(leidos, e.getMessage(), original.get());
+            return;
+        }
+        if (!ibanesDelLote.add(AlmacenCuentas.normalizarIban(cuenta.getIban()))) {
+            rechazar(leidos, "El IBAN " + cuenta.getIban() + " está repetido en el archivo", original.get());
+            return;
+        }
+        registroDeLote[lote.size()] = leidos;
+        lote.add(cuenta);
+        if (lote.size() == CUENTAS_POR_LOTE) {
+            abrirLote();
+        }
+    }
+
+    private void abrirLote() throws IOException {
+        if (lote.isEmpty()) {
+            return;
+        }
+        List<CuentaBancaria> noAbiertas = banco.abrirCuentas(lote);
+        importadas += lote.size() - noAbiertas.size();
+        // Otro hilo pudo abrir el mismo IBAN entre la validación y la apertura del lote
+        if (!noAbiertas.isEmpty()) {
+            Set<CuentaBancaria> rechazadas = Collections.newSetFromMap(new IdentityHashMap<>());
+            rechazadas.addAll(noAbiertas);
+            for (int i = 0; i < lote.size(); i++) {
+                CuentaBancaria cuenta = lote.get(i);
+                if (rechazadas.contains(cuenta)) {
+                    rechazar(registroDeLote[i], "El IBAN " + cuenta.getIban() + " ya está en uso", cuenta.getIban());
+                }
+            }
+        }
+        lote.clear();
+        ibanesDelLote.clear();
+    }
+
+    /**
+     * Construye la cuenta descrita por un objeto JSON, con los mismos campos y reglas que una línea de un archivo
+     * JSON Lines. La usan {@link EjecutorComandos} y el servidor HTTP para abrir cuentas de una en una.
+     *
+     * @param banco Banco en el que se abrirá la cuenta, para generar o comprobar el IBAN.
+     * @param json  Objeto JSON con los datos de la cuenta.
+     * @return Cuenta construida, aún sin abrir en el banco.
+     * @throws IllegalArgumentException con el motivo si el objeto no es válido.
+     */
+    public static CuentaBancaria cuentaDesdeJson(Banco banco, String json) {
+        return construir(banco, new LectorJson(json).objeto(), Collections.emptySet());
+    }
+
+    /**
+     * Construye la cuenta de un registro aplicando las reglas de la creación interactiva.
+     *
+     * @param reservados IBAN normalizados que ya tienen otras cuentas del mismo lote y no se pueden generar.
+     * @throws IllegalArgumentException con el motivo si el registro no es válido.
+     */
+    private static CuentaBancaria construir(Banco banco, String[] campos, Set<String> reservados) {
+        String tipo = obligatorio(campos, TIPO).toUpperCase(Locale.ROOT);
+        String dni = obligatorio(campos, DNI);
+        if (!CrearPersona.esDniValido(dni)) {
+            throw new IllegalArgumentException("El DNI " + dni + " no tiene 8 números seguidos por una letra");
+        }
+        String apellido2 = texto(campos, APELLIDO2);
+        Persona titular = new Persona(nombre(obligatorio(campos, NOMBRE), NOMBRE),
+                nombre(obligatorio(campos, APELLIDO1), APELLIDO1),
+                apellido2 == null ? null : nombre(apellido2, APELLIDO2), dni);
+        double saldo = valor(campos, SALDO);
+        String iban = iban(banco, campos, reservados);
+        switch (tipo) {
+            case "AHORRO":
+                return new CuentaAhorro(titular, saldo, iban, valor(campos, TIPO_INTERES));
+            case "CORRIENTE_PERSONAL":
+                return new CuentaCorrientePersonal(titular, saldo, iban, listaEntidades(campos),
+                        valor(campos, COMISION_MANTENIMIENTO));
+            case "CORRIENTE_EMPRESA":
+                return new CuentaCorrienteEmpresa(titular, saldo, iban, listaEntidades(campos),
+                        valor(campos, TIPO_INTERES_DESCUBIERTO), valor(campos, MAXIMO_DESCUBIERTO));
+            default:
+                throw new IllegalArgumentException("Tipo de cuenta desconocido: " + tipo);
+        }
+    }
+
+    private static String iban(Banco banco, String[] campos, Set<String> reservados) {
+        String iban = texto(campos, IBAN);
+        if (iban == null) {
+            do {
+                iban = CrearCuenta.generarIBAN(banco);
+            } while (reservados.contains(iban));
+            return iban;
+        }
+        if (!CrearCuenta.esIbanValido(iban)) {
+            throw new IllegalArgumentException("El IBAN " + iban + " ocupa más de " + AlmacenMapeado.MAXIMO_BYTES_IBAN
+                    + " bytes");
+        }
+        if (banco.estaIBANEnUso(iban)) {
+            throw new IllegalArgumentException("El IBAN " + iban + " ya está en uso");
+        }
+        return iban;
+    }
+
+    private static String nombre(String texto, int campo) {
+        String nombre = CrearPersona.capitalizarCadaPalabra(texto);
+        if (!CrearPersona.esNombreValido(nombre)) {
+            throw new IllegalArgumentException("El campo " + CAMPOS[campo] + " ocupa más de "
+                    + AlmacenMapeado.MAXIMO_BYTES_NOMBRE + " bytes: " + texto);
+        }
+        return nombre;
+    }
+
+    private static String listaEntidades(String[] campos) {
+        String lista = obligatorio(campos, LISTA_ENTIDADES);
+        if (!CrearCuenta.esListaEntidadesValida(lista)) {
+            throw new IllegalArgumentException("El campo " + CAMPOS[LISTA_ENTIDADES] + " ocupa más de "
+                    + AlmacenMapeado.MAXIMO_BYTES_LISTA_ENTIDADES + " bytes: " + lista);
+        }
+        return lista;
+    }
+
+    private static String texto(String[] campos, int campo) {
+        String valor = campos[campo];
+        if (valor == null) {
+            return null;
+        }
+        valor = valor.trim();
+        return valor.isEmpty() ? null : valor;
+    }
+
+    private static String obligatorio(String[] campos, int campo) {
+        String valor = texto(campos, campo);
+        if (valor == null) {
+            throw new IllegalArgumentException("Falta el campo " + CAMPOS[campo]);
+        }
+        return valor;
+    }
+
+    private static double valor(String[] campos, int campo) {
+        String texto = obligatorio(campos, campo);
+        String nombre = CAMPOS[campo];
+        double valor;
+        try {
+            valor = Double.parseDouble(texto);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("El campo " + nombre + " no es un número: " + texto);
+        }
+        if (!CrearCuenta.esValorValido(valor)) {
+            throw new IllegalArgumentException("El campo " + nombre + " debe ser mayor que 0: " + texto);
+        }
+        return valor;
+    }
+
+    private void rechazar(long registro, String motivo, String original) throws IOException {
+        rechazados++;
+        if (errores == null) {
+            errores = Files.newBufferedWriter(archivoErrores, StandardCharsets.UTF_8);
+            errores.write(CABECERA_ERRORES);
+            errores.write('\n');
+        }
+        errores.write(Long.toString(registro));
+        errores.write(',');
+        errores.write(entrecomillar(motivo));
+        errores.write(',');
+        errores.write(entrecomillar(original));
+        errores.write('\n');
+    }
+
+    private static String entrecomillar(String valor) {
+        return '"' + valor.replace("\"", "\"\"") + '"';
+    }
+
+    // ---------------------------------------------------------------- Analizadores
+
+    /**
+     * Lector de registros CSV (RFC 4180): campos separados por comas, entre comillas si contienen comas, comillas
+     * o saltos de línea, y con las comillas interiores duplicadas. Guarda el texto original de cada registro para
+     * el informe de errores.
+     */
+    private static final class LectorCsv implements Supplier<String> {
+        private final Reader lector;
+        private final char[] bufer = new char[1 << 16];
+        private int posicion;
+        private int limite;
+        private final StringBuilder campo = new StringBuilder();
+        private final StringBuilder original = new StringBuilder();
+        private int siguienteCaracter = -2;
+
+        LectorCsv(Reader lector) {
+            this.lector = lector;
+        }
+
+        /**
+         * Devuelve el texto original del último registro leído, sin el fin de línea.
+         */
+        @Override
+        public String get() {
+            return original.toString();
+        }
+
+        /**
+         * Lee el siguiente registro.
+         *
+         * @return Campos del registro, o null al final del archivo.
+         */
+        List<String> siguiente() throws IOException {
+            original.setLength(0);
+            int c = leer();
+            // Se saltan las líneas vacías
+            while (c == '\n' || c == '\r') {
+                c = leer();
+            }
+            if (c == -1) {
+                return null;
+            }
+            List<String> campos = new ArrayList<>(12);
+            while (true) {
+                campo.setLength(0);
+                if (c == '"') {
+                    while (true) {
+                        c = leer();
+                        if (c == -1) {
+                            throw new IOException("Comillas sin cerrar al final del archivo CSV");
+                        }
+                        if (c == '"') {
+                            c = leer();
+                            if (c != '"') {
+                                break;
+                            }
+                        }
+                        campo.append((char) c);
+                    }
+                }
+                // Campo sin comillas, o texto que sigue a las comillas de cierre
+                while (c != ',' && c != '\n' && c != '\r' && c != -1) {
+                    campo.append((char) c);
+                    c = leer();
+                }
+                campos.add(campo.toString());
+                if (c == ',') {
+                    c = leer();
+                    continue;
+                }
+                if (c == '\r') {
+                    int despues = leer();
+                    if (despues != '\n') {
+                        siguienteCaracter = despues;
+                    }
+                }
+                // Se quita el fin de línea del texto original
+                while (original.length() > 0 && (original.charAt(original.length() - 1) == '\n'
+                        || original.charAt(original.length() - 1) == '\r')) {
+                    original.setLength(original.length() - 1);
+                }
+                return campos;
+            }
+        }
+
+        private int leer() throws IOException {
+            int c;
+            if (siguienteCaracter != -2) {
+                c = siguienteCaracter;
+                siguienteCaracter = -2;
+            } else {
+                if (posicion == limite) {
+                    limite = lector.read(bufer, 0, bufer.length);
+                    posicion = 0;
+                    if (limite <= 0) {
+                        limite = 0;
+                        return -1;
+                    }
+                }
+                c = bufer[posicion++];
+            }
+            if (c != -1) {
+                original.append((char) c);
+            }
+            return c;
+        }
+    }
+
+    /**
+     * Analizador de una línea JSON con un objeto cuyos valores son textos, números, booleanos, null u objetos
+     * anidados. Los campos de los objetos anidados (como {@code titular}) se tratan igual que los demás, los
+     * campos desconocidos se ignoran y los números se guardan como texto para validarlos igual que en el CSV.
+     */
+    private static final class LectorJson {
+        private final String texto;
+        private int posicion;
+
+        LectorJson(String texto) {
+            this.texto = texto;
+        }
+
+        String[] objeto() {
+            String[] campos = new String[CAMPOS.length];
+            leerObjeto(campos);
+            saltarEspacios();
+            if (posicion != texto.length()) {
+                throw error("texto sobrante después del objeto");
+            }
+            return campos;
+        }
+
+        private void leerObjeto(String[] campos) {
+            esperar('{');
+            saltarEspacios();
+            if (consumir('}')) {
+                return;
+            }
+            do {
+                saltarEspacios();
+                String nombre = leerTexto();
+                Integer campo = INDICE_CAMPOS.get(nombre);
+                saltarEspacios();
+                esperar(':');
+                saltarEspacios();
+                char c = actual();
+                if (c == '{') {
+                    leerObjeto(campos);
+                } else if (c == '"') {
+                    String valor = leerTexto();
+                    if (campo != null) {
+                        campos[campo] = valor;
+                    }
+                } else {
+                    int inicio = posicion;
+                    while (posicion < texto.length() && ",} \t".indexOf(texto.charAt(posicion)) < 0) {
+                        posicion++;
+                    }
+                    String literal = texto.substring(inicio, posicion);
+                    if (literal.isEmpty() || literal.equals("[")) {
+                        throw error("valor no admitido en el campo " + nombre);
+                    }
+                    if (campo != null && !literal.equals("null")) {
+                        campos[campo] = literal;
+                    }
+                }
+                saltarEspacios();
+            } while (consumir(','));
+            esperar('}');
+        }
+
+        private String leerTexto() {
+            esperar('"');
+            StringBuilder valor = new StringBuilder();
+            while (true) {
+                char c = actual();
+                posicion++;
+                if (c == '"') {
+                    return valor.toString();
+                }
+                if (c != '\\') {
+                    valor.append(c);
+                    continue;
+                }
+                char escapado = actual();
+                posicion++;
+                switch (escapado) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        valor.append(escapado);
+                        break;
+                    case 'b':
+                        valor.append('\b');
+                        break;
+                    case 'f':
+                        valor.append('\f');
+                        break;
+                    case 'n':
+                        valor.append('\n');
+                        break;
+                    case 'r':
+                        valor.append('\r');
+                        break;
+                    case 't':
+                        valor.append('\t');
+                        break;
+                    case 'u':
+                        if (posicion + 4 > texto.length()) {
+                            throw error("secuencia \\u incompleta");
+                        }
+                        try {
+                            valor.append((char) Integer.parseInt(texto.substring(posicion, posicion + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("secuencia \\u no válida");
+                        }
+                        posicion += 4;
+                        break;
+                    default:
+                        throw error("secuencia de escape no válida");
+                }
+            }
+        }
+
+        private char actual() {
+            if (posicion >= texto.length()) {
+                throw error("fin de línea inesperado");
+            }
+            return texto.charAt(posicion);
+        }
+
+        private void esperar(char c) {
+            if (actual() != c) {
+                throw error("se esperaba '" + c + "'");
+            }
+            posicion++;
+        }
+
+        private boolean consumir(char c) {
+            if (posicion < texto.length() && texto.charAt(posicion) == c) {
+                posicion++;
+                return true;
+            }
+            return false;
+        }
+
+        private void saltarEspacios() {
+            while (posicion < texto.length() && Character.isWhitespace(texto.charAt(posicion))) {
+                posicion++;
+            }
+        }
+
+        private IllegalArgumentException error(String motivo) {
+            return new IllegalArgumentException(motivo + " (posición " + posicion + ")");
+        }
+    }
+}
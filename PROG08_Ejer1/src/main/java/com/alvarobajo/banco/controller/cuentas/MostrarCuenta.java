@@ -2,15 +2,20 @@ package com.alvarobajo.banco.controller.cuentas;
 
 import com.alvarobajo.banco.controller.Banco;
 import com.alvarobajo.banco.controller.LecturaTeclado;
+import com.alvarobajo.banco.controller.agregados.OrdenListado;
+import com.alvarobajo.banco.controller.agregados.PaginaCuentas;
 import com.alvarobajo.banco.models.CuentaBancaria;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Clase que proporciona métodos para mostrar información detallada de cuentas bancarias.
  *
  * <p>Esta clase incluye métodos para mostrar la información de una cuenta bancaria por titular, por IBAN,
- * para un IBAN específico y para mostrar un listado de todas las cuentas disponibles en el banco.</p>
+ * para un IBAN específico y para mostrar un listado por páginas de todas las cuentas disponibles en el banco.</p>
  *
  * <p>Los mensajes de entrada son definidos como constantes para facilitar su modificación y mantenimiento.</p>
  *
@@ -20,21 +25,37 @@ public class MostrarCuenta {
 
     private static final String MENSAJE_BUSCAR_TITULAR = "Ingrese el nombre del titular:";
     private static final String MENSAJE_BUSCAR_IBAN = "Ingrese el IBAN de la cuenta:";
+    private static final String MENSAJE_BUSCAR_DNI = "Ingrese el DNI del titular:";
+    private static final int CUENTAS_POR_PAGINA = 10;
 
     /**
-     * Muestra la información de una cuenta bancaria por titular.
+     * Muestra la información de todas las cuentas bancarias de un titular, buscándolo por su nombre.
      *
-     * @param banco El banco en el que buscar la cuenta.
+     * @param banco El banco en el que buscar las cuentas.
      */
     public static void mostrarCuentaPorTitular(Banco banco) {
         String nombreTitular = LecturaTeclado.recogerTexto(MENSAJE_BUSCAR_TITULAR);
-        CuentaBancaria cuenta = banco.buscarCuentaPorTitular(nombreTitular);
+        mostrarCuentasEncontradas(banco.buscarCuentasPorTitular(nombreTitular), "el titular " + nombreTitular);
+    }
 
-        if (cuenta != null) {
-            System.out.println("Información de la cuenta para el titular " + nombreTitular + ":");
-            System.out.println(cuenta.devolverInfoString());
+    /**
+     * Muestra la información de todas las cuentas bancarias de un titular, buscándolo por su DNI.
+     *
+     * @param banco El banco en el que buscar las cuentas.
+     */
+    public static void mostrarCuentasPorDni(Banco banco) {
+        String dni = LecturaTeclado.recogerTexto(MENSAJE_BUSCAR_DNI);
+        mostrarCuentasEncontradas(banco.buscarCuentasPorDni(dni), "el DNI " + dni);
+    }
+
+    private static void mostrarCuentasEncontradas(List<CuentaBancaria> encontradas, String criterio) {
+        if (!encontradas.isEmpty()) {
+            System.out.println("Cuentas encontradas para " + criterio + ": " + encontradas.size());
+            for (CuentaBancaria cuenta : encontradas) {
+                System.out.println(cuenta.devolverInfoString());
+            }
         } else {
-            System.out.println("No se encontró ninguna cuenta para el titular " + nombreTitular + ".");
+            System.out.println("No se encontró ninguna cuenta para " + criterio + ".");
         }
     }
 
@@ -73,21 +94,55 @@ public class MostrarCuenta {
     }
 
     /**
-     * Muestra un listado de todas las cuentas disponibles en el banco.
+     * Muestra el listado de las cuentas del banco por páginas, en el orden que elija el usuario.
+     * Después de cada página se puede pasar a la siguiente, volver a la anterior o terminar el listado.
      *
      * @param banco El banco del que mostrar el listado.
      */
     public static void mostrarListado(Banco banco) {
-        List<CuentaBancaria> cuentas = banco.getCuentas();
         int numCuentas = banco.getNumCuentas();
-
-        if (numCuentas > 0) {
-            System.out.println("Listado de cuentas:");
-            for (CuentaBancaria cuenta : cuentas) {
+        if (numCuentas == 0) {
+            System.out.println("No hay cuentas registradas en el banco.");
+            return;
+        }
+        OrdenListado orden = seleccionarOrden();
+        // Páginas ya mostradas, para poder volver atrás; la última es la que se está mostrando
+        Deque<PaginaCuentas> paginas = new ArrayDeque<>();
+        paginas.push(banco.paginaCuentas(orden, null, CUENTAS_POR_PAGINA));
+        while (true) {
+            PaginaCuentas pagina = paginas.peek();
+            int numPaginas = Math.max(1, (banco.getNumCuentas() + CUENTAS_POR_PAGINA - 1) / CUENTAS_POR_PAGINA);
+            System.out.println("Listado de cuentas por " + orden.getDescripcion() + ", página " + pagina.getNumero()
+                    + " de " + numPaginas + ":");
+            for (CuentaBancaria cuenta : pagina.getCuentas()) {
                 System.out.println(cuenta.devolverInfoString());
             }
-        } else {
-            System.out.println("No hay cuentas registradas en el banco.");
+            String opciones = (pagina.isUltima() ? "" : "S. Página siguiente  ")
+                    + (pagina.getNumero() > 1 ? "A. Página anterior  " : "") + "V. Volver al menú";
+            String opcion = LecturaTeclado.recogerTexto(opciones + ": ").trim().toUpperCase(Locale.ROOT);
+            if (opcion.equals("S") && !pagina.isUltima()) {
+                paginas.push(banco.paginaCuentas(orden, pagina, CUENTAS_POR_PAGINA));
+            } else if (opcion.equals("A") && pagina.getNumero() > 1) {
+                paginas.pop();
+            } else if (opcion.equals("V")) {
+                return;
+            } else {
+                System.out.println("Opción no válida.");
+            }
+        }
+    }
+
+    private static OrdenListado seleccionarOrden() {
+        OrdenListado[] ordenes = OrdenListado.values();
+        StringBuilder mensaje = new StringBuilder("Ordenar el listado por");
+        for (int i = 0; i < ordenes.length; i++) {
+            mensaje.append(i == 0 ? " (" : " / ").append(i + 1).append(". ").append(ordenes[i].getDescripcion());
         }
+        mensaje.append("): ");
+        int opcion;
+        do {
+            opcion = LecturaTeclado.recogerEntero(mensaje.toString());
+        } while (opcion < 1 || opcion > ordenes.length);
+        return ordenes[opcion - 1];
     }
 }
@@ -1,12 +1,19 @@
 package com.alvarobajo.banco.controller.cuentas;
 
+import com.alvarobajo.banco.controller.AlmacenCuentas;
+import com.alvarobajo.banco.controller.BloqueoCuentas;
+import com.alvarobajo.banco.controller.metricas.Contador;
+import com.alvarobajo.banco.controller.metricas.Histograma;
+import com.alvarobajo.banco.controller.metricas.RegistroMetricas;
 import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Dinero;
 
 import java.text.DecimalFormat;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Clase que proporciona métodos para realizar operaciones en una cuenta bancaria,
- * como retiros, consultas de saldo e ingresos.
+ * como retiros, consultas de saldo, ingresos y transferencias entre cuentas.
  *
  * <p>Esta clase incluye métodos para realizar retiros de efectivo, consultar el saldo actual
  * de la cuenta y realizar ingresos. Los mensajes de salida son definidos como constantes para
@@ -14,6 +21,18 @@ import java.text.DecimalFormat;
  *
  * <p>El formato de moneda se realiza utilizando la clase `DecimalFormat`.</p>
  *
+ * <p>Los saldos se operan en céntimos ({@link Dinero}), así que las sumas y restas son exactas. Los métodos que
+ * reciben la cantidad en euros la redondean al céntimo y llaman a su versión en céntimos.</p>
+ *
+ * <p>Las operaciones sobre el saldo se hacen con el cerrojo del IBAN de la cuenta ({@link BloqueoCuentas}),
+ * así que varios hilos pueden ingresar y retirar en la misma cuenta sin perder actualizaciones, y las
+ * operaciones sobre cuentas distintas no se esperan entre sí. Si el banco de la cuenta tiene abierto un
+ * {@link com.alvarobajo.banco.controller.BucleOperaciones}, los cambios de saldo se deben hacer a través del bucle y
+ * estos métodos lanzan una {@link IllegalStateException}.</p>
+ *
+ * <p>Los ingresos, retiros y transferencias se cuentan en el {@link RegistroMetricas}, junto con los rechazados por
+ * falta de saldo, y se mide la duración de uno de cada 64.</p>
+ *
  * @author Álvaro Bajo Tabero
  */
 public class OperarCuenta {
@@ -26,8 +45,23 @@ public class OperarCuenta {
     private static final String MENSAJE_INGRESO_EXITOSO = "Ingreso exitoso. Nuevo saldo: %s";
     private static final String MENSAJE_ERROR_INGRESO = "Error en el ingreso. Verifique la cantidad ingresada.";
 
+    private static final String MENSAJE_TRANSFERENCIA_EXITOSA = "Transferencia exitosa. Nuevo saldo de la cuenta de origen: %s";
+    private static final String MENSAJE_ERROR_TRANSFERENCIA = "Error en la transferencia. Verifique las cuentas y la cantidad indicada.";
+
     private static final DecimalFormat FORMATO_MONEDA = new DecimalFormat("###,###,##0.00");
 
+    private static final int MUESTREO = 64;
+    private static final Histograma METRICA_INGRESO = RegistroMetricas.histograma(
+            "banco_ingreso_segundos", "Ingresos", MUESTREO);
+    private static final Histograma METRICA_RETIRO = RegistroMetricas.histograma(
+            "banco_retiro_segundos", "Retiros", MUESTREO);
+    private static final Histograma METRICA_TRANSFERENCIA = RegistroMetricas.histograma(
+            "banco_transferencia_segundos", "Transferencias", MUESTREO);
+    private static final Contador RETIROS_RECHAZADOS = RegistroMetricas.contador(
+            "banco_retiros_rechazados_total", "Retiros rechazados por saldo insuficiente");
+    private static final Contador TRANSFERENCIAS_RECHAZADAS = RegistroMetricas.contador(
+            "banco_transferencias_rechazadas_total", "Transferencias rechazadas por saldo insuficiente");
+
     /**
      * Realiza un retiro de efectivo en la cuenta bancaria.
      *
@@ -35,14 +69,58 @@ public class OperarCuenta {
      * @param cantidad La cantidad a retirar.
      */
     public static void retirarEfectivo(CuentaBancaria cuenta, double cantidad) {
-        if (cantidad > 0 && cantidad <= cuenta.getSaldo()) {
-            cuenta.setSaldo(cuenta.getSaldo() - cantidad);
+        if (retirar(cuenta, cantidad)) {
             System.out.println(String.format(MENSAJE_RETIRO_EXITOSO, formatoMoneda(cuenta.getSaldo())));
         } else {
             System.out.println(MENSAJE_ERROR_RETIRO);
         }
     }
 
+    /**
+     * Retira una cantidad de la cuenta bancaria sin mostrar mensajes.
+     * La cantidad se redondea al céntimo y la operación se hace con {@link #retirarCentimos(CuentaBancaria, long)}.
+     *
+     * @param cuenta   La cuenta en la que realizar el retiro.
+     * @param cantidad La cantidad a retirar en euros.
+     * @return true si se realizó el retiro; false, si la cantidad no es válida o el saldo quedaría por debajo del
+     * mínimo de la cuenta (0, o el máximo descubierto en las cuentas de empresa).
+     */
+    public static boolean retirar(CuentaBancaria cuenta, double cantidad) {
+        return esCantidadValida(cantidad) && retirarCentimos(cuenta, Dinero.deEuros(cantidad));
+    }
+
+    /**
+     * Retira una cantidad en céntimos de la cuenta bancaria sin mostrar mensajes.
+     * La comprobación del saldo y su actualización se hacen de forma atómica.
+     *
+     * @param cuenta   La cuenta en la que realizar el retiro.
+     * @param centimos La cantidad a retirar en céntimos.
+     * @return true si se realizó el retiro; false, si la cantidad no es positiva o el saldo quedaría por debajo
+     * del mínimo de la cuenta.
+     * @throws IllegalStateException si el banco de la cuenta tiene un bucle de operaciones abierto.
+     */
+    public static boolean retirarCentimos(CuentaBancaria cuenta, long centimos) {
+        if (centimos <= 0) {
+            return false;
+        }
+        comprobarModificable(cuenta);
+        long inicio = METRICA_RETIRO.iniciar();
+        int franja = BloqueoCuentas.franja(cuenta.getIban());
+        Lock cerrojo = BloqueoCuentas.deFranja(franja);
+        cerrojo.lock();
+        try {
+            if (!haySaldoSuficiente(cuenta, centimos)) {
+                RETIROS_RECHAZADOS.incrementar();
+                return false;
+            }
+            cuenta.setSaldoCentimos(Dinero.restar(cuenta.getSaldoCentimos(), centimos));
+            return true;
+        } finally {
+            METRICA_RETIRO.registrar(inicio, franja);
+            cerrojo.unlock();
+        }
+    }
+
     /**
      * Consulta el saldo actual de la cuenta bancaria.
      *
@@ -59,14 +137,157 @@ public class OperarCuenta {
      * @param cantidad La cantidad a ingresar.
      */
     public static void realizarIngreso(CuentaBancaria cuenta, double cantidad) {
-        if (cantidad > 0) {
-            cuenta.setSaldo(cuenta.getSaldo() + cantidad);
+        if (ingresar(cuenta, cantidad)) {
             System.out.println(String.format(MENSAJE_INGRESO_EXITOSO, formatoMoneda(cuenta.getSaldo())));
         } else {
             System.out.println(MENSAJE_ERROR_INGRESO);
         }
     }
 
+    /**
+     * Ingresa una cantidad en la cuenta bancaria sin mostrar mensajes.
+     * La cantidad se redondea al céntimo y la operación se hace con {@link #ingresarCentimos(CuentaBancaria, long)}.
+     *
+     * @param cuenta   La cuenta en la que realizar el ingreso.
+     * @param cantidad La cantidad a ingresar en euros.
+     * @return true si se realizó el ingreso; false, si la cantidad no es válida.
+     */
+    public static boolean ingresar(CuentaBancaria cuenta, double cantidad) {
+        return esCantidadValida(cantidad) && ingresarCentimos(cuenta, Dinero.deEuros(cantidad));
+    }
+
+    /**
+     * Ingresa una cantidad en céntimos en la cuenta bancaria sin mostrar mensajes.
+     * La lectura y la actualización del saldo se hacen de forma atómica.
+     *
+     * @param cuenta   La cuenta en la que realizar el ingreso.
+     * @param centimos La cantidad a ingresar en céntimos.
+     * @return true si se realizó el ingreso; false, si la cantidad no es positiva.
+     * @throws IllegalStateException si el banco de la cuenta tiene un bucle de operaciones abierto.
+     */
+    public static boolean ingresarCentimos(CuentaBancaria cuenta, long centimos) {
+        if (centimos <= 0) {
+            return false;
+        }
+        comprobarModificable(cuenta);
+        long inicio = METRICA_INGRESO.iniciar();
+        int franja = BloqueoCuentas.franja(cuenta.getIban());
+        Lock cerrojo = BloqueoCuentas.deFranja(franja);
+        cerrojo.lock();
+        try {
+            cuenta.setSaldoCentimos(Dinero.sumar(cuenta.getSaldoCentimos(), centimos));
+            return true;
+        } finally {
+            METRICA_INGRESO.registrar(inicio, franja);
+            cerrojo.unlock();
+        }
+    }
+
+    /**
+     * Realiza una transferencia entre dos cuentas bancarias y muestra el resultado.
+     *
+     * @param origen   La cuenta de la que sale el dinero.
+     * @param destino  La cuenta a la que llega el dinero.
+     * @param cantidad La cantidad a transferir.
+     */
+    public static void realizarTransferencia(CuentaBancaria origen, CuentaBancaria destino, double cantidad) {
+        if (transferir(origen, destino, cantidad)) {
+            System.out.println(String.format(MENSAJE_TRANSFERENCIA_EXITOSA, formatoMoneda(origen.getSaldo())));
+        } else {
+            System.out.println(MENSAJE_ERROR_TRANSFERENCIA);
+        }
+    }
+
+    /**
+     * Transfiere una cantidad de una cuenta a otra sin mostrar mensajes.
+     *
+     * <p>El cargo en la cuenta de origen y el abono en la de destino se hacen de forma atómica: ningún otro hilo
+     * puede ver una cuenta cargada y la otra sin abonar. Los dos cerrojos se toman en orden de franja
+     * (ver {@link BloqueoCuentas}) para evitar interbloqueos entre transferencias cruzadas.</p>
+     *
+     * @param origen   La cuenta de la que sale el dinero.
+     * @param destino  La cuenta a la que llega el dinero.
+     * @param cantidad La cantidad a transferir.
+     * @return true si se realizó la transferencia; false, si la cantidad no es válida, las cuentas son la misma
+     * o el saldo del origen quedaría por debajo de su mínimo.
+     */
+    public static boolean transferir(CuentaBancaria origen, CuentaBancaria destino, double cantidad) {
+        return esCantidadValida(cantidad) && transferirCentimos(origen, destino, Dinero.deEuros(cantidad));
+    }
+
+    /**
+     * Transfiere una cantidad en céntimos de una cuenta a otra sin mostrar mensajes, de forma atómica
+     * (ver {@link #transferir(CuentaBancaria, CuentaBancaria, double)}).
+     *
+     * @param origen   La cuenta de la que sale el dinero.
+     * @param destino  La cuenta a la que llega el dinero.
+     * @param centimos La cantidad a transferir en céntimos.
+     * @return true si se realizó la transferencia; false, si la cantidad no es positiva, las cuentas son la misma
+     * o el saldo del origen quedaría por debajo de su mínimo.
+     * @throws IllegalStateException si el banco de alguna de las cuentas tiene un bucle de operaciones abierto.
+     */
+    public static boolean transferirCentimos(CuentaBancaria origen, CuentaBancaria destino, long centimos) {
+        if (centimos <= 0 || origen == null || destino == null || origen == destino) {
+            return false;
+        }
+        comprobarModificable(origen);
+        comprobarModificable(destino);
+        long inicio = METRICA_TRANSFERENCIA.iniciar();
+        int franjaOrigen = BloqueoCuentas.franja(origen.getIban());
+        int franjaDestino = BloqueoCuentas.franja(destino.getIban());
+        Lock primero = BloqueoCuentas.deFranja(Math.min(franjaOrigen, franjaDestino));
+        Lock segundo = BloqueoCuentas.deFranja(Math.max(franjaOrigen, franjaDestino));
+        primero.lock();
+        try {
+            if (segundo != primero) {
+                segundo.lock();
+            }
+            try {
+                if (!haySaldoSuficiente(origen, centimos)) {
+                    TRANSFERENCIAS_RECHAZADAS.incrementar();
+                    return false;
+                }
+                long saldoDestino = Dinero.sumar(destino.getSaldoCentimos(), centimos);
+                CuentaBancaria.transferirSaldo(origen, Dinero.restar(origen.getSaldoCentimos(), centimos),
+                        destino, saldoDestino);
+                return true;
+            } finally {
+                if (segundo != primero) {
+                    segundo.unlock();
+                }
+            }
+        } finally {
+            METRICA_TRANSFERENCIA.registrar(inicio, Math.min(franjaOrigen, franjaDestino));
+            primero.unlock();
+        }
+    }
+
+    /**
+     * Comprueba que el saldo de la cuenta se puede cambiar desde el hilo actual, es decir, que su almacén no lo ha
+     * reservado para el aplicador de un bucle de operaciones (ver {@link AlmacenCuentas#reservarModificaciones}).
+     */
+    private static void comprobarModificable(CuentaBancaria cuenta) {
+        if (cuenta.getObservador() instanceof AlmacenCuentas almacen && !almacen.admiteModificaciones()) {
+            throw new IllegalStateException("La cuenta " + cuenta.getIban()
+                    + " solo se puede modificar a través del bucle de operaciones de su banco");
+        }
+    }
+
+    /**
+     * Comprueba si se puede sacar una cantidad de la cuenta sin bajar de su saldo mínimo, que en las cuentas
+     * de empresa incluye el descubierto permitido. Se debe llamar con el cerrojo de la cuenta.
+     */
+    private static boolean haySaldoSuficiente(CuentaBancaria cuenta, long centimos) {
+        return Dinero.alcanza(cuenta.getSaldoCentimos(), centimos, cuenta.getSaldoMinimoCentimos());
+    }
+
+    /**
+     * Comprueba que una cantidad en euros es mayor que 0 y se puede convertir a céntimos.
+     */
+    private static boolean esCantidadValida(double cantidad) {
+        return cantidad > 0 && cantidad <= Dinero.MAXIMO_EUROS;
+    }
+
     private static String formatoMoneda(double cantidad) {
         return FORMATO_MONEDA.format(cantidad);
     }
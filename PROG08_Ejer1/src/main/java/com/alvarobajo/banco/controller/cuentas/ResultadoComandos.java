@@ -0,0 +1,99 @@
+package com.alvarobajo.banco.controller.cuentas;
+
+/**
+ * Clase que resume la ejecución de un archivo de comandos: cuántos comandos de cada tipo se ejecutaron y cuántos
+ * fallaron, y cuánto tardó.
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class ResultadoComandos {
+
+    private final String[] comandos;
+    private final long[] correctos;
+    private final long[] fallidos;
+    private final long desconocidos;
+    private final long milisegundos;
+
+    /**
+     * Constructor para inicializar el resultado de una ejecución de comandos.
+     *
+     * @param comandos     Nombres de los comandos.
+     * @param correctos    Número de comandos de cada tipo que se ejecutaron, en el orden de {@code comandos}.
+     * @param fallidos     Número de comandos de cada tipo que fallaron, en el orden de {@code comandos}.
+     * @param desconocidos Número de líneas con un comando desconocido.
+     * @param milisegundos Duración de la ejecución.
+     */
+    public ResultadoComandos(String[] comandos, long[] correctos, long[] fallidos, long desconocidos,
+                             long milisegundos) {
+        this.comandos = comandos.clone();
+        this.correctos = correctos.clone();
+        this.fallidos = fallidos.clone();
+        this.desconocidos = desconocidos;
+        this.milisegundos = milisegundos;
+    }
+
+    /**
+     * Obtiene el número de comandos ejecutados sin error.
+     *
+     * @return Comandos correctos.
+     */
+    public long getCorrectos() {
+        long total = 0;
+        for (long n : correctos) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Obtiene el número de comandos que no se pudieron ejecutar, incluidos los desconocidos.
+     *
+     * @return Comandos con error.
+     */
+    public long getErrores() {
+        long total = desconocidos;
+        for (long n : fallidos) {
+            total += n;
+        }
+        return total;
+    }
+
+    /**
+     * Obtiene la duración de la ejecución.
+     *
+     * @return Duración en milisegundos.
+     */
+    public long getMilisegundos() {
+        return milisegundos;
+    }
+
+    /**
+     * Obtiene el número de comandos ejecutados por segundo.
+     *
+     * @return Comandos por segundo.
+     */
+    public double getComandosPorSegundo() {
+        return (getCorrectos() + getErrores()) * 1000.0 / Math.max(milisegundos, 1);
+    }
+
+    /**
+     * Devuelve el resumen de la ejecución en formato de cadena, con una línea por cada tipo de comando usado.
+     *
+     * @return Resumen de la ejecución.
+     */
+    @Override
+    public String toString() {
+        StringBuilder resumen = new StringBuilder(String.format(
+                "Comandos ejecutados: %d, con error: %d (%d ms, %.0f comandos/s)",
+                getCorrectos(), getErrores(), milisegundos, getComandosPorSegundo()));
+        for (int i = 0; i < comandos.length; i++) {
+            if (correctos[i] + fallidos[i] > 0) {
+                resumen.append(String.format("%n  %s: %d, con error: %d", comandos[i], correctos[i], fallidos[i]));
+            }
+        }
+        if (desconocidos > 0) {
+            resumen.append(String.format("%n  comandos desconocidos: %d", desconocidos));
+        }
+        return resumen.toString();
+    }
+}
@@ -0,0 +1,92 @@
+package com.alvarobajo.banco.controller.cuentas;
+
+import java.nio.file.Path;
+
+/**
+ * Clase que resume el resultado de una importación de cuentas: cuántos registros se leyeron, cuántas cuentas se
+ * abrieron y cuántos registros se rechazaron, y dónde está el informe de errores.
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class ResultadoImportacion {
+
+    private final long leidos;
+    private final long importadas;
+    private final long rechazados;
+    private final Path archivoErrores;
+    private final long milisegundos;
+
+    /**
+     * Constructor para inicializar el resultado de una importación.
+     *
+     * @param leidos         Número de registros leídos del archivo.
+     * @param importadas     Número de cuentas abiertas en el banco.
+     * @param rechazados     Número de registros rechazados.
+     * @param archivoErrores Informe de errores, o null si no hubo ningún rechazo.
+     * @param milisegundos   Duración de la importación.
+     */
+    public ResultadoImportacion(long leidos, long importadas, long rechazados, Path archivoErrores, long milisegundos) {
+        this.leidos = leidos;
+        this.importadas = importadas;
+        this.rechazados = rechazados;
+        this.archivoErrores = archivoErrores;
+        this.milisegundos = milisegundos;
+    }
+
+    /**
+     * Obtiene el número de registros leídos del archivo.
+     *
+     * @return Registros leídos.
+     */
+    public long getLeidos() {
+        return leidos;
+    }
+
+    /**
+     * Obtiene el número de cuentas abiertas en el banco.
+     *
+     * @return Cuentas importadas.
+     */
+    public long getImportadas() {
+        return importadas;
+    }
+
+    /**
+     * Obtiene el número de registros rechazados.
+     *
+     * @return Registros rechazados.
+     */
+    public long getRechazados() {
+        return rechazados;
+    }
+
+    /**
+     * Obtiene el informe de errores.
+     *
+     * @return Ruta del informe, o null si no se rechazó ningún registro.
+     */
+    public Path getArchivoErrores() {
+        return archivoErrores;
+    }
+
+    /**
+     * Obtiene la duración de la importación.
+     *
+     * @return Duración en milisegundos.
+     */
+    public long getMilisegundos() {
+        return milisegundos;
+    }
+
+    /**
+     * Devuelve el resumen de la importación en formato de cadena.
+     *
+     * @return Resumen de la importación.
+     */
+    @Override
+    public String toString() {
+        String resumen = String.format("Registros leídos: %d, cuentas importadas: %d, registros rechazados: %d (%d ms)",
+                leidos, importadas, rechazados, milisegundos);
+        return archivoErrores == null ? resumen : resumen + "\nInforme de errores: " + archivoErrores;
+    }
+}
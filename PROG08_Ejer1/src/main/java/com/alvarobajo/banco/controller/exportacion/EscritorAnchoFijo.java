@@ -0,0 +1,142 @@
+package com.alvarobajo.banco.controller.exportacion;
+
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Persona;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Escritor de cuentas en formato de ancho fijo: una línea por cuenta, con cada campo en una posición fija.
+ *
+ * <p>Las columnas, en este orden y con estos anchos, son: tipo (20), IBAN (34), nombre (20), primer apellido (20),
+ * segundo apellido (20), DNI (10), saldo (16), tipo de interés (10), lista de entidades (30), comisión de
+ * mantenimiento (12), tipo de interés por descubierto (10) y máximo descubierto (16). Los textos se alinean a la
+ * izquierda y se recortan si no caben, y sus caracteres de control (como los saltos de línea) se cambian por
+ * espacios para no romper la línea; los números se alinean a la derecha, los importes con dos decimales y los
+ * tipos de interés con cuatro. Los campos que no tiene un tipo de cuenta, y los textos null, se dejan en blanco.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class EscritorAnchoFijo extends EscritorTexto {
+
+    /**
+     * Ancho de cada columna, en el orden en que se escriben.
+     */
+    public static final int[] ANCHOS = {20, 34, 20, 20, 20, 10, 16, 10, 30, 12, 10, 16};
+
+    /**
+     * Número de caracteres de cada línea, sin contar el fin de línea.
+     */
+    public static final int LONGITUD_LINEA;
+
+    static {
+        int longitud = 0;
+        for (int ancho : ANCHOS) {
+            longitud += ancho;
+        }
+        LONGITUD_LINEA = longitud;
+    }
+
+    private static final int DECIMALES_IMPORTE = 2;
+    private static final int DECIMALES_TIPO = 4;
+
+    private final char[] linea = new char[LONGITUD_LINEA + 1];
+    private int posicion;
+    private int columna;
+
+    /**
+     * Constructor para inicializar un escritor de ancho fijo.
+     *
+     * @param salida Destino del texto.
+     */
+    public EscritorAnchoFijo(Writer salida) {
+        super(salida);
+    }
+
+    /**
+     * Escribe una cuenta en una línea de {@link #LONGITUD_LINEA} caracteres.
+     *
+     * @param cuenta Cuenta a escribir.
+     * @throws IOException              si no se puede escribir en el archivo.
+     * @throws IllegalArgumentException si un importe o un tipo de interés no cabe en su columna.
+     */
+    @Override
+    public void escribir(CuentaBancaria cuenta) throws IOException {
+        Persona titular = cuenta.getTitular();
+        posicion = 0;
+        columna = 0;
+        texto(tipo(cuenta));
+        texto(cuenta.getIban());
+        texto(titular.getNombre());
+        texto(titular.getApellido1());
+        texto(titular.getApellido2());
+        texto(titular.getDni());
+        numero(cuenta.getSaldo(), DECIMALES_IMPORTE);
+        numero(tipoInteres(cuenta), DECIMALES_TIPO);
+        texto(listaEntidades(cuenta));
+        numero(comisionMantenimiento(cuenta), DECIMALES_IMPORTE);
+        numero(tipoInteresDescubierto(cuenta), DECIMALES_TIPO);
+        numero(maximoDescubierto(cuenta), DECIMALES_IMPORTE);
+        linea[posicion] = '\n';
+        salida.write(linea);
+    }
+
+    private void texto(String valor) {
+        int ancho = ANCHOS[columna++];
+        int longitud = valor == null ? 0 : Math.min(valor.length(), ancho);
+        for (int i = 0; i < longitud; i++) {
+            char c = valor.charAt(i);
+            linea[posicion + i] = Character.isISOControl(c) ? ' ' : c;
+        }
+        rellenar(posicion + longitud, posicion + ancho);
+        posicion += ancho;
+    }
+
+    private void numero(Double valor, int decimales) {
+        int ancho = ANCHOS[columna++];
+        if (valor == null) {
+            rellenar(posicion, posicion + ancho);
+        } else {
+            String formateado = formatear(valor, decimales);
+            if (formateado.length() > ancho) {
+                throw new IllegalArgumentException("El valor " + valor + " no cabe en una columna de " + ancho + " caracteres");
+            }
+            int inicio = posicion + ancho - formateado.length();
+            rellenar(posicion, inicio);
+            formateado.getChars(0, formateado.length(), linea, inicio);
+        }
+        posicion += ancho;
+    }
+
+    private void rellenar(int desde, int hasta) {
+        for (int i = desde; i < hasta; i++) {
+            linea[i] = ' ';
+        }
+    }
+
+    /**
+     * Formatea un número con los decimales indicados, redondeando al más cercano, sin depender de la
+     * configuración regional (a diferencia de {@link String#format}, siempre usa punto decimal).
+     */
+    private static String formatear(double valor, int decimales) {
+        if (!Double.isFinite(valor) || Math.abs(valor) >= 1e15) {
+            return Double.toString(valor);
+        }
+        long escala = 1;
+        for (int i = 0; i < decimales; i++) {
+            escala *= 10;
+        }
+        long redondeado = Math.round(Math.abs(valor) * escala);
+        StringBuilder texto = new StringBuilder(24);
+        if (valor < 0 && redondeado != 0) {
+            texto.append('-');
+        }
+        texto.append(redondeado / escala).append('.');
+        String fraccion = Long.toString(redondeado % escala);
+        for (int i = fraccion.length(); i < decimales; i++) {
+            texto.append('0');
+        }
+        return texto.append(fraccion).toString();
+    }
+}
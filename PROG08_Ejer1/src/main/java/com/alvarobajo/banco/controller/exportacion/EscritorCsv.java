@@ -0,0 +1,76 @@
+package com.alvarobajo.banco.controller.exportacion;
+
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Persona;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Escritor de cuentas en formato CSV (RFC 4180), con una fila de cabecera y una fila por cuenta.
+ *
+ * <p>Los campos que contienen comas, comillas o saltos de línea se escriben entre comillas, duplicando las
+ * comillas interiores. Los campos que no tiene un tipo de cuenta (por ejemplo {@code tipoInteres} en una cuenta
+ * corriente) se dejan vacíos. Los números se escriben con punto decimal, sin separador de miles.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class EscritorCsv extends EscritorTexto {
+
+    /**
+     * Fila de cabecera con el nombre de las columnas.
+     */
+    public static final String CABECERA = "tipo,iban,nombre,apellido1,apellido2,dni,saldo,tipoInteres,"
+            + "listaEntidades,comisionMantenimiento,tipoInteresDescubierto,maximoDescubierto";
+
+    /**
+     * Constructor para inicializar un escritor CSV. Escribe la fila de cabecera.
+     *
+     * @param salida Destino del texto.
+     * @throws IOException si no se puede escribir la cabecera.
+     */
+    public EscritorCsv(Writer salida) throws IOException {
+        super(salida);
+        salida.write(CABECERA);
+        salida.write('\n');
+    }
+
+    @Override
+    public void escribir(CuentaBancaria cuenta) throws IOException {
+        Persona titular = cuenta.getTitular();
+        salida.write(tipo(cuenta));
+        campo(cuenta.getIban());
+        campo(titular.getNombre());
+        campo(titular.getApellido1());
+        campo(titular.getApellido2());
+        campo(titular.getDni());
+        numero(cuenta.getSaldo());
+        numero(tipoInteres(cuenta));
+        campo(listaEntidades(cuenta));
+        numero(comisionMantenimiento(cuenta));
+        numero(tipoInteresDescubierto(cuenta));
+        numero(maximoDescubierto(cuenta));
+        salida.write('\n');
+    }
+
+    private void campo(String valor) throws IOException {
+        salida.write(',');
+        if (valor == null) {
+            return;
+        }
+        if (valor.indexOf(',') < 0 && valor.indexOf('"') < 0 && valor.indexOf('\n') < 0 && valor.indexOf('\r') < 0) {
+            salida.write(valor);
+            return;
+        }
+        salida.write('"');
+        salida.write(valor.replace("\"", "\"\""));
+        salida.write('"');
+    }
+
+    private void numero(Double valor) throws IOException {
+        salida.write(',');
+        if (valor != null) {
+            salida.write(Double.toString(valor));
+        }
+    }
+}
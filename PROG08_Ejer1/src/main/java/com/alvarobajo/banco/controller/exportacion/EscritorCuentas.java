@@ -0,0 +1,42 @@
+package com.alvarobajo.banco.controller.exportacion;
+
+import com.alvarobajo.banco.models.CuentaBancaria;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Interfaz EscritorCuentas para exportar cuentas bancarias a un archivo, de una en una.
+ *
+ * <p>Las implementaciones escriben cada cuenta en cuanto la reciben, sin guardarla, así que la memoria usada no
+ * depende del número de cuentas exportadas. Al cerrar el escritor se vacía y se cierra el archivo.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ * @see FormatoExportacion
+ */
+public interface EscritorCuentas extends Closeable {
+
+    /**
+     * Escribe una cuenta en el archivo.
+     *
+     * @param cuenta Cuenta a escribir.
+     * @throws IOException si no se puede escribir en el archivo.
+     */
+    void escribir(CuentaBancaria cuenta) throws IOException;
+
+    /**
+     * Escribe todas las cuentas en el archivo, en el orden en que se recorren.
+     *
+     * @param cuentas Cuentas a escribir.
+     * @return Número de cuentas escritas.
+     * @throws IOException si no se puede escribir en el archivo.
+     */
+    default long escribirTodas(Iterable<? extends CuentaBancaria> cuentas) throws IOException {
+        long escritas = 0;
+        for (CuentaBancaria cuenta : cuentas) {
+            escribir(cuenta);
+            escritas++;
+        }
+        return escritas;
+    }
+}
@@ -0,0 +1,112 @@
+package com.alvarobajo.banco.controller.exportacion;
+
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Persona;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Escritor de cuentas en formato JSON Lines: un objeto JSON por línea y por cuenta.
+ *
+ * <p>Cada objeto tiene los campos comunes ({@code tipo}, {@code iban}, {@code titular} y {@code saldo}) y solo
+ * los campos propios de su tipo de cuenta. Los textos se escapan según RFC 8259 y los números que no son
+ * finitos, que JSON no admite, se escriben como {@code null}.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class EscritorJsonLineas extends EscritorTexto {
+
+    private static final char[] HEXADECIMAL = "0123456789abcdef".toCharArray();
+
+    /**
+     * Constructor para inicializar un escritor JSON Lines.
+     *
+     * @param salida Destino del texto.
+     */
+    public EscritorJsonLineas(Writer salida) {
+        super(salida);
+    }
+
+    @Override
+    public void escribir(CuentaBancaria cuenta) throws IOException {
+        Persona titular = cuenta.getTitular();
+        salida.write("{\"tipo\":\"");
+        salida.write(tipo(cuenta));
+        salida.write("\",\"iban\":");
+        texto(cuenta.getIban());
+        salida.write(",\"titular\":{\"nombre\":");
+        texto(titular.getNombre());
+        salida.write(",\"apellido1\":");
+        texto(titular.getApellido1());
+        salida.write(",\"apellido2\":");
+        texto(titular.getApellido2());
+        salida.write(",\"dni\":");
+        texto(titular.getDni());
+        salida.write("},\"saldo\":");
+        numero(cuenta.getSaldo());
+        campoNumero("tipoInteres", tipoInteres(cuenta));
+        String listaEntidades = listaEntidades(cuenta);
+        if (listaEntidades != null) {
+            salida.write(",\"listaEntidades\":");
+            texto(listaEntidades);
+        }
+        campoNumero("comisionMantenimiento", comisionMantenimiento(cuenta));
+        campoNumero("tipoInteresDescubierto", tipoInteresDescubierto(cuenta));
+        campoNumero("maximoDescubierto", maximoDescubierto(cuenta));
+        salida.write("}\n");
+    }
+
+    private void campoNumero(String nombre, Double valor) throws IOException {
+        if (valor != null) {
+            salida.write(",\"");
+            salida.write(nombre);
+            salida.write("\":");
+            numero(valor);
+        }
+    }
+
+    private void numero(double valor) throws IOException {
+        salida.write(Double.isFinite(valor) ? Double.toString(valor) : "null");
+    }
+
+    private void texto(String valor) throws IOException {
+        if (valor == null) {
+            salida.write("null");
+            return;
+        }
+        salida.write('"');
+        int inicio = 0;
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+            salida.write(valor, inicio, i - inicio);
+            switch (c) {
+                case '"':
+                    salida.write("\\\"");
+                    break;
+                case '\\':
+                    salida.write("\\\\");
+                    break;
+                case '\n':
+                    salida.write("\\n");
+                    break;
+                case '\r':
+                    salida.write("\\r");
+                    break;
+                case '\t':
+                    salida.write("\\t");
+                    break;
+                default:
+                    salida.write("\\u00");
+                    salida.write(HEXADECIMAL[c >> 4]);
+                    salida.write(HEXADECIMAL[c & 0xF]);
+            }
+            inicio = i + 1;
+        }
+        salida.write(valor, inicio, valor.length() - inicio);
+        salida.write('"');
+    }
+}
@@ -0,0 +1,132 @@
+package com.alvarobajo.banco.controller.exportacion;
+
+import com.alvarobajo.banco.models.CuentaAhorro;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorriente;
+import com.alvarobajo.banco.models.CuentaCorrienteEmpresa;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Clase base de los escritores de cuentas en formatos de texto. Guarda el {@link Writer} de destino y sabe
+ * obtener los campos de cada tipo de cuenta; los campos que no tiene un tipo de cuenta se devuelven como null.
+ *
+ * <p>Todos los formatos usan {@code \n} como fin de línea, sea cual sea el sistema, para que el archivo se
+ * pueda procesar igual en cualquier máquina.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public abstract class EscritorTexto implements EscritorCuentas {
+
+    /**
+     * Nombre del tipo de las cuentas de ahorro.
+     */
+    public static final String TIPO_AHORRO = "AHORRO";
+
+    /**
+     * Nombre del tipo de las cuentas corrientes personales.
+     */
+    public static final String TIPO_CORRIENTE_PERSONAL = "CORRIENTE_PERSONAL";
+
+    /**
+     * Nombre del tipo de las cuentas corrientes de empresa.
+     */
+    public static final String TIPO_CORRIENTE_EMPRESA = "CORRIENTE_EMPRESA";
+
+    /**
+     * Destino del texto.
+     */
+    protected final Writer salida;
+
+    /**
+     * Constructor para inicializar un escritor de texto.
+     *
+     * @param salida Destino del texto. Conviene que tenga búfer, porque se escribe campo a campo.
+     */
+    protected EscritorTexto(Writer salida) {
+        this.salida = salida;
+    }
+
+    /**
+     * Cierra el destino del texto.
+     *
+     * @throws IOException si no se puede vaciar o cerrar el destino.
+     */
+    @Override
+    public void close() throws IOException {
+        salida.close();
+    }
+
+    /**
+     * Obtiene el nombre del tipo de una cuenta.
+     *
+     * @param cuenta Cuenta.
+     * @return {@link #TIPO_AHORRO}, {@link #TIPO_CORRIENTE_PERSONAL} o {@link #TIPO_CORRIENTE_EMPRESA}.
+     * @throws IllegalArgumentException si el tipo de cuenta no se conoce.
+     */
+    protected static String tipo(CuentaBancaria cuenta) {
+        if (cuenta instanceof CuentaAhorro) {
+            return TIPO_AHORRO;
+        } else if (cuenta instanceof CuentaCorrientePersonal) {
+            return TIPO_CORRIENTE_PERSONAL;
+        } else if (cuenta instanceof CuentaCorrienteEmpresa) {
+            return TIPO_CORRIENTE_EMPRESA;
+        }
+        throw new IllegalArgumentException("Tipo de cuenta desconocido: " + cuenta.getClass().getName());
+    }
+
+    /**
+     * Obtiene el tipo de interés de una cuenta de ahorro.
+     *
+     * @param cuenta Cuenta.
+     * @return Tipo de interés, o null si la cuenta no es de ahorro.
+     */
+    protected static Double tipoInteres(CuentaBancaria cuenta) {
+        return cuenta instanceof CuentaAhorro ? ((CuentaAhorro) cuenta).getTipoInteres() : null;
+    }
+
+    /**
+     * Obtiene la lista de entidades autorizadas de una cuenta corriente.
+     *
+     * @param cuenta Cuenta.
+     * @return Lista de entidades, o null si la cuenta no es corriente.
+     */
+    protected static String listaEntidades(CuentaBancaria cuenta) {
+        return cuenta instanceof CuentaCorriente ? ((CuentaCorriente) cuenta).getListaEntidades() : null;
+    }
+
+    /**
+     * Obtiene la comisión de mantenimiento de una cuenta corriente personal.
+     *
+     * @param cuenta Cuenta.
+     * @return Comisión de mantenimiento, o null si la cuenta no es corriente personal.
+     */
+    protected static Double comisionMantenimiento(CuentaBancaria cuenta) {
+        return cuenta instanceof CuentaCorrientePersonal
+                ? ((CuentaCorrientePersonal) cuenta).getComisionMantenimiento() : null;
+    }
+
+    /**
+     * Obtiene el tipo de interés por descubierto de una cuenta corriente de empresa.
+     *
+     * @param cuenta Cuenta.
+     * @return Tipo de interés por descubierto, o null si la cuenta no es de empresa.
+     */
+    protected static Double tipoInteresDescubierto(CuentaBancaria cuenta) {
+        return cuenta instanceof CuentaCorrienteEmpresa
+                ? ((CuentaCorrienteEmpresa) cuenta).getTipoInteresDescubierto() : null;
+    }
+
+    /**
+     * Obtiene el máximo descubierto permitido de una cuenta corriente de empresa.
+     *
+     * @param cuenta Cuenta.
+     * @return Máximo descubierto, o null si la cuenta no es de empresa.
+     */
+    protected static Double maximoDescubierto(CuentaBancaria cuenta) {
+        return cuenta instanceof CuentaCorrienteEmpresa
+                ? ((CuentaCorrienteEmpresa) cuenta).getMaximoDescubierto() : null;
+    }
+}
@@ -0,0 +1,92 @@
+package com.alvarobajo.banco.controller.exportacion;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Formatos en los que se pueden exportar las cuentas bancarias. Cada formato sabe crear su escritor y propone
+ * una extensión de archivo. Los archivos se escriben siempre en UTF-8.
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public enum FormatoExportacion {
+
+    /**
+     * Valores separados por comas, con fila de cabecera ({@link EscritorCsv}).
+     */
+    CSV("csv") {
+        @Override
+        public EscritorCuentas crear(Writer salida) throws IOException {
+            return new EscritorCsv(salida);
+        }
+    },
+
+    /**
+     * Un objeto JSON por línea ({@link EscritorJsonLineas}).
+     */
+    JSON_LINEAS("jsonl") {
+        @Override
+        public EscritorCuentas crear(Writer salida) {
+            return new EscritorJsonLineas(salida);
+        }
+    },
+
+    /**
+     * Columnas de ancho fijo ({@link EscritorAnchoFijo}).
+     */
+    ANCHO_FIJO("txt") {
+        @Override
+        public EscritorCuentas crear(Writer salida) {
+            return new EscritorAnchoFijo(salida);
+        }
+    };
+
+    private static final int TAMANIO_BUFER = 1 << 16;
+
+    private final String extension;
+
+    FormatoExportacion(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Obtiene la extensión habitual de los archivos de este formato, sin el punto.
+     *
+     * @return Extensión del archivo.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Crea un escritor de este formato sobre un destino de texto.
+     *
+     * @param salida Destino del texto; el escritor lo cierra al cerrarse.
+     * @return Escritor de cuentas.
+     * @throws IOException si no se puede escribir en el destino.
+     */
+    public abstract EscritorCuentas crear(Writer salida) throws IOException;
+
+    /**
+     * Crea un escritor de este formato sobre un archivo, que se sobrescribe si existe.
+     *
+     * @param archivo Archivo de destino.
+     * @return Escritor de cuentas.
+     * @throws IOException si no se puede crear el archivo.
+     */
+    public EscritorCuentas abrir(Path archivo) throws IOException {
+        Writer salida = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(archivo), StandardCharsets.UTF_8),
+                TAMANIO_BUFER);
+        try {
+            return crear(salida);
+        } catch (IOException | RuntimeException e) {
+            salida.close();
+            throw e;
+        }
+    }
+}
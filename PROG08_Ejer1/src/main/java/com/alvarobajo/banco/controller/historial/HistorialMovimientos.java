@@ -0,0 +1,298 @@
+package com.alvarobajo.banco.controller.historial;
+
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Movimiento;
+import com.alvarobajo.banco.models.ObservadorCuenta;
+import com.alvarobajo.banco.models.Persona;
+import com.alvarobajo.banco.models.TipoMovimiento;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Clase que guarda el historial de movimientos de cada cuenta: cuándo cambió el saldo, cuánto, con qué saldo
+ * quedó la cuenta y si fue un ingreso o un retiro.
+ *
+ * <p>Se suscribe al almacén de cuentas como {@link ObservadorCuenta} y anota cada cambio de saldo, venga de un
+ * ingreso, un retiro, una transferencia o un proceso de fin de mes. Los cambios se reciben en céntimos, así que el
+ * importe de cada movimiento es exacto.</p>
+ *
+ * <p>Los últimos movimientos de cada cuenta se guardan en un anillo: un único {@code long[]} con cuatro posiciones
+ * por movimiento (instante, código del {@link TipoMovimiento}, importe y saldo resultante), sin un objeto por
+ * movimiento. Cuando el anillo está lleno, el movimiento más antiguo pasa al archivo de desborde antes de
+ * sobrescribirlo, así que la memoria por cuenta queda acotada por la capacidad del anillo.</p>
+ *
+ * <p>En el archivo de desborde cada movimiento ocupa un registro de tamaño fijo que guarda además la posición del
+ * movimiento anterior de la misma cuenta. Los registros se acumulan en un búfer y se escriben por bloques, de modo
+ * que anotar un movimiento no espera al disco. Para obtener los {@code n} últimos movimientos se recorre primero
+ * el anillo y después la cadena de registros hacia atrás: el coste es proporcional a {@code n}, no al número de
+ * movimientos ni de cuentas.</p>
+ *
+ * <p>El historial cubre los movimientos desde que se abrió el banco; el registro duradero de los saldos sigue
+ * siendo el diario o el almacén. El archivo de desborde se borra al cerrar el historial o al salir de la
+ * aplicación. Si no hay archivo de desborde, los movimientos que salen del anillo se descartan.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class HistorialMovimientos implements ObservadorCuenta, AutoCloseable {
+
+    /**
+     * Número de movimientos que se guardan en memoria por cada cuenta si no se indica otro.
+     */
+    public static final int CAPACIDAD_POR_DEFECTO = 8;
+
+    // Posiciones de cada movimiento en el anillo: instante, código del tipo (su ordinal), importe y saldo resultante
+    private static final int CAMPOS = 4;
+    private static final TipoMovimiento[] TIPOS = TipoMovimiento.values();
+    // En el archivo se añade la posición del registro anterior de la misma cuenta
+    private static final int TAMANIO_REGISTRO = (CAMPOS + 1) * Long.BYTES;
+    private static final int TAMANIO_BUFER = 64 * 1024;
+    private static final long SIN_REGISTRO = -1;
+
+    private final int capacidad;
+    private final ConcurrentHashMap<String, Anillo> anillos = new ConcurrentHashMap<>();
+
+    // Archivo de desborde y búfer de registros pendientes de escribir, protegidos por "cerrojoDesborde"
+    private final Object cerrojoDesborde = new Object();
+    private final FileChannel desborde;
+    private final ByteBuffer pendiente;
+    // Bytes ya escritos en el archivo: el primer registro pendiente irá en esa posición
+    private long escritos;
+    private boolean fallido;
+
+    /**
+     * Movimientos recientes de una cuenta. Se modifica con el monitor del propio anillo.
+     */
+    private static final class Anillo {
+        final long[] datos;
+        // Movimiento del anillo que se escribirá a continuación
+        int siguiente;
+        int enMemoria;
+        long ultimoDesbordado = SIN_REGISTRO;
+
+        Anillo(int capacidad) {
+            datos = new long[capacidad * CAMPOS];
+        }
+    }
+
+    /**
+     * Constructor para inicializar un historial que solo guarda en memoria los últimos movimientos de cada cuenta.
+     *
+     * @param capacidad Número de movimientos que se guardan por cuenta.
+     * @throws IllegalArgumentException si la capacidad no es mayor que 0.
+     */
+    public HistorialMovimientos(int capacidad) {
+        this.capacidad = comprobarCapacidad(capacidad);
+        desborde = null;
+        pendiente = null;
+    }
+
+    /**
+     * Constructor para inicializar un historial que pasa los movimientos antiguos a un archivo de desborde.
+     * Si el archivo ya existe se vacía; se borra al cerrar el historial.
+     *
+     * @param capacidad       Número de movimientos que se guardan en memoria por cuenta.
+     * @param archivoDesborde Archivo donde se guardan los movimientos que no caben en memoria.
+     * @throws IOException              si no se puede crear el archivo.
+     * @throws IllegalArgumentException si la capacidad no es mayor que 0.
+     */
+    public HistorialMovimientos(int capacidad, Path archivoDesborde) throws IOException {
+        this.capacidad = comprobarCapacidad(capacidad);
+        desborde = FileChannel.open(archivoDesborde, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+        pendiente = ByteBuffer.allocateDirect(TAMANIO_BUFER);
+    }
+
+    private static int comprobarCapacidad(int capacidad) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad del historial debe ser mayor que 0: " + capacidad);
+        }
+        return capacidad;
+    }
+
+    /**
+     * Anota el cambio de saldo como un movimiento de la cuenta.
+     * Quien modifica el saldo ya tiene el cerrojo de la cuenta, así que el anillo casi nunca está en disputa.
+     *
+     * @param cuenta   Cuenta modificada.
+     * @param anterior Saldo anterior en céntimos.
+     * @param nuevo    Saldo nuevo en céntimos.
+     */
+    @Override
+    public void saldoModificado(CuentaBancaria cuenta, long anterior, long nuevo) {
+        if (nuevo == anterior) {
+            return;
+        }
+        TipoMovimiento tipo = nuevo > anterior ? TipoMovimiento.INGRESO : TipoMovimiento.RETIRO;
+        long importe = nuevo > anterior ? nuevo - anterior : anterior - nuevo;
+        long instante = System.currentTimeMillis();
+        String iban = cuenta.getIban();
+        Anillo anillo = anillos.get(iban);
+        if (anillo == null) {
+            anillo = anillos.computeIfAbsent(iban, clave -> new Anillo(capacidad));
+        }
+        synchronized (anillo) {
+            long[] datos = anillo.datos;
+            int i = anillo.siguiente * CAMPOS;
+            if (anillo.enMemoria == capacidad) {
+                anillo.ultimoDesbordado = desbordar(datos[i], datos[i + 1], datos[i + 2], datos[i + 3],
+                        anillo.ultimoDesbordado);
+            } else {
+                anillo.enMemoria++;
+            }
+            datos[i] = instante;
+            datos[i + 1] = tipo.ordinal();
+            datos[i + 2] = importe;
+            datos[i + 3] = nuevo;
+            anillo.siguiente = anillo.siguiente + 1 == capacidad ? 0 : anillo.siguiente + 1;
+        }
+    }
+
+    @Override
+    public void titularCambiado(CuentaBancaria cuenta, Persona anterior, Persona nuevo) {
+        // El cambio de titular no es un movimiento de dinero
+    }
+
+    /**
+     * Olvida los movimientos de la cuenta eliminada. Sus registros en el archivo de desborde no se reutilizan.
+     *
+     * @param cuenta Cuenta eliminada.
+     */
+    @Override
+    public void cuentaEliminada(CuentaBancaria cuenta) {
+        anillos.remove(cuenta.getIban());
+    }
+
+    /**
+     * Obtiene los últimos movimientos de una cuenta, del más reciente al más antiguo.
+     *
+     * @param iban IBAN de la cuenta, tal como lo devuelve {@link CuentaBancaria#getIban()}.
+     * @param n    Número máximo de movimientos a obtener.
+     * @return Lista con como mucho {@code n} movimientos, vacía si la cuenta no tiene movimientos.
+     */
+    public List<Movimiento> ultimosMovimientos(String iban, int n) {
+        Anillo anillo = n > 0 ? anillos.get(iban) : null;
+        if (anillo == null) {
+            return new ArrayList<>();
+        }
+        List<Movimiento> movimientos = new ArrayList<>(Math.min(n, TAMANIO_BUFER / TAMANIO_REGISTRO));
+        long posicion;
+        synchronized (anillo) {
+            int i = anillo.siguiente;
+            for (int k = 0; k < anillo.enMemoria && movimientos.size() < n; k++) {
+                i = (i == 0 ? capacidad : i) - 1;
+                int j = i * CAMPOS;
+                movimientos.add(crearMovimiento(anillo.datos[j], anillo.datos[j + 1], anillo.datos[j + 2],
+                        anillo.datos[j + 3]));
+            }
+            posicion = anillo.ultimoDesbordado;
+        }
+        // Los registros del archivo no cambian una vez escritos, así que se leen sin el monitor del anillo
+        ByteBuffer registro = ByteBuffer.allocate(TAMANIO_REGISTRO);
+        while (movimientos.size() < n && posicion != SIN_REGISTRO && leerRegistro(posicion, registro)) {
+            movimientos.add(crearMovimiento(registro.getLong(0), registro.getLong(Long.BYTES),
+                    registro.getLong(2 * Long.BYTES), registro.getLong(3 * Long.BYTES)));
+            posicion = registro.getLong(CAMPOS * Long.BYTES);
+        }
+        return movimientos;
+    }
+
+    private static Movimiento crearMovimiento(long instante, long tipo, long importe, long saldo) {
+        return new Movimiento(instante, TIPOS[(int) tipo], importe, saldo);
+    }
+
+    /**
+     * Añade un movimiento al búfer del archivo de desborde.
+     *
+     * @return Posición del registro en el archivo o {@link #SIN_REGISTRO} si el movimiento se ha descartado.
+     */
+    private long desbordar(long instante, long tipo, long importe, long saldo, long anterior) {
+        if (desborde == null) {
+            return SIN_REGISTRO;
+        }
+        synchronized (cerrojoDesborde) {
+            if (fallido || (pendiente.remaining() < TAMANIO_REGISTRO && !vaciar())) {
+                return SIN_REGISTRO;
+            }
+            long posicion = escritos + pendiente.position();
+            pendiente.putLong(instante).putLong(tipo).putLong(importe).putLong(saldo).putLong(anterior);
+            return posicion;
+        }
+    }
+
+    /**
+     * Escribe en el archivo los registros pendientes. Se llama con el cerrojo del desborde.
+     *
+     * @return true si se escribieron; false, si hubo un error y a partir de ahora se descartan los movimientos
+     * que salgan de los anillos.
+     */
+    private boolean vaciar() {
+        pendiente.flip();
+        try {
+            while (pendiente.hasRemaining()) {
+                escritos += desborde.write(pendiente, escritos);
+            }
+            return true;
+        } catch (IOException e) {
+            fallido = true;
+            System.out.println("Error al escribir el historial de movimientos, no se guardarán los movimientos antiguos: " + e.getMessage());
+            return false;
+        } finally {
+            pendiente.clear();
+        }
+    }
+
+    /**
+     * Lee un registro del archivo de desborde, o del búfer si aún no se ha escrito.
+     *
+     * @return true si se ha leído el registro; false, si no está disponible.
+     */
+    private boolean leerRegistro(long posicion, ByteBuffer registro) {
+        registro.clear();
+        synchronized (cerrojoDesborde) {
+            if (fallido) {
+                return false;
+            }
+            if (posicion >= escritos) {
+                int desde = (int) (posicion - escritos);
+                for (int k = 0; k < TAMANIO_REGISTRO; k += Long.BYTES) {
+                    registro.putLong(k, pendiente.getLong(desde + k));
+                }
+                return true;
+            }
+        }
+        try {
+            while (registro.hasRemaining()) {
+                if (desborde.read(registro, posicion + registro.position()) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            System.out.println("Error al leer el historial de movimientos: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Cierra y borra el archivo de desborde. Los movimientos que quedan en memoria se pueden seguir consultando.
+     *
+     * @throws IOException si no se puede cerrar el archivo.
+     */
+    @Override
+    public void close() throws IOException {
+        if (desborde == null) {
+            return;
+        }
+        synchronized (cerrojoDesborde) {
+            fallido = true;
+            desborde.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.alvarobajo.banco.controller.metricas;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métrica que cuenta cuántas veces ocurre algo, por ejemplo los retiros rechazados por falta de saldo.
+ *
+ * <p>Usa un {@link LongAdder}, que reparte la cuenta entre varias celdas cuando varios hilos incrementan a la vez,
+ * así que incrementar no toma cerrojos ni hace que los hilos compitan por la misma variable.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public final class Contador extends Metrica {
+
+    private final LongAdder cuenta = new LongAdder();
+
+    Contador(String nombre, String descripcion) {
+        super(nombre, descripcion);
+    }
+
+    /**
+     * Suma uno al contador, si las métricas están activas.
+     */
+    public void incrementar() {
+        if (RegistroMetricas.isActivas()) {
+            cuenta.increment();
+        }
+    }
+
+    /**
+     * Suma una cantidad al contador, si las métricas están activas. Sirve para contar por lotes.
+     *
+     * @param cantidad Cantidad a sumar.
+     */
+    public void sumar(long cantidad) {
+        if (RegistroMetricas.isActivas() && cantidad != 0) {
+            cuenta.add(cantidad);
+        }
+    }
+
+    /**
+     * Obtiene el valor del contador.
+     *
+     * @return Número de veces que se ha incrementado.
+     */
+    public long getCuenta() {
+        return cuenta.sum();
+    }
+
+    @Override
+    void escribirPrometheus(Appendable salida) throws IOException {
+        escribirCabecera(salida, "counter");
+        salida.append(getNombre()).append(' ').append(Long.toString(cuenta.sum())).append('\n');
+    }
+
+    @Override
+    void escribirResumen(StringBuilder salida) {
+        salida.append(String.format("%-45s %,14d%n", getDescripcion(), cuenta.sum()));
+    }
+}
@@ -0,0 +1,292 @@
+package com.alvarobajo.banco.controller.metricas;
+
+import com.alvarobajo.banco.controller.BloqueoCuentas;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métrica que cuenta las veces que se ejecuta una operación y guarda la distribución de su duración.
+ *
+ * <p>Las duraciones se reparten en cubos logarítmicos como los de HdrHistogram: cada potencia de 2 de
+ * nanosegundos se divide en 8 cubos iguales, así que un percentil se conoce con un error relativo menor del
+ * 12,5 % sea cual sea la escala, y todo el histograma ocupa un único {@link AtomicLongArray} de 488 posiciones.
+ * Anotar una duración es calcular el cubo con unas operaciones de bits e incrementarlo, sin cerrojos.</p>
+ *
+ * <p>Medir el tiempo cuesta dos llamadas a {@link System#nanoTime()}, que en las operaciones más rápidas del banco
+ * (un ingreso o una búsqueda por IBAN) es tanto como la propia operación. Por eso se puede indicar un muestreo: la
+ * operación se cuenta siempre, pero solo se mide su duración una de cada {@code muestreo} veces, elegidas al azar.
+ * La suma de las duraciones se estima a partir de las medidas.</p>
+ *
+ * <p>Contar con un {@link LongAdder} es una operación atómica, que cuesta unos 10 ns. Las operaciones que ya tienen
+ * el cerrojo de una franja de {@link BloqueoCuentas} usan {@link #registrar(long, int)}, que suma la operación en
+ * un contador propio de la franja con una escritura normal: el cerrojo ya impide que dos hilos lo escriban a la
+ * vez.</p>
+ *
+ * <p>Uso:</p>
+ * <pre>
+ *     long inicio = HISTOGRAMA.iniciar();
+ *     try {
+ *         ...
+ *     } finally {
+ *         HISTOGRAMA.registrar(inicio);
+ *     }
+ * </pre>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public final class Histograma extends Metrica {
+
+    private static final int BITS_SUBCUBO = 3;
+    private static final int SUBCUBOS = 1 << BITS_SUBCUBO;
+    private static final int NUM_CUBOS = (Long.SIZE - BITS_SUBCUBO) * SUBCUBOS;
+    // Valor de iniciar() cuando la operación no se mide; System.nanoTime() en la práctica nunca lo devuelve
+    private static final long SIN_MEDIDA = Long.MIN_VALUE;
+    private static final double[] CUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_POR_SEGUNDO = 1e9;
+    // Lecturas y escrituras de los contadores por franja sin partir los long, pero sin barreras ni operaciones
+    // atómicas
+    private static final VarHandle CUENTA_FRANJA = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final int mascaraMuestreo;
+    private final LongAdder cuenta = new LongAdder();
+    private final long[] cuentasPorFranja = new long[BloqueoCuentas.NUM_FRANJAS];
+    private final LongAdder medidas = new LongAdder();
+    private final LongAdder sumaMedidas = new LongAdder();
+    private final AtomicLong maximo = new AtomicLong();
+    private final AtomicLongArray cubos = new AtomicLongArray(NUM_CUBOS);
+
+    Histograma(String nombre, String descripcion, int muestreo) {
+        super(nombre, descripcion);
+        if (muestreo <= 0 || Integer.bitCount(muestreo) != 1) {
+            throw new IllegalArgumentException("El muestreo debe ser una potencia de 2: " + muestreo);
+        }
+        mascaraMuestreo = muestreo - 1;
+    }
+
+    /**
+     * Marca el comienzo de una operación.
+     *
+     * @return Valor que se pasa a {@link #registrar(long)} al terminar la operación.
+     */
+    public long iniciar() {
+        if (!RegistroMetricas.isActivas()
+                || (mascaraMuestreo != 0 && (ThreadLocalRandom.current().nextInt() & mascaraMuestreo) != 0)) {
+            return SIN_MEDIDA;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Cuenta una operación terminada y, si se eligió para medirla, anota su duración.
+     *
+     * @param inicio Valor devuelto por {@link #iniciar()} al empezar la operación.
+     */
+    public void registrar(long inicio) {
+        if (!RegistroMetricas.isActivas()) {
+            return;
+        }
+        cuenta.increment();
+        if (inicio != SIN_MEDIDA) {
+            anotar(System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * Cuenta una operación terminada y, si se eligió para medirla, anota su duración. Se debe llamar con el
+     * cerrojo de la franja, antes de soltarlo.
+     *
+     * @param inicio Valor devuelto por {@link #iniciar()} al empezar la operación.
+     * @param franja Franja de {@link BloqueoCuentas} cuyo cerrojo tiene el hilo.
+     */
+    public void registrar(long inicio, int franja) {
+        if (!RegistroMetricas.isActivas()) {
+            return;
+        }
+        long anterior = (long) CUENTA_FRANJA.getOpaque(cuentasPorFranja, franja);
+        CUENTA_FRANJA.setOpaque(cuentasPorFranja, franja, anterior + 1);
+        if (inicio != SIN_MEDIDA) {
+            anotar(System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * Cuenta una operación cuya duración se midió en otro sitio y anota esa duración, aunque no toque medirla
+     * según el muestreo. Sirve para quien recibe las operaciones ya terminadas, por ejemplo los consumidores de
+     * {@link com.alvarobajo.banco.controller.BucleOperaciones}.
+     *
+     * @param nanos Duración de la operación en nanosegundos.
+     */
+    public void registrarDuracion(long nanos) {
+        if (!RegistroMetricas.isActivas()) {
+            return;
+        }
+        cuenta.increment();
+        anotar(Math.max(0, nanos));
+    }
+
+    private void anotar(long nanos) {
+        cubos.incrementAndGet(cubo(nanos));
+        medidas.increment();
+        sumaMedidas.add(nanos);
+        if (nanos > maximo.get()) {
+            maximo.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /**
+     * Calcula el cubo de una duración: las 8 primeras duraciones tienen un cubo cada una y, a partir de ahí, cada
+     * potencia de 2 se divide en 8 cubos según los 3 bits que siguen al más significativo.
+     */
+    static int cubo(long nanos) {
+        if (nanos < SUBCUBOS) {
+            return (int) Math.max(nanos, 0);
+        }
+        int exponente = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+        int desplazamiento = exponente - BITS_SUBCUBO;
+        return (desplazamiento + 1) * SUBCUBOS + (int) ((nanos >>> desplazamiento) & (SUBCUBOS - 1));
+    }
+
+    /**
+     * Calcula la mayor duración que cae en un cubo.
+     */
+    static long limiteSuperior(int cubo) {
+        if (cubo < SUBCUBOS) {
+            return cubo;
+        }
+        int desplazamiento = cubo / SUBCUBOS - 1;
+        long inferior = (long) (SUBCUBOS + cubo % SUBCUBOS) << desplazamiento;
+        return inferior + (1L << desplazamiento) - 1;
+    }
+
+    /**
+     * Obtiene el número de operaciones registradas, medidas o no.
+     *
+     * @return Número de operaciones.
+     */
+    public long getCuenta() {
+        long total = cuenta.sum();
+        for (int i = 0; i < cuentasPorFranja.length; i++) {
+            total += (long) CUENTA_FRANJA.getOpaque(cuentasPorFranja, i);
+        }
+        return total;
+    }
+
+    /**
+     * Obtiene el número de operaciones cuya duración se ha medido.
+     *
+     * @return Número de medidas.
+     */
+    public long getMedidas() {
+        return medidas.sum();
+    }
+
+    /**
+     * Estima el tiempo total de todas las operaciones, extrapolando la media de las medidas.
+     *
+     * @return Tiempo total estimado en nanosegundos.
+     */
+    public long getSumaNanos() {
+        long n = medidas.sum();
+        return n == 0 ? 0 : (long) ((double) sumaMedidas.sum() / n * getCuenta());
+    }
+
+    /**
+     * Obtiene la mayor duración medida.
+     *
+     * @return Duración en nanosegundos, o 0 si no hay medidas.
+     */
+    public long getMaximoNanos() {
+        return maximo.get();
+    }
+
+    /**
+     * Obtiene un percentil de las duraciones medidas. Se devuelve el límite superior del cubo en el que cae.
+     *
+     * @param cuantil Cuantil entre 0 y 1; por ejemplo, 0.99 para el percentil 99.
+     * @return Duración en nanosegundos, o 0 si no hay medidas.
+     */
+    public long percentilNanos(double cuantil) {
+        return percentiles(instantanea(), new double[]{cuantil})[0];
+    }
+
+    private long[] instantanea() {
+        long[] copia = new long[NUM_CUBOS];
+        for (int i = 0; i < NUM_CUBOS; i++) {
+            copia[i] = cubos.get(i);
+        }
+        return copia;
+    }
+
+    /**
+     * Calcula varios percentiles, en orden creciente, con una sola pasada por los cubos.
+     */
+    private long[] percentiles(long[] copia, double[] cuantiles) {
+        long total = 0;
+        for (long n : copia) {
+            total += n;
+        }
+        long[] valores = new long[cuantiles.length];
+        if (total == 0) {
+            return valores;
+        }
+        long acumulado = 0;
+        int cubo = -1;
+        for (int k = 0; k < cuantiles.length; k++) {
+            long objetivo = Math.max(1, (long) Math.ceil(cuantiles[k] * total));
+            while (acumulado < objetivo) {
+                acumulado += copia[++cubo];
+            }
+            valores[k] = Math.min(limiteSuperior(cubo), maximo.get());
+        }
+        return valores;
+    }
+
+    @Override
+    void escribirPrometheus(Appendable salida) throws IOException {
+        long[] valores = percentiles(instantanea(), CUANTILES);
+        boolean hayMedidas = medidas.sum() > 0;
+        escribirCabecera(salida, "summary");
+        for (int k = 0; k < CUANTILES.length; k++) {
+            // Sin medidas los cuantiles no existen; Prometheus los representa con NaN
+            salida.append(getNombre()).append("{quantile=\"").append(Double.toString(CUANTILES[k])).append("\"} ")
+                    .append(hayMedidas ? Double.toString(valores[k] / NANOS_POR_SEGUNDO) : "NaN").append('\n');
+        }
+        salida.append(getNombre()).append("_sum ").append(Double.toString(getSumaNanos() / NANOS_POR_SEGUNDO))
+                .append('\n');
+        salida.append(getNombre()).append("_count ").append(Long.toString(getCuenta())).append('\n');
+    }
+
+    @Override
+    void escribirResumen(StringBuilder salida) {
+        if (medidas.sum() == 0) {
+            salida.append(String.format("%-45s %,14d%n", getDescripcion(), getCuenta()));
+            return;
+        }
+        long[] valores = percentiles(instantanea(), CUANTILES);
+        salida.append(String.format("%-45s %,14d  p50 %9s  p90 %9s  p99 %9s  p99,9 %9s  máx %9s%n",
+                getDescripcion(), getCuenta(), duracion(valores[0]), duracion(valores[1]), duracion(valores[2]),
+                duracion(valores[3]), duracion(maximo.get())));
+    }
+
+    /**
+     * Da formato a una duración con la unidad más adecuada.
+     */
+    private static String duracion(long nanos) {
+        if (nanos < 1_000) {
+            return nanos + " ns";
+        }
+        if (nanos < 1_000_000) {
+            return String.format("%.1f µs", nanos / 1e3);
+        }
+        if (nanos < 1_000_000_000) {
+            return String.format("%.1f ms", nanos / 1e6);
+        }
+        return String.format("%.2f s", nanos / 1e9);
+    }
+}
@@ -0,0 +1,58 @@
+package com.alvarobajo.banco.controller.metricas;
+
+import java.io.IOException;
+
+/**
+ * Clase base de las métricas del {@link RegistroMetricas}: cada métrica tiene un nombre en el formato de
+ * Prometheus ({@code banco_..._total} o {@code banco_..._segundos}) y una descripción para mostrarla.
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public abstract class Metrica {
+
+    private final String nombre;
+    private final String descripcion;
+
+    Metrica(String nombre, String descripcion) {
+        this.nombre = nombre;
+        this.descripcion = descripcion;
+    }
+
+    /**
+     * Obtiene el nombre de la métrica en el formato de Prometheus.
+     *
+     * @return Nombre de la métrica.
+     */
+    public String getNombre() {
+        return nombre;
+    }
+
+    /**
+     * Obtiene la descripción de la métrica.
+     *
+     * @return Descripción de la métrica.
+     */
+    public String getDescripcion() {
+        return descripcion;
+    }
+
+    /**
+     * Escribe la métrica en el formato de texto de Prometheus, con sus líneas {@code # HELP} y {@code # TYPE}.
+     *
+     * @param salida Destino del texto.
+     * @throws IOException si no se puede escribir.
+     */
+    abstract void escribirPrometheus(Appendable salida) throws IOException;
+
+    /**
+     * Escribe una línea legible con el valor de la métrica, para la consola.
+     *
+     * @param salida Destino del texto.
+     */
+    abstract void escribirResumen(StringBuilder salida);
+
+    void escribirCabecera(Appendable salida, String tipo) throws IOException {
+        salida.append("# HELP ").append(nombre).append(' ').append(descripcion).append('\n');
+        salida.append("# TYPE ").append(nombre).append(' ').append(tipo).append('\n');
+    }
+}
@@ -0,0 +1,137 @@
+package com.alvarobajo.banco.controller.metricas;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registro de las métricas de rendimiento de la aplicación: cuántas veces se ejecuta cada operación del banco y
+ * cuánto tarda.
+ *
+ * <p>Cada clase crea sus métricas en constantes estáticas con {@link #contador(String, String)} y
+ * {@link #histograma(String, String, int)}, y las actualiza sin cerrojos desde el código de las operaciones. El
+ * registro solo guarda la lista de métricas para mostrarlas con {@link #resumen()} o exportarlas en el formato de
+ * texto de Prometheus con {@link #escribirPrometheus(Appendable)}.</p>
+ *
+ * <p>Las métricas están activas por defecto. Se desactivan arrancando con {@code -Dbanco.metricas=false} o con
+ * {@link #setActivas(boolean)}; desactivadas, actualizar una métrica es solo leer un campo.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public final class RegistroMetricas {
+
+    /**
+     * Tipo de contenido de la exportación en formato Prometheus, para servirla por HTTP.
+     */
+    public static final String TIPO_PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final List<Metrica> metricas = new CopyOnWriteArrayList<>();
+    private static volatile boolean activas = !"false".equalsIgnoreCase(System.getProperty("banco.metricas"));
+
+    private RegistroMetricas() {
+    }
+
+    /**
+     * Crea un contador, o devuelve el ya registrado con el mismo nombre.
+     *
+     * @param nombre      Nombre en el formato de Prometheus, terminado en {@code _total}.
+     * @param descripcion Descripción de lo que se cuenta.
+     * @return Contador registrado.
+     * @throws IllegalArgumentException si ya hay una métrica con ese nombre que no es un contador.
+     */
+    public static Contador contador(String nombre, String descripcion) {
+        return registrar(Contador.class, new Contador(nombre, descripcion));
+    }
+
+    /**
+     * Crea un histograma de duraciones, o devuelve el ya registrado con el mismo nombre.
+     *
+     * @param nombre      Nombre en el formato de Prometheus, terminado en {@code _segundos}.
+     * @param descripcion Descripción de la operación que se mide.
+     * @param muestreo    Se mide la duración de una de cada {@code muestreo} operaciones; potencia de 2.
+     * @return Histograma registrado.
+     * @throws IllegalArgumentException si el muestreo no es una potencia de 2 o ya hay una métrica con ese nombre
+     *                                  que no es un histograma.
+     */
+    public static Histograma histograma(String nombre, String descripcion, int muestreo) {
+        return registrar(Histograma.class, new Histograma(nombre, descripcion, muestreo));
+    }
+
+    private static synchronized <T extends Metrica> T registrar(Class<T> tipo, T nueva) {
+        for (Metrica metrica : metricas) {
+            if (metrica.getNombre().equals(nueva.getNombre())) {
+                if (!tipo.isInstance(metrica)) {
+                    throw new IllegalArgumentException("Ya existe otra métrica llamada " + nueva.getNombre());
+                }
+                return tipo.cast(metrica);
+            }
+        }
+        metricas.add(nueva);
+        return nueva;
+    }
+
+    /**
+     * Indica si las métricas están activas.
+     *
+     * @return true si las métricas se actualizan.
+     */
+    public static boolean isActivas() {
+        return activas;
+    }
+
+    /**
+     * Activa o desactiva las métricas. Los valores ya acumulados se conservan.
+     *
+     * @param activas true para actualizar las métricas.
+     */
+    public static void setActivas(boolean activas) {
+        RegistroMetricas.activas = activas;
+    }
+
+    /**
+     * Genera un resumen legible de todas las métricas: el número de operaciones y, en las que se miden, los
+     * percentiles de la duración.
+     *
+     * @return Texto con una línea por métrica.
+     */
+    public static String resumen() {
+        StringBuilder texto = new StringBuilder();
+        texto.append(String.format("%-45s %14s%n", "Operación", "Veces"));
+        for (Metrica metrica : metricas) {
+            metrica.escribirResumen(texto);
+        }
+        if (!activas) {
+            texto.append("Las métricas están desactivadas.").append(System.lineSeparator());
+        }
+        return texto.toString();
+    }
+
+    /**
+     * Escribe todas las métricas en el formato de texto de Prometheus.
+     *
+     * @param salida Destino del texto. No se cierra.
+     * @throws IOException si no se puede escribir.
+     */
+    public static void escribirPrometheus(Appendable salida) throws IOException {
+        for (Metrica metrica : metricas) {
+            metrica.escribirPrometheus(salida);
+        }
+    }
+
+    /**
+     * Exporta todas las métricas a un archivo en el formato de texto de Prometheus, por ejemplo para el colector
+     * de archivos de texto de node_exporter. El archivo se reemplaza si existe.
+     *
+     * @param archivo Archivo de destino.
+     * @throws IOException si no se puede escribir el archivo.
+     */
+    public static void exportarPrometheus(Path archivo) throws IOException {
+        try (BufferedWriter escritor = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+            escribirPrometheus(escritor);
+        }
+    }
+}
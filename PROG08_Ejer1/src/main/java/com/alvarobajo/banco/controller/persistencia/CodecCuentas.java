@@ -0,0 +1,370 @@
+package com.alvarobajo.banco.controller.persistencia;
+
+import com.alvarobajo.banco.models.CuentaAhorro;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorrienteEmpresa;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.Dinero;
+import com.alvarobajo.banco.models.Persona;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Clase que convierte las cuentas bancarias a un formato binario compacto y versionado, y viceversa.
+ *
+ * <p>Cada cuenta se escribe como una etiqueta de tipo (un byte por subclase) seguida de sus campos: las cadenas
+ * como longitud (dos bytes sin signo) y bytes UTF-8, y los números con ancho fijo. A diferencia de la serialización de Java no se
+ * guarda la descripción de las clases, así que el archivo ocupa mucho menos y se lee mucho más rápido.</p>
+ *
+ * <p>El archivo de cuentas empieza con una cabecera ({@link #MAGICO}, versión y número de cuentas) y se lee y
+ * escribe por bloques con {@link FileChannel} y {@link ByteBuffer}. Los archivos antiguos, escritos con
+ * {@link ObjectOutputStream}, se reconocen por su cabecera y se leen con {@link #leerFormatoAntiguo(Path)}; al
+ * guardar de nuevo quedan migrados al formato binario. Lo mismo ocurre con los archivos binarios de la versión 1,
+ * que guardaban el saldo en euros.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class CodecCuentas {
+
+    /**
+     * Cabecera de los archivos de cuentas en formato binario ("BNCO").
+     */
+    public static final int MAGICO = 0x424E434F;
+
+    /**
+     * Versión actual del formato. En la versión 1 el saldo se guardaba en euros ({@code double}); desde la
+     * versión 2 se guarda en céntimos ({@code long}).
+     */
+    public static final byte VERSION = 2;
+
+    /**
+     * Versión del formato que guardaba el saldo en euros. Se sigue pudiendo leer.
+     */
+    public static final byte VERSION_SALDO_EN_EUROS = 1;
+
+    private static final byte TIPO_AHORRO = 1;
+    private static final byte TIPO_CORRIENTE_PERSONAL = 2;
+    private static final byte TIPO_CORRIENTE_EMPRESA = 3;
+
+    private static final short MAGICO_SERIALIZACION_JAVA = (short) 0xACED;
+    private static final int TEXTO_NULO = 0xFFFF;
+    private static final int LONGITUD_MAXIMA_TEXTO = 0xFFFE;
+    private static final int TAMANIO_CABECERA = 4 + 1 + 8;
+    private static final int TAMANIO_BLOQUE = 1 << 20;
+
+    private CodecCuentas() {
+    }
+
+    /**
+     * Calcula cuántos bytes ocupa una cuenta codificada.
+     *
+     * @param cuenta Cuenta a medir.
+     * @return Número de bytes que escribirá {@link #escribir(CuentaBancaria, ByteBuffer)}.
+     */
+    public static int tamanio(CuentaBancaria cuenta) {
+        Persona titular = cuenta.getTitular();
+        int tamanio = 1 + tamanio(cuenta.getIban()) + 8
+                + tamanio(titular.getNombre()) + tamanio(titular.getApellido1())
+                + tamanio(titular.getApellido2()) + tamanio(titular.getDni());
+        if (cuenta instanceof CuentaAhorro) {
+            return tamanio + 8;
+        } else if (cuenta instanceof CuentaCorrientePersonal) {
+            return tamanio + tamanio(((CuentaCorrientePersonal) cuenta).getListaEntidades()) + 8;
+        } else if (cuenta instanceof CuentaCorrienteEmpresa) {
+            return tamanio + tamanio(((CuentaCorrienteEmpresa) cuenta).getListaEntidades()) + 16;
+        }
+        throw new IllegalArgumentException("Tipo de cuenta desconocido: " + cuenta.getClass().getName());
+    }
+
+    /**
+     * Codifica una cuenta en el búfer, que debe tener al menos {@link #tamanio(CuentaBancaria)} bytes libres.
+     *
+     * @param cuenta Cuenta a codificar.
+     * @param bufer  Búfer de destino.
+     */
+    public static void escribir(CuentaBancaria cuenta, ByteBuffer bufer) {
+        if (cuenta instanceof CuentaAhorro) {
+            bufer.put(TIPO_AHORRO);
+        } else if (cuenta instanceof CuentaCorrientePersonal) {
+            bufer.put(TIPO_CORRIENTE_PERSONAL);
+        } else if (cuenta instanceof CuentaCorrienteEmpresa) {
+            bufer.put(TIPO_CORRIENTE_EMPRESA);
+        } else {
+            throw new IllegalArgumentException("Tipo de cuenta desconocido: " + cuenta.getClass().getName());
+        }
+        Persona titular = cuenta.getTitular();
+        escribirTexto(cuenta.getIban(), bufer);
+        bufer.putLong(cuenta.getSaldoCentimos());
+        escribirTexto(titular.getNombre(), bufer);
+        escribirTexto(titular.getApellido1(), bufer);
+        escribirTexto(titular.getApellido2(), bufer);
+        escribirTexto(titular.getDni(), bufer);
+        if (cuenta instanceof CuentaAhorro) {
+            bufer.putDouble(((CuentaAhorro) cuenta).getTipoInteres());
+        } else if (cuenta instanceof CuentaCorrientePersonal) {
+            CuentaCorrientePersonal personal = (CuentaCorrientePersonal) cuenta;
+            escribirTexto(personal.getListaEntidades(), bufer);
+            bufer.putDouble(personal.getComisionMantenimiento());
+        } else {
+            CuentaCorrienteEmpresa empresa = (CuentaCorrienteEmpresa) cuenta;
+            escribirTexto(empresa.getListaEntidades(), bufer);
+            bufer.putDouble(empresa.getTipoInteresDescubierto());
+            bufer.putDouble(empresa.getMaximoDescubierto());
+        }
+    }
+
+    /**
+     * Decodifica una cuenta del búfer en el formato actual.
+     *
+     * @param bufer Búfer de origen, posicionado al principio de una cuenta.
+     * @return Cuenta leída.
+     * @throws BufferUnderflowException si el búfer no contiene la cuenta completa.
+     * @throws IllegalArgumentException si la etiqueta de tipo no es válida.
+     */
+    public static CuentaBancaria leer(ByteBuffer bufer) {
+        return leer(bufer, VERSION);
+    }
+
+    /**
+     * Decodifica una cuenta del búfer escrita con una versión concreta del formato. Si el saldo se guardó en
+     * euros, se convierte a céntimos.
+     *
+     * @param bufer   Búfer de origen, posicionado al principio de una cuenta.
+     * @param version Versión del formato con la que se escribió la cuenta.
+     * @return Cuenta leída.
+     * @throws BufferUnderflowException si el búfer no contiene la cuenta completa.
+     * @throws IllegalArgumentException si la etiqueta de tipo no es válida.
+     */
+    public static CuentaBancaria leer(ByteBuffer bufer, byte version) {
+        byte tipo = bufer.get();
+        String iban = leerTexto(bufer);
+        long saldo = version == VERSION_SALDO_EN_EUROS ? Dinero.deEuros(bufer.getDouble()) : bufer.getLong();
+        Persona titular = new Persona(leerTexto(bufer), leerTexto(bufer), leerTexto(bufer), leerTexto(bufer));
+        CuentaBancaria cuenta;
+        switch (tipo) {
+            case TIPO_AHORRO:
+                cuenta = new CuentaAhorro(titular, 0, iban, bufer.getDouble());
+                break;
+            case TIPO_CORRIENTE_PERSONAL:
+                cuenta = new CuentaCorrientePersonal(titular, 0, iban, leerTexto(bufer), bufer.getDouble());
+                break;
+            case TIPO_CORRIENTE_EMPRESA:
+                String listaEntidades = leerTexto(bufer);
+                cuenta = new CuentaCorrienteEmpresa(titular, 0, iban, listaEntidades, bufer.getDouble(), bufer.getDouble());
+                break;
+            default:
+                throw new IllegalArgumentException("Tipo de cuenta desconocido en el archivo: " + tipo);
+        }
+        cuenta.setSaldoCentimos(saldo);
+        return cuenta;
+    }
+
+    /**
+     * Codifica una cuenta en un array de bytes, para guardarla dentro de otro registro (por ejemplo del diario).
+     *
+     * @param cuenta Cuenta a codificar.
+     * @return Bytes de la cuenta codificada.
+     */
+    public static byte[] aBytes(CuentaBancaria cuenta) {
+        ByteBuffer bufer = ByteBuffer.allocate(tamanio(cuenta));
+        escribir(cuenta, bufer);
+        return bufer.array();
+    }
+
+    /**
+     * Guarda todas las cuentas en un archivo en formato binario, escribiendo por bloques.
+     *
+     * @param archivo Archivo de destino; se sobrescribe si existe.
+     * @param cuentas Cuentas a guardar.
+     * @throws IOException si no se puede escribir el archivo.
+     */
+    public static void guardar(Path archivo, Collection<CuentaBancaria> cuentas) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bufer = ByteBuffer.allocateDirect(TAMANIO_BLOQUE);
+            bufer.putInt(MAGICO).put(VERSION).putLong(0);
+            long escritas = 0;
+            for (CuentaBancaria cuenta : cuentas) {
+                int necesario = tamanio(cuenta);
+                if (bufer.remaining() < necesario) {
+                    vaciar(bufer, canal);
+                    if (bufer.capacity() < necesario) {
+                        bufer = ByteBuffer.allocateDirect(necesario);
+                    }
+                }
+                escribir(cuenta, bufer);
+                escritas++;
+            }
+            vaciar(bufer, canal);
+            // El número de cuentas se escribe al final porque la colección puede cambiar mientras se recorre
+            bufer.putLong(escritas).flip();
+            canal.write(bufer, 5);
+            canal.force(true);
+        }
+    }
+
+    /**
+     * Lee todas las cuentas de un archivo en formato binario, por bloques.
+     *
+     * @param archivo Archivo de origen.
+     * @param destino Receptor de cada cuenta leída.
+     * @return Número de cuentas leídas.
+     * @throws IOException si no se puede leer el archivo o no tiene el formato esperado.
+     */
+    public static long cargar(Path archivo, Consumer<CuentaBancaria> destino) throws IOException {
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            ByteBuffer bufer = ByteBuffer.allocateDirect(TAMANIO_BLOQUE);
+            bufer.limit(0);
+            if (!leerAlMenos(canal, bufer, TAMANIO_CABECERA) || bufer.getInt() != MAGICO) {
+                throw new IOException("El archivo no tiene el formato binario de cuentas: " + archivo);
+            }
+            byte version = bufer.get();
+            if (version != VERSION && version != VERSION_SALDO_EN_EUROS) {
+                throw new IOException("Versión del archivo de cuentas no soportada: " + version);
+            }
+            long total = bufer.getLong();
+            for (long i = 0; i < total; i++) {
+                bufer.mark();
+                try {
+                    destino.accept(leer(bufer, version));
+                } catch (BufferUnderflowException e) {
+                    // La cuenta quedó partida entre dos bloques: se lee el siguiente bloque y se repite
+                    bufer.reset();
+                    if (!leerAlMenos(canal, bufer, bufer.remaining() + 1)) {
+                        throw new EOFException("El archivo de cuentas está incompleto: " + archivo);
+                    }
+                    i--;
+                }
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Indica si un archivo de cuentas está en el formato antiguo de serialización de Java.
+     *
+     * @param archivo Archivo a comprobar.
+     * @return true si el archivo empieza con la cabecera de {@link ObjectOutputStream}; false, en caso contrario.
+     * @throws IOException si no se puede leer el archivo.
+     */
+    public static boolean esFormatoAntiguo(Path archivo) throws IOException {
+        try (DataInputStream dis = new DataInputStream(Files.newInputStream(archivo))) {
+            return dis.readShort() == MAGICO_SERIALIZACION_JAVA;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lee un archivo de cuentas antiguo, guardado como {@code List<CuentaBancaria>} con {@link ObjectOutputStream}.
+     *
+     * @param archivo Archivo antiguo de cuentas.
+     * @return Lista de cuentas leídas.
+     * @throws IOException            si no se puede leer el archivo.
+     * @throws ClassNotFoundException si el archivo contiene clases desconocidas.
+     */
+    @SuppressWarnings("unchecked")
+    public static List<CuentaBancaria> leerFormatoAntiguo(Path archivo) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(archivo)))) {
+            return (List<CuentaBancaria>) ois.readObject();
+        }
+    }
+
+    /**
+     * Calcula la longitud en UTF-8 de un texto sin llegar a codificarlo. Debe coincidir con lo que escribe
+     * {@link #escribirTexto}: {@link String#getBytes} cambia cada sustituto suelto (sin su pareja) por un {@code ?},
+     * así que cuenta un byte.
+     */
+    private static int tamanio(String texto) {
+        if (texto == null) {
+            return 2;
+        }
+        int bytes = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length()
+                    && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return 2 + bytes;
+    }
+
+    private static void escribirTexto(String texto, ByteBuffer bufer) {
+        if (texto == null) {
+            bufer.putShort((short) TEXTO_NULO);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > LONGITUD_MAXIMA_TEXTO) {
+            throw new IllegalArgumentException("Texto demasiado largo para guardarlo: " + bytes.length + " bytes");
+        }
+        bufer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String leerTexto(ByteBuffer bufer) {
+        int longitud = Short.toUnsignedInt(bufer.getShort());
+        if (longitud == TEXTO_NULO) {
+            return null;
+        }
+        // En el array puede haber bytes más allá del límite del búfer: sin esta comprobación se leerían como texto
+        if (longitud > bufer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        if (bufer.hasArray()) {
+            String texto = new String(bufer.array(), bufer.arrayOffset() + bufer.position(), longitud, StandardCharsets.UTF_8);
+            bufer.position(bufer.position() + longitud);
+            return texto;
+        }
+        byte[] bytes = new byte[longitud];
+        bufer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void vaciar(ByteBuffer bufer, FileChannel canal) throws IOException {
+        bufer.flip();
+        while (bufer.hasRemaining()) {
+            canal.write(bufer);
+        }
+        bufer.clear();
+    }
+
+    /**
+     * Conserva los bytes sin leer del búfer y lo rellena desde el canal hasta tener al menos {@code minimo} bytes
+     * disponibles o llegar al final del archivo. Si hace falta, amplía el búfer.
+     *
+     * @return true si hay al menos {@code minimo} bytes disponibles.
+     */
+    private static boolean leerAlMenos(FileChannel canal, ByteBuffer bufer, int minimo) throws IOException {
+        if (minimo > bufer.capacity()) {
+            throw new IOException("Registro de cuenta demasiado grande: " + minimo + " bytes");
+        }
+        bufer.compact();
+        while (bufer.position() < minimo) {
+            if (canal.read(bufer) < 0) {
+                break;
+            }
+        }
+        bufer.flip();
+        return bufer.remaining() >= minimo;
+    }
+}
@@ -0,0 +1,1010 @@
+package com.alvarobajo.banco.controller.persistencia;
+
+import com.alvarobajo.banco.controller.AlmacenCuentas;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.ObservadorCuenta;
+import com.alvarobajo.banco.models.Persona;
+
+import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Clase que guarda las operaciones del banco en un diario (registro de escritura anticipada) para no perder
+ * datos si la aplicación se cierra de forma inesperada.
+ *
+ * <p>El estado del banco se reparte en dos tipos de archivo dentro del mismo directorio:</p>
+ * <ul>
+ *     <li>La instantánea ({@code datoscuentasbancarias.dat}), con todas las cuentas en un momento dado, en el
+ *     formato binario de {@link CodecCuentas}. Si la instantánea está aún en el formato antiguo de serialización
+ *     de Java se lee igualmente, y la siguiente compactación la migra al formato binario.</li>
+ *     <li>Los segmentos del diario ({@code datoscuentasbancarias.000001.diario}, ...), donde se añaden al final
+ *     las aperturas, ingresos, retiros, transferencias, eliminaciones y cambios de titular que ocurren después.</li>
+ * </ul>
+ *
+ * <p>Al arrancar se carga la instantánea y se vuelven a aplicar los segmentos en orden. Cada registro lleva su
+ * longitud y un CRC, de modo que un registro a medio escribir al final de un segmento se descarta. Los registros
+ * de saldo guardan el saldo resultante, así que volver a aplicarlos sobre una instantánea más reciente no cambia
+ * el resultado final. Una transferencia se guarda en un único registro con los saldos de las dos cuentas, así que
+ * al recuperar el diario se aplica entera o no se aplica.</p>
+ *
+ * <p>Las operaciones no esperan al disco: se añaden a un búfer en memoria y un hilo de confirmación las escribe y
+ * hace {@code force} por grupos (confirmación agrupada). Mientras el hilo espera al disco se van acumulando las
+ * siguientes operaciones, que se confirman juntas en la siguiente escritura. Quien necesite la garantía de que
+ * sus operaciones ya están en disco puede llamar a {@link #sincronizar()}. Si el disco no da abasto y se acumulan
+ * {@link #MAXIMO_PENDIENTE} bytes sin escribir, las operaciones siguientes esperan al hilo de confirmación. Si el
+ * hilo no puede escribir, el diario se cierra y las operaciones siguientes lanzan su error.</p>
+ *
+ * <p>Los avisos llegan con el cerrojo de la cuenta tomado, así que añadir un registro no toma ningún monitor: cada
+ * hilo codifica el registro en su propio búfer, reserva su hueco en el búfer compartido con una suma atómica y lo
+ * copia allí. El búfer compartido es una cadena de tramos de tamaño fijo; el hilo cuya reserva no cabe en un tramo
+ * enlaza el siguiente y marca el final del lleno. Cada registro se publica escribiendo su longitud la última, y el
+ * hilo de confirmación copia los registros completos en orden de reserva, calcula su CRC y los escribe. Como la
+ * reserva se hace con el cerrojo de la cuenta, los registros de una misma cuenta quedan en el orden en que
+ * ocurren.</p>
+ *
+ * <p>Una transferencia entre cuentas de dos diarios distintos (los fragmentos de un
+ * {@link com.alvarobajo.banco.controller.AlmacenFragmentado}) se guarda en los dos con el mismo número (ver
+ * {@link #transferenciaCompartida}), y cada diario aplica al recuperarse el lado de las cuentas que tiene. Si una
+ * caída deja el registro en un solo diario, quien coordina los dos lo completa con
+ * {@link #getTransferenciasCompartidas()}. Para distinguir un registro perdido de uno que ya se compactó, cada
+ * segmento nuevo empieza con el mayor número de transferencia compartida escrito en los anteriores
+ * ({@link #getHorizonteCompartidas()}).</p>
+ *
+ * <p>Cuando se han registrado {@link #UMBRAL_COMPACTACION} operaciones desde la última instantánea,
+ * {@link #necesitaCompactar()} lo indica y el banco llama a {@link #compactar(Collection)}, que empieza un segmento
+ * nuevo, escribe una instantánea y borra los segmentos anteriores. Así el tiempo de arranque queda acotado y el
+ * coste de guardar crece con el número de cambios, no con el tamaño del banco.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class Diario implements ObservadorCuenta, AutoCloseable {
+
+    /**
+     * Número de operaciones registradas a partir del cual conviene compactar el diario.
+     */
+    public static final long UMBRAL_COMPACTACION = 100_000;
+
+    // Registros escritos por versiones anteriores del diario (aperturas con serialización de Java y saldos en
+    // euros); solo se leen
+    private static final byte APERTURA_SERIALIZADA = 1;
+    private static final byte INGRESO_EN_EUROS = 2;
+    private static final byte RETIRO_EN_EUROS = 3;
+    private static final byte APERTURA_EN_EUROS = 6;
+
+    private static final byte ELIMINACION = 4;
+    private static final byte CAMBIO_TITULAR = 5;
+    private static final byte INGRESO = 7;
+    private static final byte RETIRO = 8;
+    private static final byte APERTURA = 9;
+    private static final byte TRANSFERENCIA = 10;
+    private static final byte TRANSFERENCIA_COMPARTIDA = 11;
+    private static final byte HORIZONTE = 12;
+
+    private static final String EXTENSION_SEGMENTO = ".diario";
+    private static final int TAMANIO_CABECERA = 8;
+    private static final int TAMANIO_BUFER = 64 * 1024;
+    private static final int TAMANIO_TRAMO = 256 * 1024;
+    // Bytes sin escribir en disco a partir de los que registrar() espera al hilo de confirmación
+    private static final long MAXIMO_PENDIENTE = 64L * 1024 * 1024;
+    // Los registros de un tramo empiezan en múltiplos de 8 para poder leer su longitud como volátil
+    private static final int ALINEACION = 8;
+    // Longitud que deja el hilo cuya reserva no cabe al final de un tramo: el tramo no tiene más registros
+    private static final int FIN_TRAMO = -1;
+    private static final VarHandle ENTERO = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LARGO = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    // Primera posición de un array de bytes en la que un int está alineado en memoria (depende de la JVM)
+    private static final int DESFASE = desfaseAlineado();
+
+    /**
+     * Tramo del búfer de registros pendientes. Los hilos reservan su hueco sumando a {@code reservado}, que puede
+     * pasar del tamaño del tramo cuando una reserva no cabe.
+     */
+    private static final class Tramo {
+        // Los registros empiezan en DESFASE; las posiciones de "reservado" se cuentan desde ahí
+        final byte[] datos;
+        final int tamanio;
+        // Posición del primer byte del tramo contando desde el primer tramo, para sincronizar()
+        final long inicio;
+        final AtomicInteger reservado = new AtomicInteger();
+        final AtomicReference<Tramo> siguiente = new AtomicReference<>();
+
+        Tramo(long inicio, int tamanio) {
+            this.inicio = inicio;
+            this.tamanio = tamanio;
+            this.datos = new byte[DESFASE + tamanio];
+        }
+
+        int longitud(int posicion) {
+            return (int) ENTERO.getVolatile(datos, DESFASE + posicion);
+        }
+
+        void publicar(int posicion, int longitud) {
+            ENTERO.setVolatile(datos, DESFASE + posicion, longitud);
+        }
+    }
+
+    private static int desfaseAlineado() {
+        byte[] prueba = new byte[2 * ALINEACION];
+        for (int desfase = 0; desfase < ALINEACION; desfase += 4) {
+            try {
+                ENTERO.getVolatile(prueba, desfase);
+                return desfase;
+            } catch (IllegalStateException e) {
+                // Acceso desalineado: se prueba la siguiente posición
+            }
+        }
+        throw new IllegalStateException("No se puede acceder de forma atómica a los registros del diario");
+    }
+
+    /**
+     * Búfer de cada hilo en el que se codifica un registro antes de copiarlo al tramo. El formato de los textos es
+     * el de {@link DataOutputStream#writeUTF(String)}.
+     */
+    private static final class Codificador {
+        byte[] datos = new byte[128];
+        int posicion;
+
+        Codificador iniciar(byte tipo) {
+            posicion = 0;
+            return ponerByte(tipo);
+        }
+
+        Codificador ponerByte(byte valor) {
+            asegurar(1);
+            datos[posicion++] = valor;
+            return this;
+        }
+
+        Codificador ponerLong(long valor) {
+            asegurar(8);
+            for (int desplazamiento = 56; desplazamiento >= 0; desplazamiento -= 8) {
+                datos[posicion++] = (byte) (valor >>> desplazamiento);
+            }
+            return this;
+        }
+
+        Codificador ponerBytes(byte[] valor) {
+            asegurar(valor.length);
+            System.arraycopy(valor, 0, datos, posicion, valor.length);
+            posicion += valor.length;
+            return this;
+        }
+
+        Codificador ponerTexto(String texto) {
+            int longitud = 0;
+            for (int i = 0; i < texto.length(); i++) {
+                char c = texto.charAt(i);
+                longitud += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+            }
+            if (longitud > 0xFFFF) {
+                throw new UncheckedIOException(new UTFDataFormatException("Texto demasiado largo para el diario: "
+                        + longitud + " bytes"));
+            }
+            asegurar(2 + longitud);
+            datos[posicion++] = (byte) (longitud >>> 8);
+            datos[posicion++] = (byte) longitud;
+            for (int i = 0; i < texto.length(); i++) {
+                char c = texto.charAt(i);
+                if (c >= 0x0001 && c <= 0x007F) {
+                    datos[posicion++] = (byte) c;
+                } else if (c <= 0x07FF) {
+                    datos[posicion++] = (byte) (0xC0 | (c >> 6));
+                    datos[posicion++] = (byte) (0x80 | (c & 0x3F));
+                } else {
+                    datos[posicion++] = (byte) (0xE0 | (c >> 12));
+                    datos[posicion++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    datos[posicion++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+            return this;
+        }
+
+        private void asegurar(int bytes) {
+            if (posicion + bytes > datos.length) {
+                datos = Arrays.copyOf(datos, Math.max(datos.length * 2, posicion + bytes));
+            }
+        }
+    }
+
+    /**
+     * Transferencia entre cuentas de dos diarios distintos, tal como la guarda cada uno de ellos.
+     */
+    public static final class TransferenciaCompartida {
+        private final long numero;
+        private final String ibanOrigen;
+        private final long importe;
+        private final long nuevoOrigen;
+        private final String ibanDestino;
+        private final long nuevoDestino;
+
+        TransferenciaCompartida(long numero, String ibanOrigen, long importe, long nuevoOrigen, String ibanDestino,
+                                long nuevoDestino) {
+            this.numero = numero;
+            this.ibanOrigen = ibanOrigen;
+            this.importe = importe;
+            this.nuevoOrigen = nuevoOrigen;
+            this.ibanDestino = ibanDestino;
+            this.nuevoDestino = nuevoDestino;
+        }
+
+        /**
+         * Obtiene el número de la transferencia, el mismo en los dos diarios.
+         *
+         * @return Número de la transferencia.
+         */
+        public long getNumero() {
+            return numero;
+        }
+
+        /**
+         * Obtiene el IBAN de la cuenta de la que sale el dinero.
+         *
+         * @return IBAN del origen.
+         */
+        public String getIbanOrigen() {
+            return ibanOrigen;
+        }
+
+        /**
+         * Obtiene el saldo del origen después de la transferencia.
+         *
+         * @return Saldo del origen en céntimos.
+         */
+        public long getNuevoOrigen() {
+            return nuevoOrigen;
+        }
+
+        /**
+         * Obtiene el IBAN de la cuenta a la que llega el dinero.
+         *
+         * @return IBAN del destino.
+         */
+        public String getIbanDestino() {
+            return ibanDestino;
+        }
+
+        /**
+         * Obtiene el saldo del destino después de la transferencia.
+         *
+         * @return Saldo del destino en céntimos.
+         */
+        public long getNuevoDestino() {
+            return nuevoDestino;
+        }
+
+        /**
+         * Aplica la transferencia a una de sus dos cuentas restando o sumando el importe a su saldo actual. Los
+         * saldos guardados en la transferencia no sirven para la cuenta cuyo diario la perdió: ese diario también
+         * perdió las operaciones anteriores que no llegaron a disco, y esas operaciones ya contaban en ellos.
+         *
+         * @param cuenta Origen o destino de la transferencia.
+         * @return Transferencia con el saldo resultante de la cuenta, para volver a registrarla en su diario.
+         */
+        public TransferenciaCompartida aplicar(CuentaBancaria cuenta) {
+            if (cuenta.getIban().equals(ibanOrigen)) {
+                long saldo = cuenta.getSaldoCentimos() - importe;
+                cuenta.setSaldoCentimos(saldo);
+                return new TransferenciaCompartida(numero, ibanOrigen, importe, saldo, ibanDestino, nuevoDestino);
+            }
+            long saldo = cuenta.getSaldoCentimos() + importe;
+            cuenta.setSaldoCentimos(saldo);
+            return new TransferenciaCompartida(numero, ibanOrigen, importe, nuevoOrigen, ibanDestino, saldo);
+        }
+    }
+
+    /**
+     * Espera que {@link #compactar(Collection, Barrera)} ejecuta antes de borrar los segmentos anteriores.
+     */
+    @FunctionalInterface
+    public interface Barrera {
+
+        /**
+         * Espera a que se cumpla la condición para borrar los segmentos.
+         *
+         * @throws IOException si la condición no se puede cumplir; los segmentos no se borran.
+         */
+        void esperar() throws IOException;
+    }
+
+    private static final ThreadLocal<Codificador> CODIFICADORES = ThreadLocal.withInitial(Codificador::new);
+
+    private final Path archivoInstantanea;
+    private final Path directorio;
+    private final String nombreBase;
+
+    // Tramo en el que se reservan los registros nuevos; el hilo de confirmación empieza por "primerTramo"
+    private final AtomicReference<Tramo> tramoActual;
+    private Tramo primerTramo;
+    // true mientras el hilo de confirmación está dormido esperando registros
+    private volatile boolean esperando;
+    private volatile boolean cerrado;
+
+    // Posición hasta la que los registros están en disco y error del hilo de confirmación, protegidos por "cerrojo";
+    // la posición también se lee sin el monitor para ver si hay sitio en los tramos
+    private final Object cerrojo = new Object();
+    private volatile long posicionConfirmada;
+    private IOException error;
+
+    // Segmento actual y registros escritos, protegidos por "cerrojoCanal"
+    private final Object cerrojoCanal = new Object();
+    private FileChannel canal;
+    private long segmentoActual;
+    private volatile long registrosEscritos;
+    private volatile long registrosEnInstantanea;
+    private volatile Thread hiloConfirmacion;
+    // Mayor número de transferencia compartida escrito en disco, protegido por "cerrojoCanal"
+    private long compartidasEscritas;
+
+    // Transferencias compartidas y horizonte leídos de los segmentos por cargar(), hasta iniciar()
+    private List<TransferenciaCompartida> compartidasCargadas = new ArrayList<>();
+    private long horizonteCargado;
+
+    /**
+     * Constructor para inicializar el diario.
+     *
+     * @param archivoInstantanea Ruta del archivo de instantánea; los segmentos se crean en su mismo directorio.
+     */
+    public Diario(Path archivoInstantanea) {
+        this.archivoInstantanea = archivoInstantanea.toAbsolutePath();
+        this.directorio = this.archivoInstantanea.getParent();
+        String nombre = this.archivoInstantanea.getFileName().toString();
+        int punto = nombre.lastIndexOf('.');
+        this.nombreBase = punto > 0 ? nombre.substring(0, punto) : nombre;
+        this.primerTramo = new Tramo(0, TAMANIO_TRAMO);
+        this.tramoActual = new AtomicReference<>(primerTramo);
+    }
+
+    /**
+     * Obtiene la ruta del archivo de instantánea.
+     *
+     * @return Ruta de la instantánea.
+     */
+    public Path getArchivoInstantanea() {
+        return archivoInstantanea;
+    }
+
+    /**
+     * Indica si existe una instantánea guardada.
+     *
+     * @return true si existe el archivo de instantánea; false, en caso contrario.
+     */
+    public boolean existeInstantanea() {
+        return Files.exists(archivoInstantanea);
+    }
+
+    /**
+     * Carga la instantánea en el almacén y vuelve a aplicar las operaciones de los segmentos del diario.
+     * Se debe llamar antes de {@link #iniciar()} y antes de suscribir el diario al almacén.
+     *
+     * @param almacen Almacén en el que cargar las cuentas.
+     * @return Número de operaciones recuperadas del diario.
+     * @throws IOException            si no se puede leer la instantánea o un segmento.
+     * @throws ClassNotFoundException si la instantánea contiene clases desconocidas.
+     */
+    public int cargar(AlmacenCuentas almacen) throws IOException, ClassNotFoundException {
+        if (existeInstantanea()) {
+            if (CodecCuentas.esFormatoAntiguo(archivoInstantanea)) {
+                for (CuentaBancaria cuenta : CodecCuentas.leerFormatoAntiguo(archivoInstantanea)) {
+                    almacen.insertar(cuenta);
+                }
+            } else {
+                CodecCuentas.cargar(archivoInstantanea, almacen::insertar);
+            }
+        }
+        int recuperadas = 0;
+        for (Path segmento : buscarSegmentos().values()) {
+            recuperadas += reproducir(segmento, almacen);
+        }
+        compartidasEscritas = horizonteCargado;
+        for (TransferenciaCompartida transferencia : compartidasCargadas) {
+            compartidasEscritas = Math.max(compartidasEscritas, transferencia.numero);
+        }
+        return recuperadas;
+    }
+
+    /**
+     * Obtiene las transferencias compartidas que {@link #cargar(AlmacenCuentas)} ha encontrado en los segmentos.
+     * Solo están disponibles hasta {@link #iniciar()}.
+     *
+     * @return Lista con las transferencias, en el orden del diario.
+     */
+    public List<TransferenciaCompartida> getTransferenciasCompartidas() {
+        return Collections.unmodifiableList(compartidasCargadas);
+    }
+
+    /**
+     * Obtiene el horizonte de las transferencias compartidas: todas las de número igual o menor que este y que
+     * no están en los segmentos ya se escribieron en segmentos compactados, y están en la instantánea.
+     *
+     * @return Horizonte leído por {@link #cargar(AlmacenCuentas)}, o 0 si el diario nunca se ha compactado con
+     * transferencias compartidas.
+     */
+    public long getHorizonteCompartidas() {
+        return horizonteCargado;
+    }
+
+    /**
+     * Abre un segmento nuevo y arranca el hilo de confirmación agrupada.
+     *
+     * @throws IOException si no se puede crear el segmento.
+     */
+    public void iniciar() throws IOException {
+        compartidasCargadas = new ArrayList<>();
+        TreeMap<Long, Path> segmentos = buscarSegmentos();
+        segmentoActual = segmentos.isEmpty() ? 1 : segmentos.lastKey() + 1;
+        canal = abrirSegmento(segmentoActual);
+        Thread hilo = new Thread(this::confirmarPendientes, "diario-cuentas");
+        hilo.setDaemon(true);
+        hiloConfirmacion = hilo;
+        hilo.start();
+    }
+
+    /**
+     * Indica si se han registrado suficientes operaciones desde la última instantánea como para compactar.
+     *
+     * @return true si conviene compactar; false, en caso contrario.
+     */
+    public boolean necesitaCompactar() {
+        return registrosEscritos - registrosEnInstantanea >= UMBRAL_COMPACTACION;
+    }
+
+    /**
+     * Compacta el diario: empieza un segmento nuevo, escribe una instantánea con las cuentas indicadas y borra los
+     * segmentos anteriores.
+     *
+     * <p>Las cuentas pueden seguir cambiando mientras se escribe la instantánea: esos cambios quedan en el segmento
+     * nuevo y se vuelven a aplicar al cargar. La instantánea puede recoger una transferencia a medias (el abono y no
+     * el cargo), así que antes de sustituir la anterior se espera a que esos cambios estén en disco.</p>
+     *
+     * @param cuentas Cuentas actuales del banco.
+     * @throws IOException si no se puede escribir la instantánea o el diario.
+     */
+    public void compactar(Collection<CuentaBancaria> cuentas) throws IOException {
+        compactar(cuentas, null);
+    }
+
+    /**
+     * Compacta el diario como {@link #compactar(Collection)}, pero antes de borrar los segmentos anteriores espera a
+     * la barrera. Quien comparte transferencias con otros diarios la usa para que esos diarios tengan en disco su
+     * copia de las transferencias que se van a borrar de este.
+     *
+     * @param cuentas      Cuentas actuales del banco.
+     * @param antesDeBorrar Barrera que se espera antes de borrar los segmentos, o null.
+     * @throws IOException si no se puede escribir la instantánea o el diario, o si falla la barrera.
+     */
+    public synchronized void compactar(Collection<CuentaBancaria> cuentas, Barrera antesDeBorrar) throws IOException {
+        long segmentoAnterior = rotarSegmento();
+        escribirInstantanea(cuentas);
+        if (antesDeBorrar != null) {
+            antesDeBorrar.esperar();
+        }
+        for (Map.Entry<Long, Path> segmento : buscarSegmentos().entrySet()) {
+            if (segmento.getKey() <= segmentoAnterior) {
+                Files.deleteIfExists(segmento.getValue());
+            }
+        }
+    }
+
+    /**
+     * Espera a que todas las operaciones registradas hasta ahora estén escritas en disco.
+     *
+     * @throws IOException si el hilo de confirmación no ha podido escribir el diario.
+     */
+    public void sincronizar() throws IOException {
+        Tramo tramo = tramoActual.get();
+        long objetivo = tramo.inicio + Math.min(tramo.reservado.get(), tramo.tamanio);
+        synchronized (cerrojo) {
+            while (posicionConfirmada < objetivo && error == null && hiloConfirmacion != null && hiloConfirmacion.isAlive()) {
+                try {
+                    cerrojo.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrumpido esperando al diario.");
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * Escribe las operaciones pendientes, detiene el hilo de confirmación y cierra el segmento actual.
+     *
+     * @throws IOException si no se pueden escribir las operaciones pendientes.
+     */
+    @Override
+    public void close() throws IOException {
+        sincronizar();
+        cerrado = true;
+        Thread hilo = hiloConfirmacion;
+        if (hilo != null) {
+            LockSupport.unpark(hilo);
+            try {
+                hilo.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (cerrojoCanal) {
+            if (canal != null) {
+                canal.close();
+                canal = null;
+            }
+        }
+    }
+
+    // Avisos del almacén: cada uno se convierte en un registro del diario
+
+    @Override
+    public void cuentaAbierta(CuentaBancaria cuenta) {
+        registrar(CODIFICADORES.get().iniciar(APERTURA).ponerBytes(CodecCuentas.aBytes(cuenta)));
+    }
+
+    @Override
+    public void saldoModificado(CuentaBancaria cuenta, long anterior, long nuevo) {
+        registrar(CODIFICADORES.get().iniciar(nuevo >= anterior ? INGRESO : RETIRO)
+                .ponerTexto(cuenta.getIban())
+                .ponerLong(Math.abs(nuevo - anterior))
+                .ponerLong(nuevo));
+    }
+
+    @Override
+    public void transferenciaRealizada(CuentaBancaria origen, long anteriorOrigen, long nuevoOrigen,
+                                       CuentaBancaria destino, long anteriorDestino, long nuevoDestino) {
+        registrar(CODIFICADORES.get().iniciar(TRANSFERENCIA)
+                .ponerTexto(origen.getIban())
+                .ponerLong(anteriorOrigen - nuevoOrigen)
+                .ponerLong(nuevoOrigen)
+                .ponerTexto(destino.getIban())
+                .ponerLong(nuevoDestino));
+    }
+
+    /**
+     * Registra una transferencia entre una cuenta de este diario y una de otro. Quien la registra debe hacerlo en los
+     * dos diarios con el mismo número, en orden creciente de número y en el mismo orden en los dos.
+     *
+     * @param numero         Número de la transferencia, mayor que el de todas las anteriores.
+     * @param origen         Cuenta de la que sale el dinero.
+     * @param anteriorOrigen Saldo en céntimos que tenía el origen antes de la transferencia.
+     * @param nuevoOrigen    Saldo actual del origen en céntimos.
+     * @param destino        Cuenta a la que llega el dinero.
+     * @param nuevoDestino   Saldo actual del destino en céntimos.
+     */
+    public void transferenciaCompartida(long numero, CuentaBancaria origen, long anteriorOrigen, long nuevoOrigen,
+                                        CuentaBancaria destino, long nuevoDestino) {
+        registrarCompartida(numero, origen.getIban(), anteriorOrigen - nuevoOrigen, nuevoOrigen, destino.getIban(),
+                nuevoDestino);
+    }
+
+    /**
+     * Vuelve a registrar una transferencia compartida que solo llegó al diario de la otra cuenta.
+     *
+     * @param transferencia Transferencia leída del otro diario.
+     */
+    public void transferenciaCompartida(TransferenciaCompartida transferencia) {
+        registrarCompartida(transferencia.numero, transferencia.ibanOrigen, transferencia.importe,
+                transferencia.nuevoOrigen, transferencia.ibanDestino, transferencia.nuevoDestino);
+    }
+
+    private void registrarCompartida(long numero, String ibanOrigen, long importe, long nuevoOrigen,
+                                     String ibanDestino, long nuevoDestino) {
+        registrar(CODIFICADORES.get().iniciar(TRANSFERENCIA_COMPARTIDA)
+                .ponerLong(numero)
+                .ponerTexto(ibanOrigen)
+                .ponerLong(importe)
+                .ponerLong(nuevoOrigen)
+                .ponerTexto(ibanDestino)
+                .ponerLong(nuevoDestino));
+    }
+
+    @Override
+    public void cuentaEliminada(CuentaBancaria cuenta) {
+        registrar(CODIFICADORES.get().iniciar(ELIMINACION).ponerTexto(cuenta.getIban()));
+    }
+
+    @Override
+    public void titularCambiado(CuentaBancaria cuenta, Persona anterior, Persona nuevo) {
+        registrar(CODIFICADORES.get().iniciar(CAMBIO_TITULAR)
+                .ponerTexto(cuenta.getIban())
+                .ponerTexto(nuevo.getNombre())
+                .ponerTexto(nuevo.getApellido1())
+                .ponerTexto(nuevo.getApellido2())
+                .ponerTexto(nuevo.getDni()));
+    }
+
+    /**
+     * Añade un registro al búfer de pendientes. El formato es: longitud (int), CRC32C (int), tipo (byte) y cuerpo;
+     * el CRC lo calcula el hilo de confirmación. Si el diario ya está cerrado el registro se descarta, salvo que se
+     * cerrara por un error de escritura: entonces se lanza ese error, para que la operación no se dé por guardada.
+     *
+     * @throws UncheckedIOException si el hilo de confirmación no ha podido escribir el diario.
+     */
+    private void registrar(Codificador registro) {
+        if (cerrado) {
+            comprobarError();
+            return;
+        }
+        esperarHueco();
+        int longitud = registro.posicion;
+        int tamanio = alinear(TAMANIO_CABECERA + longitud);
+        Tramo tramo = tramoActual.get();
+        int posicion = tramo.reservado.getAndAdd(tamanio);
+        while (posicion + tamanio > tramo.tamanio) {
+            Tramo lleno = tramo;
+            tramo = siguienteTramo(lleno, tamanio);
+            if (posicion < lleno.tamanio) {
+                lleno.publicar(posicion, FIN_TRAMO);
+            }
+            posicion = tramo.reservado.getAndAdd(tamanio);
+        }
+        System.arraycopy(registro.datos, 0, tramo.datos, DESFASE + posicion + TAMANIO_CABECERA, longitud);
+        tramo.publicar(posicion, longitud);
+        if (esperando) {
+            LockSupport.unpark(hiloConfirmacion);
+        }
+    }
+
+    /**
+     * Espera a que el hilo de confirmación escriba los registros pendientes si ya ocupan {@link #MAXIMO_PENDIENTE}
+     * bytes, para que los tramos no crezcan sin límite cuando el disco no da abasto. Se espera antes de reservar el
+     * hueco del registro: el hilo de confirmación escribe en orden de reserva y se detendría en un hueco reservado
+     * y sin publicar.
+     *
+     * @throws UncheckedIOException si el hilo de confirmación falla mientras se espera.
+     */
+    private void esperarHueco() {
+        if (pendiente() <= MAXIMO_PENDIENTE) {
+            return;
+        }
+        synchronized (cerrojo) {
+            while (pendiente() > MAXIMO_PENDIENTE && error == null && !cerrado && hiloConfirmacion != null
+                    && hiloConfirmacion.isAlive()) {
+                LockSupport.unpark(hiloConfirmacion);
+                try {
+                    cerrojo.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new InterruptedIOException("Interrumpido esperando al diario."));
+                }
+            }
+        }
+        comprobarError();
+    }
+
+    private long pendiente() {
+        Tramo tramo = tramoActual.get();
+        return tramo.inicio + Math.min(tramo.reservado.get(), tramo.tamanio) - posicionConfirmada;
+    }
+
+    private void comprobarError() {
+        synchronized (cerrojo) {
+            if (error != null) {
+                throw new UncheckedIOException("No se pudo escribir el diario de cuentas: " + error.getMessage(),
+                        error);
+            }
+        }
+    }
+
+    /**
+     * Obtiene el tramo que sigue a uno lleno y lo convierte en el tramo actual. Si aún no existe, lo crea; el
+     * tramo nuevo tiene sitio al menos para una reserva del tamaño indicado.
+     */
+    private Tramo siguienteTramo(Tramo lleno, int tamanio) {
+        Tramo siguiente = lleno.siguiente.get();
+        if (siguiente == null) {
+            Tramo nuevo = new Tramo(lleno.inicio + lleno.tamanio, Math.max(TAMANIO_TRAMO, tamanio));
+            siguiente = lleno.siguiente.compareAndSet(null, nuevo) ? nuevo : lleno.siguiente.get();
+        }
+        tramoActual.compareAndSet(lleno, siguiente);
+        return siguiente;
+    }
+
+    private static int alinear(int tamanio) {
+        return (tamanio + ALINEACION - 1) & -ALINEACION;
+    }
+
+    /**
+     * Bucle del hilo de confirmación: recorre los tramos en orden, copia los registros completos a un búfer y los
+     * escribe por grupos. Cuando no hay registros nuevos se duerme hasta que un hilo publica uno.
+     */
+    private void confirmarPendientes() {
+        Tramo tramo = primerTramo;
+        primerTramo = null;
+        int leido = 0;
+        ByteBuffer lote = ByteBuffer.allocate(TAMANIO_BUFER);
+        CRC32C crc = new CRC32C();
+        try {
+            while (true) {
+                long registros = 0;
+                long compartidas = 0;
+                while (lote.position() < TAMANIO_BUFER) {
+                    int longitud = leido < tramo.tamanio ? tramo.longitud(leido) : FIN_TRAMO;
+                    if (longitud == 0) {
+                        break;
+                    }
+                    if (longitud == FIN_TRAMO) {
+                        tramo = siguienteTramo(tramo, 0);
+                        leido = 0;
+                        continue;
+                    }
+                    if (lote.remaining() < TAMANIO_CABECERA + longitud) {
+                        lote = ampliar(lote, TAMANIO_CABECERA + longitud);
+                    }
+                    int cuerpo = DESFASE + leido + TAMANIO_CABECERA;
+                    if (tramo.datos[cuerpo] == TRANSFERENCIA_COMPARTIDA) {
+                        compartidas = Math.max(compartidas, (long) LARGO.get(tramo.datos, cuerpo + 1));
+                    }
+                    crc.reset();
+                    crc.update(tramo.datos, cuerpo, longitud);
+                    lote.putInt(longitud).putInt((int) crc.getValue()).put(tramo.datos, cuerpo, longitud);
+                    leido += alinear(TAMANIO_CABECERA + longitud);
+                    registros++;
+                }
+                if (registros > 0) {
+                    synchronized (cerrojoCanal) {
+                        escribir(lote);
+                        registrosEscritos += registros;
+                        compartidasEscritas = Math.max(compartidasEscritas, compartidas);
+                    }
+                    marcarConfirmado(tramo.inicio + leido);
+                    continue;
+                }
+                marcarConfirmado(tramo.inicio + leido);
+                if (cerrado) {
+                    return;
+                }
+                esperando = true;
+                if (tramo.longitud(leido) == 0) {
+                    LockSupport.park(this);
+                }
+                esperando = false;
+            }
+        } catch (IOException e) {
+            System.out.println("Error al escribir el diario de cuentas: " + e.getMessage());
+            synchronized (cerrojo) {
+                error = e;
+                cerrado = true;
+                cerrojo.notifyAll();
+            }
+        }
+    }
+
+    private static ByteBuffer ampliar(ByteBuffer lote, int necesario) {
+        ByteBuffer mayor = ByteBuffer.allocate(Math.max(lote.capacity() * 2, lote.position() + necesario));
+        lote.flip();
+        return mayor.put(lote);
+    }
+
+    /**
+     * Escribe el lote en el segmento actual, fuerza su escritura en disco y lo vacía.
+     * Se debe llamar con "cerrojoCanal" tomado.
+     */
+    private void escribir(ByteBuffer lote) throws IOException {
+        lote.flip();
+        if (canal != null) {
+            while (lote.hasRemaining()) {
+                canal.write(lote);
+            }
+            canal.force(false);
+        }
+        lote.clear();
+    }
+
+    private void marcarConfirmado(long posicion) {
+        synchronized (cerrojo) {
+            if (posicion > posicionConfirmada) {
+                posicionConfirmada = posicion;
+                cerrojo.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Cierra el segmento actual y abre el siguiente. Los registros que el hilo de confirmación aún no ha escrito
+     * van al segmento nuevo, detrás de los anteriores, así que se vuelven a aplicar después de la instantánea.
+     * Si el diario tiene transferencias compartidas, el segmento nuevo empieza con su horizonte.
+     *
+     * @return Número del segmento que se ha cerrado.
+     */
+    private long rotarSegmento() throws IOException {
+        synchronized (cerrojoCanal) {
+            registrosEnInstantanea = registrosEscritos;
+            long anterior = segmentoActual;
+            if (canal != null) {
+                canal.close();
+                segmentoActual++;
+                canal = abrirSegmento(segmentoActual);
+                if (compartidasEscritas > 0) {
+                    escribirHorizonte(compartidasEscritas);
+                }
+            }
+            return anterior;
+        }
+    }
+
+    /**
+     * Escribe al principio del segmento actual el mayor número de transferencia compartida escrito en los anteriores.
+     * Se debe llamar con "cerrojoCanal" tomado.
+     */
+    private void escribirHorizonte(long horizonte) throws IOException {
+        ByteBuffer registro = ByteBuffer.allocate(TAMANIO_CABECERA + 1 + Long.BYTES);
+        registro.position(TAMANIO_CABECERA);
+        registro.put(HORIZONTE).putLong(horizonte);
+        CRC32C crc = new CRC32C();
+        crc.update(registro.array(), TAMANIO_CABECERA, 1 + Long.BYTES);
+        registro.putInt(0, 1 + Long.BYTES).putInt(4, (int) crc.getValue());
+        escribir(registro);
+    }
+
+    /**
+     * Escribe la instantánea en un archivo temporal y lo mueve sobre la anterior, para no dejarla a medias.
+     */
+    private void escribirInstantanea(Collection<CuentaBancaria> cuentas) throws IOException {
+        Path temporal = directorio.resolve(archivoInstantanea.getFileName() + ".tmp");
+        CodecCuentas.guardar(temporal, cuentas);
+        sincronizar();
+        Files.move(temporal, archivoInstantanea, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Vuelve a aplicar sobre el almacén los registros de un segmento. Se detiene en el primer registro incompleto
+     * o con CRC incorrecto, que solo puede ser el último si la aplicación se cerró mientras escribía.
+     *
+     * @return Número de registros aplicados.
+     */
+    private int reproducir(Path segmento, AlmacenCuentas almacen) throws IOException, ClassNotFoundException {
+        ByteBuffer datos = ByteBuffer.wrap(Files.readAllBytes(segmento));
+        int aplicados = 0;
+        while (datos.remaining() >= TAMANIO_CABECERA) {
+            int longitud = datos.getInt();
+            int crcEsperado = datos.getInt();
+            if (longitud <= 0 || longitud > datos.remaining()) {
+                break;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(datos.array(), datos.position(), longitud);
+            if ((int) crc.getValue() != crcEsperado) {
+                break;
+            }
+            byte tipo = datos.get();
+            byte[] cuerpo = new byte[longitud - 1];
+            datos.get(cuerpo);
+            aplicar(tipo, cuerpo, almacen);
+            aplicados++;
+        }
+        return aplicados;
+    }
+
+    private void aplicar(byte tipo, byte[] cuerpo, AlmacenCuentas almacen) throws IOException, ClassNotFoundException {
+        if (tipo == APERTURA || tipo == APERTURA_EN_EUROS || tipo == APERTURA_SERIALIZADA) {
+            CuentaBancaria cuenta;
+            if (tipo == APERTURA) {
+                cuenta = CodecCuentas.leer(ByteBuffer.wrap(cuerpo));
+            } else if (tipo == APERTURA_EN_EUROS) {
+                cuenta = CodecCuentas.leer(ByteBuffer.wrap(cuerpo), CodecCuentas.VERSION_SALDO_EN_EUROS);
+            } else {
+                try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(cuerpo))) {
+                    cuenta = (CuentaBancaria) ois.readObject();
+                }
+            }
+            almacen.eliminar(cuenta.getIban());
+            almacen.insertar(cuenta);
+            return;
+        }
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(cuerpo));
+        if (tipo == HORIZONTE) {
+            horizonteCargado = Math.max(horizonteCargado, dis.readLong());
+            return;
+        }
+        long numero = tipo == TRANSFERENCIA_COMPARTIDA ? dis.readLong() : 0;
+        String iban = dis.readUTF();
+        CuentaBancaria cuenta = almacen.buscar(iban);
+        switch (tipo) {
+            case INGRESO:
+            case RETIRO:
+                dis.readLong();
+                long saldo = dis.readLong();
+                if (cuenta != null) {
+                    cuenta.setSaldoCentimos(saldo);
+                }
+                break;
+            case TRANSFERENCIA:
+            case TRANSFERENCIA_COMPARTIDA:
+                long importe = dis.readLong();
+                long saldoOrigen = dis.readLong();
+                String ibanDestino = dis.readUTF();
+                CuentaBancaria destino = almacen.buscar(ibanDestino);
+                long saldoDestino = dis.readLong();
+                // En una transferencia compartida solo una de las dos cuentas es de este diario
+                if (cuenta != null) {
+                    cuenta.setSaldoCentimos(saldoOrigen);
+                }
+                if (destino != null) {
+                    destino.setSaldoCentimos(saldoDestino);
+                }
+                if (tipo == TRANSFERENCIA_COMPARTIDA) {
+                    compartidasCargadas.add(new TransferenciaCompartida(numero, iban, importe, saldoOrigen,
+                            ibanDestino, saldoDestino));
+                }
+                break;
+            case INGRESO_EN_EUROS:
+            case RETIRO_EN_EUROS:
+                dis.readDouble();
+                double saldoEnEuros = dis.readDouble();
+                if (cuenta != null) {
+                    cuenta.setSaldo(saldoEnEuros);
+                }
+                break;
+            case ELIMINACION:
+                if (cuenta != null) {
+                    almacen.eliminar(cuenta.getIban());
+                }
+                break;
+            case CAMBIO_TITULAR:
+                Persona titular = new Persona(dis.readUTF(), dis.readUTF(), dis.readUTF(), dis.readUTF());
+                if (cuenta != null) {
+                    cuenta.setTitular(titular);
+                }
+                break;
+            default:
+                throw new IOException("Tipo de registro desconocido en el diario: " + tipo);
+        }
+    }
+
+    private FileChannel abrirSegmento(long numero) throws IOException {
+        return FileChannel.open(rutaSegmento(numero), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private Path rutaSegmento(long numero) {
+        return directorio.resolve(String.format("%s.%06d%s", nombreBase, numero, EXTENSION_SEGMENTO));
+    }
+
+    /**
+     * Busca los segmentos del diario existentes en el directorio.
+     *
+     * @return Segmentos ordenados por número.
+     */
+    private TreeMap<Long, Path> buscarSegmentos() throws IOException {
+        TreeMap<Long, Path> segmentos = new TreeMap<>();
+        if (!Files.isDirectory(directorio)) {
+            return segmentos;
+        }
+        String prefijo = nombreBase + ".";
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            archivos.forEach(archivo -> {
+                String nombre = archivo.getFileName().toString();
+                if (nombre.startsWith(prefijo) && nombre.endsWith(EXTENSION_SEGMENTO)) {
+                    String numero = nombre.substring(prefijo.length(), nombre.length() - EXTENSION_SEGMENTO.length());
+                    try {
+                        segmentos.put(Long.parseLong(numero), archivo);
+                    } catch (NumberFormatException e) {
+                        // No es un segmento del diario
+                    }
+                }
+            });
+        }
+        return segmentos;
+    }
+}
@@ -0,0 +1,190 @@
+package com.alvarobajo.banco.controller.persistencia;
+
+import com.alvarobajo.banco.models.CuentaBancaria;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Clase que genera el listado de clientes ({@code ListadoClientesCCC.txt}) en paralelo.
+ *
+ * <p>Cada línea tiene el formato {@code nombre - IBAN - saldo} y al final se añade
+ * {@code Número total de cuentas: N}, igual que el listado que se escribía antes con {@code BufferedWriter}: el
+ * archivo resultante es idéntico byte a byte (mismo separador de línea y misma codificación por defecto).</p>
+ *
+ * <p>Las cuentas se reparten en lotes de {@value #CUENTAS_POR_LOTE} según se recorren. Cada lote se formatea en
+ * un {@link ForkJoinPool} dentro de su propio búfer de bytes, y el hilo que llama escribe los lotes terminados en
+ * orden con un {@link FileChannel}. Solo hay unos pocos lotes en marcha a la vez y sus búferes se reutilizan,
+ * así que la memoria usada no depende del número de cuentas.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class ExportadorListado {
+
+    /**
+     * Texto que precede al número total de cuentas en la última línea del listado.
+     */
+    public static final String PIE = "Número total de cuentas: ";
+
+    private static final int CUENTAS_POR_LOTE = 8192;
+    private static final int TAMANIO_INICIAL_BUFER = CUENTAS_POR_LOTE * 64;
+    private static final String SEPARADOR = " - ";
+
+    private ExportadorListado() {
+    }
+
+    /**
+     * Genera el listado de clientes usando el pool común de fork-join.
+     *
+     * @param cuentas Cuentas a incluir en el listado.
+     * @param archivo Archivo de destino; se sobrescribe si existe.
+     * @return Número de cuentas escritas.
+     * @throws IOException si no se puede escribir el archivo.
+     */
+    public static long exportar(Collection<CuentaBancaria> cuentas, Path archivo) throws IOException {
+        return exportar(cuentas, archivo, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Genera el listado de clientes formateando los lotes en el pool indicado.
+     *
+     * @param cuentas Cuentas a incluir en el listado.
+     * @param archivo Archivo de destino; se sobrescribe si existe.
+     * @param pool    Pool en el que se formatean los lotes.
+     * @return Número de cuentas escritas.
+     * @throws IOException si no se puede escribir el archivo.
+     */
+    public static long exportar(Collection<CuentaBancaria> cuentas, Path archivo, ForkJoinPool pool) throws IOException {
+        Charset codificacion = Charset.defaultCharset();
+        int maxEnMarcha = Math.max(2, pool.getParallelism() * 2);
+        Deque<ForkJoinTask<Lote>> enMarcha = new ArrayDeque<>(maxEnMarcha);
+        Deque<Lote> libres = new ArrayDeque<>(maxEnMarcha);
+        long escritas = 0;
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Lote lote = new Lote(codificacion);
+            for (CuentaBancaria cuenta : cuentas) {
+                lote.cuentas[lote.numCuentas++] = cuenta;
+                if (lote.numCuentas == CUENTAS_POR_LOTE) {
+                    if (enMarcha.size() == maxEnMarcha) {
+                        escritas += escribirSiguiente(enMarcha, libres, canal);
+                    }
+                    enMarcha.addLast(pool.submit(lote));
+                    lote = libres.isEmpty() ? new Lote(codificacion) : libres.pollFirst();
+                }
+            }
+            if (lote.numCuentas > 0) {
+                enMarcha.addLast(pool.submit(lote));
+            }
+            while (!enMarcha.isEmpty()) {
+                escritas += escribirSiguiente(enMarcha, libres, canal);
+            }
+            escribirTodo(canal, codificacion.encode(PIE + escritas));
+        }
+        return escritas;
+    }
+
+    /**
+     * Espera al lote más antiguo, lo escribe y lo deja listo para reutilizarlo.
+     *
+     * @return Número de cuentas del lote escrito.
+     */
+    private static int escribirSiguiente(Deque<ForkJoinTask<Lote>> enMarcha, Deque<Lote> libres,
+                                         FileChannel canal) throws IOException {
+        Lote lote = enMarcha.pollFirst().join();
+        escribirTodo(canal, lote.bufer);
+        int escritas = lote.numCuentas;
+        lote.vaciar();
+        libres.addLast(lote);
+        return escritas;
+    }
+
+    private static void escribirTodo(FileChannel canal, ByteBuffer bufer) throws IOException {
+        while (bufer.hasRemaining()) {
+            canal.write(bufer);
+        }
+    }
+
+    /**
+     * Grupo de cuentas consecutivas del listado con su texto y su búfer de bytes, que se reutilizan de un lote a otro.
+     */
+    private static final class Lote implements Callable<Lote> {
+        private final CuentaBancaria[] cuentas = new CuentaBancaria[CUENTAS_POR_LOTE];
+        private final StringBuilder texto = new StringBuilder(TAMANIO_INICIAL_BUFER);
+        private final CharsetEncoder codificador;
+        private final String finDeLinea = System.lineSeparator();
+        private char[] caracteres = new char[TAMANIO_INICIAL_BUFER];
+        private ByteBuffer bufer = ByteBuffer.allocate(TAMANIO_INICIAL_BUFER);
+        private int numCuentas;
+
+        Lote(Charset codificacion) {
+            // FileWriter sustituye los caracteres que no se pueden codificar, así que aquí se hace lo mismo
+            codificador = codificacion.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        @Override
+        public Lote call() throws CharacterCodingException {
+            texto.setLength(0);
+            for (int i = 0; i < numCuentas; i++) {
+                CuentaBancaria cuenta = cuentas[i];
+                texto.append(cuenta.getTitular().getNombre()).append(SEPARADOR)
+                        .append(cuenta.getIban()).append(SEPARADOR)
+                        .append(cuenta.getSaldo()).append(finDeLinea);
+            }
+            codificar();
+            return this;
+        }
+
+        private void codificar() throws CharacterCodingException {
+            // Con arrays (y no con el StringBuilder o un búfer directo) el codificador usa su camino rápido
+            if (caracteres.length < texto.length()) {
+                caracteres = new char[texto.length()];
+            }
+            texto.getChars(0, texto.length(), caracteres, 0);
+            CharBuffer entrada = CharBuffer.wrap(caracteres, 0, texto.length());
+            codificador.reset();
+            bufer.clear();
+            CoderResult resultado;
+            while ((resultado = codificador.encode(entrada, bufer, true)).isOverflow()) {
+                ampliar();
+            }
+            if (resultado.isError()) {
+                resultado.throwException();
+            }
+            while (codificador.flush(bufer).isOverflow()) {
+                ampliar();
+            }
+            bufer.flip();
+        }
+
+        private void ampliar() {
+            ByteBuffer mayor = ByteBuffer.allocate(bufer.capacity() * 2);
+            bufer.flip();
+            mayor.put(bufer);
+            bufer = mayor;
+        }
+
+        void vaciar() {
+            Arrays.fill(cuentas, 0, numCuentas, null);
+            numCuentas = 0;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.alvarobajo.banco.controller.procesos;
+
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorrienteEmpresa;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.Dinero;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Clase que cobra en una sola pasada los cargos periódicos de las cuentas corrientes.
+ *
+ * <ul>
+ *     <li>A las {@link CuentaCorrienteEmpresa} en descubierto se les cargan los intereses por descubierto:
+ *     {@code -saldo * tipoInteresDescubierto / 100 * fraccion}, redondeado al céntimo.</li>
+ *     <li>A las {@link CuentaCorrientePersonal} se les cobra la comisión de mantenimiento del periodo si su saldo
+ *     la cubre. Si no la cubre, no se cobra (la cuenta no admite descubierto) y se anota como no cobrada.</li>
+ * </ul>
+ *
+ * <p>Además de los importes cobrados, el resultado indica cuántas cuentas de empresa estaban en descubierto y
+ * cuánto sumaba el descubierto antes de cobrar los intereses.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class CargosCuentasCorrientes extends ProcesadorLotes {
+
+    /**
+     * Posición en el resultado de los intereses por descubierto cobrados.
+     */
+    public static final int INTERESES_DESCUBIERTO = 0;
+
+    /**
+     * Posición en el resultado de las comisiones de mantenimiento cobradas.
+     */
+    public static final int COMISIONES = 1;
+
+    /**
+     * Posición en el resultado de las comisiones de mantenimiento que no se pudieron cobrar.
+     */
+    public static final int COMISIONES_NO_COBRADAS = 2;
+
+    /**
+     * Posición en el resultado del descubierto de las cuentas de empresa antes de cobrar los intereses.
+     */
+    public static final int DESCUBIERTO = 3;
+
+    private final double fraccionAnio;
+
+    /**
+     * Constructor para inicializar un cobro de cargos de cuentas corrientes.
+     *
+     * @param fraccionAnio Parte del año a la que corresponden los intereses por descubierto, por ejemplo
+     *                     {@link LiquidacionIntereses#MENSUAL}. La comisión de mantenimiento se cobra entera.
+     * @throws IllegalArgumentException si la fracción no es un número finito mayor que 0.
+     */
+    public CargosCuentasCorrientes(double fraccionAnio) {
+        super("Cargos de cuentas corrientes", "Intereses por descubierto cobrados",
+                "Comisiones de mantenimiento cobradas", "Comisiones de mantenimiento no cobradas",
+                "Descubierto de cuentas de empresa");
+        if (!(fraccionAnio > 0) || Double.isInfinite(fraccionAnio)) {
+            throw new IllegalArgumentException("La fracción del año debe ser mayor que 0: " + fraccionAnio);
+        }
+        this.fraccionAnio = fraccionAnio;
+    }
+
+    @Override
+    protected void procesar(CuentaBancaria cuenta, boolean simulacion, Totales totales) {
+        if (cuenta instanceof CuentaCorrienteEmpresa) {
+            cobrarDescubierto((CuentaCorrienteEmpresa) cuenta, simulacion, totales);
+        } else if (cuenta instanceof CuentaCorrientePersonal) {
+            cobrarComision((CuentaCorrientePersonal) cuenta, simulacion, totales);
+        }
+    }
+
+    private void cobrarDescubierto(CuentaCorrienteEmpresa cuenta, boolean simulacion, Totales totales) {
+        Lock cerrojo = simulacion ? null : cerrojo(cuenta);
+        if (cerrojo != null) {
+            cerrojo.lock();
+        }
+        try {
+            long saldo = cuenta.getSaldoCentimos();
+            if (saldo >= 0) {
+                return;
+            }
+            totales.anotar(DESCUBIERTO, -saldo);
+            long intereses = Dinero.porcentaje(-saldo, cuenta.getTipoInteresDescubierto() * fraccionAnio);
+            if (intereses > 0) {
+                if (!simulacion) {
+                    cuenta.setSaldoCentimos(Dinero.restar(saldo, intereses));
+                }
+                totales.anotar(INTERESES_DESCUBIERTO, intereses);
+            }
+        } finally {
+            if (cerrojo != null) {
+                cerrojo.unlock();
+            }
+        }
+    }
+
+    private static void cobrarComision(CuentaCorrientePersonal cuenta, boolean simulacion, Totales totales) {
+        long comision = Dinero.deEuros(cuenta.getComisionMantenimiento());
+        if (comision <= 0) {
+            return;
+        }
+        Lock cerrojo = simulacion ? null : cerrojo(cuenta);
+        if (cerrojo != null) {
+            cerrojo.lock();
+        }
+        try {
+            long saldo = cuenta.getSaldoCentimos();
+            if (saldo - comision < cuenta.getSaldoMinimoCentimos()) {
+                totales.anotar(COMISIONES_NO_COBRADAS, comision);
+                return;
+            }
+            if (!simulacion) {
+                cuenta.setSaldoCentimos(Dinero.restar(saldo, comision));
+            }
+            totales.anotar(COMISIONES, comision);
+        } finally {
+            if (cerrojo != null) {
+                cerrojo.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.alvarobajo.banco.controller.procesos;
+
+import com.alvarobajo.banco.models.CuentaAhorro;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Dinero;
+
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Clase que liquida los intereses de las cuentas de ahorro.
+ *
+ * <p>A cada {@link CuentaAhorro} con saldo positivo se le abona {@code saldo * tipoInteres / 100 * fraccion},
+ * redondeado al céntimo, donde la fracción es la parte del año que se liquida (1/12 para una liquidación
+ * mensual). El resto de cuentas se recorren sin cambios.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class LiquidacionIntereses extends ProcesadorLotes {
+
+    /**
+     * Fracción del año que corresponde a una liquidación mensual.
+     */
+    public static final double MENSUAL = 1.0 / 12;
+
+    /**
+     * Posición del concepto de intereses en el resultado.
+     */
+    public static final int INTERESES = 0;
+
+    private final double fraccionAnio;
+
+    /**
+     * Constructor para inicializar una liquidación de intereses.
+     *
+     * @param fraccionAnio Parte del año que se liquida, por ejemplo {@link #MENSUAL}.
+     * @throws IllegalArgumentException si la fracción no es un número finito mayor que 0.
+     */
+    public LiquidacionIntereses(double fraccionAnio) {
+        super("Liquidación de intereses", "Intereses abonados");
+        if (!(fraccionAnio > 0) || Double.isInfinite(fraccionAnio)) {
+            throw new IllegalArgumentException("La fracción del año debe ser mayor que 0: " + fraccionAnio);
+        }
+        this.fraccionAnio = fraccionAnio;
+    }
+
+    @Override
+    protected void procesar(CuentaBancaria cuenta, boolean simulacion, Totales totales) {
+        if (!(cuenta instanceof CuentaAhorro)) {
+            return;
+        }
+        double tipoInteres = ((CuentaAhorro) cuenta).getTipoInteres();
+        if (simulacion) {
+            anotar(totales, intereses(cuenta.getSaldoCentimos(), tipoInteres));
+            return;
+        }
+        Lock cerrojo = cerrojo(cuenta);
+        cerrojo.lock();
+        try {
+            long saldo = cuenta.getSaldoCentimos();
+            long intereses = intereses(saldo, tipoInteres);
+            if (intereses > 0) {
+                cuenta.setSaldoCentimos(Dinero.sumar(saldo, intereses));
+            }
+            anotar(totales, intereses);
+        } finally {
+            cerrojo.unlock();
+        }
+    }
+
+    private long intereses(long saldo, double tipoInteres) {
+        return saldo > 0 ? Dinero.porcentaje(saldo, tipoInteres * fraccionAnio) : 0;
+    }
+
+    private static void anotar(Totales totales, long intereses) {
+        if (intereses > 0) {
+            totales.anotar(INTERESES, intereses);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.alvarobajo.banco.controller.procesos;
+
+import com.alvarobajo.banco.controller.BloqueoCuentas;
+import com.alvarobajo.banco.models.CuentaBancaria;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Clase abstracta que recorre todas las cuentas del banco en paralelo y aplica a cada una un proceso periódico,
+ * como la liquidación de intereses de fin de mes.
+ *
+ * <p>Las cuentas se reparten en lotes de {@value #CUENTAS_POR_LOTE} según se recorren y cada lote se procesa en un
+ * {@link ForkJoinPool}, igual que el listado de clientes: solo hay unos pocos lotes en marcha a la vez y se
+ * reutilizan, así que la memoria usada no depende del número de cuentas. No se bloquea el banco: cada cuenta se
+ * modifica con el cerrojo de su IBAN ({@link BloqueoCuentas}), de modo que los ingresos y retiros de otras cuentas
+ * siguen funcionando mientras dura el proceso.</p>
+ *
+ * <p>En modo simulación se calculan los mismos totales sin modificar ningún saldo. El hilo que lanza el proceso
+ * suma los totales de cada lote y avisa del avance a un {@link ProgresoLote}.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public abstract class ProcesadorLotes {
+
+    private static final int CUENTAS_POR_LOTE = 16_384;
+    private static final long INTERVALO_PROGRESO = TimeUnit.SECONDS.toNanos(1);
+
+    private final String nombre;
+    private final String[] conceptos;
+
+    /**
+     * Constructor para inicializar un proceso por lotes.
+     *
+     * @param nombre    Nombre del proceso, que aparece en el resumen.
+     * @param conceptos Nombres de los importes que acumula el proceso, en el orden en que los anota.
+     */
+    protected ProcesadorLotes(String nombre, String... conceptos) {
+        this.nombre = nombre;
+        this.conceptos = conceptos.clone();
+    }
+
+    /**
+     * Aplica el proceso a una cuenta. Se llama desde varios hilos a la vez, pero nunca con la misma cuenta.
+     *
+     * @param cuenta     Cuenta a procesar.
+     * @param simulacion true para calcular los importes sin modificar el saldo.
+     * @param totales    Totales del lote en el que se anotan los importes aplicados.
+     */
+    protected abstract void procesar(CuentaBancaria cuenta, boolean simulacion, Totales totales);
+
+    /**
+     * Ejecuta el proceso sobre todas las cuentas usando el pool común de fork-join.
+     *
+     * @param cuentas    Cuentas a procesar.
+     * @param simulacion true para calcular los totales sin modificar ningún saldo.
+     * @param progreso   Destino de los avisos de avance.
+     * @return Resumen del proceso.
+     */
+    public ResultadoLote ejecutar(Collection<CuentaBancaria> cuentas, boolean simulacion, ProgresoLote progreso) {
+        return ejecutar(cuentas, simulacion, progreso, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Ejecuta el proceso sobre todas las cuentas procesando los lotes en el pool indicado.
+     *
+     * @param cuentas    Cuentas a procesar.
+     * @param simulacion true para calcular los totales sin modificar ningún saldo.
+     * @param progreso   Destino de los avisos de avance.
+     * @param pool       Pool en el que se procesan los lotes.
+     * @return Resumen del proceso.
+     */
+    public ResultadoLote ejecutar(Collection<CuentaBancaria> cuentas, boolean simulacion, ProgresoLote progreso,
+                                  ForkJoinPool pool) {
+        long inicio = System.nanoTime();
+        long total = cuentas.size();
+        int maxEnMarcha = Math.max(2, pool.getParallelism() * 2);
+        Deque<ForkJoinTask<Lote>> enMarcha = new ArrayDeque<>(maxEnMarcha);
+        Deque<Lote> libres = new ArrayDeque<>(maxEnMarcha);
+        Totales totales = new Totales(conceptos.length);
+        long procesadas = 0;
+        long ultimoAviso = inicio;
+
+        Lote lote = new Lote(simulacion);
+        for (CuentaBancaria cuenta : cuentas) {
+            lote.cuentas[lote.numCuentas++] = cuenta;
+            if (lote.numCuentas == CUENTAS_POR_LOTE) {
+                if (enMarcha.size() == maxEnMarcha) {
+                    procesadas += terminarSiguiente(enMarcha, libres, totales);
+                    long ahora = System.nanoTime();
+                    if (ahora - ultimoAviso >= INTERVALO_PROGRESO) {
+                        progreso.avance(procesadas, total, TimeUnit.NANOSECONDS.toMillis(ahora - inicio));
+                        ultimoAviso = ahora;
+                    }
+                }
+                enMarcha.addLast(pool.submit(lote));
+                lote = libres.isEmpty() ? new Lote(simulacion) : libres.pollFirst();
+            }
+        }
+        if (lote.numCuentas > 0) {
+            enMarcha.addLast(pool.submit(lote));
+        }
+        while (!enMarcha.isEmpty()) {
+            procesadas += terminarSiguiente(enMarcha, libres, totales);
+        }
+        long milisegundos = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio);
+        progreso.avance(procesadas, Math.max(total, procesadas), milisegundos);
+        return new ResultadoLote(nombre, simulacion, procesadas, conceptos, totales, milisegundos);
+    }
+
+    /**
+     * Espera al lote más antiguo, suma sus totales y lo deja listo para reutilizarlo.
+     *
+     * @return Número de cuentas del lote.
+     */
+    private static int terminarSiguiente(Deque<ForkJoinTask<Lote>> enMarcha, Deque<Lote> libres, Totales totales) {
+        Lote lote = enMarcha.pollFirst().join();
+        totales.sumar(lote.totales);
+        int procesadas = lote.numCuentas;
+        lote.vaciar();
+        libres.addLast(lote);
+        return procesadas;
+    }
+
+    /**
+     * Obtiene el cerrojo con el que se debe leer y modificar el saldo de una cuenta durante el proceso, para no
+     * perder los ingresos o retiros que se hagan a la vez desde otros hilos.
+     *
+     * @param cuenta Cuenta a procesar.
+     * @return Cerrojo del IBAN de la cuenta.
+     */
+    protected static Lock cerrojo(CuentaBancaria cuenta) {
+        return BloqueoCuentas.de(cuenta.getIban());
+    }
+
+    /**
+     * Grupo de cuentas consecutivas con sus totales, que se reutilizan de un lote a otro.
+     */
+    private final class Lote implements Callable<Lote> {
+        private final CuentaBancaria[] cuentas = new CuentaBancaria[CUENTAS_POR_LOTE];
+        private final Totales totales = new Totales(conceptos.length);
+        private final boolean simulacion;
+        private int numCuentas;
+
+        Lote(boolean simulacion) {
+            this.simulacion = simulacion;
+        }
+
+        @Override
+        public Lote call() {
+            for (int i = 0; i < numCuentas; i++) {
+                procesar(cuentas[i], simulacion, totales);
+            }
+            return this;
+        }
+
+        void vaciar() {
+            Arrays.fill(cuentas, 0, numCuentas, null);
+            numCuentas = 0;
+            totales.vaciar();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.alvarobajo.banco.controller.procesos;
+
+/**
+ * Interfaz ProgresoLote para recibir el avance de un proceso por lotes mientras se ejecuta.
+ *
+ * <p>El proceso la llama desde el hilo que lo lanzó, como mucho una vez por segundo y una última vez al terminar,
+ * así que las implementaciones no necesitan ser seguras entre hilos.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ * @see ProcesadorLotes
+ */
+@FunctionalInterface
+public interface ProgresoLote {
+
+    /**
+     * Progreso que no hace nada con el avance.
+     */
+    ProgresoLote NINGUNO = (procesadas, total, milisegundos) -> {
+    };
+
+    /**
+     * Informa del avance del proceso.
+     *
+     * @param procesadas   Cuentas recorridas hasta ahora.
+     * @param total        Número aproximado de cuentas que se van a recorrer.
+     * @param milisegundos Tiempo transcurrido desde el inicio del proceso.
+     */
+    void avance(long procesadas, long total, long milisegundos);
+
+    /**
+     * Obtiene un progreso que muestra el avance y el rendimiento por la consola.
+     *
+     * @return Progreso que escribe en la consola.
+     */
+    static ProgresoLote consola() {
+        return (procesadas, total, milisegundos) -> System.out.println(String.format(
+                "Procesadas %d de %d cuentas (%.0f cuentas/s)",
+                procesadas, total, milisegundos == 0 ? 0.0 : procesadas * 1000.0 / milisegundos));
+    }
+}
@@ -0,0 +1,113 @@
+package com.alvarobajo.banco.controller.procesos;
+
+/**
+ * Clase que resume la ejecución de un proceso por lotes: cuántas cuentas se recorrieron, a cuántas se aplicó cada
+ * concepto y por qué importe, si fue una simulación y cuánto tardó.
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class ResultadoLote {
+
+    private final String proceso;
+    private final boolean simulacion;
+    private final long procesadas;
+    private final String[] conceptos;
+    private final Totales totales;
+    private final long milisegundos;
+
+    ResultadoLote(String proceso, boolean simulacion, long procesadas, String[] conceptos, Totales totales,
+                  long milisegundos) {
+        this.proceso = proceso;
+        this.simulacion = simulacion;
+        this.procesadas = procesadas;
+        this.conceptos = conceptos;
+        this.totales = totales;
+        this.milisegundos = milisegundos;
+    }
+
+    /**
+     * Obtiene el nombre del proceso.
+     *
+     * @return Nombre del proceso.
+     */
+    public String getProceso() {
+        return proceso;
+    }
+
+    /**
+     * Indica si el proceso fue una simulación, en la que no se modificó ningún saldo.
+     *
+     * @return true si fue una simulación; false, si se aplicaron los importes.
+     */
+    public boolean isSimulacion() {
+        return simulacion;
+    }
+
+    /**
+     * Obtiene el número de cuentas recorridas, se les aplicara algún concepto o no.
+     *
+     * @return Cuentas recorridas.
+     */
+    public long getProcesadas() {
+        return procesadas;
+    }
+
+    /**
+     * Obtiene el número de cuentas a las que se aplicó un concepto.
+     *
+     * @param concepto Posición del concepto en la lista de conceptos del proceso.
+     * @return Número de cuentas.
+     */
+    public long getCuentas(int concepto) {
+        return totales.getCuentas(concepto);
+    }
+
+    /**
+     * Obtiene el importe total de un concepto.
+     *
+     * @param concepto Posición del concepto en la lista de conceptos del proceso.
+     * @return Importe en céntimos.
+     */
+    public long getCentimos(int concepto) {
+        return totales.getCentimos(concepto);
+    }
+
+    /**
+     * Obtiene la duración del proceso.
+     *
+     * @return Duración en milisegundos.
+     */
+    public long getMilisegundos() {
+        return milisegundos;
+    }
+
+    /**
+     * Obtiene el rendimiento del proceso.
+     *
+     * @return Cuentas recorridas por segundo.
+     */
+    public double getCuentasPorSegundo() {
+        return milisegundos == 0 ? 0 : procesadas * 1000.0 / milisegundos;
+    }
+
+    /**
+     * Devuelve el resumen del proceso en formato de cadena.
+     *
+     * @return Resumen del proceso.
+     */
+    @Override
+    public String toString() {
+        StringBuilder resumen = new StringBuilder();
+        resumen.append(proceso);
+        if (simulacion) {
+            resumen.append(" (simulación, no se ha modificado ningún saldo)");
+        }
+        resumen.append(String.format(": %d cuentas procesadas en %d ms (%.0f cuentas/s)",
+                procesadas, milisegundos, getCuentasPorSegundo()));
+        for (int i = 0; i < conceptos.length; i++) {
+            resumen.append(String.format("%n  %s: %d cuentas, %.2f €",
+                    conceptos[i], getCuentas(i), getCentimos(i) / 100.0));
+        }
+        return resumen.toString();
+    }
+}
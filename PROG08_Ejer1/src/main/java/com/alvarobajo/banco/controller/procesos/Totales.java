@@ -0,0 +1,66 @@
+package com.alvarobajo.banco.controller.procesos;
+
+import java.util.Arrays;
+
+/**
+ * Clase que acumula los importes de un proceso por lotes, separados por conceptos (intereses, comisiones...).
+ *
+ * <p>Cada lote tiene sus propios totales, que solo toca el hilo que lo procesa; el proceso los suma al terminar
+ * cada lote. Así los hilos no compiten por un contador común. Los importes se guardan en céntimos para que la
+ * suma no acumule errores de redondeo.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public final class Totales {
+
+    private final long[] centimos;
+    private final long[] cuentas;
+
+    Totales(int numConceptos) {
+        centimos = new long[numConceptos];
+        cuentas = new long[numConceptos];
+    }
+
+    /**
+     * Anota el importe de un concepto aplicado a una cuenta.
+     *
+     * @param concepto Posición del concepto en la lista de conceptos del proceso.
+     * @param importe  Importe en céntimos.
+     */
+    public void anotar(int concepto, long importe) {
+        centimos[concepto] += importe;
+        cuentas[concepto]++;
+    }
+
+    /**
+     * Obtiene el importe acumulado de un concepto.
+     *
+     * @param concepto Posición del concepto.
+     * @return Importe en céntimos.
+     */
+    public long getCentimos(int concepto) {
+        return centimos[concepto];
+    }
+
+    /**
+     * Obtiene el número de cuentas a las que se ha aplicado un concepto.
+     *
+     * @param concepto Posición del concepto.
+     * @return Número de cuentas.
+     */
+    public long getCuentas(int concepto) {
+        return cuentas[concepto];
+    }
+
+    void sumar(Totales otros) {
+        for (int i = 0; i < centimos.length; i++) {
+            centimos[i] += otros.centimos[i];
+            cuentas[i] += otros.cuentas[i];
+        }
+    }
+
+    void vaciar() {
+        Arrays.fill(centimos, 0);
+        Arrays.fill(cuentas, 0);
+    }
+}
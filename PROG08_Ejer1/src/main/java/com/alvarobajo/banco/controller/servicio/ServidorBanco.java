@@ -0,0 +1,536 @@
+package com.alvarobajo.banco.controller.servicio;
+
+import com.alvarobajo.banco.controller.Banco;
+import com.alvarobajo.banco.controller.BucleOperaciones;
+import com.alvarobajo.banco.controller.agregados.ColumnasCuentas;
+import com.alvarobajo.banco.controller.agregados.EstadisticasBanco;
+import com.alvarobajo.banco.controller.cuentas.CrearCuenta;
+import com.alvarobajo.banco.controller.cuentas.ImportadorCuentas;
+import com.alvarobajo.banco.controller.cuentas.OperarCuenta;
+import com.alvarobajo.banco.controller.exportacion.EscritorJsonLineas;
+import com.alvarobajo.banco.controller.metricas.Histograma;
+import com.alvarobajo.banco.controller.metricas.RegistroMetricas;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Dinero;
+import com.alvarobajo.banco.models.Movimiento;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Servidor HTTP que da acceso al banco desde otros programas, además del menú de consola.
+ *
+ * <p>Usa el servidor HTTP del JDK ({@code com.sun.net.httpserver}) y atiende cada petición en su propio hilo
+ * virtual, así que una petición que espera (por ejemplo, por el cerrojo de una cuenta) no ocupa un hilo del
+ * sistema y el servidor puede mantener decenas de miles de conexiones abiertas. El banco debe ser concurrente
+ * (ver {@link Banco#Banco(boolean)}).</p>
+ *
+ * <p>Las cantidades van en euros con punto decimal y las respuestas son JSON:</p>
+ * <ul>
+ *     <li>{@code POST /cuentas}: abre una cuenta. El cuerpo es un objeto JSON con los mismos campos que una línea de
+ *     la importación en JSON Lines ({@link ImportadorCuentas}). Responde 201 con la cuenta abierta.</li>
+ *     <li>{@code GET /cuentas/{iban}}: datos de una cuenta, en el formato de la exportación JSON Lines.</li>
+ *     <li>{@code GET /cuentas?titular=nombre} o {@code GET /cuentas?dni=dni}: cuentas de un titular, una por
+ *     línea (JSON Lines).</li>
+ *     <li>{@code POST /cuentas/{iban}/ingreso?cantidad=c} y {@code POST /cuentas/{iban}/retiro?cantidad=c}:
+ *     responden con el nuevo saldo.</li>
+ *     <li>{@code GET /cuentas/{iban}/movimientos?n=10}: últimos movimientos de la cuenta.</li>
+ *     <li>{@code DELETE /cuentas/{iban}}: elimina la cuenta si su saldo es 0.</li>
+ *     <li>{@code POST /transferencias?origen=iban&destino=iban&cantidad=c}: responde con los saldos de las dos
+ *     cuentas.</li>
+ *     <li>{@code GET /estadisticas?mayores=10}: número de cuentas y saldo de cada tipo, saldo total, descubierto y
+ *     cuentas con más saldo ({@link EstadisticasBanco}). Se mantienen al día con cada operación, así que consultarlas
+ *     no recorre las cuentas; solo el saldo de cada tipo se calcula recorriendo las columnas de saldos.</li>
+ *     <li>{@code GET /metricas}: métricas de rendimiento ({@link RegistroMetricas}) en el formato de texto de
+ *     Prometheus, para que las recoja un servidor Prometheus. Incluye la duración de las peticiones HTTP.</li>
+ * </ul>
+ *
+ * <p>Los errores responden con {@code {"error": "motivo"}} y el código HTTP correspondiente: 400 si la petición no
+ * es válida (incluida una cuenta nueva con un IBAN en uso), 404 si la cuenta no existe, 405 si el método no se
+ * admite y 409 si la operación no se puede hacer en el estado actual de la cuenta (saldo insuficiente, saldo
+ * distinto de 0 al eliminarla o IBAN ocupado por otra petición a la vez).</p>
+ *
+ * <p>Si se crea con un {@link BucleOperaciones}, las aperturas, eliminaciones, ingresos, retiros y transferencias
+ * se publican en el bucle y las aplica su único hilo aplicador, en lugar de hacerlas cada hilo con los cerrojos de
+ * las cuentas. Las consultas se siguen atendiendo en el hilo de cada petición.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class ServidorBanco implements AutoCloseable {
+
+    /**
+     * Puerto en el que escucha el servidor si no se indica otro.
+     */
+    public static final int PUERTO_POR_DEFECTO = 8080;
+
+    // Conexiones pendientes de aceptar; el sistema puede reducirlo a su propio límite
+    private static final int CONEXIONES_EN_ESPERA = 16_384;
+    private static final int MOVIMIENTOS_POR_DEFECTO = 10;
+    private static final int MAYORES_SALDOS_POR_DEFECTO = 10;
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String JSON_LINEAS = "application/x-ndjson; charset=utf-8";
+
+    private static final Histograma METRICA_PETICION = RegistroMetricas.histograma(
+            "banco_peticion_http_segundos", "Peticiones HTTP", 1);
+
+    static {
+        // El servidor del JDK cierra las conexiones inactivas que pasan de 200 y espera a confirmar los paquetes
+        // pequeños (algoritmo de Nagle), lo que con muchos clientes persistentes reconecta sin parar y añade
+        // decenas de milisegundos a cada respuesta. Se cambian sus valores por defecto si no se han indicado.
+        valorPorDefecto("sun.net.httpserver.maxIdleConnections", Integer.toString(Integer.MAX_VALUE));
+        valorPorDefecto("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final Banco banco;
+    private final BucleOperaciones bucle;
+    private final HttpServer servidor;
+    private final ExecutorService hilos;
+
+    /**
+     * Constructor para inicializar un servidor. El servidor no atiende peticiones hasta llamar a {@link #iniciar()}.
+     *
+     * @param banco     Banco concurrente al que se da acceso.
+     * @param direccion Dirección y puerto en los que escucha; con el puerto 0 se elige uno libre.
+     * @throws IOException              si no se puede abrir el puerto.
+     * @throws IllegalArgumentException si el banco no es concurrente.
+     */
+    public ServidorBanco(Banco banco, InetSocketAddress direccion) throws IOException {
+        this(banco, direccion, null);
+    }
+
+    /**
+     * Constructor para inicializar un servidor que modifica las cuentas a través de un bucle de operaciones.
+     * El servidor no atiende peticiones hasta llamar a {@link #iniciar()}. El bucle no se cierra al cerrar el
+     * servidor.
+     *
+     * @param banco     Banco concurrente al que se da acceso.
+     * @param direccion Dirección y puerto en los que escucha; con el puerto 0 se elige uno libre.
+     * @param bucle     Bucle de operaciones del banco, o null para operar con los cerrojos de las cuentas.
+     * @throws IOException              si no se puede abrir el puerto.
+     * @throws IllegalArgumentException si el banco no es concurrente.
+     */
+    public ServidorBanco(Banco banco, InetSocketAddress direccion, BucleOperaciones bucle) throws IOException {
+        if (!banco.isConcurrente()) {
+            throw new IllegalArgumentException("El servidor necesita un banco concurrente");
+        }
+        this.banco = banco;
+        this.bucle = bucle;
+        servidor = HttpServer.create(direccion, CONEXIONES_EN_ESPERA);
+        hilos = Executors.newVirtualThreadPerTaskExecutor();
+        servidor.setExecutor(hilos);
+        servidor.createContext("/cuentas", intercambio -> atender(intercambio, this::atenderCuentas));
+        servidor.createContext("/transferencias", intercambio -> atender(intercambio, this::atenderTransferencias));
+        servidor.createContext("/estadisticas", intercambio -> atender(intercambio, this::atenderEstadisticas));
+        servidor.createContext("/metricas", intercambio -> atender(intercambio, ServidorBanco::atenderMetricas));
+    }
+
+    private static void valorPorDefecto(String propiedad, String valor) {
+        if (System.getProperty(propiedad) == null) {
+            System.setProperty(propiedad, valor);
+        }
+    }
+
+    /**
+     * Empieza a atender peticiones.
+     */
+    public void iniciar() {
+        servidor.start();
+    }
+
+    /**
+     * Obtiene el puerto en el que escucha el servidor, útil si se creó con el puerto 0.
+     *
+     * @return Puerto del servidor.
+     */
+    public int getPuerto() {
+        return servidor.getAddress().getPort();
+    }
+
+    /**
+     * Deja de aceptar peticiones y espera a que terminen las que están en curso.
+     */
+    @Override
+    public void close() {
+        servidor.stop(0);
+        hilos.close();
+    }
+
+    // ---------------------------------------------------------------- Peticiones
+
+    /**
+     * Atiende una petición y cierra el intercambio. Un error inesperado se responde con el código 500.
+     */
+    private static void atender(HttpExchange intercambio, HttpHandler manejador) throws IOException {
+        long inicio = METRICA_PETICION.iniciar();
+        try {
+            manejador.handle(intercambio);
+        } catch (RuntimeException e) {
+            error(intercambio, 500, "Error interno: " + e.getMessage());
+        } finally {
+            intercambio.close();
+            METRICA_PETICION.registrar(inicio);
+        }
+    }
+
+    private static void atenderMetricas(HttpExchange intercambio) throws IOException {
+        if (!intercambio.getRequestMethod().equals("GET")) {
+            error(intercambio, 405, "Método no admitido: " + intercambio.getRequestMethod());
+            return;
+        }
+        StringBuilder texto = new StringBuilder();
+        RegistroMetricas.escribirPrometheus(texto);
+        responder(intercambio, 200, RegistroMetricas.TIPO_PROMETHEUS, texto.toString());
+    }
+
+    private void atenderEstadisticas(HttpExchange intercambio) throws IOException {
+        if (!intercambio.getRequestMethod().equals("GET")) {
+            error(intercambio, 405, "Método no admitido: " + intercambio.getRequestMethod());
+            return;
+        }
+        Map<String, String> parametros = parametros(intercambio);
+        int mayores;
+        try {
+            mayores = parametros.containsKey("mayores") ? Integer.parseInt(parametros.get("mayores"))
+                    : MAYORES_SALDOS_POR_DEFECTO;
+        } catch (NumberFormatException e) {
+            error(intercambio, 400, "El número de cuentas no es válido: " + parametros.get("mayores"));
+            return;
+        }
+        EstadisticasBanco estadisticas = banco.getEstadisticas();
+        StringBuilder texto = new StringBuilder("{\"cuentas\":").append(estadisticas.numCuentas())
+                .append(",\"porTipo\":{");
+        long[] porTipo = estadisticas.contarPorTipo();
+        for (int i = 0; i < porTipo.length; i++) {
+            if (i > 0) {
+                texto.append(',');
+            }
+            texto.append('"').append(ColumnasCuentas.TIPOS[i]).append("\":").append(porTipo[i]);
+        }
+        texto.append("},\"saldoPorTipo\":{");
+        long[] saldoPorTipo = estadisticas.saldoPorTipoCentimos();
+        for (int i = 0; i < saldoPorTipo.length; i++) {
+            if (i > 0) {
+                texto.append(',');
+            }
+            texto.append('"').append(ColumnasCuentas.TIPOS[i]).append("\":").append(euros(saldoPorTipo[i]));
+        }
+        texto.append("},\"saldoTotal\":").append(euros(estadisticas.saldoTotalCentimos()))
+                .append(",\"cuentasEnDescubierto\":").append(estadisticas.numCuentasEnDescubierto())
+                .append(",\"descubiertoTotal\":").append(euros(estadisticas.descubiertoTotalCentimos()))
+                .append(",\"mayoresSaldos\":[");
+        List<EstadisticasBanco.SaldoCuenta> cuentas = estadisticas.mayoresSaldos(mayores);
+        for (int i = 0; i < cuentas.size(); i++) {
+            if (i > 0) {
+                texto.append(',');
+            }
+            texto.append("{\"iban\":\"").append(cuentas.get(i).getIban())
+                    .append("\",\"saldo\":").append(euros(cuentas.get(i).getSaldoCentimos())).append('}');
+        }
+        responder(intercambio, 200, JSON, texto.append("]}").toString());
+    }
+
+    private void atenderCuentas(HttpExchange intercambio) throws IOException {
+        String metodo = intercambio.getRequestMethod();
+        // Partes de la ruta después de /cuentas: ninguna, {iban} o {iban}/operación
+        String[] ruta = intercambio.getRequestURI().getPath().substring("/cuentas".length()).split("/");
+        Map<String, String> parametros = parametros(intercambio);
+        if (ruta.length <= 1) {
+            if (metodo.equals("POST")) {
+                abrir(intercambio);
+            } else if (metodo.equals("GET")) {
+                buscarPorTitular(intercambio, parametros);
+            } else {
+                error(intercambio, 405, "Método no admitido: " + metodo);
+            }
+            return;
+        }
+        String iban = ruta[1];
+        String operacion = ruta.length > 2 ? ruta[2] : "";
+        if (ruta.length > 3) {
+            error(intercambio, 404, "Ruta desconocida");
+            return;
+        }
+        switch (metodo + " " + operacion) {
+            case "GET ":
+                consultar(intercambio, iban);
+                break;
+            case "DELETE ":
+                eliminar(intercambio, iban);
+                break;
+            case "POST ingreso":
+            case "POST retiro":
+                operar(intercambio, iban, operacion.equals("ingreso"), parametros);
+                break;
+            case "GET movimientos":
+                movimientos(intercambio, iban, parametros);
+                break;
+            default:
+                error(intercambio, operacion.equals("ingreso") || operacion.equals("retiro")
+                        || operacion.equals("movimientos") || operacion.isEmpty() ? 405 : 404,
+                        "Operación no admitida: " + metodo + " " + intercambio.getRequestURI().getPath());
+        }
+    }
+
+    private void atenderTransferencias(HttpExchange intercambio) throws IOException {
+        if (!intercambio.getRequestMethod().equals("POST")) {
+            error(intercambio, 405, "Método no admitido: " + intercambio.getRequestMethod());
+            return;
+        }
+        Map<String, String> parametros = parametros(intercambio);
+        if (parametros.get("origen") == null || parametros.get("destino") == null) {
+            error(intercambio, 400, "Se deben indicar las cuentas de origen y destino");
+            return;
+        }
+        CuentaBancaria origen = banco.buscarCuentaPorIBAN(parametros.get("origen"));
+        CuentaBancaria destino = banco.buscarCuentaPorIBAN(parametros.get("destino"));
+        if (origen == null || destino == null) {
+            error(intercambio, 404, "No existe la cuenta " + (origen == null ? parametros.get("origen")
+                    : parametros.get("destino")));
+            return;
+        }
+        Double cantidad = cantidad(intercambio, parametros);
+        if (cantidad == null) {
+            return;
+        }
+        boolean hecha;
+        if (bucle == null) {
+            hecha = OperarCuenta.transferir(origen, destino, cantidad);
+        } else {
+            BucleOperaciones.Resultado resultado = bucle.transferir(origen.getIban(), destino.getIban(),
+                    Dinero.deEuros(cantidad));
+            if (resultado == BucleOperaciones.Resultado.NO_EXISTE) {
+                error(intercambio, 404, "No existe alguna de las cuentas");
+                return;
+            }
+            hecha = resultado == BucleOperaciones.Resultado.HECHA;
+        }
+        if (!hecha) {
+            error(intercambio, 409, origen == destino ? "Las cuentas de origen y destino son la misma"
+                    : "Saldo insuficiente en la cuenta " + origen.getIban());
+            return;
+        }
+        responder(intercambio, 200, JSON, "{\"origen\":" + saldo(origen) + ",\"destino\":" + saldo(destino) + "}");
+    }
+
+    private void abrir(HttpExchange intercambio) throws IOException {
+        String cuerpo;
+        try (InputStream entrada = intercambio.getRequestBody()) {
+            cuerpo = new String(entrada.readAllBytes(), StandardCharsets.UTF_8).trim();
+        }
+        CuentaBancaria cuenta;
+        try {
+            cuenta = ImportadorCuentas.cuentaDesdeJson(banco, cuerpo);
+        } catch (IllegalArgumentException e) {
+            error(intercambio, 400, e.getMessage());
+            return;
+        }
+        boolean abierta = bucle == null ? banco.abrirCuentas(List.of(cuenta)).isEmpty()
+                : bucle.abrirCuenta(cuenta) == BucleOperaciones.Resultado.HECHA;
+        if (!abierta) {
+            error(intercambio, 409, "El IBAN " + cuenta.getIban() + " ya está en uso");
+            return;
+        }
+        responder(intercambio, 201, JSON, json(cuenta));
+    }
+
+    private void buscarPorTitular(HttpExchange intercambio, Map<String, String> parametros) throws IOException {
+        List<CuentaBancaria> cuentas;
+        if (parametros.containsKey("titular")) {
+            cuentas = banco.buscarCuentasPorTitular(parametros.get("titular"));
+        } else if (parametros.containsKey("dni")) {
+            cuentas = banco.buscarCuentasPorDni(parametros.get("dni"));
+        } else {
+            error(intercambio, 400, "Se debe indicar el titular o el DNI");
+            return;
+        }
+        StringWriter texto = new StringWriter();
+        EscritorJsonLineas escritor = new EscritorJsonLineas(texto);
+        for (CuentaBancaria cuenta : cuentas) {
+            escritor.escribir(cuenta);
+        }
+        responder(intercambio, 200, JSON_LINEAS, texto.toString());
+    }
+
+    private void consultar(HttpExchange intercambio, String iban) throws IOException {
+        CuentaBancaria cuenta = banco.buscarCuentaPorIBAN(iban);
+        if (cuenta == null) {
+            error(intercambio, 404, "No existe la cuenta " + iban);
+            return;
+        }
+        responder(intercambio, 200, JSON, json(cuenta));
+    }
+
+    private void eliminar(HttpExchange intercambio, String iban) throws IOException {
+        if (bucle != null) {
+            CuentaBancaria cuenta = banco.buscarCuentaPorIBAN(iban);
+            BucleOperaciones.Resultado resultado = cuenta == null ? BucleOperaciones.Resultado.NO_EXISTE
+                    : bucle.eliminarCuenta(cuenta.getIban());
+            if (resultado == BucleOperaciones.Resultado.NO_EXISTE) {
+                error(intercambio, 404, "No existe la cuenta " + iban);
+            } else if (resultado == BucleOperaciones.Resultado.HECHA) {
+                responder(intercambio, 204, JSON, "");
+            } else {
+                error(intercambio, 409, "El saldo de la cuenta " + iban + " no es 0");
+            }
+            return;
+        }
+        if (banco.buscarCuentaPorIBAN(iban) == null) {
+            error(intercambio, 404, "No existe la cuenta " + iban);
+        } else if (banco.eliminarCuenta(iban)) {
+            responder(intercambio, 204, JSON, "");
+        } else {
+            error(intercambio, 409, "El saldo de la cuenta " + iban + " no es 0");
+        }
+    }
+
+    private void operar(HttpExchange intercambio, String iban, boolean ingreso, Map<String, String> parametros)
+            throws IOException {
+        CuentaBancaria cuenta = banco.buscarCuentaPorIBAN(iban);
+        if (cuenta == null) {
+            error(intercambio, 404, "No existe la cuenta " + iban);
+            return;
+        }
+        Double cantidad = cantidad(intercambio, parametros);
+        if (cantidad == null) {
+            return;
+        }
+        boolean hecho;
+        if (bucle == null) {
+            hecho = ingreso ? OperarCuenta.ingresar(cuenta, cantidad) : OperarCuenta.retirar(cuenta, cantidad);
+        } else {
+            long centimos = Dinero.deEuros(cantidad);
+            BucleOperaciones.Resultado resultado = ingreso ? bucle.ingresar(cuenta.getIban(), centimos)
+                    : bucle.retirar(cuenta.getIban(), centimos);
+            if (resultado == BucleOperaciones.Resultado.NO_EXISTE) {
+                error(intercambio, 404, "No existe la cuenta " + iban);
+                return;
+            }
+            hecho = resultado == BucleOperaciones.Resultado.HECHA;
+        }
+        if (!hecho) {
+            error(intercambio, 409, "Saldo insuficiente en la cuenta " + cuenta.getIban());
+            return;
+        }
+        responder(intercambio, 200, JSON, saldo(cuenta));
+    }
+
+    private void movimientos(HttpExchange intercambio, String iban, Map<String, String> parametros)
+            throws IOException {
+        CuentaBancaria cuenta = banco.buscarCuentaPorIBAN(iban);
+        if (cuenta == null) {
+            error(intercambio, 404, "No existe la cuenta " + iban);
+            return;
+        }
+        int n;
+        try {
+            n = parametros.containsKey("n") ? Integer.parseInt(parametros.get("n")) : MOVIMIENTOS_POR_DEFECTO;
+        } catch (NumberFormatException e) {
+            error(intercambio, 400, "El número de movimientos no es válido: " + parametros.get("n"));
+            return;
+        }
+        StringBuilder texto = new StringBuilder("[");
+        for (Movimiento movimiento : banco.ultimosMovimientos(cuenta.getIban(), n)) {
+            if (texto.length() > 1) {
+                texto.append(',');
+            }
+            texto.append("{\"instante\":").append(movimiento.getInstante())
+                    .append(",\"tipo\":\"").append(movimiento.getTipo())
+                    .append("\",\"importe\":").append(euros(movimiento.getImporteCentimos()))
+                    .append(",\"saldo\":").append(euros(movimiento.getSaldoCentimos())).append('}');
+        }
+        responder(intercambio, 200, JSON, texto.append(']').toString());
+    }
+
+    // ---------------------------------------------------------------- Utilidades
+
+    /**
+     * Lee la cantidad de los parámetros. Si no es válida responde con un error y devuelve null.
+     */
+    private static Double cantidad(HttpExchange intercambio, Map<String, String> parametros) throws IOException {
+        String texto = parametros.get("cantidad");
+        double cantidad;
+        try {
+            cantidad = texto != null ? Double.parseDouble(texto) : Double.NaN;
+        } catch (NumberFormatException e) {
+            cantidad = Double.NaN;
+        }
+        if (!CrearCuenta.esValorValido(cantidad)) {
+            error(intercambio, 400, "La cantidad debe ser un número mayor que 0: " + texto);
+            return null;
+        }
+        return cantidad;
+    }
+
+    private static Map<String, String> parametros(HttpExchange intercambio) {
+        Map<String, String> parametros = new HashMap<>();
+        String consulta = intercambio.getRequestURI().getRawQuery();
+        if (consulta == null || consulta.isEmpty()) {
+            return parametros;
+        }
+        for (String par : consulta.split("&")) {
+            int igual = par.indexOf('=');
+            String nombre = igual < 0 ? par : par.substring(0, igual);
+            String valor = igual < 0 ? "" : par.substring(igual + 1);
+            parametros.put(URLDecoder.decode(nombre, StandardCharsets.UTF_8),
+                    URLDecoder.decode(valor, StandardCharsets.UTF_8));
+        }
+        return parametros;
+    }
+
+    private static String json(CuentaBancaria cuenta) throws IOException {
+        StringWriter texto = new StringWriter();
+        new EscritorJsonLineas(texto).escribir(cuenta);
+        // Se quita el fin de línea del formato JSON Lines
+        texto.getBuffer().setLength(texto.getBuffer().length() - 1);
+        return texto.toString();
+    }
+
+    private static String saldo(CuentaBancaria cuenta) {
+        return "{\"iban\":\"" + cuenta.getIban() + "\",\"saldo\":" + euros(cuenta.getSaldoCentimos()) + "}";
+    }
+
+    private static String euros(long centimos) {
+        return BigDecimal.valueOf(centimos, 2).toPlainString();
+    }
+
+    private static void error(HttpExchange intercambio, int estado, String motivo) throws IOException {
+        StringBuilder texto = new StringBuilder("{\"error\":\"");
+        for (int i = 0; i < motivo.length(); i++) {
+            char c = motivo.charAt(i);
+            if (c == '"' || c == '\\') {
+                texto.append('\\').append(c);
+            } else if (c < 0x20) {
+                texto.append(String.format("\\u%04x", (int) c));
+            } else {
+                texto.append(c);
+            }
+        }
+        responder(intercambio, estado, JSON, texto.append("\"}").toString());
+    }
+
+    private static void responder(HttpExchange intercambio, int estado, String tipo, String cuerpo)
+            throws IOException {
+        byte[] bytes = cuerpo.getBytes(StandardCharsets.UTF_8);
+        intercambio.getResponseHeaders().set("Content-Type", tipo);
+        intercambio.sendResponseHeaders(estado, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream salida = intercambio.getResponseBody()) {
+                salida.write(bytes);
+            }
+        }
+    }
+}
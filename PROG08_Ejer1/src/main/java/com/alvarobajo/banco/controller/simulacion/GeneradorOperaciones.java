@@ -0,0 +1,121 @@
+package com.alvarobajo.banco.controller.simulacion;
+
+import com.alvarobajo.banco.controller.cuentas.EjecutorComandos;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Generador de una secuencia de operaciones sobre las cuentas de un {@link GeneradorPoblacion}, escrita como
+ * archivo de comandos de {@link EjecutorComandos} para poder reproducirla con {@code --comandos}.
+ *
+ * <p>El 40 % de las operaciones son consultas, el 35 % ingresos y el 25 % retiros. La cuenta de cada operación
+ * se elige con una distribución de Zipf ({@link GeneradorZipf}): unas pocas cuentas reciben la mayoría de las
+ * operaciones. Las cuentas más populares se reparten por toda la población en lugar de ser las primeras. Las
+ * cantidades siguen una distribución logarítmico-normal con una mediana de 60 €; algunos retiros fallarán por
+ * saldo insuficiente, como en la realidad.</p>
+ *
+ * <p>Igual que la población, la secuencia solo depende de la semilla: las operaciones se generan en paralelo por
+ * bloques, cada uno con su propia fuente de números aleatorios, y se escriben en orden.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class GeneradorOperaciones {
+
+    // Operaciones de cada bloque; los bloques se generan en paralelo
+    private static final int BLOQUE = 1 << 14;
+    private static final int PORCENTAJE_CONSULTAS = 40;
+    private static final int PORCENTAJE_INGRESOS = 35;
+    private static final double MEDIANA_CANTIDAD = 60;
+    // Primo mayor que cualquier número de cuentas que se use en la práctica: multiplicar por él el rango de Zipf
+    // recorre todas las cuentas sin repetir ninguna
+    private static final long PRIMO = 1_000_000_007L;
+
+    private final GeneradorPoblacion poblacion;
+    private final int numCuentas;
+    private final GeneradorZipf zipf;
+    private final long multiplicador;
+
+    /**
+     * Constructor para inicializar el generador.
+     *
+     * @param poblacion     Población sobre cuyas cuentas se opera; su semilla es también la de las operaciones.
+     * @param numCuentas    Número de cuentas de la población abiertas en el banco.
+     * @param exponenteZipf Exponente de la popularidad de las cuentas (0 es uniforme; 1, muy sesgada).
+     * @throws IllegalArgumentException si no hay cuentas o el exponente es negativo.
+     */
+    public GeneradorOperaciones(GeneradorPoblacion poblacion, int numCuentas, double exponenteZipf) {
+        this.poblacion = poblacion;
+        this.numCuentas = numCuentas;
+        zipf = new GeneradorZipf(numCuentas, exponenteZipf);
+        multiplicador = numCuentas % PRIMO == 0 ? 1 : PRIMO;
+    }
+
+    /**
+     * Escribe la secuencia de operaciones en un archivo de comandos en UTF-8. Si el archivo ya existe, lo
+     * sobrescribe.
+     *
+     * @param numOperaciones Número de operaciones.
+     * @param archivo        Archivo de destino.
+     * @return Número de operaciones escritas.
+     * @throws IOException si no se puede escribir el archivo.
+     */
+    public long escribirComandos(long numOperaciones, Path archivo) throws IOException {
+        try (BufferedWriter salida = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8)) {
+            return escribirComandos(numOperaciones, salida);
+        }
+    }
+
+    /**
+     * Escribe la secuencia de operaciones, un comando por línea.
+     *
+     * @param numOperaciones Número de operaciones.
+     * @param salida         Destino de los comandos. No se cierra.
+     * @return Número de operaciones escritas.
+     * @throws IOException si no se puede escribir.
+     */
+    public long escribirComandos(long numOperaciones, Writer salida) throws IOException {
+        long numBloques = (numOperaciones + BLOQUE - 1) / BLOQUE;
+        int enParalelo = 4 * Runtime.getRuntime().availableProcessors();
+        for (long primero = 0; primero < numBloques; primero += enParalelo) {
+            long desde = primero;
+            int n = (int) Math.min(enParalelo, numBloques - primero);
+            StringBuilder[] textos = new StringBuilder[n];
+            IntStream.range(0, n).parallel().forEach(k -> textos[k] = bloque(desde + k,
+                    (int) Math.min(BLOQUE, numOperaciones - (desde + k) * BLOQUE)));
+            for (StringBuilder texto : textos) {
+                salida.append(texto);
+            }
+        }
+        salida.flush();
+        return numOperaciones;
+    }
+
+    private StringBuilder bloque(long numBloque, int n) {
+        SplittableRandom aleatorio = new SplittableRandom(
+                GeneradorPoblacion.mezclar(poblacion.getSemilla() ^ 0x5DEECE66DL) + GeneradorPoblacion.mezclar(numBloque));
+        StringBuilder texto = new StringBuilder(n * 48);
+        for (int i = 0; i < n; i++) {
+            long cuenta = zipf.siguiente(aleatorio) * multiplicador % numCuentas;
+            String iban = poblacion.iban(cuenta);
+            int tipo = aleatorio.nextInt(100);
+            if (tipo < PORCENTAJE_CONSULTAS) {
+                texto.append("consultar ").append(iban).append('\n');
+                continue;
+            }
+            texto.append(tipo < PORCENTAJE_CONSULTAS + PORCENTAJE_INGRESOS ? "ingresar " : "retirar ")
+                    .append(iban).append(' ');
+            long centimos = Math.max(1, Math.round(MEDIANA_CANTIDAD * 100 * Math.exp(aleatorio.nextGaussian())));
+            long centimosSueltos = centimos % 100;
+            texto.append(centimos / 100).append('.').append(centimosSueltos < 10 ? "0" : "").append(centimosSueltos)
+                    .append('\n');
+        }
+        return texto;
+    }
+}
@@ -0,0 +1,266 @@
+package com.alvarobajo.banco.controller.simulacion;
+
+import com.alvarobajo.banco.controller.AsignadorIban;
+import com.alvarobajo.banco.controller.Banco;
+import com.alvarobajo.banco.controller.procesos.ProgresoLote;
+import com.alvarobajo.banco.models.CuentaAhorro;
+import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.CuentaCorrienteEmpresa;
+import com.alvarobajo.banco.models.CuentaCorrientePersonal;
+import com.alvarobajo.banco.models.Dinero;
+import com.alvarobajo.banco.models.Persona;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Generador de poblaciones sintéticas de cuentas, para probar el banco con millones de clientes sin darlos de
+ * alta a mano.
+ *
+ * <p>La cuenta número {@code i} depende solo de la semilla y de {@code i}: se genera con su propia fuente de
+ * números aleatorios, así que la misma semilla da siempre las mismas cuentas, se generen en el orden que se
+ * generen y con los hilos que sea. Eso permite repartir la generación entre todos los procesadores y volver a
+ * obtener después el IBAN de cualquier cuenta ({@link #iban(long)}), por ejemplo para generar operaciones sobre
+ * ella ({@link GeneradorOperaciones}).</p>
+ *
+ * <p>Las cuentas son realistas:</p>
+ * <ul>
+ *     <li>El tipo de cuenta sigue los porcentajes indicados de ahorro, corriente personal y corriente de
+ *     empresa.</li>
+ *     <li>Los titulares tienen los nombres y apellidos más frecuentes en España, con pesos aproximados a su
+ *     frecuencia real, y un DNI con su letra de control. Cada titular tiene una o dos cuentas (1,5 de media); dos
+ *     titulares distintos nunca comparten DNI.</li>
+ *     <li>Los saldos siguen una distribución logarítmico-normal, con muchas cuentas de poco saldo y unas pocas de
+ *     saldos muy altos. Algunas cuentas de empresa están en descubierto, sin pasar de su máximo.</li>
+ *     <li>Los IBAN son válidos, de la entidad y oficina del banco, y empiezan en un número alto para no coincidir
+ *     con los que reparte el {@link AsignadorIban} a las cuentas nuevas.</li>
+ * </ul>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class GeneradorPoblacion {
+
+    /**
+     * Número de cuenta del IBAN de la primera cuenta generada.
+     */
+    public static final long PRIMER_NUMERO_CUENTA = 5_000_000_000L;
+
+    // Cuentas que se generan en paralelo antes de abrirlas en el banco
+    private static final int BLOQUE = 1 << 16;
+    private static final String LETRAS_DNI = "TRWAGMYFPDXBNJZSQVHLCKE";
+    private static final long NUMEROS_DNI = 100_000_000L;
+    // Multiplicador impar y no divisible por 5: recorre todos los números de DNI sin repetir ninguno
+    private static final long MULTIPLICADOR_DNI = 48_271L;
+
+    // Nombres y apellidos más frecuentes en España; los pesos son miles de personas, aproximados
+    private static final String[] NOMBRES = {
+            "Antonio", "Manuel", "José", "Francisco", "David", "Juan", "Javier", "José Antonio", "Daniel",
+            "Francisco Javier", "José Luis", "Carlos", "Jesús", "Alejandro", "Miguel", "José Manuel", "Rafael",
+            "Pablo", "María Carmen", "María", "Carmen", "Ana María", "Laura", "Josefa", "María Pilar", "Isabel",
+            "María Dolores", "María Teresa", "Ana", "Marta", "Cristina", "Lucía", "Francisca", "Elena"};
+    private static final int[] PESOS_NOMBRES = {
+            650, 600, 560, 520, 370, 360, 340, 330, 330, 300, 300, 300, 290, 280, 260, 250, 220, 220, 640, 600,
+            380, 300, 300, 290, 280, 270, 270, 250, 250, 240, 240, 220, 220, 200};
+    private static final String[] APELLIDOS = {
+            "García", "Rodríguez", "González", "Fernández", "López", "Martínez", "Sánchez", "Pérez", "Gómez",
+            "Martín", "Jiménez", "Ruiz", "Hernández", "Díaz", "Moreno", "Muñoz", "Álvarez", "Romero", "Alonso",
+            "Gutiérrez", "Navarro", "Torres", "Domínguez", "Vázquez", "Ramos", "Gil", "Ramírez", "Serrano",
+            "Blanco", "Molina", "Morales", "Suárez", "Ortega", "Delgado", "Castro", "Ortiz", "Rubio", "Marín",
+            "Sanz", "Núñez"};
+    private static final int[] PESOS_APELLIDOS = {
+            1450, 930, 920, 900, 870, 830, 810, 780, 490, 490, 390, 350, 340, 330, 320, 280, 280, 240, 200, 200,
+            190, 180, 170, 160, 160, 150, 150, 150, 140, 140, 130, 130, 130, 120, 120, 120, 120, 110, 110, 100};
+    private static final String[] ENTIDADES = {"Iberdrola", "Telefónica", "Endesa", "Naturgy", "Movistar",
+            "Vodafone", "Orange", "Canal de Isabel II", "Mapfre", "Mutua Madrileña"};
+
+    private final long semilla;
+    private final int porcentajeAhorro;
+    private final int porcentajePersonal;
+    private final AsignadorIban formatoIban = new AsignadorIban();
+    private final double[] acumuladaNombres = acumulada(PESOS_NOMBRES);
+    private final double[] acumuladaApellidos = acumulada(PESOS_APELLIDOS);
+
+    /**
+     * Constructor para inicializar un generador con un 60 % de cuentas de ahorro, un 30 % de cuentas corrientes
+     * personales y un 10 % de cuentas corrientes de empresa.
+     *
+     * @param semilla Semilla de la población: la misma semilla genera siempre las mismas cuentas.
+     */
+    public GeneradorPoblacion(long semilla) {
+        this(semilla, 60, 30, 10);
+    }
+
+    /**
+     * Constructor para inicializar un generador con otra proporción de tipos de cuenta.
+     *
+     * @param semilla            Semilla de la población.
+     * @param porcentajeAhorro   Porcentaje de cuentas de ahorro.
+     * @param porcentajePersonal Porcentaje de cuentas corrientes personales.
+     * @param porcentajeEmpresa  Porcentaje de cuentas corrientes de empresa.
+     * @throws IllegalArgumentException si algún porcentaje es negativo o no suman 100.
+     */
+    public GeneradorPoblacion(long semilla, int porcentajeAhorro, int porcentajePersonal, int porcentajeEmpresa) {
+        if (porcentajeAhorro < 0 || porcentajePersonal < 0 || porcentajeEmpresa < 0
+                || porcentajeAhorro + porcentajePersonal + porcentajeEmpresa != 100) {
+            throw new IllegalArgumentException("Los porcentajes de los tipos de cuenta deben sumar 100");
+        }
+        this.semilla = semilla;
+        this.porcentajeAhorro = porcentajeAhorro;
+        this.porcentajePersonal = porcentajePersonal;
+    }
+
+    /**
+     * Obtiene la semilla de la población.
+     *
+     * @return Semilla.
+     */
+    public long getSemilla() {
+        return semilla;
+    }
+
+    /**
+     * Obtiene el IBAN de la cuenta número {@code i} sin generar la cuenta.
+     *
+     * @param i Número de la cuenta, desde 0.
+     * @return IBAN de la cuenta.
+     */
+    public String iban(long i) {
+        return formatoIban.formatear(PRIMER_NUMERO_CUENTA + i);
+    }
+
+    /**
+     * Genera la cuenta número {@code i} de la población.
+     *
+     * @param i Número de la cuenta, desde 0.
+     * @return Cuenta nueva; cada llamada crea un objeto distinto con los mismos datos.
+     */
+    public CuentaBancaria cuenta(long i) {
+        SplittableRandom aleatorio = new SplittableRandom(mezclar(semilla + mezclar(i)));
+        Persona titular = titular(i * 2 / 3);
+        String iban = iban(i);
+        int tipo = aleatorio.nextInt(100);
+        if (tipo < porcentajeAhorro) {
+            return new CuentaAhorro(titular, saldo(aleatorio, 3_000, 1.2), iban, centesimas(aleatorio, 0.1, 3));
+        }
+        if (tipo < porcentajeAhorro + porcentajePersonal) {
+            return new CuentaCorrientePersonal(titular, saldo(aleatorio, 1_500, 1.0), iban, entidades(aleatorio),
+                    centesimas(aleatorio, 0, 12));
+        }
+        double maximoDescubierto = 1_000 * (1 + aleatorio.nextInt(50));
+        double saldo = aleatorio.nextInt(100) < 15
+                ? -Math.round(aleatorio.nextDouble() * maximoDescubierto * 100) / 100.0
+                : saldo(aleatorio, 25_000, 1.5);
+        return new CuentaCorrienteEmpresa(titular, saldo, iban, entidades(aleatorio), centesimas(aleatorio, 5, 15),
+                maximoDescubierto);
+    }
+
+    /**
+     * Genera las cuentas {@code desde}, {@code desde + 1}, ..., {@code desde + n - 1} en paralelo.
+     *
+     * @param desde Número de la primera cuenta.
+     * @param n     Número de cuentas.
+     * @return Cuentas en orden de número.
+     */
+    public List<CuentaBancaria> generar(long desde, int n) {
+        CuentaBancaria[] cuentas = new CuentaBancaria[n];
+        IntStream.range(0, n).parallel().forEach(k -> cuentas[k] = cuenta(desde + k));
+        return Arrays.asList(cuentas);
+    }
+
+    /**
+     * Abre en el banco las cuentas 0 a {@code numCuentas - 1} de la población. Las cuentas se generan en paralelo
+     * por bloques y se abren en orden con {@link Banco#abrirCuentas(java.util.Collection)}, así que el banco no
+     * necesita ser concurrente.
+     *
+     * @param banco      Banco en el que se abren las cuentas.
+     * @param numCuentas Número de cuentas.
+     * @param progreso   Recibe el avance después de cada bloque.
+     * @return Número de cuentas que no se abrieron porque su IBAN ya estaba en uso.
+     */
+    public long poblar(Banco banco, long numCuentas, ProgresoLote progreso) {
+        long inicio = System.currentTimeMillis();
+        long rechazadas = 0;
+        int tamanioBloque = BLOQUE * Runtime.getRuntime().availableProcessors();
+        for (long desde = 0; desde < numCuentas; desde += tamanioBloque) {
+            int n = (int) Math.min(tamanioBloque, numCuentas - desde);
+            rechazadas += banco.abrirCuentas(generar(desde, n)).size();
+            progreso.avance(desde + n, numCuentas, System.currentTimeMillis() - inicio);
+        }
+        return rechazadas;
+    }
+
+    private Persona titular(long numero) {
+        SplittableRandom aleatorio = new SplittableRandom(mezclar(~semilla + mezclar(numero)));
+        String nombre = NOMBRES[elegir(acumuladaNombres, aleatorio)];
+        String apellido1 = APELLIDOS[elegir(acumuladaApellidos, aleatorio)];
+        String apellido2 = APELLIDOS[elegir(acumuladaApellidos, aleatorio)];
+        return new Persona(nombre, apellido1, apellido2, dni(numero));
+    }
+
+    /**
+     * Obtiene el DNI del titular número {@code numero}. La multiplicación reparte los DNI por todo el rango en
+     * lugar de darlos seguidos, y como el multiplicador es primo con 10^8 no repite ninguno.
+     */
+    private static String dni(long numero) {
+        long dni = Math.floorMod(numero * MULTIPLICADOR_DNI, NUMEROS_DNI);
+        return String.format("%08d%c", dni, LETRAS_DNI.charAt((int) (dni % LETRAS_DNI.length())));
+    }
+
+    /**
+     * Genera un saldo en euros con distribución logarítmico-normal.
+     *
+     * @param mediana Mediana del saldo.
+     * @param sigma   Dispersión: cuanto mayor, más cuentas con saldos muy altos.
+     */
+    private static double saldo(SplittableRandom aleatorio, double mediana, double sigma) {
+        double saldo = mediana * Math.exp(sigma * aleatorio.nextGaussian());
+        return Math.min(Math.round(saldo * 100) / 100.0, Dinero.MAXIMO_EUROS);
+    }
+
+    private static double centesimas(SplittableRandom aleatorio, double minimo, double maximo) {
+        return Math.round((minimo + aleatorio.nextDouble() * (maximo - minimo)) * 100) / 100.0;
+    }
+
+    private static String entidades(SplittableRandom aleatorio) {
+        int n = 1 + aleatorio.nextInt(3);
+        int primera = aleatorio.nextInt(ENTIDADES.length);
+        StringBuilder lista = new StringBuilder(ENTIDADES[primera]);
+        for (int k = 1; k < n; k++) {
+            lista.append(',').append(ENTIDADES[(primera + k) % ENTIDADES.length]);
+        }
+        return lista.toString();
+    }
+
+    private static double[] acumulada(int[] pesos) {
+        double[] acumulada = new double[pesos.length];
+        double suma = 0;
+        for (int i = 0; i < pesos.length; i++) {
+            suma += pesos[i];
+            acumulada[i] = suma;
+        }
+        for (int i = 0; i < pesos.length; i++) {
+            acumulada[i] /= suma;
+        }
+        return acumulada;
+    }
+
+    private static int elegir(double[] acumulada, SplittableRandom aleatorio) {
+        int posicion = Arrays.binarySearch(acumulada, aleatorio.nextDouble());
+        return Math.min(posicion >= 0 ? posicion + 1 : -posicion - 1, acumulada.length - 1);
+    }
+
+    /**
+     * Mezcla los bits de un número (función final de MurmurHash3), para que semillas consecutivas den
+     * secuencias aleatorias sin relación entre sí.
+     */
+    static long mezclar(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+}
@@ -0,0 +1,93 @@
+package com.alvarobajo.banco.controller.simulacion;
+
+import java.util.SplittableRandom;
+
+/**
+ * Generador de índices con distribución de Zipf, para simular cuentas "calientes" que reciben
+ * muchas más operaciones que el resto.
+ *
+ * <p>Usa el método de inversión con rechazo de Hörmann y Derflinger: no precalcula nada, así que sirve igual
+ * para mil elementos que para cientos de millones, y cada índice se genera con unas pocas operaciones y casi
+ * nunca necesita más de un intento. No reserva memoria al generar. El índice 0 es el más popular.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public class GeneradorZipf {
+
+    private final int n;
+    private final double exponente;
+    private final double integralX1;
+    private final double integralN;
+    private final double s;
+
+    /**
+     * Constructor para inicializar el generador.
+     *
+     * @param n         Número de elementos.
+     * @param exponente Exponente de la distribución (0 es uniforme; cuanto mayor, más sesgada).
+     * @throws IllegalArgumentException si no hay elementos o el exponente es negativo.
+     */
+    public GeneradorZipf(int n, double exponente) {
+        if (n <= 0 || !(exponente >= 0)) {
+            throw new IllegalArgumentException("Se necesitan elementos y un exponente no negativo: " + n + ", "
+                    + exponente);
+        }
+        this.n = n;
+        this.exponente = exponente;
+        integralX1 = integral(1.5) - 1;
+        integralN = integral(n + 0.5);
+        s = 2 - integralInversa(integral(2.5) - h(2));
+    }
+
+    /**
+     * Genera el siguiente índice.
+     *
+     * @param aleatorio Fuente de números aleatorios del hilo que llama.
+     * @return Índice entre 0 y n - 1.
+     */
+    public int siguiente(SplittableRandom aleatorio) {
+        while (true) {
+            double u = integralN + aleatorio.nextDouble() * (integralX1 - integralN);
+            double x = integralInversa(u);
+            int k = (int) Math.max(1, Math.min(n, (long) (x + 0.5)));
+            // Casi siempre se acepta con la primera comparación, sin calcular logaritmos
+            if (k - x <= s || u >= integral(k + 0.5) - h(k)) {
+                return k - 1;
+            }
+        }
+    }
+
+    /**
+     * Peso del elemento de rango {@code x}: {@code x^-exponente}.
+     */
+    private double h(double x) {
+        return Math.exp(-exponente * Math.log(x));
+    }
+
+    /**
+     * Integral de {@link #h(double)} desde 1 hasta {@code x}, más una constante.
+     */
+    private double integral(double x) {
+        double logX = Math.log(x);
+        return auxiliar2((1 - exponente) * logX) * logX;
+    }
+
+    private double integralInversa(double x) {
+        double t = Math.max(-1, x * (1 - exponente));
+        return Math.exp(auxiliar1(t) * x);
+    }
+
+    /**
+     * {@code log(1 + x) / x}, con su desarrollo en serie cerca de 0.
+     */
+    private static double auxiliar1(double x) {
+        return Math.abs(x) > 1e-8 ? Math.log1p(x) / x : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+    }
+
+    /**
+     * {@code (e^x - 1) / x}, con su desarrollo en serie cerca de 0.
+     */
+    private static double auxiliar2(double x) {
+        return Math.abs(x) > 1e-8 ? Math.expm1(x) / x : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+    }
+}
@@ -11,6 +11,9 @@ package com.alvarobajo.banco.models;
  */
 public class CuentaAhorro extends CuentaBancaria {
 
+    // Fijado al valor que Java calculaba para la clase original, con el que están guardadas las cuentas antiguas
+    private static final long serialVersionUID = 1499654464505633203L;
+
     private double tipoInteres;
 
     /**
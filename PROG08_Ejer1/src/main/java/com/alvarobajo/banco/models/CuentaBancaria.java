@@ -1,5 +1,7 @@
 package com.alvarobajo.banco.models;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 /**
@@ -17,19 +19,21 @@ import java.io.Serializable;
 public abstract class CuentaBancaria implements Imprimible, Serializable {
     private static final long serialVersionUID = 1L;
     private Persona titular;
-    private double saldo;
+    // Saldo en céntimos (ver Dinero); las versiones anteriores lo guardaban en euros en el campo "saldo"
+    private volatile long saldoCentimos;
     private String iban;
+    private transient ObservadorCuenta observador;
 
     /**
      * Constructor para inicializar una instancia de CuentaBancaria.
      *
      * @param titular Persona titular de la cuenta.
-     * @param saldo   Saldo inicial de la cuenta.
+     * @param saldo   Saldo inicial de la cuenta en euros; se redondea al céntimo.
      * @param iban    Número de cuenta IBAN asociado a la cuenta.
      */
     public CuentaBancaria(Persona titular, double saldo, String iban) {
         this.titular = titular;
-        this.saldo = saldo;
+        this.saldoCentimos = Dinero.deEuros(saldo);
         this.iban = iban;
     }
 
@@ -45,30 +49,98 @@ public abstract class CuentaBancaria implements Imprimible, Serializable {
     }
 
     /**
-     * Establece el titular de la cuenta.
+     * Establece el titular de la cuenta y avisa al observador, si lo hay.
      *
      * @param titular Nuevo titular de la cuenta.
      */
     public void setTitular(Persona titular) {
+        Persona anterior = this.titular;
         this.titular = titular;
+        if (observador != null) {
+            observador.titularCambiado(this, anterior, titular);
+        }
     }
 
     /**
-     * Obtiene el saldo actual de la cuenta.
+     * Obtiene el saldo actual de la cuenta en euros, para mostrarlo o exportarlo.
+     * Para operar con el saldo se debe usar {@link #getSaldoCentimos()}, que es exacto.
      *
-     * @return Saldo actual de la cuenta.
+     * @return Saldo actual de la cuenta en euros.
      */
     public double getSaldo() {
-        return saldo;
+        return Dinero.aEuros(saldoCentimos);
     }
 
     /**
-     * Establece el saldo actual de la cuenta.
+     * Establece el saldo actual de la cuenta en euros, redondeado al céntimo, y avisa al observador, si lo hay.
      *
-     * @param saldo Nuevo saldo de la cuenta.
+     * @param saldo Nuevo saldo de la cuenta en euros.
      */
     public void setSaldo(double saldo) {
-        this.saldo = saldo;
+        setSaldoCentimos(Dinero.deEuros(saldo));
+    }
+
+    /**
+     * Obtiene el saldo actual de la cuenta en céntimos.
+     *
+     * @return Saldo actual de la cuenta en céntimos.
+     */
+    public long getSaldoCentimos() {
+        return saldoCentimos;
+    }
+
+    /**
+     * Establece el saldo actual de la cuenta en céntimos y avisa al observador, si lo hay.
+     *
+     * @param saldoCentimos Nuevo saldo de la cuenta en céntimos.
+     */
+    public void setSaldoCentimos(long saldoCentimos) {
+        long anterior = this.saldoCentimos;
+        this.saldoCentimos = saldoCentimos;
+        if (observador != null) {
+            observador.saldoModificado(this, anterior, saldoCentimos);
+        }
+    }
+
+    /**
+     * Cambia a la vez el saldo de las dos cuentas de una transferencia. Si las dos tienen el mismo observador, se le
+     * avisa una sola vez con {@link ObservadorCuenta#transferenciaRealizada}, para que pueda tratar la
+     * transferencia como una única operación; si no, cada observador recibe el cambio de saldo de su cuenta.
+     * Quien llama debe tener los cerrojos de las dos cuentas.
+     *
+     * @param origen       Cuenta de la que sale el dinero.
+     * @param nuevoOrigen  Nuevo saldo del origen en céntimos.
+     * @param destino      Cuenta a la que llega el dinero.
+     * @param nuevoDestino Nuevo saldo del destino en céntimos.
+     */
+    public static void transferirSaldo(CuentaBancaria origen, long nuevoOrigen, CuentaBancaria destino,
+                                       long nuevoDestino) {
+        long anteriorOrigen = origen.saldoCentimos;
+        long anteriorDestino = destino.saldoCentimos;
+        origen.saldoCentimos = nuevoOrigen;
+        destino.saldoCentimos = nuevoDestino;
+        ObservadorCuenta observador = origen.observador;
+        if (observador != null && observador == destino.observador) {
+            observador.transferenciaRealizada(origen, anteriorOrigen, nuevoOrigen, destino, anteriorDestino,
+                    nuevoDestino);
+            return;
+        }
+        if (observador != null) {
+            observador.saldoModificado(origen, anteriorOrigen, nuevoOrigen);
+        }
+        if (destino.observador != null) {
+            destino.observador.saldoModificado(destino, anteriorDestino, nuevoDestino);
+        }
+    }
+
+    /**
+     * Obtiene el saldo mínimo que puede quedar en la cuenta después de un retiro o una transferencia.
+     * Por defecto es 0: solo las cuentas que admiten descubierto permiten un saldo negativo.
+     *
+     * @return Saldo mínimo permitido en céntimos.
+     */
+    public long getSaldoMinimoCentimos() {
+        return 0;
     }
 
     /**
@@ -89,6 +161,44 @@ public abstract class CuentaBancaria implements Imprimible, Serializable {
         this.iban = iban;
     }
 
+    /**
+     * Obtiene el observador que recibe los cambios de la cuenta.
+     *
+     * @return Observador de la cuenta o null si no tiene.
+     */
+    public ObservadorCuenta getObservador() {
+        return observador;
+    }
+
+    /**
+     * Establece el observador que recibe los cambios de la cuenta.
+     * No se serializa: lo vuelve a asignar el banco al cargar la cuenta.
+     *
+     * @param observador Nuevo observador o null para dejar de avisar.
+     */
+    public void setObservador(ObservadorCuenta observador) {
+        this.observador = observador;
+    }
+
+    /**
+     * Lee la cuenta serializada. Las cuentas guardadas por versiones anteriores tienen el saldo en euros en el
+     * campo {@code saldo}, que se convierte a céntimos al leerlo.
+     *
+     * @param in Flujo del que se lee la cuenta.
+     * @throws IOException            si no se puede leer el flujo.
+     * @throws ClassNotFoundException si el flujo contiene clases desconocidas.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField campos = in.readFields();
+        titular = (Persona) campos.get("titular", null);
+        iban = (String) campos.get("iban", null);
+        if (campos.defaulted("saldoCentimos")) {
+            saldoCentimos = Dinero.deEuros(campos.get("saldo", 0.0));
+        } else {
+            saldoCentimos = campos.get("saldoCentimos", 0L);
+        }
+    }
+
     /**
      * Devuelve la información de la cuenta en formato de cadena.
      *
@@ -104,7 +214,7 @@ public abstract class CuentaBancaria implements Imprimible, Serializable {
         }
         info.append("\n");
         info.append("IBAN: ").append(iban).append("\n");
-        info.append("Saldo actual: ").append(saldo).append(" €\n");
+        info.append("Saldo actual: ").append(getSaldo()).append(" €\n");
         return info.toString();
     }
 }
@@ -10,6 +10,9 @@ package com.alvarobajo.banco.models;
  */
 public abstract class CuentaCorriente extends CuentaBancaria {
 
+    // Valor calculado de la clase original; también se comprueba al leer cada cuenta corriente de sus subclases
+    private static final long serialVersionUID = 3590549553774429295L;
+
     private String listaEntidades;
 
     /**
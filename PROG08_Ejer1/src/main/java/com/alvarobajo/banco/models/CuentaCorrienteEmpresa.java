@@ -10,6 +10,10 @@ package com.alvarobajo.banco.models;
  */
 public class CuentaCorrienteEmpresa extends CuentaCorriente {
 
+    // Valor calculado para la versión original de la clase, antes de getSaldoMinimo, para seguir leyendo las
+    // cuentas guardadas con ella
+    private static final long serialVersionUID = 1536398450013246319L;
+
     private double tipoInteresDescubierto;
     private double maximoDescubierto;
 
@@ -66,6 +70,16 @@ public class CuentaCorrienteEmpresa extends CuentaCorriente {
         this.maximoDescubierto = maximoDescubierto;
     }
 
+    /**
+     * Obtiene el saldo mínimo de la cuenta: se puede retirar dinero hasta agotar el máximo descubierto.
+     *
+     * @return Máximo descubierto permitido en céntimos, en negativo.
+     */
+    @Override
+    public long getSaldoMinimoCentimos() {
+        return -Dinero.deEuros(maximoDescubierto);
+    }
+
     /**
      * Devuelve la información detallada de la cuenta corriente de empresa en formato de cadena.
      *
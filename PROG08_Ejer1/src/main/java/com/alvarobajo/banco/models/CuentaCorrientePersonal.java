@@ -10,6 +10,9 @@ package com.alvarobajo.banco.models;
  */
 public class CuentaCorrientePersonal extends CuentaCorriente {
 
+    // Fijado para que los métodos nuevos de la jerarquía de cuentas no cambien el valor calculado
+    private static final long serialVersionUID = 5653326044315012972L;
+
     private double comisionMantenimiento;
 
     /**
@@ -0,0 +1,104 @@
+package com.alvarobajo.banco.models;
+
+/**
+ * Clase con operaciones para importes guardados en céntimos ({@code long}).
+ *
+ * <p>Los saldos se guardan como un número entero de céntimos para que sumar y restar sea exacto: con
+ * {@code double}, millones de operaciones acumulan restos como {@code 1e-12} y un saldo que debería ser 0 deja de
+ * serlo. Los métodos son estáticos y no crean objetos, así que se pueden usar en cada ingreso o retiro sin coste
+ * para el recolector de basura. Los importes en euros ({@code double}) solo se usan en los bordes: al leer lo que
+ * escribe el usuario y al mostrar o exportar un saldo.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public final class Dinero {
+
+    /**
+     * Número de céntimos en un euro.
+     */
+    public static final int CENTIMOS_POR_EURO = 100;
+
+    /**
+     * Mayor importe en euros que se puede convertir a céntimos sin perder precisión (2^53 céntimos).
+     */
+    public static final double MAXIMO_EUROS = 90_071_992_547_409.91;
+
+    private Dinero() {
+    }
+
+    /**
+     * Convierte un importe en euros a céntimos, redondeando al céntimo más cercano.
+     *
+     * @param euros Importe en euros.
+     * @return Importe en céntimos.
+     * @throws IllegalArgumentException si el importe no es un número finito o es demasiado grande.
+     */
+    public static long deEuros(double euros) {
+        if (!(Math.abs(euros) <= MAXIMO_EUROS)) {
+            throw new IllegalArgumentException("Importe no válido: " + euros);
+        }
+        return Math.round(euros * CENTIMOS_POR_EURO);
+    }
+
+    /**
+     * Convierte un importe en céntimos a euros, para mostrarlo o exportarlo.
+     *
+     * @param centimos Importe en céntimos.
+     * @return Importe en euros.
+     */
+    public static double aEuros(long centimos) {
+        return (double) centimos / CENTIMOS_POR_EURO;
+    }
+
+    /**
+     * Suma dos importes en céntimos.
+     *
+     * @param a Primer importe.
+     * @param b Segundo importe.
+     * @return Suma de los dos importes.
+     * @throws ArithmeticException si el resultado no cabe en un {@code long}.
+     */
+    public static long sumar(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    /**
+     * Resta dos importes en céntimos.
+     *
+     * @param a Importe del que se resta.
+     * @param b Importe que se resta.
+     * @return Diferencia de los dos importes.
+     * @throws ArithmeticException si el resultado no cabe en un {@code long}.
+     */
+    public static long restar(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * Comprueba si se puede restar un importe de un saldo sin bajar de un mínimo. Si la resta no cabe en un
+     * {@code long} el resultado quedaría por debajo de cualquier mínimo, así que no se puede.
+     *
+     * @param saldo   Saldo en céntimos.
+     * @param importe Importe en céntimos que se quiere restar, mayor que 0.
+     * @param minimo  Saldo mínimo en céntimos que debe quedar.
+     * @return true si el saldo que queda es al menos el mínimo.
+     */
+    public static boolean alcanza(long saldo, long importe, long minimo) {
+        try {
+            return Math.subtractExact(saldo, importe) >= minimo;
+        } catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Aplica un porcentaje a un importe, redondeando al céntimo más cercano. Se usa para los intereses.
+     *
+     * @param centimos   Importe en céntimos.
+     * @param porcentaje Porcentaje a aplicar (por ejemplo 1.5 para un 1,5 %).
+     * @return Resultado en céntimos.
+     */
+    public static long porcentaje(long centimos, double porcentaje) {
+        return Math.round(centimos * porcentaje / 100);
+    }
+}
@@ -0,0 +1,89 @@
+package com.alvarobajo.banco.models;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Clase que representa un movimiento del historial de una cuenta bancaria: cuándo ocurrió, de qué tipo fue,
+ * cuánto dinero movió y con qué saldo quedó la cuenta.
+ *
+ * <p>Los movimientos no se guardan como objetos: el historial los guarda en arrays de {@code long} y solo crea
+ * un {@code Movimiento} al consultarlos. Los importes están en céntimos ({@link Dinero}).</p>
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public final class Movimiento implements Imprimible {
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+
+    private final long instante;
+    private final TipoMovimiento tipo;
+    private final long importeCentimos;
+    private final long saldoCentimos;
+
+    /**
+     * Constructor para inicializar un movimiento.
+     *
+     * @param instante        Momento del movimiento, en milisegundos desde 1970-01-01T00:00Z.
+     * @param tipo            Tipo de movimiento.
+     * @param importeCentimos Importe del movimiento en céntimos, siempre positivo.
+     * @param saldoCentimos   Saldo de la cuenta en céntimos después del movimiento.
+     */
+    public Movimiento(long instante, TipoMovimiento tipo, long importeCentimos, long saldoCentimos) {
+        this.instante = instante;
+        this.tipo = tipo;
+        this.importeCentimos = importeCentimos;
+        this.saldoCentimos = saldoCentimos;
+    }
+
+    /**
+     * Obtiene el momento del movimiento.
+     *
+     * @return Milisegundos desde 1970-01-01T00:00Z.
+     */
+    public long getInstante() {
+        return instante;
+    }
+
+    /**
+     * Obtiene el tipo de movimiento.
+     *
+     * @return Tipo de movimiento.
+     */
+    public TipoMovimiento getTipo() {
+        return tipo;
+    }
+
+    /**
+     * Obtiene el importe del movimiento.
+     *
+     * @return Importe en céntimos, siempre positivo.
+     */
+    public long getImporteCentimos() {
+        return importeCentimos;
+    }
+
+    /**
+     * Obtiene el saldo con el que quedó la cuenta después del movimiento.
+     *
+     * @return Saldo en céntimos.
+     */
+    public long getSaldoCentimos() {
+        return saldoCentimos;
+    }
+
+    @Override
+    public String devolverInfoString() {
+        LocalDateTime fecha = LocalDateTime.ofInstant(Instant.ofEpochMilli(instante), ZoneId.systemDefault());
+        return String.format("%s  %-8s %14.2f €   Saldo: %.2f €", FORMATO_FECHA.format(fecha),
+                tipo.getDescripcion(), Dinero.aEuros(tipo == TipoMovimiento.INGRESO ? importeCentimos : -importeCentimos),
+                Dinero.aEuros(saldoCentimos));
+    }
+
+    @Override
+    public String toString() {
+        return devolverInfoString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.alvarobajo.banco.models;
+
+/**
+ * Interfaz ObservadorCuenta para recibir avisos de los cambios que se producen en una cuenta bancaria.
+ * La implementa quien necesite mantener información derivada de las cuentas, como los índices del banco
+ * o el diario de operaciones.
+ *
+ * <p>Todos los métodos salvo {@link #titularCambiado} tienen una implementación vacía por defecto,
+ * para que cada observador implemente solo los avisos que le interesan.</p>
+ *
+ * @author Álvaro Bajo Tabero
+ * @version 1.2
+ * @since 2024-04-10
+ */
+public interface ObservadorCuenta {
+
+    /**
+     * Se invoca después de cambiar el titular de la cuenta.
+     *
+     * @param cuenta   Cuenta modificada.
+     * @param anterior Titular que tenía la cuenta antes del cambio.
+     * @param nuevo    Titular actual de la cuenta.
+     */
+    void titularCambiado(CuentaBancaria cuenta, Persona anterior, Persona nuevo);
+
+    /**
+     * Se invoca después de cambiar el saldo de la cuenta.
+     *
+     * @param cuenta   Cuenta modificada.
+     * @param anterior Saldo en céntimos que tenía la cuenta antes del cambio.
+     * @param nuevo    Saldo actual de la cuenta en céntimos.
+     */
+    default void saldoModificado(CuentaBancaria cuenta, long anterior, long nuevo) {
+    }
+
+    /**
+     * Se invoca después de una transferencia, que cambia a la vez el saldo de dos cuentas. Por defecto equivale a
+     * los dos avisos de {@link #saldoModificado}, primero el del origen; el diario la sobrescribe para guardar la
+     * transferencia en un solo registro.
+     *
+     * @param origen          Cuenta de la que sale el dinero.
+     * @param anteriorOrigen  Saldo en céntimos que tenía el origen antes de la transferencia.
+     * @param nuevoOrigen     Saldo actual del origen en céntimos.
+     * @param destino         Cuenta a la que llega el dinero.
+     * @param anteriorDestino Saldo en céntimos que tenía el destino antes de la transferencia.
+     * @param nuevoDestino    Saldo actual del destino en céntimos.
+     */
+    default void transferenciaRealizada(CuentaBancaria origen, long anteriorOrigen, long nuevoOrigen,
+                                        CuentaBancaria destino, long anteriorDestino, long nuevoDestino) {
+        saldoModificado(origen, anteriorOrigen, nuevoOrigen);
+        saldoModificado(destino, anteriorDestino, nuevoDestino);
+    }
+
+    /**
+     * Se invoca después de abrir una cuenta en el banco.
+     *
+     * @param cuenta Cuenta abierta.
+     */
+    default void cuentaAbierta(CuentaBancaria cuenta) {
+    }
+
+    /**
+     * Se invoca después de eliminar una cuenta del banco.
+     *
+     * @param cuenta Cuenta eliminada.
+     */
+    default void cuentaEliminada(CuentaBancaria cuenta) {
+    }
+}
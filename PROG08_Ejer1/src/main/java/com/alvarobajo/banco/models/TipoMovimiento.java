@@ -0,0 +1,34 @@
+package com.alvarobajo.banco.models;
+
+/**
+ * Tipos de movimiento que se anotan en el historial de una cuenta bancaria.
+ *
+ * @author Álvaro Bajo Tabero
+ */
+public enum TipoMovimiento {
+
+    /**
+     * Entrada de dinero en la cuenta (ingreso, transferencia recibida, intereses abonados...).
+     */
+    INGRESO("Ingreso"),
+
+    /**
+     * Salida de dinero de la cuenta (retiro, transferencia enviada, comisiones cobradas...).
+     */
+    RETIRO("Retiro");
+
+    private final String descripcion;
+
+    TipoMovimiento(String descripcion) {
+        this.descripcion = descripcion;
+    }
+
+    /**
+     * Obtiene el nombre del tipo de movimiento para mostrarlo.
+     *
+     * @return Descripción del tipo de movimiento.
+     */
+    public String getDescripcion() {
+        return descripcion;
+    }
+}
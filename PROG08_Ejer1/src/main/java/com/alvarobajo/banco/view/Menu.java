@@ -2,10 +2,26 @@ package com.alvarobajo.banco.view;
 
 import com.alvarobajo.banco.controller.Banco;
 import com.alvarobajo.banco.controller.LecturaTeclado;
+import com.alvarobajo.banco.controller.agregados.ColumnasCuentas;
+import com.alvarobajo.banco.controller.agregados.EstadisticasBanco;
 import com.alvarobajo.banco.controller.cuentas.MostrarCuenta;
 import com.alvarobajo.banco.controller.cuentas.OperarCuenta;
 import com.alvarobajo.banco.controller.cuentas.CrearCuenta;
+import com.alvarobajo.banco.controller.cuentas.ImportadorCuentas;
+import com.alvarobajo.banco.controller.cuentas.ResultadoImportacion;
+import com.alvarobajo.banco.controller.exportacion.FormatoExportacion;
+import com.alvarobajo.banco.controller.metricas.RegistroMetricas;
+import com.alvarobajo.banco.controller.procesos.CargosCuentasCorrientes;
+import com.alvarobajo.banco.controller.procesos.LiquidacionIntereses;
+import com.alvarobajo.banco.controller.procesos.ProgresoLote;
 import com.alvarobajo.banco.models.CuentaBancaria;
+import com.alvarobajo.banco.models.Movimiento;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.List;
 
 /**
  * La clase Menu proporciona un menú de consola para interactuar con un Banco.
@@ -17,20 +33,27 @@ import com.alvarobajo.banco.models.CuentaBancaria;
  */
 public class Menu {
 
+    // Número de cuentas con más saldo que se muestran en las estadísticas
+    private static final int MAYORES_SALDOS = 5;
+
     /**
      * Muestra el menú principal en la consola.
      */
     private static void mostrarMenuPrincipal() {
         System.out.println("\n" +
                 "    1. Abrir una nueva cuenta.\n" +
-                "    2. Ver un listado de las cuentas disponibles (código de cuenta, titular y saldo actual).\n" +
+                "    2. Ver un listado por páginas de las cuentas disponibles, ordenadas por IBAN, titular o saldo.\n" +
                 "    3. Obtener los datos de una cuenta concreta.\n" +
                 "    4. Realizar un ingreso en una cuenta.\n" +
                 "    5. Retirar efectivo de una cuenta.\n" +
                 "    6. Consultar el saldo actual de una cuenta.\n" +
                 "    7. Eliminar una cuenta bancaria.\n" +
-                "    8. Crear listado de clientes `.txt.`\n" +
-                "    9. Salir de la aplicación.\n");
+                "    8. Crear listado de clientes o exportar las cuentas (`.txt`, CSV, JSON Lines, ancho fijo).\n" +
+                "    9. Salir de la aplicación.\n" +
+                "    10. Procesos de fin de mes (intereses, descubiertos y comisiones).\n" +
+                "    11. Consultar los últimos movimientos de una cuenta.\n" +
+                "    12. Ver las métricas de rendimiento de las operaciones.\n" +
+                "    13. Ver las estadísticas del banco (saldo total, cuentas por tipo y mayores saldos).\n");
     }
 
     /**
@@ -41,7 +64,32 @@ public class Menu {
                 "    1. Abrir una nueva cuenta de ahorro.\n" +
                 "    2. Abrir una nueva cuenta corriente personal.\n" +
                 "    3. Abrir una nueva cuenta corriente de empresa.\n" +
-                "    4. Volver atrás.\n");
+                "    4. Volver atrás.\n" +
+                "    5. Importar cuentas desde un archivo CSV o JSON Lines.\n");
+    }
+
+    /**
+     * Muestra el menú de listados y exportaciones en la consola.
+     */
+    private static void mostrarMenuExportacion() {
+        System.out.println("\n" +
+                "    1. Crear listado de clientes `.txt`.\n" +
+                "    2. Exportar las cuentas en CSV.\n" +
+                "    3. Exportar las cuentas en JSON Lines.\n" +
+                "    4. Exportar las cuentas en ancho fijo.\n" +
+                "    5. Volver atrás.\n");
+    }
+
+    /**
+     * Muestra el menú de procesos de fin de mes en la consola.
+     */
+    private static void mostrarMenuProcesos() {
+        System.out.println("\n" +
+                "    1. Simular la liquidación mensual de intereses de las cuentas de ahorro.\n" +
+                "    2. Liquidar los intereses mensuales de las cuentas de ahorro.\n" +
+                "    3. Simular el cobro de descubiertos y comisiones de las cuentas corrientes.\n" +
+                "    4. Cobrar los intereses por descubierto y las comisiones de mantenimiento del mes.\n" +
+                "    5. Volver atrás.\n");
     }
 
     /**
@@ -89,11 +137,13 @@ public class Menu {
 
         do {
             mostrarMenuPrincipal();
-            opcion = seleccionMenu("\nSeleccione una opción del menú principal: ", 1, 9);
+            opcion = seleccionMenu("\nSeleccione una opción del menú principal: ", 1, 13);
 
             switch (opcion) {
                 case 1:
-                    abrirMenuCuentas(banco);
+                    if (admiteModificaciones(banco)) {
+                        abrirMenuCuentas(banco);
+                    }
                     break;
                 case 2:
                     MostrarCuenta.mostrarListado(banco);
@@ -102,20 +152,26 @@ public class Menu {
                     mostrarCuentaConcreta(banco);
                     break;
                 case 4:
-                    realizarIngreso(banco);
+                    if (admiteModificaciones(banco)) {
+                        realizarIngreso(banco);
+                    }
                     break;
                 case 5:
-                    retirarEfectivo(banco);
+                    if (admiteModificaciones(banco)) {
+                        retirarEfectivo(banco);
+                    }
                     break;
                 case 6:
                     consultarSaldo(banco);
                     break;
                 case 7:
-                    eliminarCuenta(banco);
+                    if (admiteModificaciones(banco)) {
+                        eliminarCuenta(banco);
+                    }
                     break;
                 case 8:
-                    //Con esto vamos a guardar las cuentas en el escritorio
-                    banco.generarListadoClientes();
+                    //Con esto vamos a guardar las cuentas en el directorio de salida (por defecto, el escritorio)
+                    abrirMenuExportacion(banco);
                     break;
                 case 9:
                     //Con esto vamos a guardar las cuentas en el escritorio
@@ -123,13 +179,40 @@ public class Menu {
                     System.out.println("Saliendo de la aplicación. ¡Hasta luego!");
                     System.exit(0);
                     break;
+                case 10:
+                    abrirMenuProcesos(banco);
+                    break;
+                case 11:
+                    consultarMovimientos(banco);
+                    break;
+                case 12:
+                    mostrarMetricas(banco);
+                    break;
+                case 13:
+                    mostrarEstadisticas(banco);
+                    break;
                 default:
-                    System.out.println("Por favor, ingrese un número válido entre 1 y 9.");
+                    System.out.println("Por favor, ingrese un número válido entre 1 y 13.");
                     menuPrincipal(banco);
             }
         } while (opcion != 9);
     }
 
+    /**
+     * Comprueba que las cuentas del banco se pueden modificar desde el menú, es decir, que el banco no tiene un
+     * bucle de operaciones abierto. Si lo tiene, avisa al usuario.
+     *
+     * @param banco Banco sobre el cual se realizarán las operaciones.
+     * @return true si se pueden modificar las cuentas.
+     */
+    private static boolean admiteModificaciones(Banco banco) {
+        if (banco.isBucleAbierto()) {
+            System.out.println("Las cuentas se están modificando a través del bucle de operaciones. Solo se pueden consultar.");
+            return false;
+        }
+        return true;
+    }
+
     // Nuevo método para eliminar una cuenta
     private static void eliminarCuenta(Banco banco) {
         System.out.println("\nEliminar Cuenta Bancaria:");
@@ -137,8 +220,7 @@ public class Menu {
 
         CuentaBancaria cuenta = banco.buscarCuentaPorIBAN(Iban);
         if (cuenta != null) {
-            if (cuenta.getSaldo() == 0) {
-                banco.getCuentas().remove(cuenta);
+            if (banco.eliminarCuenta(Iban)) {
                 System.out.println("La cuenta con IBAN " + Iban + " ha sido eliminada.");
             } else {
                 System.out.println("No se pudo eliminar la cuenta. Asegúrate de que el saldo es 0.");
@@ -171,7 +253,7 @@ public class Menu {
         int opcion;
         do {
             mostrarMenuCuentas();
-            opcion = seleccionMenu("\nSeleccione una opción del menú de cuentas: ", 1, 4);
+            opcion = seleccionMenu("\nSeleccione una opción del menú de cuentas: ", 1, 5);
 
             switch (opcion) {
                 case 1:
@@ -195,12 +277,86 @@ public class Menu {
                 case 4:
                     System.out.println("Volviendo al menú principal...");
                     break;
+                case 5:
+                    importarCuentas(banco);
+                    break;
                 default:
-                    System.out.println("Por favor, ingrese un número válido entre 1 y 4.");
+                    System.out.println("Por favor, ingrese un número válido entre 1 y 5.");
             }
         } while (opcion != 4);
     }
 
+    /**
+     * Muestra el menú de listados y exportaciones y genera el archivo elegido en el directorio de salida del banco.
+     *
+     * @param banco Banco cuyas cuentas se exportarán.
+     */
+    private static void abrirMenuExportacion(Banco banco) {
+        mostrarMenuExportacion();
+        int opcion = seleccionMenu("\nSeleccione el tipo de archivo: ", 1, 5);
+        switch (opcion) {
+            case 1:
+                banco.generarListadoClientes();
+                break;
+            case 2:
+                banco.exportarCuentas(FormatoExportacion.CSV);
+                break;
+            case 3:
+                banco.exportarCuentas(FormatoExportacion.JSON_LINEAS);
+                break;
+            case 4:
+                banco.exportarCuentas(FormatoExportacion.ANCHO_FIJO);
+                break;
+            default:
+                System.out.println("Volviendo al menú principal...");
+        }
+    }
+
+    /**
+     * Muestra el menú de procesos de fin de mes y ejecuta el proceso elegido, mostrando su avance y su resumen.
+     *
+     * @param banco Banco sobre cuyas cuentas se ejecutará el proceso.
+     */
+    private static void abrirMenuProcesos(Banco banco) {
+        mostrarMenuProcesos();
+        int opcion = seleccionMenu("\nSeleccione el proceso: ", 1, 5);
+        switch (opcion) {
+            case 1:
+            case 2:
+                if (opcion == 2 && !admiteModificaciones(banco)) {
+                    break;
+                }
+                System.out.println(banco.ejecutarProceso(new LiquidacionIntereses(LiquidacionIntereses.MENSUAL),
+                        opcion == 1, ProgresoLote.consola()));
+                break;
+            case 3:
+            case 4:
+                if (opcion == 4 && !admiteModificaciones(banco)) {
+                    break;
+                }
+                System.out.println(banco.ejecutarProceso(new CargosCuentasCorrientes(LiquidacionIntereses.MENSUAL),
+                        opcion == 3, ProgresoLote.consola()));
+                break;
+            default:
+                System.out.println("Volviendo al menú principal...");
+        }
+    }
+
+    /**
+     * Pide la ruta de un archivo CSV o JSON Lines e importa sus cuentas en el banco.
+     *
+     * @param banco Banco en el que se abrirán las cuentas.
+     */
+    private static void importarCuentas(Banco banco) {
+        String ruta = LecturaTeclado.recogerTexto("Ingrese la ruta del archivo a importar (.csv o .jsonl):");
+        try {
+            ResultadoImportacion resultado = ImportadorCuentas.importar(banco, Paths.get(ruta));
+            System.out.println(resultado);
+        } catch (IOException | InvalidPathException e) {
+            System.out.println("Error al importar las cuentas: " + e.getMessage());
+        }
+    }
+
     /**
      * Muestra la información de una cuenta específica.
      *
@@ -249,6 +405,78 @@ public class Menu {
         }
     }
 
+    /**
+     * Muestra los últimos movimientos de la cuenta seleccionada por el usuario, del más reciente al más antiguo.
+     *
+     * @param banco Banco que contiene la cuenta.
+     */
+    private static void consultarMovimientos(Banco banco) {
+        CuentaBancaria cuenta = seleccionarCuenta(banco);
+        if (cuenta == null) {
+            System.out.println("No se encontró ninguna cuenta con el IBAN proporcionado.");
+            return;
+        }
+        int n = LecturaTeclado.recogerEntero("¿Cuántos movimientos desea ver?: ");
+        List<Movimiento> movimientos = banco.ultimosMovimientos(cuenta.getIban(), n);
+        if (movimientos.isEmpty()) {
+            System.out.println("La cuenta no tiene movimientos.");
+            return;
+        }
+        System.out.println("Últimos movimientos de la cuenta " + cuenta.getIban() + ":");
+        for (Movimiento movimiento : movimientos) {
+            System.out.println(movimiento.devolverInfoString());
+        }
+    }
+
+    /**
+     * Muestra las métricas de rendimiento de las operaciones y ofrece exportarlas en formato Prometheus al
+     * directorio de salida.
+     *
+     * @param banco Banco que exportará las métricas.
+     */
+    private static void mostrarMetricas(Banco banco) {
+        System.out.println("Métricas de rendimiento:");
+        System.out.print(RegistroMetricas.resumen());
+        int opcion = seleccionMenu("¿Desea exportar las métricas en formato Prometheus? (1. Sí / 2. No): ", 1, 2);
+        if (opcion == 1) {
+            banco.exportarMetricas();
+        }
+    }
+
+    /**
+     * Muestra las estadísticas del banco y las cuentas con más saldo.
+     *
+     * @param banco Banco del que se muestran las estadísticas.
+     */
+    private static void mostrarEstadisticas(Banco banco) {
+        EstadisticasBanco estadisticas = banco.getEstadisticas();
+        System.out.println("Estadísticas del banco:");
+        System.out.println("Número de cuentas: " + estadisticas.numCuentas());
+        long[] porTipo = estadisticas.contarPorTipo();
+        long[] saldoPorTipo = estadisticas.saldoPorTipoCentimos();
+        for (int i = 0; i < porTipo.length; i++) {
+            System.out.println("  " + ColumnasCuentas.TIPOS[i] + ": " + porTipo[i] + " (saldo: "
+                    + euros(saldoPorTipo[i]) + " €)");
+        }
+        System.out.println("Saldo total: " + euros(estadisticas.saldoTotalCentimos()) + " €");
+        System.out.println("Cuentas en descubierto: " + estadisticas.numCuentasEnDescubierto()
+                + " (total descubierto: " + euros(estadisticas.descubiertoTotalCentimos()) + " €)");
+        List<EstadisticasBanco.SaldoCuenta> mayores = estadisticas.mayoresSaldos(MAYORES_SALDOS);
+        if (!mayores.isEmpty()) {
+            System.out.println("Cuentas con más saldo:");
+            for (EstadisticasBanco.SaldoCuenta cuenta : mayores) {
+                System.out.println("  " + cuenta.getIban() + ": " + euros(cuenta.getSaldoCentimos()) + " €");
+            }
+        }
+    }
+
+    /**
+     * Da formato a una cantidad en céntimos como euros con dos decimales, sin notación científica.
+     */
+    private static String euros(long centimos) {
+        return BigDecimal.valueOf(centimos, 2).toPlainString();
+    }
+
     /**
      * Permite al usuario seleccionar una cuenta por su IBAN.
      *